@@ -109,6 +109,7 @@ export default function CustomerSupport() {
         });
         
         // Xóa chấm đỏ vì đang xem conversation
+        chatService.markConversationRead(conversationId, agentId).catch(() => {});
         setUnreadCounts((prevCounts) => {
           const newCounts = new Map(prevCounts);
           newCounts.delete(conversationId);
@@ -182,6 +183,7 @@ export default function CustomerSupport() {
       setMessages(conversationMessages);
 
       // Xóa chấm đỏ khi mở conversation
+      chatService.markConversationRead(conversation.id, agentId).catch(() => {});
       setUnreadCounts((prevCounts) => {
         const newCounts = new Map(prevCounts);
         newCounts.delete(conversation.id);
@@ -70,7 +70,12 @@ export function useWebSocket({
                     if (onMessageRef.current) {
                         try {
                             const data = JSON.parse(event.data);
-                            onMessageRef.current(data);
+                            // Backend gộp nhiều notification thành 1 frame dạng mảng khi client bị chậm
+                            if (Array.isArray(data)) {
+                                data.forEach((item) => onMessageRef.current?.(item));
+                            } else {
+                                onMessageRef.current(data);
+                            }
                         } catch (error) {
                             console.error('Failed to parse WebSocket message:', error);
                         }
@@ -1,7 +1,7 @@
 import axiosInstance from '@/lib/axiosInstance';
 import axios from 'axios';
 
-// Create a separate axios instance for public admin comment endpoints (no auth required)
+// Create a separate axios instance for public admin comment endpoints (no auth required, GET only)
 const publicAxiosInstance = axios.create({
   baseURL: process.env.NEXT_PUBLIC_API_URL || 'http://localhost:8080',
   headers: {
@@ -130,7 +130,7 @@ class AdminCommentService {
    * Update comment status
    */
   async updateCommentStatus(commentId: number, status: string): Promise<{ status: string; message: string }> {
-    const response = await publicAxiosInstance.put<{ status: string; message: string }>(
+    const response = await axiosInstance.put<{ status: string; message: string }>(
       `${this.baseURL}/${commentId}/status?status=${status}`,
       {}
     );
@@ -141,7 +141,7 @@ class AdminCommentService {
    * Reply to a comment
    */
   async replyToComment(commentId: number, reply: string): Promise<{ status: string; message: string; reply?: AdminComment }> {
-    const response = await publicAxiosInstance.post<{ status: string; message: string; reply?: AdminComment }>(
+    const response = await axiosInstance.post<{ status: string; message: string; reply?: AdminComment }>(
       `${this.baseURL}/${commentId}/reply`,
       { reply }
     );
@@ -206,6 +206,14 @@ class ChatService {
     return new Map(Object.entries(data));
   }
 
+  async markConversationRead(conversationId: string, agentId: string): Promise<void> {
+    const response = await fetch(
+      `${BACKEND_URL}/api/conversations/${conversationId}/read?agentId=${agentId}`,
+      { method: 'POST' }
+    );
+    if (!response.ok) throw new Error('Failed to mark conversation as read');
+  }
+
   async uploadImageMessage(
     conversationId: string,
     senderId: string,
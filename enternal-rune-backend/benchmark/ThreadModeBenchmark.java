@@ -0,0 +1,129 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Benchmark tải so sánh chế độ platform thread và virtual thread của backend.
+ * <p>
+ * Chạy (không cần build, JDK 21):
+ * <pre>
+ *   # 1. Platform thread (Tomcat pool mặc định 200 thread)
+ *   VIRTUAL_THREADS_ENABLED=false THREADS_BENCHMARK_PROBE=true ./mvnw spring-boot:run
+ *   java benchmark/ThreadModeBenchmark.java http://localhost:8080/api/benchmark/blocking?delayMs=500 1000 30
+ *
+ *   # 2. Virtual thread
+ *   VIRTUAL_THREADS_ENABLED=true THREADS_BENCHMARK_PROBE=true ./mvnw spring-boot:run
+ *   java benchmark/ThreadModeBenchmark.java http://localhost:8080/api/benchmark/blocking?delayMs=500 1000 30
+ * </pre>
+ * Tham số: url [concurrency=500] [durationSeconds=30] [warmupSeconds=5].
+ * Biến môi trường BENCHMARK_TOKEN (tuỳ chọn) được gửi làm Bearer token, vd. để thử /ai/generate.
+ * <p>
+ * Mỗi client ảo gửi request liên tục (closed loop). Với delayMs=500 và pool 200 thread,
+ * platform mode bị giới hạn ~400 req/s và latency tăng theo hàng đợi; virtual mode nên đạt ~concurrency / 0.5s.
+ * So sánh thêm GET /api/admin/runtime/threads (blockingCalls.maxInFlight, pinning) sau mỗi lần chạy.
+ */
+public class ThreadModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java ThreadModeBenchmark.java <url> [concurrency] [durationSeconds] [warmupSeconds]");
+            System.exit(1);
+        }
+        URI uri = URI.create(args[0]);
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int durationSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int warmupSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        String token = System.getenv("BENCHMARK_TOKEN");
+
+        // HTTP/1.1: mỗi client ảo giữ 1 connection riêng như trình duyệt thật
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(60)).GET();
+        if (token != null && !token.isBlank()) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        HttpRequest request = builder.build();
+
+        long warmupEnd = System.nanoTime() + Duration.ofSeconds(warmupSeconds).toNanos();
+        long end = warmupEnd + Duration.ofSeconds(durationSeconds).toNanos();
+
+        LongAdder ok = new LongAdder();
+        LongAdder errors = new LongAdder();
+        List<long[]> perClient = new ArrayList<>(concurrency);
+        List<Integer> perClientCount = new ArrayList<>(concurrency);
+
+        System.out.printf("Target %s, %d clients, %ds warm-up + %ds measured%n", uri, concurrency, warmupSeconds,
+                durationSeconds);
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<long[]>> futures = new ArrayList<>(concurrency);
+            for (int c = 0; c < concurrency; c++) {
+                futures.add(clients.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int n = 0;
+                    while (true) {
+                        long start = System.nanoTime();
+                        if (start >= end) {
+                            break;
+                        }
+                        boolean success;
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            success = response.statusCode() < 400;
+                        } catch (Exception e) {
+                            success = false;
+                        }
+                        long finished = System.nanoTime();
+                        if (start < warmupEnd || finished > end) {
+                            continue;
+                        }
+                        if (!success) {
+                            errors.increment();
+                            continue;
+                        }
+                        ok.increment();
+                        if (n == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, n * 2);
+                        }
+                        latencies[n++] = finished - start;
+                    }
+                    return Arrays.copyOf(latencies, n);
+                }));
+            }
+            for (var future : futures) {
+                long[] latencies = future.get();
+                perClient.add(latencies);
+                perClientCount.add(latencies.length);
+            }
+        }
+
+        long[] all = perClient.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("Requests ok: %d, errors: %d%n", ok.sum(), errors.sum());
+        System.out.printf("Throughput: %.1f req/s%n", ok.sum() / (double) durationSeconds);
+        if (all.length > 0) {
+            System.out.printf("Latency ms: p50=%.1f p95=%.1f p99=%.1f max=%.1f%n",
+                    percentile(all, 0.50), percentile(all, 0.95), percentile(all, 0.99),
+                    all[all.length - 1] / 1_000_000.0);
+        }
+        int starved = (int) perClientCount.stream().filter(count -> count == 0).count();
+        if (starved > 0) {
+            System.out.printf("Clients without a completed request: %d%n", starved);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,248 @@
+package iuh.fit.se.enternalrunebackend.config;
+
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Spring Cache có TTL, giới hạn tổng weight và loại bỏ theo LRU.
+ * - Weight: Collection/Map tính theo số phần tử, object khác tính 1
+ * - Entry hết hạn bị loại khi đọc tới, và được quét lại định kỳ khi ghi
+ * - get(key, loader) (@Cacheable(sync = true)) chỉ cho 1 thread load mỗi key, các thread khác chờ kết quả
+ */
+public class BoundedCache extends AbstractValueAdaptingCache {
+
+    public record Stats(String name, int size, long weight, long maxWeight, long ttlSeconds,
+                        long hits, long misses, double hitRate, long puts, long evictions,
+                        long expirations, long invalidations) {
+    }
+
+    private record Entry(Object value, long weight, long writtenAt) {
+    }
+
+    private final String name;
+    private final long ttlNanos;
+    private final long maxWeight;
+
+    // access-order = true -> phần tử đầu tiên là phần tử ít được dùng gần đây nhất
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<Object, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+    private long currentWeight;
+    private long lastSweep = System.nanoTime();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param ttl       thời gian sống tính từ lúc ghi (null hoặc 0 = không hết hạn)
+     * @param maxWeight tổng weight tối đa của cache
+     */
+    public BoundedCache(String name, Duration ttl, long maxWeight) {
+        super(true);
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        }
+        this.name = name;
+        this.ttlNanos = ttl == null ? 0 : ttl.toNanos();
+        this.maxWeight = maxWeight;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && isExpired(entry, now)) {
+                removeEntry(key);
+                expirations.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object stored = lookup(key);
+        if (stored != null) {
+            return (T) fromStoreValue(stored);
+        }
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = loading.putIfAbsent(key, future);
+        if (inFlight != null) {
+            try {
+                return (T) fromStoreValue(inFlight.join());
+            } catch (CompletionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+
+        try {
+            T value = valueLoader.call();
+            Object storeValue = toStoreValue(value);
+            store(key, storeValue);
+            future.complete(storeValue);
+            return value;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        store(key, toStoreValue(value));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry existing = entries.get(key);
+            if (existing != null && !isExpired(existing, now)) {
+                return toValueWrapper(existing.value());
+            }
+            store(key, toStoreValue(value));
+            return null;
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        evictIfPresent(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        synchronized (entries) {
+            boolean removed = removeEntry(key);
+            if (removed) {
+                invalidations.increment();
+            }
+            return removed;
+        }
+    }
+
+    @Override
+    public void clear() {
+        invalidate();
+    }
+
+    @Override
+    public boolean invalidate() {
+        synchronized (entries) {
+            boolean notEmpty = !entries.isEmpty();
+            invalidations.add(entries.size());
+            entries.clear();
+            currentWeight = 0;
+            return notEmpty;
+        }
+    }
+
+    public Stats getStats() {
+        synchronized (entries) {
+            long hitCount = hits.sum();
+            long missCount = misses.sum();
+            long requests = hitCount + missCount;
+            return new Stats(name, entries.size(), currentWeight, maxWeight,
+                    Duration.ofNanos(ttlNanos).toSeconds(),
+                    hitCount, missCount, requests == 0 ? 0.0 : (double) hitCount / requests,
+                    puts.sum(), evictions.sum(), expirations.sum(), invalidations.sum());
+        }
+    }
+
+    private void store(Object key, Object storeValue) {
+        long weight = weigh(storeValue);
+        long now = System.nanoTime();
+        synchronized (entries) {
+            removeEntry(key);
+            if (weight > maxWeight) {
+                // Không bao giờ vừa cache -> bỏ qua thay vì xóa sạch cache
+                evictions.increment();
+                return;
+            }
+            entries.put(key, new Entry(storeValue, weight, now));
+            currentWeight += weight;
+            puts.increment();
+
+            if (ttlNanos > 0 && now - lastSweep >= ttlNanos) {
+                purgeExpired(now);
+            }
+            Iterator<Map.Entry<Object, Entry>> it = entries.entrySet().iterator();
+            while (currentWeight > maxWeight && it.hasNext()) {
+                Map.Entry<Object, Entry> eldest = it.next();
+                currentWeight -= eldest.getValue().weight();
+                it.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private void purgeExpired(long now) {
+        Iterator<Map.Entry<Object, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (isExpired(entry, now)) {
+                currentWeight -= entry.weight();
+                it.remove();
+                expirations.increment();
+            }
+        }
+        lastSweep = now;
+    }
+
+    private boolean removeEntry(Object key) {
+        Entry removed = entries.remove(key);
+        if (removed == null) {
+            return false;
+        }
+        currentWeight -= removed.weight();
+        return true;
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return ttlNanos > 0 && now - entry.writtenAt() >= ttlNanos;
+    }
+
+    private static long weigh(Object value) {
+        if (value instanceof Collection<?> collection) {
+            return Math.max(1, collection.size());
+        }
+        if (value instanceof Map<?, ?> map) {
+            return Math.max(1, map.size());
+        }
+        return 1;
+    }
+}
@@ -1,27 +1,50 @@
 package iuh.fit.se.enternalrunebackend.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCache;
 import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.Arrays;
+import java.time.Duration;
+import java.util.List;
 
 /**
- * Cache configuration for dashboard optimization
- * Reduces database queries from 37+ to ~6 per request
+ * Cache configuration: mỗi cache có TTL và giới hạn weight riêng (xem BoundedCache)
+ * Payment/shipping status không dùng cache này mà tra qua StatusRegistry
+ * Dashboard: giảm số query từ 37+ xuống ~6 mỗi request
  */
 @Configuration
 @EnableCaching
 public class CacheConfig {
 
+    public static final String DASHBOARD_CACHE = "dashboardCache";
+    public static final String CATALOG_CACHE = "catalogCache";
+    public static final String BRAND_CACHE = "brandCache";
+
+    @Value("${cache.dashboard.ttl:5m}")
+    private Duration dashboardTtl;
+    @Value("${cache.dashboard.max-weight:64}")
+    private long dashboardMaxWeight;
+
+    @Value("${cache.catalog.ttl:10m}")
+    private Duration catalogTtl;
+    @Value("${cache.catalog.max-weight:2000}")
+    private long catalogMaxWeight;
+
+    @Value("${cache.brand.ttl:1h}")
+    private Duration brandTtl;
+    @Value("${cache.brand.max-weight:500}")
+    private long brandMaxWeight;
+
     @Bean
     public CacheManager cacheManager() {
         SimpleCacheManager cacheManager = new SimpleCacheManager();
-        cacheManager.setCaches(Arrays.asList(
-            new ConcurrentMapCache("dashboardCache")
+        cacheManager.setCaches(List.of(
+            new BoundedCache(DASHBOARD_CACHE, dashboardTtl, dashboardMaxWeight),
+            new BoundedCache(CATALOG_CACHE, catalogTtl, catalogMaxWeight),
+            new BoundedCache(BRAND_CACHE, brandTtl, brandMaxWeight)
         ));
         return cacheManager;
     }
@@ -0,0 +1,67 @@
+package iuh.fit.se.enternalrunebackend.config;
+
+import iuh.fit.se.enternalrunebackend.entity.Product;
+import iuh.fit.se.enternalrunebackend.entity.ProductPrice;
+import iuh.fit.se.enternalrunebackend.repository.ProductPriceRepository;
+import iuh.fit.se.enternalrunebackend.service.CacheInvalidationService;
+import iuh.fit.se.enternalrunebackend.service.CatalogSnapshotService;
+import iuh.fit.se.enternalrunebackend.service.ProductVectorService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.rest.core.annotation.*;
+import org.springframework.stereotype.Component;
+
+/**
+ * Giá và sản phẩm còn được sửa qua Spring Data REST (/product-prices, /products)
+ * -> đồng bộ các thay đổi đó vào catalog snapshot, xóa catalog cache và đưa sản phẩm vào outbox nhúng lại.
+ */
+@Component
+@RepositoryEventHandler
+@RequiredArgsConstructor
+public class CatalogRepositoryEventHandler {
+
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final ProductPriceRepository productPriceRepository;
+    private final CacheInvalidationService cacheInvalidationService;
+    private final ProductVectorService productVectorService;
+
+    private final ThreadLocal<Integer> deletingPriceProductId = new ThreadLocal<>();
+
+    @HandleAfterCreate
+    @HandleAfterSave
+    public void onPriceSaved(ProductPrice price) {
+        Integer productId = productPriceRepository.findProductIdByPpId(price.getPpId());
+        catalogSnapshotService.refreshProduct(productId);
+        cacheInvalidationService.onProductChanged();
+        productVectorService.enqueue(productId);
+    }
+
+    // Sau khi xóa thì không còn đọc được product_id -> lấy trước khi xóa, refresh sau khi xóa
+    @HandleBeforeDelete
+    public void onPriceDeleting(ProductPrice price) {
+        deletingPriceProductId.set(productPriceRepository.findProductIdByPpId(price.getPpId()));
+    }
+
+    @HandleAfterDelete
+    public void onPriceDeleted(ProductPrice price) {
+        Integer productId = deletingPriceProductId.get();
+        deletingPriceProductId.remove();
+        catalogSnapshotService.refreshProduct(productId);
+        cacheInvalidationService.onProductChanged();
+        productVectorService.enqueue(productId);
+    }
+
+    @HandleAfterCreate
+    @HandleAfterSave
+    public void onProductSaved(Product product) {
+        catalogSnapshotService.refreshProduct(product.getProdId());
+        cacheInvalidationService.onProductChanged();
+        productVectorService.enqueue(product.getProdId());
+    }
+
+    @HandleAfterDelete
+    public void onProductDeleted(Product product) {
+        catalogSnapshotService.removeProduct(product.getProdId());
+        cacheInvalidationService.onProductChanged();
+        productVectorService.enqueue(product.getProdId());
+    }
+}
@@ -0,0 +1,46 @@
+package iuh.fit.se.enternalrunebackend.config;
+
+import iuh.fit.se.enternalrunebackend.repository.ClusterFanoutEventRepository;
+import iuh.fit.se.enternalrunebackend.service.cluster.ClusterBroker;
+import iuh.fit.se.enternalrunebackend.service.cluster.InMemoryClusterBroker;
+import iuh.fit.se.enternalrunebackend.service.cluster.JdbcClusterBroker;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Chọn ClusterBroker theo cluster.broker:
+ * - in-memory (mặc định): 1 instance, không fan-out sang node khác
+ * - jdbc: nhiều instance dùng chung PostgreSQL, fan-out qua bảng cluster_fanout_events
+ */
+@Configuration
+public class ClusterConfig {
+
+    @Value("${cluster.node-id:}")
+    private String nodeId;
+
+    private String resolveNodeId() {
+        return nodeId == null || nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "cluster.broker", havingValue = "in-memory", matchIfMissing = true)
+    public ClusterBroker inMemoryClusterBroker() {
+        return new InMemoryClusterBroker(new InMemoryClusterBroker.Hub(), resolveNodeId());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "cluster.broker", havingValue = "jdbc")
+    public ClusterBroker jdbcClusterBroker(ClusterFanoutEventRepository repository,
+                                           PlatformTransactionManager transactionManager,
+                                           @Value("${cluster.jdbc.batch-size:200}") int batchSize,
+                                           @Value("${cluster.jdbc.retention:5m}") Duration retention,
+                                           @Value("${cluster.jdbc.gap-timeout:5s}") Duration gapTimeout) {
+        return new JdbcClusterBroker(repository, transactionManager, resolveNodeId(), batchSize, retention, gapTimeout);
+    }
+}
@@ -0,0 +1,57 @@
+package iuh.fit.se.enternalrunebackend.config;
+
+import com.cloudinary.Cloudinary;
+import iuh.fit.se.enternalrunebackend.repository.ImageBlobRepository;
+import iuh.fit.se.enternalrunebackend.service.storage.CloudinaryImageStorage;
+import iuh.fit.se.enternalrunebackend.service.storage.DeduplicatingImageStorage;
+import iuh.fit.se.enternalrunebackend.service.storage.LocalImageStorage;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+/**
+ * Chọn ImageStorage theo storage.images.backend:
+ * - cloudinary (mặc định): imageStorage dùng bean "cloudinary", chatImageStorage dùng "cloudinaryForAssistanceChat"
+ * - local: lưu vào storage.images.local.root (test / dev)
+ * Mọi storage đều được bọc bởi DeduplicatingImageStorage (ảnh trùng nội dung không upload lại).
+ */
+@Configuration
+public class ImageStorageConfig {
+
+    @Bean(name = "imageStorage")
+    @ConditionalOnProperty(name = "storage.images.backend", havingValue = "cloudinary", matchIfMissing = true)
+    public DeduplicatingImageStorage cloudinaryImageStorage(@Qualifier("cloudinary") Cloudinary cloudinary,
+                                                            ImageBlobRepository imageBlobRepository) {
+        return new DeduplicatingImageStorage(
+                new CloudinaryImageStorage("cloudinary", cloudinary, true), imageBlobRepository);
+    }
+
+    @Bean(name = "chatImageStorage")
+    @ConditionalOnProperty(name = "storage.images.backend", havingValue = "cloudinary", matchIfMissing = true)
+    public DeduplicatingImageStorage cloudinaryChatImageStorage(
+            @Qualifier("cloudinaryForAssistanceChat") Cloudinary cloudinaryForAssistanceChat,
+            ImageBlobRepository imageBlobRepository) {
+        return new DeduplicatingImageStorage(
+                new CloudinaryImageStorage("cloudinary-chat", cloudinaryForAssistanceChat, false), imageBlobRepository);
+    }
+
+    @Bean(name = "imageStorage")
+    @ConditionalOnProperty(name = "storage.images.backend", havingValue = "local")
+    public DeduplicatingImageStorage localImageStorage(@Value("${storage.images.local.root}") Path root,
+                                                       @Value("${storage.images.local.base-url}") String baseUrl,
+                                                       ImageBlobRepository imageBlobRepository) {
+        return new DeduplicatingImageStorage(new LocalImageStorage(root, baseUrl), imageBlobRepository);
+    }
+
+    @Bean(name = "chatImageStorage")
+    @ConditionalOnProperty(name = "storage.images.backend", havingValue = "local")
+    public DeduplicatingImageStorage localChatImageStorage(@Value("${storage.images.local.root}") Path root,
+                                                           @Value("${storage.images.local.base-url}") String baseUrl,
+                                                           ImageBlobRepository imageBlobRepository) {
+        return new DeduplicatingImageStorage(new LocalImageStorage(root, baseUrl), imageBlobRepository);
+    }
+}
@@ -0,0 +1,12 @@
+package iuh.fit.se.enternalrunebackend.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Bật @Scheduled cho các job nền (rebuild aggregate, ...)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
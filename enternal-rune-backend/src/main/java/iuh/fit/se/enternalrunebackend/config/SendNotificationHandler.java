@@ -1,33 +1,153 @@
 package iuh.fit.se.enternalrunebackend.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import iuh.fit.se.enternalrunebackend.util.JwtUtil;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
-import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Raw WebSocket endpoint /notifications.
+ * Mỗi session có 1 SessionOutbox riêng, message được gửi trên send worker pool nên
+ * 1 socket chậm / treo không chặn các admin khác và không chặn thread gọi sendToAdmins / sendToUser.
+ */
+@Component
+@Slf4j
 public class SendNotificationHandler extends TextWebSocketHandler {
-    private static final Set<WebSocketSession> adminSessions = new CopyOnWriteArraySet<>();
-    private static final Set<WebSocketSession> userSessions = new CopyOnWriteArraySet<>();
+
+    public record Stats(int adminSessions, int userSessions, int queued, long sent, long frames, long coalesced,
+                        long dropped, long overflowDisconnects, long failures,
+                        long latencyCount, double latencyMeanMs, double latencyMaxMs,
+                        double latencyP50Ms, double latencyP95Ms, double latencyP99Ms) {
+    }
+
+    private final Map<String, SessionOutbox> adminSessions = new ConcurrentHashMap<>();
+    private final Map<String, SessionOutbox> userSessions = new ConcurrentHashMap<>();
+    // email (lowercase) -> các session của user đó (1 user có thể mở nhiều tab)
+    private final Map<String, Set<SessionOutbox>> userSessionsByEmail = new ConcurrentHashMap<>();
+
+    private final JwtUtil jwtUtil;
+    private final ExecutorService sendWorkers;
+    private final Timer sendLatency;
+    private final SessionOutbox.Counters counters = new SessionOutbox.Counters();
+    private final int queueCapacity;
+    private final SessionOutbox.OverflowPolicy overflowPolicy;
+    private final int coalesceThreshold;
+
+    public SendNotificationHandler(@Lazy JwtUtil jwtUtil,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${websocket.notifications.send-workers:4}") int sendWorkers,
+                                   @Value("${websocket.notifications.queue-capacity:256}") int queueCapacity,
+                                   @Value("${websocket.notifications.overflow-policy:DROP_OLDEST}") String overflowPolicy,
+                                   @Value("${websocket.notifications.coalesce-threshold:8}") int coalesceThreshold) {
+        this.jwtUtil = jwtUtil;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.sendWorkers = Executors.newFixedThreadPool(Math.max(1, sendWorkers), runnable -> {
+            Thread thread = new Thread(runnable, "ws-notification-send-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sendLatency = Timer.builder("websocket.notifications.send.latency")
+                .description("Thời gian từ lúc message vào outbox tới khi gửi xong")
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.overflowPolicy = SessionOutbox.OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase(Locale.ROOT));
+        this.coalesceThreshold = coalesceThreshold;
+    }
 
     /**
      * Send notification to all connected admin sessions
      *
      * @param message JSON string message to broadcast
      */
-    public static void sendToAdmins(String message) {
-        for (WebSocketSession admin : adminSessions) {
-            if (admin.isOpen()) {
-                try {
-                    admin.sendMessage(new TextMessage(message));
-                } catch (Exception e) {
-                    System.err.println("Error sending message to admin: " + e.getMessage());
-                }
+    public void sendToAdmins(String message) {
+        for (SessionOutbox admin : adminSessions.values()) {
+            admin.offer(message);
+        }
+    }
+
+    /**
+     * Send a batch of notifications to all admin sessions, in order
+     *
+     * @param messages JSON string messages to broadcast
+     */
+    public void sendToAdmins(List<String> messages) {
+        for (SessionOutbox admin : adminSessions.values()) {
+            for (String message : messages) {
+                admin.offer(message);
+            }
+        }
+    }
+
+    /**
+     * Send notification to every open session of one user (identified by the JWT in ?token=)
+     *
+     * @return số session đã nhận message, 0 nếu user không online
+     */
+    public int sendToUser(String email, String message) {
+        if (email == null) {
+            return 0;
+        }
+        Set<SessionOutbox> sessions = userSessionsByEmail.get(email.toLowerCase(Locale.ROOT));
+        if (sessions == null) {
+            return 0;
+        }
+        int delivered = 0;
+        for (SessionOutbox outbox : sessions) {
+            if (outbox.offer(message)) {
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    public Stats getStats() {
+        int queued = 0;
+        for (SessionOutbox outbox : adminSessions.values()) {
+            queued += outbox.size();
+        }
+        for (SessionOutbox outbox : userSessions.values()) {
+            queued += outbox.size();
+        }
+        HistogramSnapshot snapshot = sendLatency.takeSnapshot();
+        double p50 = 0, p95 = 0, p99 = 0;
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            double ms = value.value(TimeUnit.MILLISECONDS);
+            if (value.percentile() == 0.5) {
+                p50 = ms;
+            } else if (value.percentile() == 0.95) {
+                p95 = ms;
+            } else if (value.percentile() == 0.99) {
+                p99 = ms;
             }
         }
+        return new Stats(adminSessions.size(), userSessions.size(), queued,
+                counters.sent().sum(), counters.frames().sum(), counters.coalesced().sum(),
+                counters.dropped().sum(), counters.overflowDisconnects().sum(), counters.failures().sum(),
+                snapshot.count(), snapshot.mean(TimeUnit.MILLISECONDS), snapshot.max(TimeUnit.MILLISECONDS),
+                p50, p95, p99);
     }
 
     private String getRole(WebSocketSession session) {
@@ -40,27 +160,61 @@ public class SendNotificationHandler extends TextWebSocketHandler {
         return "user";
     }
 
+    // Email trong JWT (?token=...), null nếu không có hoặc token không hợp lệ
+    private String getEmail(WebSocketSession session) {
+        if (session.getUri() == null) return null;
+        String token = UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams().getFirst("token");
+        if (token == null || token.isBlank()) return null;
+        try {
+            return jwtUtil.extractEmail(token).toLowerCase(Locale.ROOT);
+        } catch (Exception e) {
+            log.warn("Invalid WebSocket token: {}", e.getMessage());
+            return null;
+        }
+    }
 
     @Override
     public void afterConnectionEstablished(@NotNull WebSocketSession session) throws Exception {
         String role = getRole(session);
-        System.out.println("🔗 New WebSocket connection from: " + session.getRemoteAddress());
-        System.out.println("📋 Query string: " + (session.getUri() != null ? session.getUri().getQuery() : "null"));
-        System.out.println("👤 Detected role: " + role);
-        
+        SessionOutbox outbox = new SessionOutbox(session, queueCapacity, overflowPolicy, coalesceThreshold,
+                sendWorkers, sendLatency, counters);
+
         if ("admin".equals(role)) {
-            adminSessions.add(session);
-            System.out.println("✅ Admin connected. Total admins: " + adminSessions.size() + "; Total users: " + userSessions.size());
+            adminSessions.put(session.getId(), outbox);
         } else {
-            userSessions.add(session);
-            System.out.println("✅ User connected. Total admins: " + adminSessions.size() + "; Total users: " + userSessions.size());
+            userSessions.put(session.getId(), outbox);
+            String email = getEmail(session);
+            if (email != null) {
+                session.getAttributes().put("email", email);
+                userSessionsByEmail.computeIfAbsent(email, key -> ConcurrentHashMap.newKeySet()).add(outbox);
+            }
         }
+        log.debug("{} connected from {}. Total admins: {}; Total users: {}",
+                role, session.getRemoteAddress(), adminSessions.size(), userSessions.size());
     }
 
     @Override
     public void afterConnectionClosed(@NotNull WebSocketSession session, @NotNull CloseStatus status) throws Exception {
-        adminSessions.remove(session);
-        userSessions.remove(session);
-        System.out.println("Has disconnected. Admins: " + adminSessions.size() + ", Users: " + userSessions.size());
+        SessionOutbox admin = adminSessions.remove(session.getId());
+        if (admin != null) {
+            admin.close();
+        }
+        SessionOutbox user = userSessions.remove(session.getId());
+        if (user != null) {
+            user.close();
+            Object email = session.getAttributes().get("email");
+            if (email != null) {
+                userSessionsByEmail.computeIfPresent(email.toString(), (key, sessions) -> {
+                    sessions.remove(user);
+                    return sessions.isEmpty() ? null : sessions;
+                });
+            }
+        }
+        log.debug("Session {} disconnected. Admins: {}, Users: {}", session.getId(), adminSessions.size(), userSessions.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendWorkers.shutdown();
     }
 }
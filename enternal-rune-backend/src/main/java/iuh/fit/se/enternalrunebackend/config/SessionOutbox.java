@@ -0,0 +1,193 @@
+package iuh.fit.se.enternalrunebackend.config;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hàng đợi gửi riêng cho 1 WebSocket session.
+ * - offer() không bao giờ block: chỉ thêm vào hàng đợi và lên lịch 1 task drain trên send worker pool
+ * - Mỗi session có tối đa 1 task drain tại 1 thời điểm -> sendMessage không bị gọi đồng thời
+ * - Client bị chậm (backlog >= coalesceThreshold): gộp các message còn chờ thành 1 frame JSON array
+ * - Hàng đợi đầy: DROP_OLDEST bỏ message cũ nhất, DISCONNECT đóng session
+ */
+@Slf4j
+final class SessionOutbox {
+
+    enum OverflowPolicy {
+        DROP_OLDEST,
+        DISCONNECT
+    }
+
+    /**
+     * Bộ đếm dùng chung cho mọi outbox của 1 handler
+     */
+    record Counters(LongAdder sent, LongAdder frames, LongAdder coalesced, LongAdder dropped,
+                    LongAdder overflowDisconnects, LongAdder failures) {
+
+        Counters() {
+            this(new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder());
+        }
+    }
+
+    private record Pending(String payload, long enqueuedAt) {
+    }
+
+    // Số frame tối đa gửi trong 1 task trước khi nhường worker cho session khác
+    private static final int MAX_FRAMES_PER_RUN = 32;
+
+    private final WebSocketSession session;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final int coalesceThreshold;
+    private final Executor executor;
+    private final Timer sendLatency;
+    private final Counters counters;
+
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    private boolean draining;
+    private boolean closed;
+
+    SessionOutbox(WebSocketSession session, int capacity, OverflowPolicy overflowPolicy, int coalesceThreshold,
+                  Executor executor, Timer sendLatency, Counters counters) {
+        this.session = session;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.coalesceThreshold = coalesceThreshold;
+        this.executor = executor;
+        this.sendLatency = sendLatency;
+        this.counters = counters;
+    }
+
+    WebSocketSession getSession() {
+        return session;
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * @return false nếu message không được nhận (outbox đã đóng hoặc bị ngắt do tràn)
+     */
+    boolean offer(String payload) {
+        boolean schedule = false;
+        boolean disconnect = false;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            if (pending.size() >= capacity) {
+                if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                    closed = true;
+                    counters.dropped().add(pending.size() + 1);
+                    pending.clear();
+                    disconnect = true;
+                } else {
+                    pending.pollFirst();
+                    counters.dropped().increment();
+                }
+            }
+            if (!disconnect) {
+                pending.addLast(new Pending(payload, System.nanoTime()));
+                if (!draining) {
+                    draining = true;
+                    schedule = true;
+                }
+            }
+        }
+        if (disconnect) {
+            counters.overflowDisconnects().increment();
+            executor.execute(() -> closeQuietly(CloseStatus.POLICY_VIOLATION.withReason("Send queue overflow")));
+            return false;
+        }
+        if (schedule) {
+            executor.execute(this::drain);
+        }
+        return true;
+    }
+
+    synchronized void close() {
+        closed = true;
+        pending.clear();
+    }
+
+    private void drain() {
+        for (int run = 0; run < MAX_FRAMES_PER_RUN; run++) {
+            List<Pending> batch;
+            synchronized (this) {
+                if (closed || pending.isEmpty()) {
+                    draining = false;
+                    return;
+                }
+                if (coalesceThreshold > 1 && pending.size() >= coalesceThreshold) {
+                    batch = new ArrayList<>(pending);
+                    pending.clear();
+                } else {
+                    batch = List.of(pending.pollFirst());
+                }
+            }
+            if (!send(batch)) {
+                close();
+                synchronized (this) {
+                    draining = false;
+                }
+                return;
+            }
+        }
+        // Còn message -> xếp lại cuối hàng đợi của worker pool
+        executor.execute(this::drain);
+    }
+
+    private boolean send(List<Pending> batch) {
+        String payload;
+        if (batch.size() == 1) {
+            payload = batch.get(0).payload();
+        } else {
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < batch.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(batch.get(i).payload());
+            }
+            payload = sb.append(']').toString();
+            counters.coalesced().add(batch.size());
+        }
+        try {
+            if (!session.isOpen()) {
+                return false;
+            }
+            session.sendMessage(new TextMessage(payload));
+            long now = System.nanoTime();
+            for (Pending p : batch) {
+                sendLatency.record(now - p.enqueuedAt(), TimeUnit.NANOSECONDS);
+            }
+            counters.sent().add(batch.size());
+            counters.frames().increment();
+            return true;
+        } catch (Exception e) {
+            counters.failures().increment();
+            log.warn("Error sending message to session {}: {}", session.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void closeQuietly(CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (Exception ignored) {
+            // session đã đóng
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package iuh.fit.se.enternalrunebackend.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.*;
@@ -17,9 +20,16 @@ public class WebsocketConfig implements WebSocketConfigurer, WebSocketMessageBro
     @Value("${frontend.admin}")
     private String adminUrl;
 
+    // Cùng cờ với Tomcat / @Async / @Scheduled (Spring Boot tự cấu hình các phần đó)
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Autowired
+    private SendNotificationHandler sendNotificationHandler;
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(new SendNotificationHandler(), "/notifications")
+        registry.addHandler(sendNotificationHandler, "/notifications")
                 .setAllowedOriginPatterns("*"); // Allow all origins for WebSocket
     }
 
@@ -34,6 +44,11 @@ public class WebsocketConfig implements WebSocketConfigurer, WebSocketMessageBro
         // 2. Native WebSocket endpoint cho Postman, mobile, hoặc WS client thuần
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*");
+
+        // Inbound chạy trên virtual thread: message của cùng 1 session vẫn được xử lý theo thứ tự gửi
+        if (virtualThreads) {
+            registry.setPreserveReceiveOrder(true);
+        }
     }
 
     @Override
@@ -43,5 +58,32 @@ public class WebsocketConfig implements WebSocketConfigurer, WebSocketMessageBro
 
         // prefix cho nơi client subscribe (nhận broadcast)
         registry.enableSimpleBroker("/topic");
+
+        // Outbound chạy trên virtual thread không còn pool cố định: giữ thứ tự message cho từng session
+        if (virtualThreads) {
+            registry.setPreservePublishOrder(true);
+        }
+    }
+
+    // Mặc định STOMP dùng ThreadPoolTaskExecutor riêng (số thread = số CPU * 2).
+    // Bật virtual thread: mỗi message 1 virtual thread, handler block (lưu DB, gọi AI) không chiếm pool.
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        if (virtualThreads) {
+            registration.executor(virtualThreadExecutor("stomp-inbound-"));
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (virtualThreads) {
+            registration.executor(virtualThreadExecutor("stomp-outbound-"));
+        }
+    }
+
+    private static SimpleAsyncTaskExecutor virtualThreadExecutor(String prefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(prefix);
+        executor.setVirtualThreads(true);
+        return executor;
     }
 }
@@ -0,0 +1,86 @@
+package iuh.fit.se.enternalrunebackend.controller;
+
+import iuh.fit.se.enternalrunebackend.config.BoundedCache;
+import iuh.fit.se.enternalrunebackend.service.AiAnswerCache;
+import iuh.fit.se.enternalrunebackend.service.CacheInvalidationService;
+import iuh.fit.se.enternalrunebackend.service.ImageDerivativeCache;
+import iuh.fit.se.enternalrunebackend.service.storage.DeduplicatingImageStorage;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/caches")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminCacheController {
+
+    private final CacheInvalidationService cacheInvalidationService;
+    private final ImageDerivativeCache imageDerivativeCache;
+    private final List<DeduplicatingImageStorage> imageStorages;
+    private final AiAnswerCache aiAnswerCache;
+
+    /**
+     * Thống kê hit/miss/eviction của từng cache
+     * GET /api/admin/caches
+     */
+    @GetMapping
+    public List<BoundedCache.Stats> getCacheStats() {
+        return cacheInvalidationService.getStats();
+    }
+
+    /**
+     * Cache ảnh resize trên đĩa + số lần upload ảnh trùng được bỏ qua của từng storage
+     * GET /api/admin/caches/images
+     */
+    @GetMapping("/images")
+    public Map<String, Object> getImageCacheStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("derivatives", imageDerivativeCache.getStats());
+        response.put("dedup", imageStorages.stream().map(DeduplicatingImageStorage::getStats).toList());
+        return response;
+    }
+
+    /**
+     * Cache câu trả lời trợ lý AI: hit rate (trùng y hệt / gần nghĩa), thời gian trung bình khi hit / miss,
+     * tổng thời gian ước tính tiết kiệm được
+     * GET /api/admin/caches/ai-answers
+     */
+    @GetMapping("/ai-answers")
+    public AiAnswerCache.Stats getAiAnswerCacheStats() {
+        return aiAnswerCache.getStats();
+    }
+
+    /**
+     * DELETE /api/admin/caches/ai-answers
+     */
+    @DeleteMapping("/ai-answers")
+    public ResponseEntity<Map<String, Object>> clearAiAnswerCache() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Đã xóa " + aiAnswerCache.clear() + " câu trả lời AI đã cache");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Xóa toàn bộ 1 cache
+     * DELETE /api/admin/caches/{name}
+     */
+    @DeleteMapping("/{name}")
+    public ResponseEntity<Map<String, Object>> clearCache(@PathVariable String name) {
+        Map<String, Object> response = new HashMap<>();
+        if (!cacheInvalidationService.clear(name)) {
+            response.put("success", false);
+            response.put("message", "Không tìm thấy cache: " + name);
+            return ResponseEntity.badRequest().body(response);
+        }
+        response.put("success", true);
+        response.put("message", "Đã xóa cache " + name);
+        return ResponseEntity.ok(response);
+    }
+}
@@ -2,6 +2,7 @@ package iuh.fit.se.enternalrunebackend.controller;
 
 import iuh.fit.se.enternalrunebackend.dto.response.AdminCommentDTO;
 import iuh.fit.se.enternalrunebackend.dto.response.CommentPageResponse;
+import iuh.fit.se.enternalrunebackend.entity.enums.CommentStatus;
 import iuh.fit.se.enternalrunebackend.service.AdminCommentService;
 import iuh.fit.se.enternalrunebackend.service.CommentService;
 import lombok.RequiredArgsConstructor;
@@ -112,14 +113,55 @@ public class AdminCommentController {
             @PathVariable Integer commentId,
             @RequestParam String status) {
         
-        // Tạm thời trả về success, sẽ implement logic sau
         Map<String, String> response = new HashMap<>();
+        try {
+            adminCommentService.updateCommentStatus(commentId, CommentStatus.valueOf(status.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            response.put("status", "error");
+            response.put("message", "Invalid status: " + status);
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            response.put("status", "error");
+            response.put("message", "Failed to update status: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
         response.put("status", "success");
         response.put("message", "Comment status updated successfully");
         
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Delete a comment
+     * DELETE /api/admin/comments/{commentId}
+     */
+    @DeleteMapping("/{commentId}")
+    public ResponseEntity<Map<String, String>> deleteComment(@PathVariable Integer commentId) {
+        Map<String, String> response = new HashMap<>();
+        try {
+            adminCommentService.deleteComment(commentId);
+        } catch (Exception e) {
+            response.put("status", "error");
+            response.put("message", "Failed to delete comment: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+        response.put("status", "success");
+        response.put("message", "Comment deleted successfully");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Rebuild product rating aggregates from scratch
+     * POST /api/admin/comments/rating-aggregates/rebuild
+     */
+    @PostMapping("/rating-aggregates/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildRatingAggregates() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("products", adminCommentService.rebuildRatingAggregates());
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Reply to a comment
      * POST /api/admin/comments/{commentId}/reply
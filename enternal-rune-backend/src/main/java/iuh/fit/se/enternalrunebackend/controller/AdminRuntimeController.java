@@ -0,0 +1,99 @@
+package iuh.fit.se.enternalrunebackend.controller;
+
+import iuh.fit.se.enternalrunebackend.service.AiChatStreamService;
+import iuh.fit.se.enternalrunebackend.service.AiConversationMemoryService;
+import iuh.fit.se.enternalrunebackend.service.BlockingCallMonitor;
+import iuh.fit.se.enternalrunebackend.service.ChatIngestionPipeline;
+import iuh.fit.se.enternalrunebackend.service.ProductRetriever;
+import iuh.fit.se.enternalrunebackend.service.ProductVectorService;
+import iuh.fit.se.enternalrunebackend.service.PromptAssembler;
+import iuh.fit.se.enternalrunebackend.service.VirtualThreadPinningMonitor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/runtime")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminRuntimeController {
+
+    private final BlockingCallMonitor blockingCallMonitor;
+    private final VirtualThreadPinningMonitor pinningMonitor;
+    private final AiChatStreamService aiChatStreamService;
+    private final ProductVectorService productVectorService;
+    private final ProductRetriever productRetriever;
+    private final PromptAssembler promptAssembler;
+    private final AiConversationMemoryService memoryService;
+    private final ChatIngestionPipeline chatIngestionPipeline;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    /**
+     * Chế độ thread đang chạy, các lời gọi block ra ngoài, số lần virtual thread bị ghim và stream AI đang mở
+     * GET /api/admin/runtime/threads
+     */
+    @GetMapping("/threads")
+    public Map<String, Object> getThreadStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("mode", virtualThreads ? "virtual" : "platform");
+        response.put("liveThreads", Thread.activeCount());
+        response.put("blockingCalls", blockingCallMonitor.getStats());
+        response.put("pinning", pinningMonitor.getStats());
+        response.put("aiStreams", aiChatStreamService.getStats());
+        return response;
+    }
+
+    /**
+     * Tiến độ đồng bộ sản phẩm vào vector store (outbox còn tồn, số lần nhúng / bỏ qua / xóa, lỗi gần nhất)
+     * GET /api/admin/runtime/vector-sync
+     */
+    @GetMapping("/vector-sync")
+    public ProductVectorService.Stats getVectorSyncStats() {
+        return productVectorService.getStats();
+    }
+
+    /**
+     * Tìm ngữ cảnh cho trợ lý AI: số lần có filter brand / giá, số kết quả chỉ từ từ khoá / chỉ từ vector / cả 2
+     * GET /api/admin/runtime/retrieval
+     */
+    @GetMapping("/retrieval")
+    public ProductRetriever.Stats getRetrievalStats() {
+        return productRetriever.getStats();
+    }
+
+    /**
+     * Token của prompt trợ lý AI: ước lượng trước khi gọi / số thật Gemini trả về, document bị bỏ do trùng / vượt
+     * giới hạn, bảng tính của các request gần nhất
+     * GET /api/admin/runtime/prompts
+     */
+    @GetMapping("/prompts")
+    public PromptAssembler.Stats getPromptStats() {
+        return promptAssembler.getStats();
+    }
+
+    /**
+     * Bộ nhớ hội thoại của trợ lý AI: số phiên trong RAM, số lần đọc Mongo / RAM, số lần nén, phiên bị bỏ khỏi RAM
+     * GET /api/admin/runtime/ai-memory
+     */
+    @GetMapping("/ai-memory")
+    public AiConversationMemoryService.Stats getAiMemoryStats() {
+        return memoryService.getStats();
+    }
+
+    /**
+     * Thống kê pipeline ghi tin nhắn chat hỗ trợ (queued, batch, retry, ring hit...)
+     * GET /api/admin/runtime/chat-pipeline
+     */
+    @GetMapping("/chat-pipeline")
+    public ChatIngestionPipeline.Stats getChatPipelineStats() {
+        return chatIngestionPipeline.getStats();
+    }
+}
@@ -0,0 +1,43 @@
+package iuh.fit.se.enternalrunebackend.controller;
+
+import iuh.fit.se.enternalrunebackend.service.StatusRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/statuses")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminStatusController {
+
+    private final StatusRegistry statusRegistry;
+
+    /**
+     * Danh sách payment/shipping status đang được nạp trong registry
+     * GET /api/admin/statuses
+     */
+    @GetMapping
+    public StatusRegistry.Snapshot getStatuses() {
+        return statusRegistry.getSnapshot();
+    }
+
+    /**
+     * Nạp lại registry sau khi thêm/sửa status trong DB
+     * POST /api/admin/statuses/refresh
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<Map<String, Object>> refresh() {
+        StatusRegistry.Snapshot snapshot = statusRegistry.refresh();
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("paymentStatuses", snapshot.payment().size());
+        response.put("shippingStatuses", snapshot.shipping().size());
+        response.put("loadedAt", snapshot.loadedAt());
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,109 @@
+package iuh.fit.se.enternalrunebackend.controller;
+
+import iuh.fit.se.enternalrunebackend.dto.ai.AiStreamFrame;
+import iuh.fit.se.enternalrunebackend.dto.ai.AiStreamRequest;
+import iuh.fit.se.enternalrunebackend.service.AiChatStreamService;
+import iuh.fit.se.enternalrunebackend.service.AiConversationMemoryService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Trợ lý AI qua STOMP: token được gửi tới /topic/ai/stream/{streamId}.
+ * Client chỉ nhận được trên node nó đang kết nối nên gửi thẳng qua broker local, không qua ClusterFanout.
+ * Giới hạn stream đồng thời theo STOMP session; session đóng thì mọi stream của nó bị huỷ.
+ */
+@Controller
+@RequiredArgsConstructor
+@Slf4j
+public class AiStreamWebSocketController {
+
+    public static final String TOPIC_PREFIX = "/topic/ai/stream/";
+
+    private static final Pattern STREAM_ID = Pattern.compile("[A-Za-z0-9-]{8,64}");
+
+    private final AiChatStreamService aiChatStreamService;
+    private final AiConversationMemoryService memoryService;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @MessageMapping("/ai/stream")
+    public void stream(@Payload AiStreamRequest request,
+                       @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId,
+                       Principal principal) {
+        String streamId = request.streamId();
+        if (streamId == null || !STREAM_ID.matcher(streamId).matches()) {
+            log.debug("Rejected AI stream with invalid id from session {}", sessionId);
+            return;
+        }
+        String destination = TOPIC_PREFIX + streamId;
+        if (request.message() == null || request.message().isBlank()) {
+            messagingTemplate.convertAndSend(destination, new AiStreamFrame(streamId, 0, "error", "Câu hỏi không được để trống"));
+            return;
+        }
+
+        AtomicLong seq = new AtomicLong();
+        String memoryKey = memoryService.key(principal != null ? principal.getName() : null, request.sessionId());
+        Optional<AiChatStreamService.Handle> handle = aiChatStreamService.tryStart(owner(sessionId),
+                internalId(sessionId, streamId), request.message(), memoryKey,
+                new AiChatStreamService.StreamListener() {
+                    @Override
+                    public void onToken(String token) {
+                        messagingTemplate.convertAndSend(destination,
+                                new AiStreamFrame(streamId, seq.incrementAndGet(), "token", token));
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        messagingTemplate.convertAndSend(destination,
+                                new AiStreamFrame(streamId, seq.incrementAndGet(), "done", null));
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        messagingTemplate.convertAndSend(destination, new AiStreamFrame(streamId,
+                                seq.incrementAndGet(), "error", "Trợ lý AI đang bận, vui lòng thử lại sau."));
+                    }
+                });
+        if (handle.isEmpty()) {
+            messagingTemplate.convertAndSend(destination, new AiStreamFrame(streamId, 0, "rejected",
+                    "Bạn đang có quá nhiều câu hỏi chưa trả lời xong, vui lòng đợi."));
+        }
+    }
+
+    @MessageMapping("/ai/stream/{streamId}/cancel")
+    public void cancel(@DestinationVariable String streamId,
+                       @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId) {
+        aiChatStreamService.cancel(internalId(sessionId, streamId), owner(sessionId));
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        String sessionId = event.getSessionId();
+        int cancelled = aiChatStreamService.cancelAll(owner(sessionId));
+        if (cancelled > 0) {
+            log.debug("Cancelled {} AI streams of closed STOMP session {}", cancelled, sessionId);
+        }
+    }
+
+    // streamId do client chọn nên gắn thêm session để không đụng stream của client khác
+    private static String internalId(String sessionId, String streamId) {
+        return sessionId + "/" + streamId;
+    }
+
+    private static String owner(String sessionId) {
+        return "stomp:" + sessionId;
+    }
+}
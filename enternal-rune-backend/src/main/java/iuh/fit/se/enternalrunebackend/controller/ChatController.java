@@ -1,18 +1,144 @@
 package iuh.fit.se.enternalrunebackend.controller;
 
+import iuh.fit.se.enternalrunebackend.service.AiChatStreamService;
+import iuh.fit.se.enternalrunebackend.service.AiConversationMemoryService;
 import iuh.fit.se.enternalrunebackend.service.ChatService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 @RestController
+@Slf4j
 public class ChatController {
 
+    public static final String SESSION_HEADER = "X-AI-Session";
+
     private final ChatService chatService;
-    public ChatController(ChatService chatService) {
+    private final AiChatStreamService aiChatStreamService;
+    private final AiConversationMemoryService memoryService;
+    private final long sseTimeoutMillis;
+
+    public ChatController(ChatService chatService,
+                          AiChatStreamService aiChatStreamService,
+                          AiConversationMemoryService memoryService,
+                          @Value("${ai.stream.sse-timeout:5m}") Duration sseTimeout) {
         this.chatService = chatService;
+        this.aiChatStreamService = aiChatStreamService;
+        this.memoryService = memoryService;
+        this.sseTimeoutMillis = sseTimeout.toMillis();
     }
 
+    /**
+     * Header X-AI-Session (tuỳ chọn): id phiên chat do client sinh, các câu hỏi cùng phiên được trả lời
+     * theo ngữ cảnh các lượt trước
+     */
     @PostMapping("/ai/generate")
-    public String generate(@RequestBody String message) {
-        return chatService.processUserInput(message);
+    public String generate(@RequestBody String message,
+                           @RequestHeader(value = SESSION_HEADER, required = false) String sessionId) {
+        return chatService.processUserInput(message, memoryService.key(username(), sessionId));
+    }
+
+    /**
+     * Trả lời dạng Server-Sent Events, gửi từng đoạn ngay khi Gemini sinh ra
+     * POST /ai/stream (body: câu hỏi dạng text, header X-AI-Session như /ai/generate)
+     * <p>
+     * Event: token {"content": "..."} (nhiều lần), rồi done {} hoặc error {"message": "..."}.
+     * Client đóng kết nối -> huỷ request lên Gemini. Quá giới hạn stream đồng thời -> 429.
+     */
+    @PostMapping(value = "/ai/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(@RequestBody String message,
+                                             @RequestHeader(value = SESSION_HEADER, required = false) String sessionId,
+                                             HttpServletRequest request) {
+        if (message == null || message.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        SseEmitter emitter = new SseEmitter(sseTimeoutMillis);
+        AtomicReference<AiChatStreamService.Handle> handleRef = new AtomicReference<>();
+
+        Optional<AiChatStreamService.Handle> handle = aiChatStreamService.tryStart(owner(request), null, message,
+                memoryService.key(username(), sessionId), new AiChatStreamService.StreamListener() {
+                    @Override
+                    public void onToken(String token) {
+                        try {
+                            // JSON thay vì text thô: SSE bỏ khoảng trắng đầu dòng data nên token " abc" sẽ mất dấu cách
+                            emitter.send(SseEmitter.event().name("token")
+                                    .data(Map.of("content", token), MediaType.APPLICATION_JSON));
+                        } catch (IOException | IllegalStateException e) {
+                            // Client đã ngắt kết nối
+                            cancel(handleRef.get());
+                        }
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        try {
+                            emitter.send(SseEmitter.event().name("done").data(Map.of(), MediaType.APPLICATION_JSON));
+                            emitter.complete();
+                        } catch (IOException | IllegalStateException e) {
+                            log.debug("AI stream client gone before done event: {}", e.getMessage());
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        try {
+                            emitter.send(SseEmitter.event().name("error")
+                                    .data(Map.of("message", "Trợ lý AI đang bận, vui lòng thử lại sau."),
+                                            MediaType.APPLICATION_JSON));
+                            emitter.complete();
+                        } catch (IOException | IllegalStateException e) {
+                            log.debug("AI stream client gone before error event: {}", e.getMessage());
+                        }
+                    }
+                });
+        if (handle.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+        handleRef.set(handle.get());
+        emitter.onCompletion(() -> cancel(handle.get()));
+        emitter.onTimeout(() -> {
+            cancel(handle.get());
+            emitter.complete();
+        });
+        emitter.onError(error -> cancel(handle.get()));
+        return ResponseEntity.ok()
+                .header("X-Accel-Buffering", "no")
+                .header("X-Stream-Id", handle.get().id())
+                .body(emitter);
+    }
+
+    private static void cancel(AiChatStreamService.Handle handle) {
+        if (handle != null) {
+            handle.cancel();
+        }
+    }
+
+    // Giới hạn theo user đăng nhập, khách vãng lai theo IP
+    private static String owner(HttpServletRequest request) {
+        String username = username();
+        return username != null ? "user:" + username : "ip:" + request.getRemoteAddr();
+    }
+
+    private static String username() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return authentication.getName();
+        }
+        return null;
     }
-}
\ No newline at end of file
+}
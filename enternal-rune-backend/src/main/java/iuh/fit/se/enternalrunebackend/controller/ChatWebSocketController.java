@@ -2,22 +2,18 @@ package iuh.fit.se.enternalrunebackend.controller;
 
 import iuh.fit.se.enternalrunebackend.dto.assistanceChat.ChatMessageDto;
 import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.Message;
-import iuh.fit.se.enternalrunebackend.repository.repositoriesForAssistanceChat.MessageRepository;
+import iuh.fit.se.enternalrunebackend.service.ChatIngestionPipeline;
 import lombok.RequiredArgsConstructor;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
-import java.time.Instant;
-
 @Controller
 @RequiredArgsConstructor
 public class ChatWebSocketController {
 
-    private final MessageRepository messageRepository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final ChatIngestionPipeline chatIngestionPipeline;
 
     @MessageMapping("/conversations/{conversationId}/send")
     public void sendMessage(
@@ -30,11 +26,7 @@ public class ChatWebSocketController {
         message.setSenderRole(chatMessageDto.getSenderRole());
         message.setContent(chatMessageDto.getContent());
         message.setType("TEXT");
-        message.setCreatedAt(Instant.now());
-        Message saved = messageRepository.save(message);
-        messagingTemplate.convertAndSend(
-                "/topic/conversations/" + conversationId,
-                saved
-        );
+        // id, createdAt, broadcast và lưu DB (theo batch) do pipeline xử lý
+        chatIngestionPipeline.submit(message);
     }
 }
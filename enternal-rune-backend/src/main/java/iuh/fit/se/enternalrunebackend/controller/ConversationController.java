@@ -1,17 +1,25 @@
 package iuh.fit.se.enternalrunebackend.controller;
 
 
+import iuh.fit.se.enternalrunebackend.dto.response.CursorPageResponse;
 import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.Conversation;
-import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.Message;
-import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.Role;
 import iuh.fit.se.enternalrunebackend.repository.repositoriesForAssistanceChat.ConversationRepository;
-import iuh.fit.se.enternalrunebackend.repository.repositoriesForAssistanceChat.MessageRepository;
+import iuh.fit.se.enternalrunebackend.service.ConversationActivityService;
+import iuh.fit.se.enternalrunebackend.service.ConversationInboxService;
+import iuh.fit.se.enternalrunebackend.service.cluster.ClusterFanout;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.Instant;
@@ -25,29 +33,21 @@ import java.util.Map;
 public class ConversationController {
 
     private final ConversationRepository conversationRepository;
-    private final MessageRepository messageRepository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final ConversationActivityService conversationActivityService;
+    private final ConversationInboxService conversationInboxService;
+    private final MongoTemplate mongoTemplate;
+    private final ClusterFanout clusterFanout;
 
     @PostMapping
     public Conversation createConversation(@RequestParam String customerId) {
-        List<Conversation> existingConversations = conversationRepository.findByCustomerId(customerId);
-        
-        // Tìm conversation chưa đóng
-        for (Conversation conv : existingConversations) {
-            if ("PENDING".equals(conv.getStatus()) || "IN_PROGRESS".equals(conv.getStatus())) {
-                return conv;
-            }
-        }
-        
-        Conversation c = new Conversation();
-        c.setCustomerId(customerId);
-        c.setStatus("PENDING");
-        c.setCreatedAt(Instant.now());
-        Conversation saved = conversationRepository.save(c);
+        // Tìm conversation chưa đóng hoặc tạo mới trong 1 lệnh (partial unique index chống tạo trùng)
+        ConversationInboxService.OpenResult result = conversationInboxService.findOrCreateOpen(customerId);
 
-        messagingTemplate.convertAndSend("/topic/conversations", saved);
+        if (result.created()) {
+            clusterFanout.broadcastTopic("/topic/conversations", result.conversation());
+        }
         
-        return saved;
+        return result.conversation();
     }
 
     @GetMapping("/{id}")
@@ -69,48 +69,95 @@ public class ConversationController {
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
         return conversationRepository.findAll(pageable);
     }
+    /**
+     * Inbox của agent: GET /api/conversations/inbox?status=PENDING&agentId=&cursor=&size=20
+     * Sắp theo hoạt động gần nhất; agentId rỗng = chỉ conversation chưa assign; dùng nextCursor để lấy trang tiếp
+     */
+    @GetMapping("/inbox")
+    public ResponseEntity<CursorPageResponse<Conversation>> getInbox(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String agentId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        if (size < 1 || size > ConversationInboxService.MAX_PAGE_SIZE)
+            size = 20;
+        try {
+            return ResponseEntity.ok(conversationInboxService.getInbox(status, agentId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Số tin chưa đọc theo conversation của 1 agent (chỉ gồm conversation có tin chưa đọc).
+     * Đọc từ bộ đếm trong conversations, không quét messages.
+     */
     @GetMapping("/unread-counts")
-    public Map<String, Integer> getUnreadCounts(@RequestParam String agentId) {
-        Map<String, Integer> unreadCounts = new HashMap<>();
-        List<Conversation> allConversations = conversationRepository.findAll();
-        
-        for (Conversation conversation : allConversations) {
-            List<Message> messages = messageRepository.findByConversationIdOrderByCreatedAtAsc(conversation.getId());
-            
-            if (!messages.isEmpty()) {
-                Message lastMessage = messages.get(messages.size() - 1);
-                if (lastMessage.getSenderRole() == Role.CUSTOMER ||
-                   (lastMessage.getSenderRole() == Role.AGENT && !lastMessage.getSenderId().equals(agentId))) {
-                    unreadCounts.put(conversation.getId(), 1);
-                }
+    public ResponseEntity<Map<String, Long>> getUnreadCounts(@RequestParam String agentId) {
+        try {
+            return ResponseEntity.ok(conversationActivityService.getUnreadCounts(agentId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Agent đã mở conversation -> đánh dấu đã đọc hết
+    @PostMapping("/{id}/read")
+    public ResponseEntity<Map<String, Object>> markRead(@PathVariable String id, @RequestParam String agentId) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            if (!conversationActivityService.markRead(id, agentId)) {
+                response.put("success", false);
+                response.put("message", "Conversation not found");
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
             }
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
         }
-        
-        return unreadCounts;
+        response.put("success", true);
+        response.put("message", "Marked as read");
+        return ResponseEntity.ok(response);
     }
 
     @PatchMapping("/{id}")
-    public Conversation updateConversation(
+    public ResponseEntity<Object> updateConversation(
             @PathVariable String id,
             @RequestBody Map<String, Object> updates
     ) {
-        Conversation conversation = conversationRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Conversation not found"));
-
+        // Chỉ $set các field thay đổi: save() cả document sẽ ghi đè bộ đếm tin nhắn đang được cập nhật song song
+        Update update = new Update();
         if (updates.containsKey("status")) {
-            conversation.setStatus((String) updates.get("status"));
+            update.set("status", updates.get("status"));
+            update.set("open", !"CLOSED".equals(updates.get("status")));
             if ("CLOSED".equals(updates.get("status"))) {
-                conversation.setClosedAt(Instant.now());
+                update.set("closedAt", Instant.now());
             }
         }
 
         if (updates.containsKey("agentId")) {
-            conversation.setAgentId((String) updates.get("agentId"));
+            update.set("agentId", updates.get("agentId"));
         }
 
-        Conversation updated = conversationRepository.save(conversation);
-        messagingTemplate.convertAndSend("/topic/conversations", updated);
+        Conversation updated;
+        try {
+            updated = update.getUpdateObject().isEmpty()
+                    ? conversationRepository.findById(id).orElse(null)
+                    : mongoTemplate.findAndModify(Query.query(Criteria.where("_id").is(id)), update,
+                            FindAndModifyOptions.options().returnNew(true), Conversation.class);
+        } catch (DuplicateKeyException e) {
+            // Mở lại conversation trong khi khách đã có 1 conversation khác đang mở
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Customer already has an open conversation");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        }
+        if (updated == null) {
+            throw new RuntimeException("Conversation not found");
+        }
+        clusterFanout.broadcastTopic("/topic/conversations", updated);
         
-        return updated;
+        return ResponseEntity.ok(updated);
     }
 }
@@ -0,0 +1,73 @@
+package iuh.fit.se.enternalrunebackend.controller;
+
+import iuh.fit.se.enternalrunebackend.service.ImageDerivativeCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/images/derivatives")
+@RequiredArgsConstructor
+@Slf4j
+public class ImageDerivativeController {
+
+    private final ImageDerivativeCache imageDerivativeCache;
+
+    /**
+     * Ảnh đã resize từ cache trên đĩa
+     * GET /images/derivatives/{variant}?src=...
+     * variant: thumbnail | card | detail
+     * <p>
+     * Trả về ETag strong: If-None-Match khớp -> 304. Body là Resource nên Spring tự xử lý header Range (206).
+     */
+    @GetMapping("/{variant}")
+    public ResponseEntity<?> getDerivative(@PathVariable String variant,
+                                           @RequestParam String src,
+                                           WebRequest webRequest) {
+        ImageDerivativeCache.Derivative derivative;
+        try {
+            derivative = imageDerivativeCache.get(variant, src);
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (ImageDerivativeCache.BusyException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(errorBody(e.getMessage()));
+        } catch (IOException e) {
+            log.warn("Cannot build {} derivative for {}: {}", variant, src, e.getMessage());
+            return error(HttpStatus.BAD_GATEWAY, "Không tải được ảnh gốc");
+        }
+
+        if (webRequest.checkNotModified(derivative.etag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(derivative.etag())
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                .contentType(MediaType.parseMediaType(derivative.contentType()))
+                .body(new FileSystemResource(derivative.file()));
+    }
+
+    private static ResponseEntity<Map<String, Object>> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(errorBody(message));
+    }
+
+    private static Map<String, Object> errorBody(String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", message);
+        return response;
+    }
+}
@@ -1,28 +1,31 @@
 package iuh.fit.se.enternalrunebackend.controller;
 
-import com.cloudinary.Cloudinary;
-import com.cloudinary.utils.ObjectUtils;
+import iuh.fit.se.enternalrunebackend.service.ImageUploadPipeline;
+import iuh.fit.se.enternalrunebackend.service.storage.ImageStorage;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/upload")
 public class ImageUploadController {
 
-    private final Cloudinary cloudinary;
+    private final ImageStorage chatImageStorage;
+    private final ImageUploadPipeline imageUploadPipeline;
 
-    public ImageUploadController(@Qualifier("cloudinaryForAssistanceChat") Cloudinary cloudinary) {
-        this.cloudinary = cloudinary;
+    public ImageUploadController(@Qualifier("chatImageStorage") ImageStorage chatImageStorage,
+                                 ImageUploadPipeline imageUploadPipeline) {
+        this.chatImageStorage = chatImageStorage;
+        this.imageUploadPipeline = imageUploadPipeline;
     }
 
     /**
-     * Upload ảnh lên Cloudinary
+     * Upload ảnh lên storage của chat (Cloudinary)
      * POST /upload/image
      *
      * form-data:
@@ -31,7 +34,7 @@ public class ImageUploadController {
     @PostMapping("/image")
     public ResponseEntity<Map<String, String>> uploadImage(
             @RequestParam("file") MultipartFile file
-    ) throws IOException {
+    ) {
         
         if (file.isEmpty()) {
             Map<String, String> error = new HashMap<>();
@@ -47,16 +50,16 @@ public class ImageUploadController {
             return ResponseEntity.badRequest().body(error);
         }
         
-        // Upload to Cloudinary
-        Map uploadResult = cloudinary.uploader().upload(
-                file.getBytes(),
-                ObjectUtils.asMap(
-                        "folder", "return-requests",
-                        "resource_type", "image"
-                )
-        );
+        // Upload qua pipeline (stream từ file tạm, có deadline)
+        ImageUploadPipeline.Result result = imageUploadPipeline.uploadAll(
+                List.of(file), chatImageStorage, "return-requests");
+        if (!result.allSucceeded()) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", result.failureSummary());
+            return ResponseEntity.badRequest().body(error);
+        }
         
-        String imageUrl = (String) uploadResult.get("secure_url");
+        String imageUrl = result.uploads().get(0).image().url();
         
         Map<String, String> response = new HashMap<>();
         response.put("imageUrl", imageUrl);
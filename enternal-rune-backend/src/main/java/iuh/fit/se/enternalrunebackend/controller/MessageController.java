@@ -1,9 +1,13 @@
 package iuh.fit.se.enternalrunebackend.controller;
 
 
+import iuh.fit.se.enternalrunebackend.dto.assistanceChat.ChatMessageView;
+import iuh.fit.se.enternalrunebackend.dto.response.CursorPageResponse;
 import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.Message;
 import iuh.fit.se.enternalrunebackend.repository.repositoriesForAssistanceChat.MessageRepository;
+import iuh.fit.se.enternalrunebackend.service.ChatHistoryService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -14,6 +18,7 @@ import java.util.List;
 public class MessageController {
 
     private final MessageRepository messageRepository;
+    private final ChatHistoryService chatHistoryService;
 
     // Lấy lịch sử tin nhắn của conversation
     @GetMapping("/conversation/{conversationId}")
@@ -21,6 +26,43 @@ public class MessageController {
         return messageRepository.findByConversationIdOrderByCreatedAtAsc(conversationId);
     }
 
+    /**
+     * Lịch sử chat theo trang, mới nhất trước: GET /api/messages/conversation/{id}/history?cursor=&size=30
+     * Mỗi trang trả về theo thứ tự thời gian; gửi nextCursor để lấy các tin cũ hơn
+     */
+    @GetMapping("/conversation/{conversationId}/history")
+    public ResponseEntity<CursorPageResponse<ChatMessageView>> getHistory(
+            @PathVariable String conversationId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "30") int size) {
+        if (size < 1 || size > ChatHistoryService.MAX_PAGE_SIZE)
+            size = 30;
+        try {
+            return ResponseEntity.ok(chatHistoryService.getHistory(conversationId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Tin nhắn mới sau vị trí client đang có (dùng khi reconnect WebSocket):
+     * GET /api/messages/conversation/{id}/since?afterMessageId=...  hoặc  ?cursor=...
+     */
+    @GetMapping("/conversation/{conversationId}/since")
+    public ResponseEntity<CursorPageResponse<ChatMessageView>> getSince(
+            @PathVariable String conversationId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String afterMessageId,
+            @RequestParam(defaultValue = "100") int size) {
+        if (size < 1 || size > ChatHistoryService.MAX_PAGE_SIZE)
+            size = ChatHistoryService.MAX_PAGE_SIZE;
+        try {
+            return ResponseEntity.ok(chatHistoryService.getSince(conversationId, cursor, afterMessageId, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     // Lấy chi tiết 1 tin nhắn
     @GetMapping("/{messageId}")
     public Message getMessage(@PathVariable String messageId) {
@@ -1,6 +1,8 @@
 package iuh.fit.se.enternalrunebackend.controller;
 
+import iuh.fit.se.enternalrunebackend.config.SendNotificationHandler;
 import iuh.fit.se.enternalrunebackend.entity.Notification;
+import iuh.fit.se.enternalrunebackend.service.AdminNotificationDispatcher;
 import iuh.fit.se.enternalrunebackend.service.NotificationService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
@@ -19,6 +21,8 @@ import java.util.stream.Collectors;
 public class NotificationController {
 
     private final NotificationService notificationService;
+    private final AdminNotificationDispatcher adminNotificationDispatcher;
+    private final SendNotificationHandler sendNotificationHandler;
 
     /**
      * Get all notifications (for admin)
@@ -137,6 +141,26 @@ public class NotificationController {
         }
     }
 
+    /**
+     * Thống kê hàng đợi gửi notification (queued, dropped, batch...)
+     * GET /notifications/pipeline-stats
+     */
+    @GetMapping("/pipeline-stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public AdminNotificationDispatcher.Stats getPipelineStats() {
+        return adminNotificationDispatcher.getStats();
+    }
+
+    /**
+     * Thống kê gửi WebSocket /notifications (session, outbox, dropped, latency p50/p95/p99)
+     * GET /notifications/websocket-stats
+     */
+    @GetMapping("/websocket-stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public SendNotificationHandler.Stats getWebSocketStats() {
+        return sendNotificationHandler.getStats();
+    }
+
     /**
      * Helper method to map Notification entity to response format
      */
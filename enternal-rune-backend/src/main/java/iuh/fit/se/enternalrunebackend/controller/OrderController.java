@@ -166,6 +166,36 @@ public class OrderController {
         }
     }
 
+    /**
+     * Lấy orders theo keyset pagination (cho admin) - không COUNT, trang sâu không chậm dần
+     * GET /orders/admin/all/cursor?cursor=&size=10&keyword=&paymentStatus=&shippingStatus=
+     */
+    @GetMapping("/admin/all/cursor")
+    @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
+    public ResponseEntity<?> getAllOrdersByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String paymentStatus,
+            @RequestParam(required = false) String shippingStatus
+    ) {
+        try {
+            if (size < 1 || size > 100) size = 10;
+            return ResponseEntity.ok(orderService.getOrderListByCursor(
+                keyword,
+                paymentStatus,
+                shippingStatus,
+                cursor,
+                size
+            ));
+        } catch (Exception e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("message", "Không thể lấy danh sách đơn hàng: " + e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+
     /**
      * Lấy chi tiết order (cho admin)
      * GET /orders/admin/{orderId}
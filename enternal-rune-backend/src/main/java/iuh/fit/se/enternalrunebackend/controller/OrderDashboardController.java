@@ -5,6 +5,7 @@ import iuh.fit.se.enternalrunebackend.dto.response.OrderDetailResponse;
 import iuh.fit.se.enternalrunebackend.dto.response.OrderListResponse;
 import iuh.fit.se.enternalrunebackend.dto.response.OrderResponse;
 import iuh.fit.se.enternalrunebackend.dto.response.OrderStatisticsResponse;
+import iuh.fit.se.enternalrunebackend.service.DailySalesRollupService;
 import iuh.fit.se.enternalrunebackend.service.OrderService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -13,12 +14,18 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/dashboard-order")
 public class OrderDashboardController {
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private DailySalesRollupService dailySalesRollupService;
+
     @GetMapping("/list")
     public Page<OrderListResponse> getOrderList(
             @RequestParam(required = false) String keyword,
@@ -35,6 +42,20 @@ public class OrderDashboardController {
         return ResponseEntity.ok(orderService.getOrderStatistics());
     }
 
+    /**
+     * Tính lại bảng daily_sales_rollup từ orders
+     * POST /api/dashboard-order/sales-rollup/rebuild
+     */
+    @PostMapping("/sales-rollup/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildSalesRollup() {
+        int days = dailySalesRollupService.rebuild();
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Đã tính lại doanh số cho " + days + " ngày");
+        response.put("days", days);
+        return ResponseEntity.ok(response);
+    }
+
     @DeleteMapping("/{id}")
     public void deleteOrder(@PathVariable int id) {
         orderService.deleteById(id);
@@ -3,6 +3,7 @@ package iuh.fit.se.enternalrunebackend.controller;
 import iuh.fit.se.enternalrunebackend.dto.request.CreateCommentRequest;
 import iuh.fit.se.enternalrunebackend.dto.response.CommentPageResponse;
 import iuh.fit.se.enternalrunebackend.dto.response.CommentResponse;
+import iuh.fit.se.enternalrunebackend.dto.response.CursorPageResponse;
 import iuh.fit.se.enternalrunebackend.entity.User;
 import iuh.fit.se.enternalrunebackend.service.CommentService;
 import jakarta.servlet.http.HttpServletRequest;
@@ -60,6 +61,28 @@ public class ProductCommentController {
         }
     }
 
+    /**
+     * Keyset pagination cho thread comment dài: GET /api/products/{productId}/comments/cursor?cursor=&size=
+     * Không trả về tổng số trang, dùng nextCursor để lấy trang tiếp theo
+     */
+    @GetMapping("/{productId}/comments/cursor")
+    public ResponseEntity<CursorPageResponse<CommentResponse>> getCommentsByCursor(
+            @PathVariable Integer productId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size) {
+        try {
+            if (size < 1 || size > 50)
+                size = 10;
+
+            return ResponseEntity.ok(commentService.getCommentsByCursor(productId, cursor, size));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @PostMapping("/{productId}/comments")
     public ResponseEntity<CommentResponse> createComment(
             @PathVariable Integer productId,
@@ -6,6 +6,8 @@ import iuh.fit.se.enternalrunebackend.dto.response.*;
 import iuh.fit.se.enternalrunebackend.entity.Product;
 import iuh.fit.se.enternalrunebackend.entity.Brand;
 import iuh.fit.se.enternalrunebackend.entity.enums.ProductStatus;
+import iuh.fit.se.enternalrunebackend.service.ProductRatingStats;
+import iuh.fit.se.enternalrunebackend.service.ProductSearchIndex;
 import iuh.fit.se.enternalrunebackend.service.ProductService;
 import iuh.fit.se.enternalrunebackend.entity.ProductSpecifications;
 import lombok.RequiredArgsConstructor;
@@ -21,6 +23,7 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 @RestController
 @RequestMapping("/products")
@@ -63,8 +66,9 @@ public class ProductController {
         return productService.getProductCardsByBrand(brand, limit);
     }
 
+    // search: mỗi từ phải là chuỗi con (không phân biệt hoa thường / dấu) của tên, model, brand hoặc phiên bản
     @GetMapping("/filter")
-    public ResponseEntity<Page<ProductListResponse>> filterProducts(
+    public ResponseEntity<ProductFilterPageResponse> filterProducts(
             @RequestParam(required = false) List<Integer> brands,
             @RequestParam(required = false) List<String> priceRange,
             @RequestParam(required = false) List<String> colors,
@@ -73,12 +77,53 @@ public class ProductController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size
     ) {
-        // Sử dụng optimized single-query method với pagination
-        Page<ProductListResponse> products = productService.filterProductsOptimized(
+        if (page < 0)
+            page = 0;
+        if (size < 1 || size > ProductSearchIndex.MAX_PAGE_SIZE)
+            size = 20;
+        // In-memory search index: lọc + phân trang + facet counts, không query DB cho phần lọc
+        ProductFilterPageResponse products = productService.filterProductsWithFacets(
             brands, priceRange, colors, memory, search, page, size);
         return ResponseEntity.ok(products);
     }
 
+    // Keyset pagination: GET /products/filter/cursor?cursor=&size=20 (không có totalElements)
+    @GetMapping("/filter/cursor")
+    public ResponseEntity<CursorPageResponse<ProductListResponse>> filterProductsByCursor(
+            @RequestParam(required = false) List<Integer> brands,
+            @RequestParam(required = false) List<String> priceRange,
+            @RequestParam(required = false) List<String> colors,
+            @RequestParam(required = false) List<String> memory,
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        if (size < 1 || size > ProductSearchIndex.MAX_PAGE_SIZE)
+            size = 20;
+        try {
+            return ResponseEntity.ok(productService.filterProductsByCursor(
+                brands, priceRange, colors, memory, search, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Rating stats cho nhiều sản phẩm (trang so sánh): GET /products/rating-stats?ids=1,2,3
+    @GetMapping("/rating-stats")
+    public List<ProductRatingStatsResponse> getRatingStats(@RequestParam List<Integer> ids) {
+        ProductRatingStats stats = productService.getRatingStats(ids);
+        return ids.stream()
+            .filter(Objects::nonNull)
+            .distinct()
+            .map(id -> ProductRatingStatsResponse.builder()
+                .productId(id)
+                .totalComments(stats.getTotalComments(id))
+                .averageRating(stats.getAverageRating(id))
+                .ratingDistribution(stats.getRatingDistribution(id))
+                .build())
+            .toList();
+    }
+
     // --- Mapping helper ---
     private ProductResponse toDto(Product p) {
         return toDto(p, true);
@@ -133,9 +178,11 @@ public class ProductController {
     Map<String, Integer> ratingDistribution = null;
     
     if (includeRatingStats) {
-        totalComments = productService.getTotalComments(p.getProdId());
-        averageRating = productService.getAverageRating(p.getProdId());
-        ratingDistribution = productService.getRatingDistribution(p.getProdId());
+        // 1 query cho cả count, average và phân bố
+        ProductRatingStats stats = productService.getRatingStats(List.of(p.getProdId()));
+        totalComments = stats.getTotalComments(p.getProdId());
+        averageRating = stats.getAverageRating(p.getProdId());
+        ratingDistribution = stats.getRatingDistribution(p.getProdId());
     }
 
     return new ProductResponse(
@@ -1,7 +1,6 @@
 package iuh.fit.se.enternalrunebackend.controller;
 
-import iuh.fit.se.enternalrunebackend.entity.ShippingStatus;
-import iuh.fit.se.enternalrunebackend.repository.ShippingStatusRepository;
+import iuh.fit.se.enternalrunebackend.service.StatusRegistry;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -17,7 +16,7 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ShippingStatusController {
 
-    private final ShippingStatusRepository shippingStatusRepository;
+    private final StatusRegistry statusRegistry;
 
     /**
      * Lấy danh sách tất cả shipping statuses
@@ -27,14 +26,14 @@ public class ShippingStatusController {
     @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
     public ResponseEntity<?> getAllShippingStatuses() {
         try {
-            List<ShippingStatus> statuses = shippingStatusRepository.findAll();
+            List<StatusRegistry.StatusInfo> statuses = statusRegistry.getShippingStatuses();
             
             // Map to simple DTO
             List<Map<String, String>> response = statuses.stream()
                 .map(status -> {
                     Map<String, String> map = new HashMap<>();
-                    map.put("code", status.getStatusCode());
-                    map.put("name", status.getStatusName());
+                    map.put("code", status.code());
+                    map.put("name", status.name());
                     return map;
                 })
                 .collect(Collectors.toList());
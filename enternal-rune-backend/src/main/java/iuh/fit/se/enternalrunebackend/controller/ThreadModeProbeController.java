@@ -0,0 +1,43 @@
+package iuh.fit.se.enternalrunebackend.controller;
+
+import iuh.fit.se.enternalrunebackend.service.BlockingCallMonitor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Endpoint giả lập 1 lời gọi ra ngoài bị block (như Gemini / SePay) cho benchmark/ThreadModeBenchmark.java.
+ * Chỉ tồn tại khi threads.benchmark-probe.enabled=true, không bật trên production.
+ */
+@RestController
+@RequestMapping("/api/benchmark")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "threads.benchmark-probe.enabled", havingValue = "true")
+public class ThreadModeProbeController {
+
+    private static final long MAX_DELAY_MS = 10_000;
+
+    private final BlockingCallMonitor blockingCallMonitor;
+
+    /**
+     * GET /api/benchmark/blocking?delayMs=500
+     */
+    @GetMapping("/blocking")
+    public Map<String, Object> blocking(@RequestParam(defaultValue = "500") long delayMs) throws InterruptedException {
+        long delay = Math.max(0, Math.min(delayMs, MAX_DELAY_MS));
+        blockingCallMonitor.record("benchmark-probe", () -> {
+            Thread.sleep(delay);
+            return null;
+        });
+        Map<String, Object> response = new HashMap<>();
+        response.put("delayMs", delay);
+        response.put("thread", Thread.currentThread().isVirtual() ? "virtual" : "platform");
+        return response;
+    }
+}
@@ -0,0 +1,10 @@
+package iuh.fit.se.enternalrunebackend.dto.ai;
+
+/**
+ * 1 frame gửi tới /topic/ai/stream/{streamId}
+ *
+ * @param type    token | done | error | rejected
+ * @param content đoạn text (token) hoặc thông báo lỗi
+ */
+public record AiStreamFrame(String streamId, long seq, String type, String content) {
+}
@@ -0,0 +1,10 @@
+package iuh.fit.se.enternalrunebackend.dto.ai;
+
+/**
+ * Gửi tới /assistance/ai/stream
+ *
+ * @param streamId  id do client sinh (UUID), client subscribe /topic/ai/stream/{streamId} trước khi gửi
+ * @param sessionId id phiên chat (tuỳ chọn, như header X-AI-Session của /ai/stream) để trả lời theo các lượt trước
+ */
+public record AiStreamRequest(String streamId, String message, String sessionId) {
+}
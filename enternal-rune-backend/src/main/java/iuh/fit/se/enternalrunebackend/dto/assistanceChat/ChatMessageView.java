@@ -0,0 +1,26 @@
+package iuh.fit.se.enternalrunebackend.dto.assistanceChat;
+
+import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.Role;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Bản rút gọn của Message cho API lịch sử chat (không lặp lại conversationId trên từng dòng)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatMessageView {
+    private String id;
+    private String senderId;
+    private Role senderRole;
+    private String content;
+    private String type;
+    private String fileUrl;
+    private Instant createdAt;
+}
@@ -0,0 +1,24 @@
+package iuh.fit.se.enternalrunebackend.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Trang dữ liệu theo keyset pagination: không có totalElements/totalPages (không chạy COUNT),
+ * client gửi lại nextCursor để lấy trang kế tiếp
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CursorPageResponse<T> {
+    private List<T> content;
+    private Integer size;
+    private Boolean hasNext;
+    // null khi đã hết dữ liệu
+    private String nextCursor;
+}
@@ -0,0 +1,34 @@
+package iuh.fit.se.enternalrunebackend.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Kết quả /products/filter: 1 trang sản phẩm + facet counts
+ * Giữ các field content/number/size/totalElements/totalPages giống Page để frontend không phải đổi
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductFilterPageResponse {
+
+    private List<ProductListResponse> content;
+
+    // Thông tin phân trang
+    private Integer number;
+    private Integer size;
+    private Long totalElements;
+    private Integer totalPages;
+    private Boolean first;
+    private Boolean last;
+
+    // Facet counts theo từng nhóm filter: "brands", "colors", "memory", "priceRange"
+    // Key trong mỗi nhóm: giá trị filter (brandId, màu, bộ nhớ, bucket giá), Value: số sản phẩm
+    private Map<String, Map<String, Integer>> facets;
+}
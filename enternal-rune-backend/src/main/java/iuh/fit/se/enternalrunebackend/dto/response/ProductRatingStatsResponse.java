@@ -0,0 +1,20 @@
+package iuh.fit.se.enternalrunebackend.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductRatingStatsResponse {
+    private Integer productId;
+    private Integer totalComments;
+    private Double averageRating;
+    // "1" -> "5": số lượt đánh giá theo số sao
+    private Map<String, Integer> ratingDistribution;
+}
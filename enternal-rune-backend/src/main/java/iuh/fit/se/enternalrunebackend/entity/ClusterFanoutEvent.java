@@ -0,0 +1,44 @@
+package iuh.fit.se.enternalrunebackend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+/**
+ * Hàng đợi fan-out giữa các node khi cluster.broker=jdbc (xem JdbcClusterBroker).
+ * Mỗi node poll các dòng có id lớn hơn id đã đọc; dòng cũ được xóa định kỳ.
+ */
+@Entity
+@Table(name = "cluster_fanout_events", indexes = {
+        @Index(name = "idx_cluster_fanout_created", columnList = "created_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ClusterFanoutEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "event_id")
+    Long eventId;
+
+    @Column(name = "origin", nullable = false, length = 64)
+    String origin;
+
+    @Column(name = "channel", nullable = false, length = 16)
+    String channel;
+
+    @Column(name = "destination", length = 255)
+    String destination;
+
+    @Column(name = "payload", nullable = false, columnDefinition = "TEXT")
+    String payload;
+
+    @Column(name = "created_at", nullable = false)
+    LocalDateTime createdAt;
+}
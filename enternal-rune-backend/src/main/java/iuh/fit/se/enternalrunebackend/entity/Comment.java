@@ -16,7 +16,8 @@ import java.util.List;
 @AllArgsConstructor
 @NoArgsConstructor
 @Table(name = "comments", indexes = {
-        @Index(name = "idx_product_date", columnList = "product_id, comment_date")
+        @Index(name = "idx_product_date", columnList = "product_id, comment_date"),
+        @Index(name = "idx_product_date_id", columnList = "product_id, comment_date, comment_id")
 })
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class Comment {
@@ -0,0 +1,51 @@
+package iuh.fit.se.enternalrunebackend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Số liệu bán hàng đã cộng dồn theo ngày đặt hàng (order_date), tính theo trạng thái hiện tại của order.
+ * Được cập nhật cùng transaction khi tạo order / đổi trạng thái thanh toán, giao hàng (DailySalesRollupService).
+ */
+@Entity
+@Table(name = "daily_sales_rollup")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class DailySalesRollup {
+
+    @Id
+    @Column(name = "sales_date")
+    LocalDate salesDate;
+
+    @Column(name = "order_count", nullable = false)
+    long orderCount;
+
+    // Đơn có trạng thái thanh toán PAID / COMPLETED
+    @Column(name = "paid_order_count", nullable = false)
+    long paidOrderCount;
+
+    @Column(name = "paid_revenue", nullable = false)
+    BigDecimal paidRevenue;
+
+    // Tổng tiền các đơn đang ở trạng thái giao hàng DELIVERED
+    @Column(name = "delivered_revenue", nullable = false)
+    BigDecimal deliveredRevenue;
+
+    @Column(name = "refund_count", nullable = false)
+    long refundCount;
+
+    @Column(name = "cancelled_count", nullable = false)
+    long cancelledCount;
+
+    @Column(name = "updated_at")
+    LocalDateTime updatedAt;
+}
@@ -0,0 +1,51 @@
+package iuh.fit.se.enternalrunebackend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+/**
+ * Chỉ mục SHA-256 nội dung ảnh -> ảnh đã lưu trong 1 storage (xem DeduplicatingImageStorage).
+ * Upload lại đúng ảnh đã có thì dùng lại URL cũ, không upload thêm lần nữa.
+ */
+@Entity
+@Table(name = "image_blobs", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_image_blobs_hash_storage", columnNames = {"content_hash", "storage"})
+}, indexes = {
+        @Index(name = "idx_image_blobs_storage_key", columnList = "storage, storage_key")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ImageBlob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "blob_id")
+    Long blobId;
+
+    // SHA-256 dạng hex (64 ký tự)
+    @Column(name = "content_hash", nullable = false, length = 64)
+    String contentHash;
+
+    // ImageStorage.name(), mỗi storage (tài khoản Cloudinary / thư mục local) có chỉ mục riêng
+    @Column(name = "storage", nullable = false, length = 32)
+    String storage;
+
+    @Column(name = "url", nullable = false, length = 1024)
+    String url;
+
+    @Column(name = "storage_key", length = 512)
+    String storageKey;
+
+    @Column(name = "size_bytes", nullable = false)
+    long sizeBytes;
+
+    @Column(name = "created_at", nullable = false)
+    LocalDateTime createdAt;
+}
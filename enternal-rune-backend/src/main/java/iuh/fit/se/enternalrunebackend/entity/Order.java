@@ -11,7 +11,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_order_date_id", columnList = "order_date, order_id"),
+        @Index(name = "idx_order_current_payment", columnList = "current_payment_status_id"),
+        @Index(name = "idx_order_current_shipping", columnList = "current_shipping_status_id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -41,6 +45,16 @@ public class Order {
     @OrderBy("createdAt DESC")
     List<OrderShippingHistory> shippingStatusHistories = new ArrayList<>();
 
+    // Id trạng thái hiện tại (= bản ghi history mới nhất), lưu thẳng trên orders để các query thống kê
+    // không phải tìm MAX(created_at) trong bảng history. Chỉ được đổi qua addPaymentStatus/addShippingStatus.
+    @Column(name = "current_payment_status_id")
+    @JsonIgnore
+    Long currentPaymentStatusId;
+
+    @Column(name = "current_shipping_status_id")
+    @JsonIgnore
+    Long currentShippingStatusId;
+
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
     @JsonIgnore
     List<OrderRefund> orderRefundRequests = new ArrayList<>();
@@ -83,6 +97,7 @@ public class Order {
                 .note(note)
                 .build();
         paymentStatusHistories.addFirst(history);
+        currentPaymentStatusId = status.getStatusId();
     }
 
     public void addShippingStatus(ShippingStatus status, String note) {
@@ -92,5 +107,6 @@ public class Order {
                 .note(note)
                 .build();
         shippingStatusHistories.addFirst(history);
+        currentShippingStatusId = status.getStatusId();
     }
 }
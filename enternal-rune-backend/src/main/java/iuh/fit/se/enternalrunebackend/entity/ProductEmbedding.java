@@ -0,0 +1,37 @@
+package iuh.fit.se.enternalrunebackend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+/**
+ * Document hiện có trong vector store của 1 sản phẩm và hash nội dung đã nhúng.
+ * Hash không đổi thì không gọi embedding lại.
+ */
+@Entity
+@Table(name = "product_embeddings")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ProductEmbedding {
+
+    @Id
+    @Column(name = "product_id")
+    Integer productId;
+
+    // Id document trong vector_store, cố định theo productId
+    @Column(name = "document_id", nullable = false, length = 36)
+    String documentId;
+
+    // SHA-256 (hex) của text + metadata đã nhúng
+    @Column(name = "content_hash", nullable = false, length = 64)
+    String contentHash;
+
+    @Column(name = "embedded_at", nullable = false)
+    LocalDateTime embeddedAt;
+}
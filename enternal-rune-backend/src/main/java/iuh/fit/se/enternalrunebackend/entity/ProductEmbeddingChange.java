@@ -0,0 +1,34 @@
+package iuh.fit.se.enternalrunebackend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outbox các sản phẩm cần nhúng lại vào vector store (xem ProductVectorService).
+ * Ghi cùng lúc với thay đổi sản phẩm / giá, worker nền đọc theo change_id rồi xóa sau khi đồng bộ xong.
+ * 1 sản phẩm có thể có nhiều dòng, worker gộp lại thành 1 lần nhúng.
+ */
+@Entity
+@Table(name = "product_embedding_changes")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ProductEmbeddingChange {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "change_id")
+    Long changeId;
+
+    @Column(name = "product_id", nullable = false)
+    Integer productId;
+
+    @Column(name = "created_at", nullable = false)
+    LocalDateTime createdAt;
+}
@@ -0,0 +1,74 @@
+package iuh.fit.se.enternalrunebackend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Thống kê rating đã tính sẵn cho từng sản phẩm (chỉ tính comment gốc, không tính reply,
+ * không tính comment REJECTED/DELETED). Được cập nhật cùng transaction với thao tác ghi comment.
+ */
+@Entity
+@Table(name = "product_rating_aggregates")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ProductRatingAggregate {
+
+    @Id
+    @Column(name = "product_id")
+    Integer productId;
+
+    // Tổng số comment gốc (kể cả comment không chấm sao)
+    @Column(name = "comment_count", nullable = false)
+    long commentCount;
+
+    // Số comment có chấm sao
+    @Column(name = "rating_count", nullable = false)
+    long ratingCount;
+
+    @Column(name = "rating_sum", nullable = false)
+    long ratingSum;
+
+    @Column(name = "rating_1", nullable = false)
+    long rating1;
+
+    @Column(name = "rating_2", nullable = false)
+    long rating2;
+
+    @Column(name = "rating_3", nullable = false)
+    long rating3;
+
+    @Column(name = "rating_4", nullable = false)
+    long rating4;
+
+    @Column(name = "rating_5", nullable = false)
+    long rating5;
+
+    @Column(name = "updated_at")
+    LocalDateTime updatedAt;
+
+    @Transient
+    public double getAverageRating() {
+        return ratingCount > 0 ? (double) ratingSum / ratingCount : 0.0;
+    }
+
+    // Phân bố rating "1" -> "5"
+    @Transient
+    public Map<String, Integer> getRatingDistribution() {
+        Map<String, Integer> distribution = new HashMap<>();
+        distribution.put("1", (int) rating1);
+        distribution.put("2", (int) rating2);
+        distribution.put("3", (int) rating3);
+        distribution.put("4", (int) rating4);
+        distribution.put("5", (int) rating5);
+        return distribution;
+    }
+}
@@ -0,0 +1,43 @@
+package iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bộ nhớ hội thoại của trợ lý AI theo phiên chat (xem AiConversationMemoryService):
+ * vài lượt hỏi / đáp gần nhất + tóm tắt các lượt cũ hơn.
+ * Index TTL trên updatedAt xóa phiên không hoạt động.
+ */
+@Data
+@Document(collection = "ai_conversation_memories")
+public class AiConversationMemory {
+
+    @Id
+    private String id;          // khoá phiên (user đăng nhập + session id của client)
+
+    private String summary;         // tóm tắt các lượt đã bị nén, null khi chưa nén lần nào
+    private Long summarizedTurns;   // số lượt đã gộp vào summary
+
+    private Long turnCount;         // tổng số lượt của phiên
+    private List<Turn> turns = new ArrayList<>(); // các lượt chưa nén, cũ -> mới
+
+    private Instant createdAt;
+    private Instant updatedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Turn {
+        private String turnId;
+        private String question;
+        private String answer;
+        private Instant createdAt;
+    }
+}
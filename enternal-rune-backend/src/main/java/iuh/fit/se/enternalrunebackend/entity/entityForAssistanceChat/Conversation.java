@@ -1,10 +1,12 @@
 package iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
+import java.util.Map;
 
 @Data
 @Document(collection = "conversations")
@@ -20,4 +22,21 @@ public class Conversation {
 
     private Instant createdAt;
     private Instant closedAt;
+    // Thời điểm hoạt động gần nhất (tạo hoặc tin nhắn cuối), dùng để sắp xếp inbox của agent
+    private Instant lastActivityAt;
+    // true khi status khác CLOSED; partial unique index (customerId) trên open = true
+    // đảm bảo mỗi khách chỉ có 1 conversation đang mở
+    @JsonIgnore
+    private Boolean open;
+
+    // Metadata tin nhắn cuối, cập nhật atomic mỗi khi có tin mới (xem ConversationActivityService)
+    private Long messageSeq;   // số thứ tự tin nhắn mới nhất, tăng 1 mỗi tin
+    private String lastMessageId;
+    private String lastMessageSenderId;
+    private Role lastMessageSenderRole;
+    private Instant lastMessageAt;
+
+    // agentId -> messageSeq agent đã đọc tới
+    @JsonIgnore
+    private Map<String, Long> readWatermarks;
 }
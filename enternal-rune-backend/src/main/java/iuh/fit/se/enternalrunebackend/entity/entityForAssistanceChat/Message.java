@@ -4,12 +4,15 @@ import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
 
 @Data
 @Document(collection = "messages")
+// Index cho lịch sử chat theo conversation (tạo khi khởi động trong ChatHistoryService)
+@CompoundIndex(name = "conversation_created_idx", def = "{'conversationId': 1, 'createdAt': 1, '_id': 1}")
 public class Message {
 
     @Id
@@ -0,0 +1,24 @@
+package iuh.fit.se.enternalrunebackend.repository;
+
+import iuh.fit.se.enternalrunebackend.entity.ClusterFanoutEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface ClusterFanoutEventRepository extends JpaRepository<ClusterFanoutEvent, Long> {
+
+    // Event sau id đã đọc (range trên khóa chính). Không lọc origin để phát hiện gap chính xác
+    List<ClusterFanoutEvent> findByEventIdGreaterThanOrderByEventIdAsc(Long afterId, Pageable pageable);
+
+    @Query("SELECT COALESCE(MAX(e.eventId), 0) FROM ClusterFanoutEvent e")
+    Long findMaxEventId();
+
+    @Modifying
+    @Query("DELETE FROM ClusterFanoutEvent e WHERE e.createdAt < :before")
+    int deleteOlderThan(@Param("before") LocalDateTime before);
+}
@@ -20,6 +20,21 @@ public interface CommentRepository extends JpaRepository<Comment, Integer> {
     @Query("SELECT c FROM Comment c LEFT JOIN FETCH c.cmUser LEFT JOIN FETCH c.comment LEFT JOIN FETCH c.images WHERE c.cmProduct.prodId = :productId AND c.comment IS NULL ORDER BY c.cmDate DESC")
     Page<Comment> findByProductIdOrderByCmDateDesc(@Param("productId") Integer productId, Pageable pageable);
 
+    /**
+     * Keyset pagination theo (cm_date, cm_id) giảm dần - không OFFSET, không COUNT
+     * Trang đầu tiên dùng cursor lớn hơn mọi comment
+     */
+    @Query("""
+            SELECT c FROM Comment c LEFT JOIN FETCH c.cmUser
+            WHERE c.cmProduct.prodId = :productId AND c.comment IS NULL
+            AND (c.cmDate < :cursorDate OR (c.cmDate = :cursorDate AND c.cmId < :cursorId))
+            ORDER BY c.cmDate DESC, c.cmId DESC
+            """)
+    List<Comment> findByProductIdBeforeCursor(@Param("productId") Integer productId,
+                                              @Param("cursorDate") LocalDateTime cursorDate,
+                                              @Param("cursorId") Integer cursorId,
+                                              Pageable pageable);
+
     int countByIpAddressAndCmDateAfter(String ipAddress, LocalDateTime after);
 
     /**
@@ -0,0 +1,90 @@
+package iuh.fit.se.enternalrunebackend.repository;
+
+import iuh.fit.se.enternalrunebackend.entity.DailySalesRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+public interface DailySalesRollupRepository extends JpaRepository<DailySalesRollup, LocalDate> {
+
+    /**
+     * Cộng dồn delta vào rollup của 1 ngày (tạo mới nếu chưa có).
+     * Dùng UPDATE tương đối nên các transaction ghi order đồng thời không ghi đè lẫn nhau.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO daily_sales_rollup
+                (sales_date, order_count, paid_order_count, paid_revenue, delivered_revenue,
+                 refund_count, cancelled_count, updated_at)
+            VALUES (:salesDate, :orderDelta, :paidOrderDelta, :paidRevenueDelta, :deliveredRevenueDelta,
+                    :refundDelta, :cancelledDelta, NOW())
+            ON CONFLICT (sales_date) DO UPDATE SET
+                order_count = daily_sales_rollup.order_count + EXCLUDED.order_count,
+                paid_order_count = daily_sales_rollup.paid_order_count + EXCLUDED.paid_order_count,
+                paid_revenue = daily_sales_rollup.paid_revenue + EXCLUDED.paid_revenue,
+                delivered_revenue = daily_sales_rollup.delivered_revenue + EXCLUDED.delivered_revenue,
+                refund_count = daily_sales_rollup.refund_count + EXCLUDED.refund_count,
+                cancelled_count = daily_sales_rollup.cancelled_count + EXCLUDED.cancelled_count,
+                updated_at = NOW()
+            """, nativeQuery = true)
+    void applyDelta(@Param("salesDate") LocalDate salesDate,
+                    @Param("orderDelta") long orderDelta,
+                    @Param("paidOrderDelta") long paidOrderDelta,
+                    @Param("paidRevenueDelta") BigDecimal paidRevenueDelta,
+                    @Param("deliveredRevenueDelta") BigDecimal deliveredRevenueDelta,
+                    @Param("refundDelta") long refundDelta,
+                    @Param("cancelledDelta") long cancelledDelta);
+
+    /**
+     * Tổng theo tháng trong khoảng ngày [from, to] (range trên khóa chính, không EXTRACT trên cột)
+     *
+     * @return list of [year, month, orderCount, paidOrderCount, paidRevenue, deliveredRevenue, refundCount, cancelledCount]
+     */
+    @Query("SELECT EXTRACT(YEAR FROM r.salesDate), EXTRACT(MONTH FROM r.salesDate), " +
+           "SUM(r.orderCount), SUM(r.paidOrderCount), SUM(r.paidRevenue), SUM(r.deliveredRevenue), " +
+           "SUM(r.refundCount), SUM(r.cancelledCount) " +
+           "FROM DailySalesRollup r " +
+           "WHERE r.salesDate BETWEEN :from AND :to " +
+           "GROUP BY EXTRACT(YEAR FROM r.salesDate), EXTRACT(MONTH FROM r.salesDate)")
+    List<Object[]> findMonthlyTotals(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("SELECT COALESCE(SUM(r.orderCount), 0) FROM DailySalesRollup r")
+    long sumOrderCount();
+
+    // Chặn các delta đồng thời trong lúc rebuild (được nhả khi transaction rebuild commit)
+    @Modifying
+    @Query(value = "LOCK TABLE daily_sales_rollup IN EXCLUSIVE MODE", nativeQuery = true)
+    void lockForRebuild();
+
+    @Modifying
+    @Query(value = "DELETE FROM daily_sales_rollup", nativeQuery = true)
+    void deleteAllRollups();
+
+    /**
+     * Tính lại toàn bộ rollup từ bảng orders theo trạng thái hiện tại
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO daily_sales_rollup
+                (sales_date, order_count, paid_order_count, paid_revenue, delivered_revenue,
+                 refund_count, cancelled_count, updated_at)
+            SELECT o.order_date,
+                   COUNT(*),
+                   COUNT(*) FILTER (WHERE ps.status_code IN ('PAID', 'COMPLETED')),
+                   COALESCE(SUM(o.order_total_amount) FILTER (WHERE ps.status_code IN ('PAID', 'COMPLETED')), 0),
+                   COALESCE(SUM(o.order_total_amount) FILTER (WHERE ss.status_code = 'DELIVERED'), 0),
+                   COUNT(*) FILTER (WHERE ps.status_code = 'REFUNDED'),
+                   COUNT(*) FILTER (WHERE ss.status_code = 'CANCELLED'),
+                   NOW()
+            FROM orders o
+            LEFT JOIN payment_statuses ps ON ps.status_id = o.current_payment_status_id
+            LEFT JOIN shipping_statuses ss ON ss.status_id = o.current_shipping_status_id
+            GROUP BY o.order_date
+            """, nativeQuery = true)
+    int insertFromOrders();
+}
@@ -0,0 +1,36 @@
+package iuh.fit.se.enternalrunebackend.repository;
+
+import iuh.fit.se.enternalrunebackend.entity.ImageBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+public interface ImageBlobRepository extends JpaRepository<ImageBlob, Long> {
+
+    Optional<ImageBlob> findByContentHashAndStorage(String contentHash, String storage);
+
+    /**
+     * Ghi chỉ mục cho ảnh vừa upload. 2 request upload cùng 1 ảnh song song thì dòng ghi sau bị bỏ qua
+     * (không lỗi unique), ảnh của request đó vẫn dùng được, chỉ là không được chỉ mục.
+     *
+     * @return 1 nếu đã ghi, 0 nếu hash đã có
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            INSERT INTO image_blobs (content_hash, storage, url, storage_key, size_bytes, created_at)
+            VALUES (:contentHash, :storage, :url, :storageKey, :sizeBytes, NOW())
+            ON CONFLICT (content_hash, storage) DO NOTHING
+            """, nativeQuery = true)
+    int insertIfAbsent(@Param("contentHash") String contentHash,
+                       @Param("storage") String storage,
+                       @Param("url") String url,
+                       @Param("storageKey") String storageKey,
+                       @Param("sizeBytes") long sizeBytes);
+
+    boolean existsByStorageAndStorageKey(String storage, String storageKey);
+}
@@ -5,11 +5,13 @@ import iuh.fit.se.enternalrunebackend.entity.Order;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.stereotype.Repository;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 
 @Repository
@@ -68,19 +70,15 @@ public interface OrderRepository extends JpaRepository<Order,Integer> ,JpaSpecif
     long countTotalOrders();
 
     // Đơn đang xử lý (trạng thái giao hàng hiện tại thuộc PROCESSING hoặc SHIPPED)
-    @Query("SELECT COUNT(DISTINCT o) FROM Order o " +
-           "JOIN o.shippingStatusHistories ssh " +
-           "JOIN ssh.shippingStatus ss " +
-           "WHERE ssh.createdAt = (SELECT MAX(ssh2.createdAt) FROM OrderShippingHistory ssh2 WHERE ssh2.order = o) " +
-           "AND ss.statusCode IN ('PROCESSING', 'SHIPPED')")
+    @Query("SELECT COUNT(o) FROM Order o " +
+           "JOIN ShippingStatus ss ON ss.statusId = o.currentShippingStatusId " +
+           "WHERE ss.statusCode IN ('PROCESSING', 'SHIPPED')")
     long countProcessingOrders();
 
     // Đơn hoàn thành (trạng thái giao hàng = DELIVERED hoặc RECEIVED)
-    @Query("SELECT COUNT(DISTINCT o) FROM Order o " +
-           "JOIN o.shippingStatusHistories ssh " +
-           "JOIN ssh.shippingStatus ss " +
-           "WHERE ssh.createdAt = (SELECT MAX(ssh2.createdAt) FROM OrderShippingHistory ssh2 WHERE ssh2.order = o) " +
-           "AND ss.statusCode IN ('DELIVERED', 'RECEIVED')")
+    @Query("SELECT COUNT(o) FROM Order o " +
+           "JOIN ShippingStatus ss ON ss.statusId = o.currentShippingStatusId " +
+           "WHERE ss.statusCode IN ('DELIVERED', 'RECEIVED')")
     long countCompletedOrders();
 
     /**
@@ -93,17 +91,11 @@ public interface OrderRepository extends JpaRepository<Order,Integer> ,JpaSpecif
         INNER JOIN order_detail od ON o.order_id = od.order_id
         INNER JOIN product_variants pv ON od.product_variant_id = pv.product_variant_id
         INNER JOIN products p ON pv.product_id = p.prod_id
-        INNER JOIN order_payment_history oph ON o.order_id = oph.order_id
-        INNER JOIN payment_statuses ps ON oph.status_id = ps.status_id
+        INNER JOIN payment_statuses ps ON o.current_payment_status_id = ps.status_id
         WHERE o.user_id = :userId
         AND p.prod_id = :productId
         AND ps.status_code = 'PAID'
         AND pv.product_id IS NOT NULL
-        AND oph.created_at = (
-            SELECT MAX(oph2.created_at)
-            FROM order_payment_history oph2
-            WHERE oph2.order_id = o.order_id
-        )
         """, nativeQuery = true)
     boolean hasUserPurchasedProduct(@Param("userId") Long userId, @Param("productId") Integer productId);
 
@@ -112,20 +104,14 @@ public interface OrderRepository extends JpaRepository<Order,Integer> ,JpaSpecif
      * Sử dụng native query để đảm bảo performance và tránh lỗi mapping
      */
     @Query(value = """
-        SELECT DISTINCT p.product_id 
+        SELECT DISTINCT p.prod_id 
         FROM orders o
         INNER JOIN order_detail od ON o.order_id = od.order_id
         INNER JOIN product_variants pv ON od.product_variant_id = pv.product_variant_id  
-        INNER JOIN products p ON pv.product_id = p.product_id
-        INNER JOIN order_payment_history oph ON o.order_id = oph.order_id
-        INNER JOIN payment_statuses ps ON oph.status_id = ps.status_id
+        INNER JOIN products p ON pv.product_id = p.prod_id
+        INNER JOIN payment_statuses ps ON o.current_payment_status_id = ps.status_id
         WHERE o.user_id = :userId 
         AND ps.status_code = 'PAID'
-        AND oph.created_at = (
-            SELECT MAX(oph2.created_at) 
-            FROM order_payment_history oph2 
-            WHERE oph2.order_id = o.order_id
-        )
         """, nativeQuery = true)
     List<Integer> getPurchasedProductIdsByUser(@Param("userId") Long userId);
 
@@ -138,14 +124,9 @@ public interface OrderRepository extends JpaRepository<Order,Integer> ,JpaSpecif
         FROM Order o 
         JOIN o.orderDetails od 
         JOIN od.odProductVariant pv 
-        JOIN o.paymentStatusHistories psh
+        JOIN PaymentStatus ps ON ps.statusId = o.currentPaymentStatusId
         WHERE o.orderUser.userId = :userId 
-        AND psh.paymentStatus.statusCode = 'PAID'
-        AND psh.createdAt = (
-            SELECT MAX(psh2.createdAt) 
-            FROM OrderPaymentHistory psh2 
-            WHERE psh2.order.orderId = o.orderId
-        )
+        AND ps.statusCode = 'PAID'
         """)
     List<Integer> getPurchasedProductIdsByUserJPQL(@Param("userId") Long userId);
 
@@ -158,15 +139,8 @@ public interface OrderRepository extends JpaRepository<Order,Integer> ,JpaSpecif
         JOIN o.orderDetails od 
         JOIN od.odProductVariant pv 
         WHERE o.orderUser.userId = :userId 
-        AND o.orderId IN (
-            SELECT DISTINCT psh.order.orderId
-            FROM OrderPaymentHistory psh
-            WHERE psh.paymentStatus.statusCode = 'PAID'
-            AND psh.createdAt = (
-                SELECT MAX(psh2.createdAt) 
-                FROM OrderPaymentHistory psh2 
-                WHERE psh2.order.orderId = psh.order.orderId
-            )
+        AND o.currentPaymentStatusId = (
+            SELECT ps.statusId FROM PaymentStatus ps WHERE ps.statusCode = 'PAID'
         )
         """)
     List<Integer> getPurchasedProductIdsByUserJPQLSimple(@Param("userId") Long userId);
@@ -184,26 +158,6 @@ public interface OrderRepository extends JpaRepository<Order,Integer> ,JpaSpecif
         """)
     List<Integer> getPurchasedProductIdsByUserSimple(@Param("userId") Long userId);
 
-    // Doanh thu tháng hiện tại (chỉ tính đơn giao thành công ở trạng thái hiện tại)
-    @Query("SELECT COALESCE(SUM(o.orderTotalAmount), 0) FROM Order o " +
-           "JOIN o.shippingStatusHistories ssh " +
-           "JOIN ssh.shippingStatus ss " +
-           "WHERE ssh.createdAt = (SELECT MAX(ssh2.createdAt) FROM OrderShippingHistory ssh2 WHERE ssh2.order = o) " +
-           "AND ss.statusCode = 'DELIVERED' " +
-           "AND EXTRACT(YEAR FROM o.orderDate) = :year " +
-           "AND EXTRACT(MONTH FROM o.orderDate) = :month")
-    Double sumRevenueByMonth(@Param("year") int year, @Param("month") int month);
-
-    // Số đơn hoàn tiền trong tháng (trạng thái thanh toán hiện tại = REFUNDED)
-    @Query("SELECT COUNT(DISTINCT o) FROM Order o " +
-           "JOIN o.paymentStatusHistories psh " +
-           "JOIN psh.paymentStatus ps " +
-           "WHERE psh.createdAt = (SELECT MAX(psh2.createdAt) FROM OrderPaymentHistory psh2 WHERE psh2.order = o) " +
-           "AND ps.statusCode = 'REFUNDED' " +
-           "AND EXTRACT(YEAR FROM o.orderDate) = :year " +
-           "AND EXTRACT(MONTH FROM o.orderDate) = :month")
-    Integer countRefundsByMonth(@Param("year") int year, @Param("month") int month);
-
     Order getOrderByOrderId(int orderId);
 
     /**
@@ -218,44 +172,20 @@ public interface OrderRepository extends JpaRepository<Order,Integer> ,JpaSpecif
         (SELECT COALESCE(SUM(od.odQuantity), 0) FROM OrderDetail od WHERE od.order.orderId = o.orderId),
         u.name,
         u.email,
-        (SELECT ps.statusCode FROM OrderPaymentHistory psh 
-         JOIN psh.paymentStatus ps 
-         WHERE psh.order.orderId = o.orderId 
-         ORDER BY psh.createdAt DESC LIMIT 1),
-        (SELECT ps.statusName FROM OrderPaymentHistory psh 
-         JOIN psh.paymentStatus ps 
-         WHERE psh.order.orderId = o.orderId 
-         ORDER BY psh.createdAt DESC LIMIT 1),
-        (SELECT ss.statusCode FROM OrderShippingHistory ssh 
-         JOIN ssh.shippingStatus ss 
-         WHERE ssh.order.orderId = o.orderId 
-         ORDER BY ssh.createdAt DESC LIMIT 1),
-        (SELECT ss.statusName FROM OrderShippingHistory ssh 
-         JOIN ssh.shippingStatus ss 
-         WHERE ssh.order.orderId = o.orderId 
-         ORDER BY ssh.createdAt DESC LIMIT 1)
+        ps.statusCode,
+        ps.statusName,
+        ss.statusCode,
+        ss.statusName
     )
     FROM Order o
     JOIN o.orderUser u
+    LEFT JOIN PaymentStatus ps ON ps.statusId = o.currentPaymentStatusId
+    LEFT JOIN ShippingStatus ss ON ss.statusId = o.currentShippingStatusId
     WHERE (LOWER(u.name) LIKE LOWER(CONCAT('%', :keyword, '%'))
           OR LOWER(u.email) LIKE LOWER(CONCAT('%', :keyword, '%'))
           OR :keyword IS NULL)
-      AND (:paymentStatusCode IS NULL OR 
-           EXISTS (SELECT 1 FROM OrderPaymentHistory psh2 
-                   JOIN psh2.paymentStatus ps2 
-                   WHERE psh2.order.orderId = o.orderId 
-                   AND ps2.statusCode = :paymentStatusCode
-                   AND psh2.createdAt = (SELECT MAX(psh3.createdAt) 
-                                        FROM OrderPaymentHistory psh3 
-                                        WHERE psh3.order.orderId = o.orderId)))
-      AND (:shippingStatusCode IS NULL OR 
-           EXISTS (SELECT 1 FROM OrderShippingHistory ssh2 
-                   JOIN ssh2.shippingStatus ss2 
-                   WHERE ssh2.order.orderId = o.orderId 
-                   AND ss2.statusCode = :shippingStatusCode
-                   AND ssh2.createdAt = (SELECT MAX(ssh3.createdAt) 
-                                        FROM OrderShippingHistory ssh3 
-                                        WHERE ssh3.order.orderId = o.orderId)))
+      AND (:paymentStatusCode IS NULL OR ps.statusCode = :paymentStatusCode)
+      AND (:shippingStatusCode IS NULL OR ss.statusCode = :shippingStatusCode)
     ORDER BY o.orderDate DESC
     """)
     Page<OrderListResponse> searchOrdersWithDTO(
@@ -265,6 +195,44 @@ public interface OrderRepository extends JpaRepository<Order,Integer> ,JpaSpecif
             Pageable pageable
     );
 
+    /**
+     * Keyset pagination theo (order_date, order_id) giảm dần cho danh sách order admin
+     * Cùng projection/filter với searchOrdersWithDTO nhưng không OFFSET và không COUNT
+     */
+    @Query("""
+    SELECT new iuh.fit.se.enternalrunebackend.dto.response.OrderListResponse(
+        o.orderId,
+        o.orderDate,
+        o.orderTotalAmount,
+        (SELECT COALESCE(SUM(od.odQuantity), 0) FROM OrderDetail od WHERE od.order.orderId = o.orderId),
+        u.name,
+        u.email,
+        ps.statusCode,
+        ps.statusName,
+        ss.statusCode,
+        ss.statusName
+    )
+    FROM Order o
+    JOIN o.orderUser u
+    LEFT JOIN PaymentStatus ps ON ps.statusId = o.currentPaymentStatusId
+    LEFT JOIN ShippingStatus ss ON ss.statusId = o.currentShippingStatusId
+    WHERE (LOWER(u.name) LIKE LOWER(CONCAT('%', :keyword, '%'))
+          OR LOWER(u.email) LIKE LOWER(CONCAT('%', :keyword, '%'))
+          OR :keyword IS NULL)
+      AND (:paymentStatusCode IS NULL OR ps.statusCode = :paymentStatusCode)
+      AND (:shippingStatusCode IS NULL OR ss.statusCode = :shippingStatusCode)
+      AND (o.orderDate < :cursorDate OR (o.orderDate = :cursorDate AND o.orderId < :cursorId))
+    ORDER BY o.orderDate DESC, o.orderId DESC
+    """)
+    List<OrderListResponse> searchOrdersWithDTOBeforeCursor(
+            @Param("keyword") String keyword,
+            @Param("paymentStatusCode") String paymentStatusCode,
+            @Param("shippingStatusCode") String shippingStatusCode,
+            @Param("cursorDate") LocalDate cursorDate,
+            @Param("cursorId") Integer cursorId,
+            Pageable pageable
+    );
+
     @Query("""
     SELECT DISTINCT o FROM Order o
     LEFT JOIN FETCH o.orderUser u
@@ -272,19 +240,13 @@ public interface OrderRepository extends JpaRepository<Order,Integer> ,JpaSpecif
     LEFT JOIN FETCH od.odProductVariant pv
     LEFT JOIN FETCH pv.prodvPrice
     LEFT JOIN FETCH pv.prodvImg
-    LEFT JOIN o.paymentStatusHistories psh
-    LEFT JOIN psh.paymentStatus ps
-    LEFT JOIN o.shippingStatusHistories ssh
-    LEFT JOIN ssh.shippingStatus ss
     WHERE (LOWER(u.name) LIKE LOWER(CONCAT('%', :keyword, '%'))
           OR LOWER(u.email) LIKE LOWER(CONCAT('%', :keyword, '%'))
           OR :keyword IS NULL)
-      AND (:paymentStatusCode IS NULL OR 
-           (ps.statusCode = :paymentStatusCode AND 
-            psh.createdAt = (SELECT MAX(psh2.createdAt) FROM OrderPaymentHistory psh2 WHERE psh2.order = o)))
-      AND (:shippingStatusCode IS NULL OR 
-           (ss.statusCode = :shippingStatusCode AND 
-            ssh.createdAt = (SELECT MAX(ssh2.createdAt) FROM OrderShippingHistory ssh2 WHERE ssh2.order = o)))
+      AND (:paymentStatusCode IS NULL OR o.currentPaymentStatusId =
+           (SELECT ps.statusId FROM PaymentStatus ps WHERE ps.statusCode = :paymentStatusCode))
+      AND (:shippingStatusCode IS NULL OR o.currentShippingStatusId =
+           (SELECT ss.statusId FROM ShippingStatus ss WHERE ss.statusCode = :shippingStatusCode))
     """)
     Page<Order> searchOrders(
             @Param("keyword") String keyword,
@@ -294,49 +256,40 @@ public interface OrderRepository extends JpaRepository<Order,Integer> ,JpaSpecif
     );
 
     @Query("SELECT COALESCE(SUM(o.orderTotalAmount), 0) FROM Order o " +
-           "JOIN o.paymentStatusHistories psh " +
-           "JOIN psh.paymentStatus ps " +
-           "WHERE psh.createdAt = (SELECT MAX(psh2.createdAt) FROM OrderPaymentHistory psh2 WHERE psh2.order = o) " +
-           "AND ps.statusCode = 'PAID'")
+           "JOIN PaymentStatus ps ON ps.statusId = o.currentPaymentStatusId " +
+           "WHERE ps.statusCode = 'PAID'")
     BigDecimal getTotalRevenue();
 
-    @Query("SELECT COUNT(DISTINCT o) FROM Order o " +
-           "JOIN o.shippingStatusHistories ssh " +
-           "JOIN ssh.shippingStatus ss " +
-           "WHERE ssh.createdAt = (SELECT MAX(ssh2.createdAt) FROM OrderShippingHistory ssh2 WHERE ssh2.order = o) " +
-           "AND ss.statusCode = :statusCode")
+    @Query("SELECT COUNT(o) FROM Order o " +
+           "JOIN ShippingStatus ss ON ss.statusId = o.currentShippingStatusId " +
+           "WHERE ss.statusCode = :statusCode")
     long countByCurrentShippingStatus(@Param("statusCode") String statusCode);
 
     List<Order> findByOrderUser_UserId(Long userId);
-    
-    // Dashboard queries
-    @Query("SELECT COUNT(o) FROM Order o " +
-           "WHERE EXTRACT(YEAR FROM o.orderDate) = :year " +
-           "AND EXTRACT(MONTH FROM o.orderDate) = :month")
-    int countOrdersInMonth(@Param("year") int year, @Param("month") int month);
-    
-    @Query("SELECT COALESCE(SUM(o.orderTotalAmount), 0) FROM Order o " +
-           "JOIN o.paymentStatusHistories psh " +
-           "JOIN psh.paymentStatus ps " +
-           "WHERE psh.createdAt = (SELECT MAX(psh2.createdAt) FROM OrderPaymentHistory psh2 WHERE psh2.order = o) " +
-           "AND ps.statusCode IN ('PAID', 'COMPLETED') " +
-           "AND EXTRACT(YEAR FROM o.orderDate) = :year " +
-           "AND EXTRACT(MONTH FROM o.orderDate) = :month")
-    BigDecimal getTotalRevenueInMonth(@Param("year") int year, @Param("month") int month);
-    
+
     /**
-     * OPTIMIZED: Get all monthly summaries in ONE query instead of 24+ queries
-     * Returns: [month, revenue, orderCount] for each month in the year
+     * Điền current_payment_status_id / current_shipping_status_id cho các order cũ (tạo trước khi có 2 cột này)
+     * từ bản ghi history mới nhất
      */
-    @Query("SELECT EXTRACT(MONTH FROM o.orderDate) as month, " +
-           "COALESCE(SUM(CASE WHEN ps.statusCode IN ('PAID', 'COMPLETED') THEN o.orderTotalAmount ELSE 0 END), 0) as revenue, " +
-           "COUNT(o) as orderCount " +
-           "FROM Order o " +
-           "LEFT JOIN o.paymentStatusHistories psh ON psh.createdAt = (SELECT MAX(psh2.createdAt) FROM OrderPaymentHistory psh2 WHERE psh2.order = o) " +
-           "LEFT JOIN psh.paymentStatus ps " +
-           "WHERE EXTRACT(YEAR FROM o.orderDate) = :year " +
-           "GROUP BY EXTRACT(MONTH FROM o.orderDate) " +
-           "ORDER BY month")
-    List<Object[]> getMonthlySummariesForYear(@Param("year") int year);
-}
+    @Modifying
+    @Query(value = """
+        UPDATE orders o SET current_payment_status_id = (
+            SELECT h.status_id FROM order_payment_history h
+            WHERE h.order_id = o.order_id
+            ORDER BY h.created_at DESC, h.history_id DESC
+            LIMIT 1)
+        WHERE o.current_payment_status_id IS NULL
+        """, nativeQuery = true)
+    int backfillCurrentPaymentStatus();
 
+    @Modifying
+    @Query(value = """
+        UPDATE orders o SET current_shipping_status_id = (
+            SELECT h.status_id FROM order_shipping_history h
+            WHERE h.order_id = o.order_id
+            ORDER BY h.created_at DESC, h.history_id DESC
+            LIMIT 1)
+        WHERE o.current_shipping_status_id IS NULL
+        """, nativeQuery = true)
+    int backfillCurrentShippingStatus();
+}
@@ -0,0 +1,23 @@
+package iuh.fit.se.enternalrunebackend.repository;
+
+import iuh.fit.se.enternalrunebackend.entity.ProductEmbeddingChange;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface ProductEmbeddingChangeRepository extends JpaRepository<ProductEmbeddingChange, Long> {
+
+    /**
+     * Lấy và khóa các thay đổi cũ nhất. SKIP LOCKED: nhiều node chạy worker cùng lúc thì mỗi node
+     * nhận 1 phần khác nhau, không chờ nhau. Phải gọi trong transaction, khóa giữ tới khi commit.
+     */
+    @Query(value = """
+            SELECT * FROM product_embedding_changes
+            ORDER BY change_id
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<ProductEmbeddingChange> claimOldest(@Param("limit") int limit);
+}
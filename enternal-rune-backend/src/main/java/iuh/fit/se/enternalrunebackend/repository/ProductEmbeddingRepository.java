@@ -0,0 +1,13 @@
+package iuh.fit.se.enternalrunebackend.repository;
+
+import iuh.fit.se.enternalrunebackend.entity.ProductEmbedding;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface ProductEmbeddingRepository extends JpaRepository<ProductEmbedding, Integer> {
+
+    @Query("SELECT e.productId FROM ProductEmbedding e")
+    List<Integer> findAllProductIds();
+}
@@ -2,8 +2,14 @@ package iuh.fit.se.enternalrunebackend.repository;
 
 import iuh.fit.se.enternalrunebackend.entity.ProductPrice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
 @RepositoryRestResource(path = "product-prices")
 public interface ProductPriceRepository extends JpaRepository<ProductPrice,Integer> {
+
+    // ProductPrice không có quan hệ ngược về Product -> đọc trực tiếp cột product_id
+    @Query(value = "SELECT pp.product_id FROM product_price pp WHERE pp.pp_id = :ppId", nativeQuery = true)
+    Integer findProductIdByPpId(@Param("ppId") int ppId);
 }
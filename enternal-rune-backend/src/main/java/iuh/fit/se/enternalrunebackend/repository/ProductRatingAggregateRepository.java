@@ -0,0 +1,93 @@
+package iuh.fit.se.enternalrunebackend.repository;
+
+import iuh.fit.se.enternalrunebackend.entity.ProductRatingAggregate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ProductRatingAggregateRepository extends JpaRepository<ProductRatingAggregate, Integer> {
+
+    /**
+     * Cộng dồn delta vào aggregate của 1 sản phẩm (tạo mới nếu chưa có).
+     * Dùng UPDATE tương đối nên các transaction ghi comment đồng thời không ghi đè lẫn nhau.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO product_rating_aggregates
+                (product_id, comment_count, rating_count, rating_sum,
+                 rating_1, rating_2, rating_3, rating_4, rating_5, updated_at)
+            VALUES (:productId, :commentDelta, :ratingDelta, :sumDelta,
+                    :r1, :r2, :r3, :r4, :r5, NOW())
+            ON CONFLICT (product_id) DO UPDATE SET
+                comment_count = product_rating_aggregates.comment_count + EXCLUDED.comment_count,
+                rating_count = product_rating_aggregates.rating_count + EXCLUDED.rating_count,
+                rating_sum = product_rating_aggregates.rating_sum + EXCLUDED.rating_sum,
+                rating_1 = product_rating_aggregates.rating_1 + EXCLUDED.rating_1,
+                rating_2 = product_rating_aggregates.rating_2 + EXCLUDED.rating_2,
+                rating_3 = product_rating_aggregates.rating_3 + EXCLUDED.rating_3,
+                rating_4 = product_rating_aggregates.rating_4 + EXCLUDED.rating_4,
+                rating_5 = product_rating_aggregates.rating_5 + EXCLUDED.rating_5,
+                updated_at = NOW()
+            """, nativeQuery = true)
+    void applyDelta(@Param("productId") Integer productId,
+                    @Param("commentDelta") long commentDelta,
+                    @Param("ratingDelta") long ratingDelta,
+                    @Param("sumDelta") long sumDelta,
+                    @Param("r1") long r1,
+                    @Param("r2") long r2,
+                    @Param("r3") long r3,
+                    @Param("r4") long r4,
+                    @Param("r5") long r5);
+
+    /**
+     * Thống kê rating cho nhiều sản phẩm trong 1 query, sort theo product_id
+     *
+     * @return list of [product_id, comment_count, rating_count, rating_sum, rating_1..rating_5]
+     */
+    @Query(value = """
+            SELECT product_id, comment_count, rating_count, rating_sum,
+                   rating_1, rating_2, rating_3, rating_4, rating_5
+            FROM product_rating_aggregates
+            WHERE product_id IN (:productIds)
+            ORDER BY product_id
+            """, nativeQuery = true)
+    List<Object[]> findStatsRows(@Param("productIds") Collection<Integer> productIds);
+
+    // Chặn các delta đồng thời trong lúc rebuild (được nhả khi transaction rebuild commit)
+    @Modifying
+    @Query(value = "LOCK TABLE product_rating_aggregates IN EXCLUSIVE MODE", nativeQuery = true)
+    void lockForRebuild();
+
+    @Modifying
+    @Query(value = "DELETE FROM product_rating_aggregates", nativeQuery = true)
+    void deleteAllAggregates();
+
+    /**
+     * Tính lại toàn bộ aggregate từ bảng comments
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO product_rating_aggregates
+                (product_id, comment_count, rating_count, rating_sum,
+                 rating_1, rating_2, rating_3, rating_4, rating_5, updated_at)
+            SELECT c.product_id,
+                   COUNT(*),
+                   COUNT(c.comment_rating),
+                   COALESCE(SUM(c.comment_rating), 0),
+                   COUNT(*) FILTER (WHERE c.comment_rating = 1),
+                   COUNT(*) FILTER (WHERE c.comment_rating = 2),
+                   COUNT(*) FILTER (WHERE c.comment_rating = 3),
+                   COUNT(*) FILTER (WHERE c.comment_rating = 4),
+                   COUNT(*) FILTER (WHERE c.comment_rating = 5),
+                   NOW()
+            FROM comments c
+            WHERE c.parent_comment_id IS NULL
+              AND c.comment_status NOT IN ('REJECTED', 'DELETED')
+            GROUP BY c.product_id
+            """, nativeQuery = true)
+    int insertFromComments();
+}
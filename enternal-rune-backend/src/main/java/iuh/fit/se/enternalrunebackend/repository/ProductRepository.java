@@ -26,6 +26,19 @@ public interface ProductRepository extends JpaRepository<Product, Integer>, JpaS
       WHERE pp.ppPriceStatus = 'ACTIVE'
       """)
   List<Object[]> findProductSummaryWithActivePrice();
+
+  // Same projection restricted to given products (dùng cho catalog snapshot refresh từng sản phẩm)
+  @Query("""
+      SELECT DISTINCT p.prodId, p.prodName, p.prodModel, p.productStatus, 
+             p.prodDescription, p.prodRating,
+             b.brandId, b.brandName
+      FROM Product p
+      JOIN p.prodBrand b
+      JOIN p.productPrices pp
+      WHERE pp.ppPriceStatus = 'ACTIVE'
+      AND p.prodId IN :productIds
+      """)
+  List<Object[]> findProductSummaryWithActivePriceByIds(@Param("productIds") List<Integer> productIds);
   
   // Get images for specific products (native query vì không có relationship từ Image -> Product)
   @Query(value = """
@@ -188,13 +201,14 @@ public interface ProductRepository extends JpaRepository<Product, Integer>, JpaS
             pp.pp_price as active_price,
             d.discount_name,
             (SELECT i.image_data FROM images i WHERE i.product_id = p.prod_id LIMIT 1) as primary_image_url,
-            COALESCE((SELECT COUNT(*) FROM comments c WHERE c.product_id = p.prod_id), 0) as total_comments,
-            COALESCE((SELECT AVG(c.comment_rating) FROM comments c WHERE c.product_id = p.prod_id), 0.0) as average_rating,
+            COALESCE(ra.comment_count, 0) as total_comments,
+            CASE WHEN ra.rating_count > 0 THEN CAST(ra.rating_sum AS float8) / ra.rating_count ELSE 0.0 END as average_rating,
             'Available Colors' as available_colors
         FROM products p
         JOIN brands b ON b.brand_id = p.brand_id
         JOIN product_price pp ON pp.product_id = p.prod_id
         LEFT JOIN discounts d ON d.discount_id = pp.discount_id
+        LEFT JOIN product_rating_aggregates ra ON ra.product_id = p.prod_id
         WHERE pp.pp_price_status = 'ACTIVE'
         ORDER BY p.product_rating DESC
         """, nativeQuery = true)
@@ -219,15 +233,16 @@ public interface ProductRepository extends JpaRepository<Product, Integer>, JpaS
                  THEN 'Sale'
                  ELSE NULL END as discount_label,
             (SELECT i.image_data FROM images i WHERE i.product_id = p.prod_id LIMIT 1) as image_url,
-            COALESCE((SELECT COUNT(*) FROM comments c WHERE c.product_id = p.prod_id), 0) as total_comments,
-            COALESCE((SELECT AVG(c.comment_rating) FROM comments c WHERE c.product_id = p.prod_id), 0.0) as average_rating,
+            COALESCE(ra.comment_count, 0) as total_comments,
+            CASE WHEN ra.rating_count > 0 THEN CAST(ra.rating_sum AS float8) / ra.rating_count ELSE 0.0 END as average_rating,
             'Available Colors' as available_colors
         FROM products p
         JOIN brands b ON b.brand_id = p.brand_id
         JOIN product_price pp ON pp.product_id = p.prod_id AND pp.pp_price_status = 'ACTIVE'
         LEFT JOIN discounts d ON d.discount_id = pp.discount_id
+        LEFT JOIN product_rating_aggregates ra ON ra.product_id = p.prod_id
         WHERE p.product_status = 'ACTIVE'
-        GROUP BY p.prod_id, b.brand_id, pp.pp_price, pp.pp_start_date, d.discount_id
+        GROUP BY p.prod_id, b.brand_id, pp.pp_price, pp.pp_start_date, d.discount_id, ra.product_id
         ORDER BY p.product_rating DESC, pp.pp_start_date DESC
         LIMIT :limit
         """, nativeQuery = true)
@@ -252,16 +267,17 @@ public interface ProductRepository extends JpaRepository<Product, Integer>, JpaS
                  THEN 'Sale'
                  ELSE NULL END as discount_label,
             (SELECT i.image_data FROM images i WHERE i.product_id = p.prod_id LIMIT 1) as image_url,
-            COALESCE((SELECT COUNT(*) FROM comments c WHERE c.product_id = p.prod_id), 0) as total_comments,
-            COALESCE((SELECT AVG(c.comment_rating) FROM comments c WHERE c.product_id = p.prod_id), 0.0) as average_rating,
+            COALESCE(ra.comment_count, 0) as total_comments,
+            CASE WHEN ra.rating_count > 0 THEN CAST(ra.rating_sum AS float8) / ra.rating_count ELSE 0.0 END as average_rating,
             'Available Colors' as available_colors
         FROM products p
         JOIN brands b ON b.brand_id = p.brand_id
         JOIN product_price pp ON pp.product_id = p.prod_id AND pp.pp_price_status = 'ACTIVE'
         LEFT JOIN discounts d ON d.discount_id = pp.discount_id
+        LEFT JOIN product_rating_aggregates ra ON ra.product_id = p.prod_id
         WHERE b.brand_name ILIKE :brandName
         AND p.product_status = 'ACTIVE'
-        GROUP BY p.prod_id, b.brand_id, pp.pp_price, pp.pp_start_date, d.discount_id
+        GROUP BY p.prod_id, b.brand_id, pp.pp_price, pp.pp_start_date, d.discount_id, ra.product_id
         ORDER BY pp.pp_start_date DESC
         LIMIT :limit
         """, nativeQuery = true)
@@ -283,13 +299,14 @@ public interface ProductRepository extends JpaRepository<Product, Integer>, JpaS
             pp.pp_price as active_price,
             d.discount_name,
             (SELECT i.image_data FROM images i WHERE i.product_id = p.prod_id LIMIT 1) as primary_image_url,
-            COALESCE((SELECT COUNT(*) FROM comments c WHERE c.product_id = p.prod_id), 0) as total_comments,
-            COALESCE((SELECT AVG(c.comment_rating) FROM comments c WHERE c.product_id = p.prod_id), 0.0) as average_rating,
+            COALESCE(ra.comment_count, 0) as total_comments,
+            CASE WHEN ra.rating_count > 0 THEN CAST(ra.rating_sum AS float8) / ra.rating_count ELSE 0.0 END as average_rating,
             'Available Colors' as available_colors
         FROM products p
         JOIN brands b ON b.brand_id = p.brand_id
         JOIN product_price pp ON pp.product_id = p.prod_id AND pp.pp_price_status = 'ACTIVE'
         LEFT JOIN discounts d ON d.discount_id = pp.discount_id
+        LEFT JOIN product_rating_aggregates ra ON ra.product_id = p.prod_id
         WHERE (ARRAY_LENGTH(:brandIds, 1) IS NULL OR b.brand_id = ANY(:brandIds))
         AND (:minPrice IS NULL OR pp.pp_price >= :minPrice)
         AND (:maxPrice IS NULL OR pp.pp_price <= :maxPrice)
@@ -16,5 +16,12 @@ public interface ProductSpecificationsRepository extends JpaRepository<ProductSp
             WHERE ps.product.prodId IN :ids
             """)
     List<ProductSpecifications> findByProductIds(@Param("ids") Collection<Integer> productIds);
-}
 
+    // Storage của tất cả sản phẩm (dùng cho posting list bộ nhớ trong ProductSearchIndex)
+    @Query("""
+            SELECT ps.product.prodId, ps.storage
+            FROM ProductSpecifications ps
+            WHERE ps.product.prodId IN :ids
+            """)
+    List<Object[]> findStorageByProductIds(@Param("ids") Collection<Integer> productIds);
+}
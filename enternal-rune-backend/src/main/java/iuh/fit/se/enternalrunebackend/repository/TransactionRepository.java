@@ -40,18 +40,14 @@ public interface TransactionRepository extends JpaRepository<Transaction,Integer
             (SELECT COALESCE(SUM(transaction_amount), 0) 
              FROM transactions 
              WHERE LOWER(transaction_status) IN ('success', 'completed')) as total_revenue,
-            (SELECT COUNT(DISTINCT o.order_id)
+            (SELECT COUNT(*)
              FROM orders o
-             INNER JOIN order_payment_history oph ON o.order_id = oph.order_id
-             INNER JOIN payment_statuses ps ON oph.status_id = ps.status_id
-             WHERE ps.status_code = 'PAID'
-             AND oph.created_at = (SELECT MAX(oph2.created_at) FROM order_payment_history oph2 WHERE oph2.order_id = o.order_id)) as paid_orders,
-            (SELECT COUNT(DISTINCT o.order_id)
+             INNER JOIN payment_statuses ps ON o.current_payment_status_id = ps.status_id
+             WHERE ps.status_code = 'PAID') as paid_orders,
+            (SELECT COUNT(*)
              FROM orders o
-             INNER JOIN order_payment_history oph ON o.order_id = oph.order_id
-             INNER JOIN payment_statuses ps ON oph.status_id = ps.status_id
-             WHERE ps.status_code = 'PENDING'
-             AND oph.created_at = (SELECT MAX(oph2.created_at) FROM order_payment_history oph2 WHERE oph2.order_id = o.order_id)) as pending_orders
+             INNER JOIN payment_statuses ps ON o.current_payment_status_id = ps.status_id
+             WHERE ps.status_code = 'PENDING') as pending_orders
         """, nativeQuery = true)
     Map<String, Object> getPaymentMetricsInOneQuery();
 }
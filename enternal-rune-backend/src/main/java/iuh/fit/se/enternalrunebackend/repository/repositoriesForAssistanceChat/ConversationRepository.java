@@ -9,6 +9,4 @@ import java.util.List;
 public interface ConversationRepository extends MongoRepository<Conversation, String> {
 
     List<Conversation> findByCustomerId(String customerId);
-
-    List<Conversation> findByAgentId(String agentId);
 }
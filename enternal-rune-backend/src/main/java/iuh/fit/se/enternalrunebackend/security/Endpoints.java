@@ -17,10 +17,15 @@ public class Endpoints {
             "/api/messages/**",
             "/api/chat-users/**",
             "/api/products/*/comments",
+            "/api/products/*/comments/cursor",
             "/api/products/*/comments/*/replies",
             "/api/products/*/rating-distribution",
             "/api/products/*/average-rating",
             "/api/chat/**",
+            // ==== ẢNH RESIZE (thumbnail / card / detail) ====
+            "/images/derivatives/*",
+            // ==== BENCHMARK (chỉ có khi threads.benchmark-probe.enabled=true) ====
+            "/api/benchmark/**",
             // ==== ADMIN COMMENTS (không cần auth) ====
             "/api/admin/comments/**"
     };
@@ -31,6 +36,7 @@ public class Endpoints {
             "/account/register",
             "/api/auth/**",
             "/ai/generate",
+            "/ai/stream",
             "/payment/webhookPayment",
             // ==== TẠO CONVERSATION CHAT, TEST WS ====
             "/api/messages/**",
@@ -40,9 +46,7 @@ public class Endpoints {
             "/api/products/*/comments/text",
             "/api/products/*/comments/*/replies",
             "/api/chat/**",
-            "/upload/**",
-            // ==== ADMIN COMMENTS (không cần auth) ====
-            "/api/admin/comments/**"
+            "/upload/**"
     };
 
     // PATCH không cần đăng nhập
@@ -52,9 +56,7 @@ public class Endpoints {
 
     // PUT không cần đăng nhập
     public static final String[] PUBLIC_PUT_ENDPOINTS = {
-            "/orders/*/confirm-received",
-            // ==== ADMIN COMMENTS (không cần auth) ====
-            "/api/admin/comments/**"
+            "/orders/*/confirm-received"
     };
 
     // DELETE không cần đăng nhập
@@ -75,12 +77,18 @@ public class Endpoints {
             "/shipping-status",
             "/api/notifications/**",
             "/api/admin/payments/**",
+            "/api/admin/caches/**",
+            "/api/admin/statuses/**",
+            "/api/admin/runtime/**",
             "/api/staff/**"
     };
     
     public static final String[] ADMIN_POST_ENDPOINTS = {
+            "/api/dashboard-order/**",
             "/products/dashboard/**",
             "/api/discounts/**",
+            "/api/admin/statuses/**",
+            "/api/admin/comments/**",
             "/api/staff/**"
     };
     
@@ -90,6 +98,7 @@ public class Endpoints {
             "/api/discounts/**",
             "/orders/admin/*/shipping-status",
             "/api/notifications/**",
+            "/api/admin/comments/**",
             "/api/staff/**"
     };
     
@@ -98,6 +107,8 @@ public class Endpoints {
             "/api/dashboard-user/**",
             "/products/dashboard/**",
             "/api/discounts/**",
-            "/api/staff/**"
+            "/api/staff/**",
+            "/api/admin/comments/**",
+            "/api/admin/caches/**"
     };
 }
@@ -22,6 +22,7 @@ import java.util.stream.Collectors;
 public class AdminCommentService {
     
     private final CommentRepository commentRepository;
+    private final ProductRatingAggregateService ratingAggregateService;
 
     /**
      * Get all comments with safe DTO mapping to avoid circular references
@@ -183,4 +184,38 @@ public class AdminCommentService {
         // Convert to DTO and return
         return mapToAdminCommentDTO(savedReply);
     }
-}
\ No newline at end of file
+
+    /**
+     * Update comment status (approve, reject, ...) and keep product rating aggregates in sync
+     */
+    @Transactional
+    public void updateCommentStatus(Integer commentId, CommentStatus status) {
+        Comment comment = commentRepository.findById(commentId)
+                .orElseThrow(() -> new RuntimeException("Comment not found"));
+        CommentStatus oldStatus = comment.getCmStatus();
+        if (oldStatus == status) {
+            return;
+        }
+        comment.setCmStatus(status);
+        commentRepository.save(comment);
+        ratingAggregateService.onCommentStatusChanged(comment, oldStatus, status);
+    }
+
+    /**
+     * Delete a comment (replies and images are removed by cascade)
+     */
+    @Transactional
+    public void deleteComment(Integer commentId) {
+        Comment comment = commentRepository.findById(commentId)
+                .orElseThrow(() -> new RuntimeException("Comment not found"));
+        ratingAggregateService.onCommentDeleted(comment);
+        commentRepository.delete(comment);
+    }
+
+    /**
+     * Recompute all product rating aggregates from the comments table
+     */
+    public int rebuildRatingAggregates() {
+        return ratingAggregateService.rebuild();
+    }
+}
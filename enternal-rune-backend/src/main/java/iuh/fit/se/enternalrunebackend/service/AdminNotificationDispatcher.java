@@ -0,0 +1,253 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import iuh.fit.se.enternalrunebackend.dto.notification.OrderNotification;
+import iuh.fit.se.enternalrunebackend.entity.Notification;
+import iuh.fit.se.enternalrunebackend.entity.User;
+import iuh.fit.se.enternalrunebackend.repository.NotificationRespository;
+import iuh.fit.se.enternalrunebackend.repository.UserRepository;
+import iuh.fit.se.enternalrunebackend.service.cluster.ClusterFanout;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Pipeline gửi notification cho admin ngoài request thread:
+ * - publish() chỉ đưa vào hàng đợi có giới hạn, sau khi transaction của caller commit (rollback thì không gửi)
+ * - 1 worker gom tối đa batch-size notification (chờ tối đa linger), lưu cả batch trong 1 transaction
+ *   rồi đẩy qua WebSocket 1 lượt cho mỗi admin session
+ * - Hàng đợi đầy: chờ tối đa offer-timeout rồi bỏ notification và tăng bộ đếm dropped
+ */
+@Component
+@Slf4j
+public class AdminNotificationDispatcher {
+
+    public record Stats(int queued, int capacity, long published, long dropped, long persisted,
+                        long persistFailures, long pushed, long batches, long maxBatchSize) {
+    }
+
+    private final NotificationRespository notificationRepository;
+    private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+    private final ClusterFanout clusterFanout;
+    private final TransactionTemplate transactionTemplate;
+
+    private final BlockingQueue<OrderNotification> queue;
+    private final int capacity;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final long offerTimeoutMillis;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder persistFailures = new LongAdder();
+    private final LongAdder pushed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private volatile long maxBatchSize;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public AdminNotificationDispatcher(NotificationRespository notificationRepository,
+                                       UserRepository userRepository,
+                                       ObjectMapper objectMapper,
+                                       ClusterFanout clusterFanout,
+                                       PlatformTransactionManager transactionManager,
+                                       @Value("${notification.admin.queue-capacity:1000}") int capacity,
+                                       @Value("${notification.admin.batch-size:50}") int batchSize,
+                                       @Value("${notification.admin.linger:200ms}") Duration linger,
+                                       @Value("${notification.admin.offer-timeout:50ms}") Duration offerTimeout) {
+        this.notificationRepository = notificationRepository;
+        this.userRepository = userRepository;
+        this.objectMapper = objectMapper;
+        this.clusterFanout = clusterFanout;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerNanos = linger.toNanos();
+        this.offerTimeoutMillis = offerTimeout.toMillis();
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = new Thread(this::runLoop, "admin-notification-dispatcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Gửi nốt phần còn lại trong hàng đợi
+        List<OrderNotification> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            process(remaining);
+        }
+    }
+
+    /**
+     * Đưa notification vào hàng đợi. Nếu đang trong transaction thì chỉ enqueue sau khi commit.
+     */
+    public void publish(OrderNotification notification) {
+        if (notification == null) {
+            return;
+        }
+        if (notification.getTimestamp() == null) {
+            notification.setTimestamp(LocalDateTime.now());
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(notification);
+                }
+            });
+        } else {
+            enqueue(notification);
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(queue.size(), capacity, published.sum(), dropped.sum(), persisted.sum(),
+                persistFailures.sum(), pushed.sum(), batches.sum(), maxBatchSize);
+    }
+
+    private void enqueue(OrderNotification notification) {
+        boolean accepted;
+        try {
+            accepted = queue.offer(notification, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+        if (accepted) {
+            published.increment();
+        } else {
+            dropped.increment();
+            log.warn("Admin notification queue full ({}), dropped {} notification", capacity, notification.getType());
+        }
+    }
+
+    private void runLoop() {
+        List<OrderNotification> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                OrderNotification first = queue.take();
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        break;
+                    }
+                    OrderNotification next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                process(batch);
+            } catch (InterruptedException e) {
+                if (!batch.isEmpty()) {
+                    process(batch);
+                }
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Admin notification dispatcher error: {}", e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<OrderNotification> batch) {
+        batches.increment();
+        if (batch.size() > maxBatchSize) {
+            maxBatchSize = batch.size();
+        }
+        persist(batch);
+        push(batch);
+    }
+
+    // 1 query lấy user cho cả batch + 1 transaction cho tất cả insert
+    private void persist(List<OrderNotification> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Long> userIds = batch.stream()
+                        .map(OrderNotification::getUserId)
+                        .filter(Objects::nonNull)
+                        .distinct()
+                        .toList();
+                Map<Long, User> users = userIds.isEmpty() ? Map.of()
+                        : userRepository.findAllById(userIds).stream()
+                                .collect(Collectors.toMap(User::getUserId, Function.identity()));
+
+                List<Notification> notifications = batch.stream()
+                        .map(n -> Notification.builder()
+                                .notiUser(n.getUserId() != null ? users.get(n.getUserId()) : null)
+                                .notiType(n.getType())
+                                .notiUserName(n.getUserName())
+                                .notiMessage(n.getMessage())
+                                .notiTime(n.getTimestamp())
+                                .notiIsRead(false)
+                                .targetRole("ADMIN")
+                                .build())
+                        .toList();
+                notificationRepository.saveAll(notifications);
+            });
+            persisted.add(batch.size());
+        } catch (Exception e) {
+            persistFailures.add(batch.size());
+            log.error("Failed to persist {} admin notifications: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    // Serialize mỗi notification 1 lần, đưa cả batch vào outbox của từng admin session (mọi node)
+    private void push(List<OrderNotification> batch) {
+        List<String> messages = new ArrayList<>(batch.size());
+        for (OrderNotification notification : batch) {
+            try {
+                messages.add(objectMapper.writeValueAsString(notification));
+            } catch (Exception e) {
+                log.error("Failed to serialize admin notification: {}", e.getMessage());
+            }
+        }
+        if (!messages.isEmpty()) {
+            clusterFanout.sendToAdmins(messages);
+            pushed.add(messages.size());
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.dto.response.ProductResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache câu trả lời của trợ lý AI theo ngữ nghĩa câu hỏi (bảng pgvector ai_answer_cache, tách khỏi vector_store
+ * của sản phẩm):
+ * - Câu hỏi được chuẩn hoá (chữ thường, gộp khoảng trắng, bỏ dấu câu cuối); trùng y hệt -> hit, không cần embedding
+ * - Không trùng -> nhúng câu hỏi, lấy câu trả lời gần nhất có cosine similarity >= similarity-threshold
+ * - Mỗi entry gắn fingerprint của catalog snapshot (tên, giá, trạng thái... sản phẩm) lúc trả lời;
+ *   catalog đổi -> fingerprint đổi -> entry cũ không còn được dùng, bị xóa hoặc hết hạn theo TTL
+ * Lỗi của cache (DB, embedding) chỉ làm mất hit, không làm hỏng câu trả lời.
+ */
+@Service
+@Slf4j
+public class AiAnswerCache {
+
+    public record Stats(long entries, long hits, long exactHits, long semanticHits, long misses, long stores,
+                        long invalidated, long errors, double hitRate, double hitMeanMs, double missMeanMs,
+                        double estimatedSavedMs) {
+    }
+
+    /**
+     * Kết quả tra cache của 1 câu hỏi, truyền lại cho store() để không phải nhúng câu hỏi lần 2.
+     * answer != null nghĩa là hit.
+     */
+    public record Lookup(String normalized, float[] embedding, String fingerprint, String answer, long startedAt) {
+        public boolean hit() {
+            return answer != null;
+        }
+    }
+
+    private record Fingerprint(long version, String value) {
+    }
+
+    private record Entry(UUID id, String answer) {
+    }
+
+    private static final RowMapper<Entry> ENTRY_MAPPER =
+            (rs, rowNum) -> new Entry(rs.getObject("id", UUID.class), rs.getString("answer"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final BlockingCallMonitor blockingCallMonitor;
+    private final boolean enabled;
+    private final double similarityThreshold;
+    private final int dimensions;
+    private final int maxEntries;
+    private final Duration ttl;
+    private final int maxQuestionLength;
+
+    private final AtomicReference<Fingerprint> fingerprint = new AtomicReference<>();
+
+    private final LongAdder exactHits = new LongAdder();
+    private final LongAdder semanticHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder invalidated = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder hitNanos = new LongAdder();
+    private final LongAdder missNanos = new LongAdder();
+    private final LongAdder timedMisses = new LongAdder();
+
+    public AiAnswerCache(JdbcTemplate jdbcTemplate,
+                         EmbeddingModel embeddingModel,
+                         CatalogSnapshotService catalogSnapshotService,
+                         BlockingCallMonitor blockingCallMonitor,
+                         @Value("${ai.answer-cache.enabled:true}") boolean enabled,
+                         @Value("${ai.answer-cache.similarity-threshold:0.95}") double similarityThreshold,
+                         @Value("${spring.ai.vectorstore.pgvector.dimensions:768}") int dimensions,
+                         @Value("${ai.answer-cache.max-entries:5000}") int maxEntries,
+                         @Value("${ai.answer-cache.ttl:24h}") Duration ttl,
+                         @Value("${ai.answer-cache.max-question-length:500}") int maxQuestionLength) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingModel = embeddingModel;
+        this.catalogSnapshotService = catalogSnapshotService;
+        this.blockingCallMonitor = blockingCallMonitor;
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.dimensions = dimensions;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttl = ttl;
+        this.maxQuestionLength = maxQuestionLength;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createTable() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            jdbcTemplate.execute("""
+                    CREATE TABLE IF NOT EXISTS ai_answer_cache (
+                        id UUID PRIMARY KEY,
+                        normalized_question TEXT NOT NULL,
+                        embedding vector(%d) NOT NULL,
+                        answer TEXT NOT NULL,
+                        catalog_fingerprint VARCHAR(64) NOT NULL,
+                        hits BIGINT NOT NULL DEFAULT 0,
+                        created_at TIMESTAMP NOT NULL DEFAULT NOW(),
+                        last_hit_at TIMESTAMP NOT NULL DEFAULT NOW()
+                    )""".formatted(dimensions));
+            jdbcTemplate.execute("""
+                    CREATE INDEX IF NOT EXISTS idx_ai_answer_cache_embedding
+                    ON ai_answer_cache USING hnsw (embedding vector_cosine_ops)""");
+            jdbcTemplate.execute("""
+                    CREATE INDEX IF NOT EXISTS idx_ai_answer_cache_question
+                    ON ai_answer_cache (catalog_fingerprint, normalized_question)""");
+        } catch (Exception e) {
+            log.error("Cannot create ai_answer_cache table, every lookup will be a miss: {}", e.getMessage());
+        }
+    }
+
+    public Lookup lookup(String question) {
+        long startedAt = System.nanoTime();
+        String normalized = normalize(question);
+        if (!enabled || normalized.isEmpty() || normalized.length() > maxQuestionLength) {
+            return new Lookup(null, null, null, null, startedAt);
+        }
+        String currentFingerprint = null;
+        float[] embedding = null;
+        try {
+            currentFingerprint = currentFingerprint();
+            List<Entry> exact = jdbcTemplate.query("""
+                            SELECT id, answer FROM ai_answer_cache
+                            WHERE catalog_fingerprint = ? AND normalized_question = ?
+                            LIMIT 1""",
+                    ENTRY_MAPPER, currentFingerprint, normalized);
+            if (!exact.isEmpty()) {
+                exactHits.increment();
+                return hit(normalized, currentFingerprint, exact.getFirst(), startedAt);
+            }
+
+            embedding = blockingCallMonitor.record("embedding", () -> embeddingModel.embed(normalized));
+            String vector = toVector(embedding);
+            // Lọc fingerprint trong subquery sau khi lấy ứng viên gần nhất từ HNSW index
+            List<Entry> similar = jdbcTemplate.query("""
+                            SELECT id, answer FROM (
+                                SELECT id, answer, catalog_fingerprint, embedding <=> ?::vector AS distance
+                                FROM ai_answer_cache
+                                ORDER BY embedding <=> ?::vector
+                                LIMIT 5
+                            ) nearest
+                            WHERE catalog_fingerprint = ? AND distance <= ?
+                            ORDER BY distance
+                            LIMIT 1""",
+                    ENTRY_MAPPER, vector, vector, currentFingerprint, 1 - similarityThreshold);
+            if (!similar.isEmpty()) {
+                semanticHits.increment();
+                return hit(normalized, currentFingerprint, similar.getFirst(), startedAt);
+            }
+        } catch (Exception e) {
+            errors.increment();
+            log.warn("AI answer cache lookup failed: {}", e.getMessage());
+        }
+        misses.increment();
+        return new Lookup(normalized, embedding, currentFingerprint, null, startedAt);
+    }
+
+    /**
+     * Lưu câu trả lời vừa sinh cho câu hỏi đã miss. Câu trả lời rỗng / catalog đã đổi trong lúc sinh thì bỏ qua.
+     */
+    public void store(Lookup lookup, String answer) {
+        if (lookup == null || lookup.hit() || lookup.normalized() == null) {
+            return;
+        }
+        missNanos.add(System.nanoTime() - lookup.startedAt());
+        timedMisses.increment();
+        if (answer == null || answer.isBlank() || lookup.fingerprint() == null) {
+            return;
+        }
+        try {
+            if (!lookup.fingerprint().equals(currentFingerprint())) {
+                return;
+            }
+            float[] embedding = lookup.embedding() != null ? lookup.embedding()
+                    : blockingCallMonitor.record("embedding", () -> embeddingModel.embed(lookup.normalized()));
+            jdbcTemplate.update("""
+                            INSERT INTO ai_answer_cache (id, normalized_question, embedding, answer, catalog_fingerprint)
+                            VALUES (?, ?, ?::vector, ?, ?)""",
+                    UUID.randomUUID(), lookup.normalized(), toVector(embedding), answer, lookup.fingerprint());
+            stores.increment();
+        } catch (Exception e) {
+            errors.increment();
+            log.warn("AI answer cache store failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Xóa entry hết hạn / vượt max-entries (ít dùng nhất trước)
+     */
+    @Scheduled(fixedDelayString = "${ai.answer-cache.cleanup-interval-ms:600000}")
+    public void cleanup() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int expired = jdbcTemplate.update("DELETE FROM ai_answer_cache WHERE last_hit_at < NOW() - make_interval(secs => ?)",
+                    ttl.toSeconds());
+            int overflow = jdbcTemplate.update("""
+                    DELETE FROM ai_answer_cache WHERE id IN (
+                        SELECT id FROM ai_answer_cache ORDER BY last_hit_at DESC OFFSET ?
+                    )""", maxEntries);
+            invalidated.add(expired + overflow);
+        } catch (Exception e) {
+            log.warn("AI answer cache cleanup failed: {}", e.getMessage());
+        }
+    }
+
+    public int clear() {
+        int deleted = jdbcTemplate.update("DELETE FROM ai_answer_cache");
+        invalidated.add(deleted);
+        return deleted;
+    }
+
+    public Stats getStats() {
+        long entries = 0;
+        try {
+            Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ai_answer_cache", Long.class);
+            entries = count != null ? count : 0;
+        } catch (Exception e) {
+            log.debug("Cannot count ai_answer_cache: {}", e.getMessage());
+        }
+        long exact = exactHits.sum();
+        long semantic = semanticHits.sum();
+        long hits = exact + semantic;
+        long missCount = misses.sum();
+        double hitMeanMs = hits == 0 ? 0 : hitNanos.sum() / 1_000_000.0 / hits;
+        long timed = timedMisses.sum();
+        double missMeanMs = timed == 0 ? 0 : missNanos.sum() / 1_000_000.0 / timed;
+        double hitRate = hits + missCount == 0 ? 0 : (double) hits / (hits + missCount);
+        // Ước lượng: mỗi hit tiết kiệm (thời gian trung bình khi miss - thời gian trung bình khi hit)
+        double saved = hits * Math.max(0, missMeanMs - hitMeanMs);
+        return new Stats(entries, hits, exact, semantic, missCount, stores.sum(), invalidated.sum(), errors.sum(),
+                hitRate, hitMeanMs, missMeanMs, saved);
+    }
+
+    private Lookup hit(String normalized, String currentFingerprint, Entry entry, long startedAt) {
+        hitNanos.add(System.nanoTime() - startedAt);
+        try {
+            jdbcTemplate.update("UPDATE ai_answer_cache SET hits = hits + 1, last_hit_at = NOW() WHERE id = ?",
+                    entry.id());
+        } catch (Exception e) {
+            log.debug("Cannot update ai_answer_cache hit: {}", e.getMessage());
+        }
+        return new Lookup(normalized, null, currentFingerprint, entry.answer(), startedAt);
+    }
+
+    // Tính lại fingerprint khi version snapshot đổi; đổi thật thì xóa entry của fingerprint liền trước.
+    // Không xóa "mọi fingerprint khác": entry sót lại của các fingerprint cũ hơn (xóa lỗi, node khác) không bao giờ
+    // được đọc vì lookup luôn lọc theo fingerprint hiện tại, và sẽ hết hạn qua cleanup() theo TTL
+    private String currentFingerprint() {
+        CatalogSnapshotService.CatalogSnapshot snapshot = catalogSnapshotService.getSnapshot();
+        Fingerprint current = fingerprint.get();
+        if (current != null && current.version() == snapshot.version()) {
+            return current.value();
+        }
+        String value = fingerprint(snapshot);
+        Fingerprint next = new Fingerprint(snapshot.version(), value);
+        if (fingerprint.compareAndSet(current, next) && current != null && !current.value().equals(value)) {
+            try {
+                int deleted = jdbcTemplate.update("DELETE FROM ai_answer_cache WHERE catalog_fingerprint = ?",
+                        current.value());
+                invalidated.add(deleted);
+                log.info("Catalog changed (v{}), invalidated {} cached AI answers", snapshot.version(), deleted);
+            } catch (Exception e) {
+                log.warn("AI answer cache invalidation failed: {}", e.getMessage());
+            }
+        }
+        return value;
+    }
+
+    // Chỉ các trường trợ lý AI dùng để trả lời; rating / số comment đổi không làm mất cache.
+    // Sản phẩm đã theo thứ tự id (TreeMap); version, màu, giá được sort vì query lấy chúng không có ORDER BY
+    // -> cùng catalog luôn ra cùng fingerprint
+    private static String fingerprint(CatalogSnapshotService.CatalogSnapshot snapshot) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (ProductResponse p : snapshot.products().values()) {
+                StringBuilder line = new StringBuilder()
+                        .append(p.getProdId()).append('|')
+                        .append(p.getProdName()).append('|')
+                        .append(p.getProductStatus()).append('|')
+                        .append(p.getProdDescription()).append('|')
+                        .append(p.getProdBrand() != null ? p.getProdBrand().getBrandName() : null).append('|')
+                        .append(sorted(p.getProdVersion())).append('|')
+                        .append(sorted(p.getProdColor()));
+                if (p.getProductPrices() != null) {
+                    p.getProductPrices().stream()
+                            .map(price -> price.getPpPrice() + ":" + price.getPpPriceStatus())
+                            .sorted()
+                            .forEach(price -> line.append('|').append(price));
+                }
+                digest.update(line.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static List<String> sorted(List<String> values) {
+        if (values == null) {
+            return List.of();
+        }
+        return values.stream().sorted(Comparator.nullsFirst(Comparator.naturalOrder())).toList();
+    }
+
+    static String normalize(String question) {
+        if (question == null) {
+            return "";
+        }
+        String text = Normalizer.normalize(question, Normalizer.Form.NFC)
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("\\s+", " ")
+                .trim();
+        return text.replaceAll("[\\s?!.,;:…]+$", "");
+    }
+
+    private static String toVector(float[] embedding) {
+        StringBuilder sb = new StringBuilder(embedding.length * 10).append('[');
+        for (int i = 0; i < embedding.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(embedding[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,228 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chạy các stream trả lời của trợ lý AI (SSE: ChatController, STOMP: AiStreamWebSocketController):
+ * - Tối đa max-per-user stream cùng lúc cho 1 owner (email đăng nhập / IP / STOMP session), max-concurrent cho cả node
+ * - Không giữ thread trong lúc chờ Gemini: token được đẩy cho listener trên thread của HTTP client
+ * - Huỷ stream (client ngắt kết nối, gửi cancel, quá idle-timeout giữa 2 token) -> dispose subscription,
+ *   request lên Gemini bị huỷ theo
+ */
+@Service
+@Slf4j
+public class AiChatStreamService {
+
+    /**
+     * Nhận token của 1 stream. Các method được gọi tuần tự (không đồng thời) nhưng không trên request thread.
+     */
+    public interface StreamListener {
+        void onToken(String token);
+
+        void onComplete();
+
+        void onError(Throwable error);
+    }
+
+    public record Stats(int active, int maxConcurrent, int maxPerUser, long started, long completed, long cancelled,
+                        long failed, long rejected, long tokens, double firstTokenMeanMs, double firstTokenMaxMs) {
+    }
+
+    private final ChatService chatService;
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final int maxPerUser;
+    private final Duration idleTimeout;
+    private final Timer firstTokenTimer;
+
+    private final Map<String, Integer> perOwner = new ConcurrentHashMap<>();
+    private final Map<String, Handle> active = new ConcurrentHashMap<>();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+
+    public AiChatStreamService(ChatService chatService,
+                               MeterRegistry meterRegistry,
+                               @Value("${ai.stream.max-concurrent:200}") int maxConcurrent,
+                               @Value("${ai.stream.max-per-user:2}") int maxPerUser,
+                               @Value("${ai.stream.idle-timeout:60s}") Duration idleTimeout) {
+        this.chatService = chatService;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxPerUser = Math.max(1, maxPerUser);
+        this.permits = new Semaphore(this.maxConcurrent);
+        this.idleTimeout = idleTimeout;
+        this.firstTokenTimer = Timer.builder("ai.stream.first_token")
+                .description("Thời gian từ lúc nhận câu hỏi tới token đầu tiên")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Bắt đầu 1 stream cho owner.
+     *
+     * @param streamId id của stream (duy nhất trong node), null -> tự sinh
+     * @param memoryKey khoá bộ nhớ hội thoại (AiConversationMemoryService.key), null = không nhớ
+     * @return empty nếu owner đã có max-per-user stream đang chạy, node đã đủ max-concurrent hoặc streamId bị trùng
+     */
+    public Optional<Handle> tryStart(String owner, String streamId, String message, String memoryKey,
+                                     StreamListener listener) {
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            return Optional.empty();
+        }
+        boolean[] admitted = {false};
+        perOwner.compute(owner, (key, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= maxPerUser) {
+                return count;
+            }
+            admitted[0] = true;
+            return current + 1;
+        });
+        if (!admitted[0]) {
+            permits.release();
+            rejected.increment();
+            return Optional.empty();
+        }
+
+        Handle handle = new Handle(streamId != null ? streamId : UUID.randomUUID().toString(), owner);
+        if (active.putIfAbsent(handle.id, handle) != null) {
+            perOwner.computeIfPresent(owner, (key, count) -> count <= 1 ? null : count - 1);
+            permits.release();
+            rejected.increment();
+            return Optional.empty();
+        }
+        started.increment();
+        long startedAt = System.nanoTime();
+        AtomicBoolean firstToken = new AtomicBoolean(true);
+        try {
+            handle.subscription = chatService.streamUserInput(message, memoryKey)
+                    .timeout(idleTimeout)
+                    .subscribe(token -> {
+                        if (firstToken.compareAndSet(true, false)) {
+                            firstTokenTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                        }
+                        tokens.increment();
+                        listener.onToken(token);
+                    }, error -> {
+                        if (handle.finish()) {
+                            failed.increment();
+                            log.warn("AI stream {} failed: {}", handle.id, error.toString());
+                            listener.onError(error);
+                        }
+                    }, () -> {
+                        if (handle.finish()) {
+                            completed.increment();
+                            listener.onComplete();
+                        }
+                    });
+        } catch (RuntimeException e) {
+            // Lỗi trước khi subscribe (vd. đồng bộ vector store)
+            if (handle.finish()) {
+                failed.increment();
+            }
+            throw e;
+        }
+        // Client có thể đã huỷ trong lúc đang subscribe
+        if (handle.finished.get() && handle.subscription != null) {
+            handle.subscription.dispose();
+        }
+        return Optional.of(handle);
+    }
+
+    /**
+     * Huỷ stream nếu đúng owner (STOMP cancel), bỏ qua nếu stream đã xong / không tồn tại
+     */
+    public boolean cancel(String streamId, String owner) {
+        Handle handle = active.get(streamId);
+        if (handle == null || !handle.owner.equals(owner)) {
+            return false;
+        }
+        return handle.cancel();
+    }
+
+    /**
+     * Huỷ mọi stream của 1 owner (STOMP session bị đóng)
+     */
+    public int cancelAll(String owner) {
+        int count = 0;
+        for (Handle handle : active.values()) {
+            if (handle.owner.equals(owner) && handle.cancel()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public Stats getStats() {
+        return new Stats(active.size(), maxConcurrent, maxPerUser, started.sum(), completed.sum(), cancelled.sum(),
+                failed.sum(), rejected.sum(), tokens.sum(),
+                firstTokenTimer.mean(TimeUnit.MILLISECONDS), firstTokenTimer.max(TimeUnit.MILLISECONDS));
+    }
+
+    private void release(Handle handle) {
+        active.remove(handle.id, handle);
+        perOwner.computeIfPresent(handle.owner, (key, count) -> count <= 1 ? null : count - 1);
+        permits.release();
+    }
+
+    public final class Handle {
+        private final String id;
+        private final String owner;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile Disposable subscription;
+
+        private Handle(String id, String owner) {
+            this.id = id;
+            this.owner = owner;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        /**
+         * Huỷ stream: dispose subscription (huỷ request lên Gemini) và trả slot
+         *
+         * @return false nếu stream đã kết thúc trước đó
+         */
+        public boolean cancel() {
+            if (!finish()) {
+                return false;
+            }
+            cancelled.increment();
+            Disposable current = subscription;
+            if (current != null) {
+                current.dispose();
+            }
+            return true;
+        }
+
+        // Đánh dấu kết thúc đúng 1 lần và trả slot
+        private boolean finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+            release(this);
+            return true;
+        }
+    }
+}
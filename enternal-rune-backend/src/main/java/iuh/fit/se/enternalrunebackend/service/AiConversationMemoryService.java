@@ -0,0 +1,423 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.AiConversationMemory;
+import iuh.fit.se.enternalrunebackend.util.TextSnippets;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Bộ nhớ hội thoại của trợ lý AI theo phiên chat, lưu ở collection ai_conversation_memories (Mongo của chat hỗ trợ):
+ * - Giữ nguyên văn window-turns lượt gần nhất; khi đã dồn thêm compact-after-turns lượt cũ hơn thì job nền
+ *   nén cả loạt vào 1 đoạn tóm tắt (1 lần gọi Gemini cho nhiều lượt, không phải mỗi lượt 1 lần)
+ * - Giới hạn cứng mỗi phiên: độ dài câu hỏi / câu trả lời / tóm tắt và tối đa max-stored-turns lượt chưa nén
+ *   (job nén chậm thì lượt cũ nhất bị bỏ luôn)
+ * - Tầng in-process: LRU tối đa max-sessions phiên, phiên không hoạt động quá idle-timeout bị bỏ khỏi RAM
+ *   (vẫn còn trong Mongo cho tới khi hết ttl)
+ * Mongo là nguồn chính, RAM chỉ tránh đọc lại cả document mỗi lượt: bản trong RAM được đối chiếu với
+ * (turnCount, summarizedTurns, updatedAt) trong Mongo, lệch (node khác vừa ghi / nén) thì đọc lại.
+ * Lỗi của bộ nhớ chỉ làm trợ lý mất ngữ cảnh, không làm hỏng câu trả lời.
+ */
+@Service
+@Slf4j
+public class AiConversationMemoryService {
+
+    private static final String TTL_INDEX = "updated_at_ttl_idx";
+
+    private static final Pattern SESSION_ID = Pattern.compile("[A-Za-z0-9-]{16,64}");
+
+    private static final String SUMMARY_PROMPT = """
+            Bạn tóm tắt cuộc trò chuyện giữa khách hàng và trợ lý AI của cửa hàng công nghệ ETERNAL RUNE.
+            Giữ lại: nhu cầu, ngân sách, hãng / sản phẩm khách quan tâm hoặc đã loại, thông tin khách đã cung cấp.
+            Bỏ lời chào, lời mời, nội dung lặp lại. Viết tiếng Việt, tối đa 5 gạch đầu dòng ngắn.
+            """;
+
+    /**
+     * Ngữ cảnh hội thoại đưa vào prompt: tóm tắt (có thể null) + các lượt gần nhất, cũ -> mới
+     */
+    public record History(String summary, List<AiConversationMemory.Turn> turns) {
+        public static final History EMPTY = new History(null, List.of());
+
+        public boolean isEmpty() {
+            return summary == null && turns.isEmpty();
+        }
+    }
+
+    public record Stats(boolean enabled, int cachedSessions, int maxSessions, int windowTurns, long loads,
+                        long localHits, long staleReloads, long appends, long compactions, long compactedTurns,
+                        long evictedIdle, long evictedLru, int pendingCompactions, long errors) {
+    }
+
+    private static final class Cached {
+        final AiConversationMemory memory;
+        final long accessedAt;
+
+        Cached(AiConversationMemory memory) {
+            this.memory = memory;
+            this.accessedAt = System.nanoTime();
+        }
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final ChatClient chatClient;
+    private final BlockingCallMonitor blockingCallMonitor;
+    private final boolean enabled;
+    private final int windowTurns;
+    private final int compactAfterTurns;
+    private final int maxStoredTurns;
+    private final int maxQuestionChars;
+    private final int maxAnswerChars;
+    private final int maxSummaryChars;
+    private final int maxSessions;
+    private final Duration idleTimeout;
+    private final Duration ttl;
+    private final int compactionBatch;
+
+    // accessOrder = true: phần tử đầu là phiên lâu nhất không được dùng
+    private final LinkedHashMap<String, Cached> sessions = new LinkedHashMap<>(256, 0.75f, true);
+    private final ReentrantLock sessionsLock = new ReentrantLock();
+    private final Set<String> pendingCompaction = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder staleReloads = new LongAdder();
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder compactedTurns = new LongAdder();
+    private final LongAdder evictedIdle = new LongAdder();
+    private final LongAdder evictedLru = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    public AiConversationMemoryService(MongoTemplate mongoTemplate,
+                                       ChatClient.Builder chatClientBuilder,
+                                       BlockingCallMonitor blockingCallMonitor,
+                                       @Value("${ai.memory.enabled:true}") boolean enabled,
+                                       @Value("${ai.memory.window-turns:4}") int windowTurns,
+                                       @Value("${ai.memory.compact-after-turns:4}") int compactAfterTurns,
+                                       @Value("${ai.memory.max-stored-turns:12}") int maxStoredTurns,
+                                       @Value("${ai.memory.max-question-chars:500}") int maxQuestionChars,
+                                       @Value("${ai.memory.max-answer-chars:1200}") int maxAnswerChars,
+                                       @Value("${ai.memory.max-summary-chars:1000}") int maxSummaryChars,
+                                       @Value("${ai.memory.max-sessions:10000}") int maxSessions,
+                                       @Value("${ai.memory.idle-timeout:30m}") Duration idleTimeout,
+                                       @Value("${ai.memory.ttl:7d}") Duration ttl,
+                                       @Value("${ai.memory.compaction-batch:20}") int compactionBatch) {
+        this.mongoTemplate = mongoTemplate;
+        this.chatClient = chatClientBuilder.build();
+        this.blockingCallMonitor = blockingCallMonitor;
+        this.enabled = enabled;
+        this.windowTurns = Math.max(1, windowTurns);
+        this.compactAfterTurns = Math.max(1, compactAfterTurns);
+        // $slice không được cắt mất lượt trước khi đủ loạt để nén
+        this.maxStoredTurns = Math.max(this.windowTurns + this.compactAfterTurns, maxStoredTurns);
+        this.maxQuestionChars = maxQuestionChars;
+        this.maxAnswerChars = maxAnswerChars;
+        this.maxSummaryChars = maxSummaryChars;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.idleTimeout = idleTimeout;
+        this.ttl = ttl;
+        this.compactionBatch = Math.max(1, compactionBatch);
+    }
+
+    // auto-index-creation mặc định tắt nên tự tạo index khi khởi động (đã có thì Mongo bỏ qua)
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            mongoTemplate.indexOps(AiConversationMemory.class).ensureIndex(new Index()
+                    .on("updatedAt", Sort.Direction.ASC)
+                    .expire(ttl)
+                    .named(TTL_INDEX));
+        } catch (Exception e) {
+            log.warn("Không tạo được index {} cho ai_conversation_memories: {}", TTL_INDEX, e.getMessage());
+        }
+    }
+
+    /**
+     * Khoá bộ nhớ của 1 phiên. sessionId do client sinh (UUID, giữ trong sessionStorage); user đăng nhập thì
+     * gắn thêm username để phiên không dùng chung được giữa 2 tài khoản.
+     *
+     * @param username null với khách vãng lai
+     * @return null nếu không có / sai định dạng sessionId (trả lời không dùng bộ nhớ)
+     */
+    public String key(String username, String sessionId) {
+        if (!enabled || sessionId == null || !SESSION_ID.matcher(sessionId).matches()) {
+            return null;
+        }
+        String owner = username != null ? "user:" + username : "anonymous";
+        return sha256(owner + "/" + sessionId);
+    }
+
+    public History load(String key) {
+        if (key == null) {
+            return History.EMPTY;
+        }
+        try {
+            AiConversationMemory memory = cached(key);
+            if (memory != null) {
+                AiConversationMemory head = blockingCallMonitor.record("ai-memory", () -> findHead(key));
+                if (head == null) {
+                    // Hết ttl / bị xóa trong Mongo
+                    drop(key);
+                    return History.EMPTY;
+                }
+                if (isCurrent(memory, head)) {
+                    localHits.increment();
+                } else {
+                    staleReloads.increment();
+                    memory = null;
+                }
+            }
+            if (memory == null) {
+                loads.increment();
+                memory = blockingCallMonitor.record("ai-memory", () -> mongoTemplate.findById(key,
+                        AiConversationMemory.class));
+                if (memory == null) {
+                    return History.EMPTY;
+                }
+                cache(key, memory);
+            }
+            List<AiConversationMemory.Turn> turns = memory.getTurns() != null ? memory.getTurns() : List.of();
+            // Lượt chưa kịp nén vẫn nằm trong turns, chỉ đưa window-turns lượt mới nhất vào prompt
+            if (turns.size() > windowTurns) {
+                turns = turns.subList(turns.size() - windowTurns, turns.size());
+            }
+            return new History(memory.getSummary(), List.copyOf(turns));
+        } catch (Exception e) {
+            errors.increment();
+            log.warn("Không đọc được bộ nhớ hội thoại AI: {}", e.getMessage());
+            return History.EMPTY;
+        }
+    }
+
+    /**
+     * Ghi 1 lượt hỏi / đáp đã hoàn tất (stream bị huỷ / lỗi thì không ghi)
+     */
+    public void append(String key, String question, String answer) {
+        if (key == null || answer == null || answer.isBlank()) {
+            return;
+        }
+        Instant now = Instant.now();
+        AiConversationMemory.Turn turn = new AiConversationMemory.Turn(UUID.randomUUID().toString(),
+                TextSnippets.snippet(question, maxQuestionChars), TextSnippets.snippet(answer, maxAnswerChars), now);
+        Update update = new Update()
+                .inc("turnCount", 1)
+                .set("updatedAt", now)
+                .setOnInsert("createdAt", now);
+        // $slice: chỉ giữ max-stored-turns lượt mới nhất dù job nén chưa chạy kịp
+        update.push("turns").slice(-maxStoredTurns).each(turn);
+        try {
+            AiConversationMemory memory = blockingCallMonitor.record("ai-memory", () -> mongoTemplate.findAndModify(
+                    Query.query(Criteria.where("_id").is(key)),
+                    update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    AiConversationMemory.class));
+            appends.increment();
+            if (memory == null) {
+                return;
+            }
+            cache(key, memory);
+            if (needsCompaction(memory)) {
+                pendingCompaction.add(key);
+            }
+        } catch (Exception e) {
+            errors.increment();
+            log.warn("Không ghi được bộ nhớ hội thoại AI: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Nén các lượt cũ hơn window-turns vào summary. Chỉ chạy cho phiên vừa có lượt mới trên node này;
+     * node chết trước khi nén thì lượt kế tiếp của phiên sẽ đưa nó vào hàng đợi lại.
+     */
+    @Scheduled(fixedDelayString = "${ai.memory.compaction-interval-ms:15000}")
+    public void compact() {
+        if (!enabled || pendingCompaction.isEmpty()) {
+            return;
+        }
+        Iterator<String> iterator = pendingCompaction.iterator();
+        for (int i = 0; i < compactionBatch && iterator.hasNext(); i++) {
+            String key = iterator.next();
+            iterator.remove();
+            try {
+                compact(key);
+            } catch (Exception e) {
+                errors.increment();
+                log.warn("Nén bộ nhớ hội thoại AI thất bại: {}", e.toString());
+            }
+        }
+    }
+
+    private void compact(String key) {
+        AiConversationMemory memory = mongoTemplate.findById(key, AiConversationMemory.class);
+        if (memory == null || !needsCompaction(memory)) {
+            return;
+        }
+        List<AiConversationMemory.Turn> old = memory.getTurns().subList(0, memory.getTurns().size() - windowTurns);
+        StringBuilder transcript = new StringBuilder();
+        if (memory.getSummary() != null) {
+            transcript.append("Tóm tắt trước đó:\n").append(memory.getSummary()).append("\n\n");
+        }
+        transcript.append("Các lượt tiếp theo:\n");
+        for (AiConversationMemory.Turn turn : old) {
+            transcript.append("Khách: ").append(turn.getQuestion()).append('\n')
+                    .append("Trợ lý: ").append(turn.getAnswer()).append('\n');
+        }
+        String summary = blockingCallMonitor.record("gemini-summary", () -> chatClient.prompt()
+                .system(SUMMARY_PROMPT)
+                .user(transcript.toString())
+                .call()
+                .content());
+        if (summary == null || summary.isBlank()) {
+            return;
+        }
+
+        List<String> ids = old.stream().map(AiConversationMemory.Turn::getTurnId).collect(Collectors.toList());
+        // summarizedTurns khớp lúc đọc: node khác đã nén cùng lúc thì bỏ kết quả này, không ghi đè summary mới hơn
+        Query query = Query.query(Criteria.where("_id").is(key).and("summarizedTurns").is(memory.getSummarizedTurns()));
+        Update update = new Update()
+                .set("summary", TextSnippets.snippet(summary, maxSummaryChars))
+                .inc("summarizedTurns", ids.size())
+                .pull("turns", new Document("turnId", new Document("$in", ids)));
+        AiConversationMemory updated = mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), AiConversationMemory.class);
+        if (updated == null) {
+            return;
+        }
+        compactions.increment();
+        compactedTurns.add(ids.size());
+        sessionsLock.lock();
+        try {
+            // Chỉ làm mới khi phiên còn trong RAM, không kéo phiên đã bị bỏ vào lại
+            if (sessions.containsKey(key)) {
+                sessions.put(key, new Cached(updated));
+            }
+        } finally {
+            sessionsLock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ai.memory.eviction-interval-ms:60000}")
+    public void evictIdle() {
+        long cutoff = System.nanoTime() - idleTimeout.toNanos();
+        sessionsLock.lock();
+        try {
+            Iterator<Cached> iterator = sessions.values().iterator();
+            // Thứ tự truy cập: gặp phiên còn hoạt động thì các phiên sau cũng vậy
+            while (iterator.hasNext()) {
+                if (iterator.next().accessedAt - cutoff > 0) {
+                    break;
+                }
+                iterator.remove();
+                evictedIdle.increment();
+            }
+        } finally {
+            sessionsLock.unlock();
+        }
+    }
+
+    public Stats getStats() {
+        int cachedSessions;
+        sessionsLock.lock();
+        try {
+            cachedSessions = sessions.size();
+        } finally {
+            sessionsLock.unlock();
+        }
+        return new Stats(enabled, cachedSessions, maxSessions, windowTurns, loads.sum(), localHits.sum(),
+                staleReloads.sum(), appends.sum(), compactions.sum(), compactedTurns.sum(), evictedIdle.sum(),
+                evictedLru.sum(), pendingCompaction.size(), errors.sum());
+    }
+
+    // Chỉ đọc các trường đổi sau mỗi lần ghi / nén, không kéo turns / summary về
+    private AiConversationMemory findHead(String key) {
+        Query query = Query.query(Criteria.where("_id").is(key));
+        query.fields().include("turnCount", "summarizedTurns", "updatedAt");
+        return mongoTemplate.findOne(query, AiConversationMemory.class);
+    }
+
+    private static boolean isCurrent(AiConversationMemory cached, AiConversationMemory head) {
+        return Objects.equals(cached.getTurnCount(), head.getTurnCount())
+                && Objects.equals(cached.getSummarizedTurns(), head.getSummarizedTurns())
+                && Objects.equals(cached.getUpdatedAt(), head.getUpdatedAt());
+    }
+
+    // Còn dưới compact-after-turns lượt vượt window thì chờ thêm, tránh gọi Gemini tóm tắt sau mỗi lượt
+    private boolean needsCompaction(AiConversationMemory memory) {
+        return memory.getTurns() != null && memory.getTurns().size() >= windowTurns + compactAfterTurns;
+    }
+
+    private void drop(String key) {
+        sessionsLock.lock();
+        try {
+            sessions.remove(key);
+        } finally {
+            sessionsLock.unlock();
+        }
+    }
+
+    private AiConversationMemory cached(String key) {
+        sessionsLock.lock();
+        try {
+            Cached cached = sessions.get(key);
+            if (cached == null) {
+                return null;
+            }
+            // Làm mới thời điểm truy cập cho evictIdle
+            sessions.put(key, new Cached(cached.memory));
+            return cached.memory;
+        } finally {
+            sessionsLock.unlock();
+        }
+    }
+
+    private void cache(String key, AiConversationMemory memory) {
+        sessionsLock.lock();
+        try {
+            sessions.put(key, new Cached(memory));
+            while (sessions.size() > maxSessions) {
+                Iterator<String> eldest = sessions.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictedLru.increment();
+            }
+        } finally {
+            sessionsLock.unlock();
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
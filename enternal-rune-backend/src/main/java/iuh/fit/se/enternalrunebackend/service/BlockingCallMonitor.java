@@ -0,0 +1,110 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Đo các lời gọi block lâu ra hệ thống ngoài (Gemini, Cloudinary, SMTP, SePay):
+ * thời gian, số lời gọi đang chạy đồng thời, chạy trên virtual hay platform thread.
+ * Metric "blocking.calls" (tag call, thread) + thống kê tại GET /api/admin/runtime/threads.
+ */
+@Component
+public class BlockingCallMonitor {
+
+    public record CallStats(String call, long count, long failures, int inFlight, int maxInFlight,
+                            long onVirtualThreads, double meanMs, double maxMs) {
+    }
+
+    @FunctionalInterface
+    public interface BlockingCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counters> calls = new ConcurrentHashMap<>();
+
+    public BlockingCallMonitor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Chạy body và ghi nhận thời gian dưới tên call. Exception của body được ném lại nguyên vẹn.
+     */
+    public <T, E extends Exception> T record(String call, BlockingCall<T, E> body) throws E {
+        Counters counters = calls.computeIfAbsent(call, Counters::new);
+        boolean virtual = Thread.currentThread().isVirtual();
+        int running = counters.inFlight.incrementAndGet();
+        counters.maxInFlight.accumulateAndGet(running, Math::max);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = body.call();
+            failed = false;
+            return result;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            counters.inFlight.decrementAndGet();
+            counters.count.increment();
+            counters.totalNanos.add(elapsed);
+            counters.maxNanos.accumulateAndGet(elapsed, Math::max);
+            if (virtual) {
+                counters.onVirtual.increment();
+            }
+            if (failed) {
+                counters.failures.increment();
+            }
+            (virtual ? counters.virtualTimer : counters.platformTimer).record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public List<CallStats> getStats() {
+        return calls.values().stream()
+                .map(Counters::snapshot)
+                .sorted(Comparator.comparing(CallStats::call))
+                .toList();
+    }
+
+    private final class Counters {
+        private final String call;
+        private final Timer virtualTimer;
+        private final Timer platformTimer;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder onVirtual = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        private Counters(String call) {
+            this.call = call;
+            this.virtualTimer = timer(call, "virtual");
+            this.platformTimer = timer(call, "platform");
+        }
+
+        private Timer timer(String call, String thread) {
+            return Timer.builder("blocking.calls")
+                    .description("Lời gọi block ra hệ thống ngoài")
+                    .tag("call", call)
+                    .tag("thread", thread)
+                    .register(meterRegistry);
+        }
+
+        private CallStats snapshot() {
+            long n = count.sum();
+            double meanMs = n == 0 ? 0 : totalNanos.sum() / (double) n / 1_000_000;
+            return new CallStats(call, n, failures.sum(), inFlight.get(), maxInFlight.get(), onVirtual.sum(),
+                    meanMs, maxNanos.get() / 1_000_000.0);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.config.BoundedCache;
+import iuh.fit.se.enternalrunebackend.config.CacheConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Hook xóa cache khi dữ liệu thay đổi. Gọi từ các service ghi dữ liệu;
+ * cache chỉ bị xóa sau khi transaction commit để request đọc song song không nạp lại dữ liệu cũ.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CacheInvalidationService {
+
+    private final CacheManager cacheManager;
+
+    // Tạo / hủy / cập nhật trạng thái đơn hàng
+    public void onOrderChanged() {
+        evictAfterCommit(CacheConfig.DASHBOARD_CACHE);
+    }
+
+    // Thanh toán / hoàn tiền
+    public void onPaymentChanged() {
+        evictAfterCommit(CacheConfig.DASHBOARD_CACHE);
+    }
+
+    // Thêm / sửa / xóa sản phẩm hoặc giá
+    public void onProductChanged() {
+        evictAfterCommit(CacheConfig.CATALOG_CACHE, CacheConfig.DASHBOARD_CACHE);
+    }
+
+    public void onBrandChanged() {
+        evictAfterCommit(CacheConfig.BRAND_CACHE, CacheConfig.CATALOG_CACHE, CacheConfig.DASHBOARD_CACHE);
+    }
+
+    // Thêm / đổi trạng thái / xóa comment có rating, rebuild aggregate: catalog trả kèm điểm đánh giá
+    public void onRatingChanged() {
+        evictAfterCommit(CacheConfig.CATALOG_CACHE);
+    }
+
+    // Thêm / sửa / xóa discount: catalog trả kèm giá sau giảm
+    public void onDiscountChanged() {
+        evictAfterCommit(CacheConfig.CATALOG_CACHE);
+    }
+
+    public List<BoundedCache.Stats> getStats() {
+        return cacheManager.getCacheNames().stream()
+                .map(cacheManager::getCache)
+                .filter(Objects::nonNull)
+                .map(Cache::getNativeCache)
+                .filter(BoundedCache.class::isInstance)
+                .map(cache -> ((BoundedCache) cache).getStats())
+                .toList();
+    }
+
+    /**
+     * @return false nếu không có cache tên này
+     */
+    public boolean clear(String cacheName) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null) {
+            return false;
+        }
+        cache.invalidate();
+        log.info("Cache {} cleared manually", cacheName);
+        return true;
+    }
+
+    private void evictAfterCommit(String... cacheNames) {
+        Runnable action = () -> {
+            for (String cacheName : cacheNames) {
+                Cache cache = cacheManager.getCache(cacheName);
+                if (cache != null) {
+                    cache.invalidate();
+                }
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.dto.response.BrandResponse;
+import iuh.fit.se.enternalrunebackend.dto.response.ImageResponse;
+import iuh.fit.se.enternalrunebackend.dto.response.ProductPriceResponse;
+import iuh.fit.se.enternalrunebackend.dto.response.ProductResponse;
+import iuh.fit.se.enternalrunebackend.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Bản sao in-memory (immutable, có version) của toàn bộ sản phẩm đang có giá ACTIVE.
+ * /products/active-price đọc trực tiếp từ snapshot -> không query DB.
+ * Các thao tác ghi (add/update/delete product, sửa giá) chỉ nạp lại đúng sản phẩm bị ảnh hưởng;
+ * sửa brand / discount (tên brand, tên discount nằm trong nhiều sản phẩm) thì nạp lại toàn bộ.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CatalogSnapshotService {
+
+    private final ProductRepository productRepository;
+
+    // ReentrantLock thay vì synchronized: giữ lock trong lúc query DB không ghim virtual thread vào carrier
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile CatalogSnapshot snapshot;
+
+    /**
+     * Snapshot bất biến của catalog. Các ProductResponse bên trong được dùng chung giữa các request,
+     * caller không được chỉnh sửa (cần trả ra ngoài / sửa thì dùng getProducts(), trả về bản sao).
+     */
+    public record CatalogSnapshot(long version, Map<Integer, ProductResponse> products) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("Catalog snapshot warm-up failed, will load lazily: {}", e.getMessage());
+        }
+    }
+
+    public CatalogSnapshot getSnapshot() {
+        CatalogSnapshot current = snapshot;
+        if (current == null) {
+            writeLock.lock();
+            try {
+                current = snapshot;
+                if (current == null) {
+                    current = publish(0, loadProducts(null));
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Bản sao của các sản phẩm trong snapshot, caller sửa thoải mái không ảnh hưởng snapshot
+     */
+    public List<ProductResponse> getProducts() {
+        return getSnapshot().products().values().stream()
+                .map(CatalogSnapshotService::copyOf)
+                .toList();
+    }
+
+    public long getVersion() {
+        return getSnapshot().version();
+    }
+
+    /**
+     * Nạp lại toàn bộ catalog (dùng khi khởi động hoặc khi cần đồng bộ lại từ đầu)
+     */
+    public void reload() {
+        writeLock.lock();
+        try {
+            CatalogSnapshot current = snapshot;
+            publish(current == null ? 0 : current.version() + 1, loadProducts(null));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Nạp lại toàn bộ catalog sau khi transaction hiện tại commit (sửa brand / discount)
+     */
+    public void reloadAfterCommit() {
+        afterCommit(this::reload);
+    }
+
+    /**
+     * Nạp lại một sản phẩm sau khi transaction hiện tại commit (hoặc ngay lập tức nếu không có transaction).
+     * Sản phẩm không còn tồn tại / không còn giá ACTIVE sẽ bị loại khỏi snapshot.
+     */
+    public void refreshProduct(Integer productId) {
+        if (productId == null) {
+            return;
+        }
+        afterCommit(() -> applyRefresh(productId));
+    }
+
+    public void removeProduct(Integer productId) {
+        if (productId == null) {
+            return;
+        }
+        afterCommit(() -> applyChange(productId, null));
+    }
+
+    private void applyRefresh(Integer productId) {
+        writeLock.lock();
+        try {
+            if (snapshot == null) {
+                // Chưa nạp lần nào -> lần đọc đầu tiên sẽ nạp toàn bộ
+                return;
+            }
+            Map<Integer, ProductResponse> loaded = loadProducts(List.of(productId));
+            applyChange(productId, loaded.get(productId));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void applyChange(Integer productId, ProductResponse product) {
+        writeLock.lock();
+        try {
+            CatalogSnapshot current = snapshot;
+            if (current == null) {
+                return;
+            }
+            if (product == null && !current.products().containsKey(productId)) {
+                return;
+            }
+            Map<Integer, ProductResponse> next = new TreeMap<>(current.products());
+            if (product == null) {
+                next.remove(productId);
+            } else {
+                next.put(productId, product);
+            }
+            publish(current.version() + 1, next);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private CatalogSnapshot publish(long version, Map<Integer, ProductResponse> products) {
+        CatalogSnapshot next = new CatalogSnapshot(version, Collections.unmodifiableMap(new TreeMap<>(products)));
+        snapshot = next;
+        log.debug("Catalog snapshot v{} published with {} products", version, products.size());
+        return next;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Load sản phẩm có giá ACTIVE kèm brand, images, prices, versions, colors (4 query cho cả lô).
+     *
+     * @param ids danh sách ID cần nạp, null = toàn bộ catalog
+     */
+    private Map<Integer, ProductResponse> loadProducts(List<Integer> ids) {
+        // Step 1: Query only basic product info + brand (1 query)
+        List<Object[]> productData = ids == null
+                ? productRepository.findProductSummaryWithActivePrice()
+                : productRepository.findProductSummaryWithActivePriceByIds(ids);
+
+        if (productData.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        List<Integer> productIds = productData.stream()
+                .map(row -> (Integer) row[0])
+                .distinct()
+                .toList();
+
+        // Step 2: Get images (1 query) - native query returns raw types
+        Map<Integer, List<ImageResponse>> imagesMap = new HashMap<>();
+        for (Object[] row : productRepository.findImagesByProductIds(productIds)) {
+            Integer prodId = ((Number) row[0]).intValue();
+            Integer imageId = ((Number) row[1]).intValue();
+            ImageResponse img = new ImageResponse(imageId, (String) row[2], (String) row[3]);
+            imagesMap.computeIfAbsent(prodId, k -> new ArrayList<>()).add(img);
+        }
+
+        // Step 3: Get active prices (1 query) - native query
+        Map<Integer, List<ProductPriceResponse>> pricesMap = new HashMap<>();
+        for (Object[] row : productRepository.findActivePricesByProductIds(productIds)) {
+            Integer prodId = ((Number) row[0]).intValue();
+            Integer ppId = ((Number) row[1]).intValue();
+            Integer ppPrice = ((Number) row[2]).intValue();
+            String ppPriceStatus = row[3] != null ? row[3].toString() : null;
+            LocalDate ppStartDate = row[4] != null ? ((java.sql.Date) row[4]).toLocalDate() : null;
+            LocalDate ppEndDate = row[5] != null ? ((java.sql.Date) row[5]).toLocalDate() : null;
+            Integer discountId = row[6] != null ? ((Number) row[6]).intValue() : null;
+            String discountName = (String) row[7];
+
+            ProductPriceResponse price = new ProductPriceResponse(
+                    ppId, ppPrice, ppPriceStatus, ppStartDate, ppEndDate, discountId, discountName
+            );
+            pricesMap.computeIfAbsent(prodId, k -> new ArrayList<>()).add(price);
+        }
+
+        // Step 4: Get versions and colors (1 query) - ElementCollection có thể trả về 1 dòng / phần tử
+        Map<Integer, Set<String>> versionsMap = new HashMap<>();
+        Map<Integer, Set<String>> colorsMap = new HashMap<>();
+        for (Object[] row : productRepository.findVersionsAndColorsByProductIds(productIds)) {
+            Integer prodId = (Integer) row[0];
+            collect(versionsMap.computeIfAbsent(prodId, k -> new LinkedHashSet<>()), row[1]);
+            collect(colorsMap.computeIfAbsent(prodId, k -> new LinkedHashSet<>()), row[2]);
+        }
+
+        // Step 5: Build ProductResponse objects
+        Map<Integer, ProductResponse> responses = new TreeMap<>();
+        for (Object[] row : productData) {
+            Integer prodId = (Integer) row[0];
+
+            ProductResponse response = new ProductResponse();
+            response.setProdId(prodId);
+            response.setProdName((String) row[1]);
+            response.setProdModel((String) row[2]);
+            response.setProductStatus(row[3] != null ? row[3].toString() : null);
+            response.setProdDescription((String) row[4]);
+            response.setProdRating(row[5] != null ? (Double) row[5] : 0.0);
+            response.setProdBrand(new BrandResponse((Integer) row[6], (String) row[7]));
+            response.setImages(List.copyOf(imagesMap.getOrDefault(prodId, Collections.emptyList())));
+            response.setProductPrices(List.copyOf(pricesMap.getOrDefault(prodId, Collections.emptyList())));
+            response.setProdVersion(List.copyOf(versionsMap.getOrDefault(prodId, Collections.emptySet())));
+            response.setProdColor(List.copyOf(colorsMap.getOrDefault(prodId, Collections.emptySet())));
+
+            // No specs, no rating stats for list view
+            response.setProdSpecs(null);
+            response.setTotalComments(null);
+            response.setAverageRating(null);
+            response.setRatingDistribution(null);
+
+            responses.put(prodId, response);
+        }
+        return responses;
+    }
+
+    private static ProductResponse copyOf(ProductResponse p) {
+        return new ProductResponse(
+                p.getProdId(),
+                p.getProdName(),
+                p.getProdModel(),
+                p.getProductStatus(),
+                p.getProdVersion() != null ? new ArrayList<>(p.getProdVersion()) : null,
+                p.getProdColor() != null ? new ArrayList<>(p.getProdColor()) : null,
+                p.getProdDescription(),
+                p.getProdRating(),
+                p.getProdBrand() != null
+                        ? new BrandResponse(p.getProdBrand().getBrandId(), p.getProdBrand().getBrandName())
+                        : null,
+                p.getImages() != null
+                        ? p.getImages().stream()
+                        .map(img -> new ImageResponse(img.getImageId(), img.getImageName(), img.getImageData()))
+                        .collect(Collectors.toCollection(ArrayList::new))
+                        : null,
+                p.getProductPrices() != null
+                        ? p.getProductPrices().stream()
+                        .map(pp -> new ProductPriceResponse(pp.getPpId(), pp.getPpPrice(), pp.getPpPriceStatus(),
+                                pp.getPpStartDate(), pp.getPpEndDate(), pp.getDiscountId(), pp.getDiscountName()))
+                        .collect(Collectors.toCollection(ArrayList::new))
+                        : null,
+                null,
+                p.getTotalComments(),
+                p.getAverageRating(),
+                p.getRatingDistribution() != null ? new HashMap<>(p.getRatingDistribution()) : null);
+    }
+
+    private static void collect(Set<String> target, Object value) {
+        if (value instanceof Collection<?> values) {
+            values.forEach(v -> {
+                if (v != null) target.add(v.toString());
+            });
+        } else if (value != null) {
+            target.add(value.toString());
+        }
+    }
+}
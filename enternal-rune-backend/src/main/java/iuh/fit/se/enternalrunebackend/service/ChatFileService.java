@@ -1,35 +1,31 @@
 package iuh.fit.se.enternalrunebackend.service;
 
-import com.cloudinary.Cloudinary;
-import com.cloudinary.utils.ObjectUtils;
 import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.Message;
 import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.Role;
-import iuh.fit.se.enternalrunebackend.repository.repositoriesForAssistanceChat.MessageRepository;
+import iuh.fit.se.enternalrunebackend.service.storage.ImageStorage;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.time.Instant;
-import java.util.Map;
+import java.util.List;
 
 @Service
 public class ChatFileService {
 
-    private final Cloudinary cloudinaryForAssistanceChat;
-    private final MessageRepository messageRepository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final ImageStorage chatImageStorage;
+    private final ImageUploadPipeline imageUploadPipeline;
+    private final ChatIngestionPipeline chatIngestionPipeline;
 
     // Constructor injection với @Qualifier để chỉ định bean cụ thể
     public ChatFileService(
-            @Qualifier("cloudinaryForAssistanceChat") Cloudinary cloudinaryForAssistanceChat,
-            MessageRepository messageRepository,
-            SimpMessagingTemplate messagingTemplate
+            @Qualifier("chatImageStorage") ImageStorage chatImageStorage,
+            ImageUploadPipeline imageUploadPipeline,
+            ChatIngestionPipeline chatIngestionPipeline
     ) {
-        this.cloudinaryForAssistanceChat = cloudinaryForAssistanceChat;
-        this.messageRepository = messageRepository;
-        this.messagingTemplate = messagingTemplate;
+        this.chatImageStorage = chatImageStorage;
+        this.imageUploadPipeline = imageUploadPipeline;
+        this.chatIngestionPipeline = chatIngestionPipeline;
     }
 
     public Message uploadImageAndBroadcast(
@@ -40,16 +36,17 @@ public class ChatFileService {
             MultipartFile file
     ) throws IOException {
 
-        // 1. Upload file lên Cloudinary (sử dụng cloudinary riêng cho assistance chat)
-        Map uploadResult = cloudinaryForAssistanceChat.uploader().upload(
-                file.getBytes(),
-                ObjectUtils.asMap(
-                        "folder", "chat-images/" + conversationId,
-                        "resource_type", "image"
-                )
-        );
+        // 1. Upload file lên storage riêng cho assistance chat (stream từ file tạm, có deadline)
+        ImageUploadPipeline.Result result = imageUploadPipeline.uploadAll(
+                List.of(file), chatImageStorage, "chat-images/" + conversationId);
+        if (result.uploads().isEmpty()) {
+            throw new IOException("File is empty");
+        }
+        if (!result.allSucceeded()) {
+            throw new IOException("Failed to upload image: " + result.failureSummary());
+        }
 
-        String imageUrl = (String) uploadResult.get("secure_url");
+        String imageUrl = result.uploads().get(0).image().url();
 
         // 2. Tạo Message kiểu IMAGE
         Message message = new Message();
@@ -59,14 +56,8 @@ public class ChatFileService {
         message.setContent(caption); // có thể null nếu không có caption
         message.setType("IMAGE");
         message.setFileUrl(imageUrl);
-        message.setCreatedAt(Instant.now());
 
-        Message saved = messageRepository.save(message);
-
-        // 3. Broadcast qua WebSocket
-        String destination = "/topic/conversations/" + conversationId;
-        messagingTemplate.convertAndSend(destination, saved);
-
-        return saved;
+        // 3. Broadcast qua WebSocket, lưu DB theo batch (id + createdAt được gán ở đây)
+        return chatIngestionPipeline.submit(message);
     }
 }
@@ -0,0 +1,208 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.dto.assistanceChat.ChatMessageView;
+import iuh.fit.se.enternalrunebackend.dto.response.CursorPageResponse;
+import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.Message;
+import iuh.fit.se.enternalrunebackend.util.CursorCodec;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lịch sử chat theo keyset pagination trên (createdAt, id):
+ * - getHistory: trang mới nhất, rồi lùi dần về tin cũ hơn bằng nextCursor
+ * - getSince: các tin sau 1 cursor / 1 message id, dùng khi client reconnect để lấy phần bị lỡ
+ * Mỗi trang chỉ đọc các field cần hiển thị và dùng index (conversationId, createdAt, _id);
+ * tin còn trong ring của ChatIngestionPipeline được gộp vào để không thiếu tin chưa ghi xong xuống DB.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChatHistoryService {
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final String MESSAGE_CURSOR = "msg";
+    private static final String HISTORY_INDEX = "conversation_created_idx";
+
+    private final MongoTemplate mongoTemplate;
+    private final ChatIngestionPipeline chatIngestionPipeline;
+
+    // auto-index-creation mặc định tắt nên tự tạo index khi khởi động (đã có thì Mongo bỏ qua)
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        try {
+            mongoTemplate.indexOps(Message.class).ensureIndex(new Index()
+                    .on("conversationId", Sort.Direction.ASC)
+                    .on("createdAt", Sort.Direction.ASC)
+                    .on("_id", Sort.Direction.ASC)
+                    .named(HISTORY_INDEX));
+        } catch (Exception e) {
+            log.warn("Không tạo được index {} cho messages: {}", HISTORY_INDEX, e.getMessage());
+        }
+    }
+
+    /**
+     * @param cursor null -> trang mới nhất; nextCursor của trang trước -> các tin cũ hơn
+     * @return tin nhắn trong trang theo thứ tự thời gian tăng dần
+     */
+    public CursorPageResponse<ChatMessageView> getHistory(String conversationId, String cursor, int size) {
+        Criteria criteria = Criteria.where("conversationId").is(conversationId);
+        if (cursor != null && !cursor.isBlank()) {
+            Position position = decode(cursor);
+            criteria = criteria.orOperator(
+                    Criteria.where("createdAt").lt(position.createdAt()),
+                    Criteria.where("createdAt").is(position.createdAt()).and("_id").lt(position.id()));
+        }
+        Query query = slimQuery(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "createdAt").and(Sort.by(Sort.Direction.DESC, "_id")))
+                .limit(size + 1);
+
+        List<Message> messages = mongoTemplate.find(query, Message.class);
+        if (cursor == null || cursor.isBlank()) {
+            // Trang đầu: gộp các tin mới nhất có thể chưa được ghi xong xuống DB
+            messages = merge(messages, chatIngestionPipeline.recent(conversationId), true, size + 1);
+        } else {
+            messages = new ArrayList<>(messages);
+        }
+        boolean hasNext = messages.size() > size;
+        if (hasNext) {
+            messages = messages.subList(0, size);
+        }
+        // Cursor trỏ vào tin cũ nhất của trang để lần sau lấy tiếp về phía trước
+        String nextCursor = hasNext ? encode(messages.get(messages.size() - 1)) : null;
+        Collections.reverse(messages);
+        return toPage(messages, size, hasNext, nextCursor);
+    }
+
+    /**
+     * Các tin nhắn mới hơn vị trí đã biết, theo thứ tự tăng dần.
+     * Truyền cursor (nextCursor của lần gọi getSince trước) hoặc afterMessageId (tin cuối client đang có).
+     */
+    public CursorPageResponse<ChatMessageView> getSince(String conversationId, String cursor, String afterMessageId,
+                                                        int size) {
+        Position position;
+        if (cursor != null && !cursor.isBlank()) {
+            position = decode(cursor);
+        } else if (afterMessageId != null && !afterMessageId.isBlank()) {
+            position = positionOf(conversationId, afterMessageId);
+        } else {
+            throw new IllegalArgumentException("Cần truyền cursor hoặc afterMessageId");
+        }
+
+        // Reconnect ngay sau khi rớt mạng: phần bị lỡ thường vẫn nằm trong ring -> không cần đọc DB
+        ChatIngestionPipeline.RecentSlice recent =
+                chatIngestionPipeline.recentAfter(conversationId, position.createdAt(), position.id());
+        List<Message> messages;
+        if (recent.complete()) {
+            messages = recent.messages();
+        } else {
+            Criteria criteria = Criteria.where("conversationId").is(conversationId).orOperator(
+                    Criteria.where("createdAt").gt(position.createdAt()),
+                    Criteria.where("createdAt").is(position.createdAt()).and("_id").gt(position.id()));
+            Query query = slimQuery(criteria)
+                    .with(Sort.by(Sort.Direction.ASC, "createdAt").and(Sort.by(Sort.Direction.ASC, "_id")))
+                    .limit(size + 1);
+            messages = merge(mongoTemplate.find(query, Message.class), recent.messages(), false, size + 1);
+        }
+        boolean hasNext = messages.size() > size;
+        if (hasNext) {
+            messages = messages.subList(0, size);
+        }
+        // Luôn trả cursor của tin mới nhất (hoặc vị trí cũ nếu không có gì mới) để client poll tiếp
+        String nextCursor = messages.isEmpty()
+                ? CursorCodec.encode(MESSAGE_CURSOR, position.createdAt(), position.id())
+                : encode(messages.get(messages.size() - 1));
+        return toPage(messages, size, hasNext, nextCursor);
+    }
+
+    private record Position(Instant createdAt, String id) {
+    }
+
+    private Position positionOf(String conversationId, String messageId) {
+        Message recent = chatIngestionPipeline.findRecent(conversationId, messageId);
+        if (recent != null) {
+            return new Position(recent.getCreatedAt(), recent.getId());
+        }
+        Query query = new Query(Criteria.where("_id").is(messageId).and("conversationId").is(conversationId));
+        query.fields().include("createdAt");
+        Message message = mongoTemplate.findOne(query, Message.class);
+        if (message == null || message.getCreatedAt() == null) {
+            throw new IllegalArgumentException("Không tìm thấy tin nhắn " + messageId + " trong cuộc hội thoại");
+        }
+        return new Position(message.getCreatedAt(), message.getId());
+    }
+
+    // Hợp tin từ DB và ring (bỏ trùng theo id), sắp theo (createdAt, id), lấy tối đa limit phần tử
+    private List<Message> merge(List<Message> stored, List<Message> recent, boolean newestFirst, int limit) {
+        if (recent.isEmpty()) {
+            return new ArrayList<>(stored);
+        }
+        Map<String, Message> byId = new LinkedHashMap<>();
+        for (Message message : stored) {
+            byId.put(message.getId(), message);
+        }
+        for (Message message : recent) {
+            byId.putIfAbsent(message.getId(), message);
+        }
+        Comparator<Message> order = (a, b) ->
+                ChatIngestionPipeline.compare(a.getCreatedAt(), a.getId(), b.getCreatedAt(), b.getId());
+        List<Message> merged = new ArrayList<>(byId.values());
+        merged.sort(newestFirst ? order.reversed() : order);
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    private Query slimQuery(Criteria criteria) {
+        Query query = new Query(criteria);
+        query.fields().include("senderId", "senderRole", "content", "type", "fileUrl", "createdAt");
+        return query;
+    }
+
+    private Position decode(String cursor) {
+        String[] values = CursorCodec.decode(cursor, MESSAGE_CURSOR, 2);
+        try {
+            return new Position(Instant.parse(values[0]), values[1]);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cursor không hợp lệ");
+        }
+    }
+
+    private String encode(Message message) {
+        return CursorCodec.encode(MESSAGE_CURSOR, message.getCreatedAt(), message.getId());
+    }
+
+    private CursorPageResponse<ChatMessageView> toPage(List<Message> messages, int size, boolean hasNext,
+                                                       String nextCursor) {
+        return CursorPageResponse.<ChatMessageView>builder()
+                .content(messages.stream()
+                        .map(message -> ChatMessageView.builder()
+                                .id(message.getId())
+                                .senderId(message.getSenderId())
+                                .senderRole(message.getSenderRole())
+                                .content(message.getContent())
+                                .type(message.getType())
+                                .fileUrl(message.getFileUrl())
+                                .createdAt(message.getCreatedAt())
+                                .build())
+                        .toList())
+                .size(size)
+                .hasNext(hasNext)
+                .nextCursor(nextCursor)
+                .build();
+    }
+}
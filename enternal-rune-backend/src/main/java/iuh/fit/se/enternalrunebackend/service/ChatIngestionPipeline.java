@@ -0,0 +1,418 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.Message;
+import iuh.fit.se.enternalrunebackend.service.cluster.ClusterBroker;
+import iuh.fit.se.enternalrunebackend.service.cluster.ClusterFanout;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pipeline ghi tin nhắn chat kiểu write-behind:
+ * - submit() gán id (ObjectId) + createdAt ngay, đưa vào ring tin gần đây của conversation và broadcast luôn
+ * - 1 worker gom tối đa batch-size tin (chờ tối đa linger) rồi insertMany 1 lượt với write concern cấu hình,
+ *   lỗi thì retry với backoff; lỗi duplicate key (đã ghi ở lần thử trước) coi như thành công
+ * - Hàng đợi đầy: chờ offer-timeout rồi ghi đồng bộ trên thread gọi (không bỏ tin nhắn)
+ * Ring giữ ring-size tin mới nhất của ring-conversations conversation gần nhất, dùng cho catch-up khi reconnect.
+ */
+@Component
+@Slf4j
+public class ChatIngestionPipeline {
+
+    public record Stats(int queued, int capacity, long submitted, long persisted, long batches, long maxBatchSize,
+                        long retries, long duplicates, long syncWrites, long lost,
+                        int ringConversations, long ringHits, long ringMisses) {
+    }
+
+    /**
+     * Các tin trong ring sau 1 vị trí.
+     *
+     * @param complete true nếu ring chắc chắn chứa mọi tin sau vị trí đó (không cần đọc DB)
+     */
+    public record RecentSlice(boolean complete, List<Message> messages) {
+    }
+
+    private static final int MAX_BACKOFF_MILLIS = 5000;
+
+    private final MongoTemplate mongoTemplate;
+    private final ClusterFanout clusterFanout;
+    private final ConversationActivityService conversationActivityService;
+    private final boolean singleNode;
+
+    private final BlockingQueue<Message> queue;
+    private final int capacity;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final long offerTimeoutMillis;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final WriteConcern writeConcern;
+    private final int ringSize;
+    private final int ringConversations;
+
+    // conversationId -> các tin gần nhất theo thứ tự (createdAt, id); LRU theo conversation
+    private final Map<String, Deque<Message>> rings;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder syncWrites = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+    private final LongAdder ringHits = new LongAdder();
+    private final LongAdder ringMisses = new LongAdder();
+    private volatile long maxBatchSize;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public ChatIngestionPipeline(MongoTemplate mongoTemplate,
+                                 ClusterFanout clusterFanout,
+                                 ClusterBroker clusterBroker,
+                                 ConversationActivityService conversationActivityService,
+                                 @Value("${chat.ingest.queue-capacity:10000}") int capacity,
+                                 @Value("${chat.ingest.batch-size:200}") int batchSize,
+                                 @Value("${chat.ingest.linger:50ms}") Duration linger,
+                                 @Value("${chat.ingest.offer-timeout:100ms}") Duration offerTimeout,
+                                 @Value("${chat.ingest.max-attempts:5}") int maxAttempts,
+                                 @Value("${chat.ingest.retry-backoff:200ms}") Duration retryBackoff,
+                                 @Value("${chat.ingest.write-concern:MAJORITY}") String writeConcern,
+                                 @Value("${chat.ingest.journal:true}") boolean journal,
+                                 @Value("${chat.ingest.ring-size:200}") int ringSize,
+                                 @Value("${chat.ingest.ring-conversations:1000}") int ringConversations) {
+        this.mongoTemplate = mongoTemplate;
+        this.clusterFanout = clusterFanout;
+        this.conversationActivityService = conversationActivityService;
+        // Nhiều node thì ring chỉ có tin của node này -> không dùng thay DB được
+        this.singleNode = "in-memory".equals(clusterBroker.name());
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerNanos = linger.toNanos();
+        this.offerTimeoutMillis = offerTimeout.toMillis();
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMillis = Math.max(1, retryBackoff.toMillis());
+        WriteConcern concern = WriteConcern.valueOf(writeConcern.trim().toUpperCase(Locale.ROOT));
+        if (concern == null) {
+            throw new IllegalArgumentException("Unknown chat.ingest.write-concern: " + writeConcern);
+        }
+        this.writeConcern = journal ? concern.withJournal(true) : concern;
+        this.ringSize = Math.max(1, ringSize);
+        this.ringConversations = Math.max(1, ringConversations);
+        this.rings = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Deque<Message>> eldest) {
+                return size() > ChatIngestionPipeline.this.ringConversations;
+            }
+        };
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = new Thread(this::runLoop, "chat-ingestion-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Ghi nốt phần còn lại trong hàng đợi
+        List<Message> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            process(remaining);
+        }
+    }
+
+    /**
+     * Nhận 1 tin nhắn mới: gán id / createdAt, broadcast tới client rồi xếp hàng ghi DB.
+     *
+     * @return message đã có id và createdAt
+     */
+    public Message submit(Message message) {
+        Deque<Message> ring = ringOf(message.getConversationId());
+        // Gán id + thời gian trong lock của ring để ring luôn tăng dần theo (createdAt, id)
+        synchronized (ring) {
+            message.setId(new ObjectId().toHexString());
+            message.setCreatedAt(Instant.now());
+            ring.addLast(message);
+            while (ring.size() > ringSize) {
+                ring.pollFirst();
+            }
+        }
+        submitted.increment();
+        clusterFanout.broadcastTopic("/topic/conversations/" + message.getConversationId(), message);
+        enqueue(message);
+        return message;
+    }
+
+    /**
+     * Các tin trong ring mới hơn vị trí (createdAt, id), theo thứ tự tăng dần
+     */
+    public RecentSlice recentAfter(String conversationId, Instant createdAt, String id) {
+        Deque<Message> ring;
+        synchronized (rings) {
+            ring = rings.get(conversationId);
+        }
+        if (ring == null) {
+            ringMisses.increment();
+            return new RecentSlice(false, List.of());
+        }
+        List<Message> after = new ArrayList<>();
+        boolean covers;
+        synchronized (ring) {
+            Message oldest = ring.peekFirst();
+            covers = oldest != null && compare(oldest.getCreatedAt(), oldest.getId(), createdAt, id) <= 0;
+            for (Message message : ring) {
+                if (compare(message.getCreatedAt(), message.getId(), createdAt, id) > 0) {
+                    after.add(message);
+                }
+            }
+        }
+        boolean complete = covers && singleNode;
+        if (complete) {
+            ringHits.increment();
+        } else {
+            ringMisses.increment();
+        }
+        return new RecentSlice(complete, after);
+    }
+
+    /**
+     * Toàn bộ tin đang giữ trong ring của conversation (gồm cả tin chưa ghi xong xuống DB)
+     */
+    public List<Message> recent(String conversationId) {
+        Deque<Message> ring;
+        synchronized (rings) {
+            ring = rings.get(conversationId);
+        }
+        if (ring == null) {
+            return List.of();
+        }
+        synchronized (ring) {
+            return new ArrayList<>(ring);
+        }
+    }
+
+    /**
+     * Tìm 1 tin còn trong ring theo id (null nếu không có)
+     */
+    public Message findRecent(String conversationId, String messageId) {
+        Deque<Message> ring;
+        synchronized (rings) {
+            ring = rings.get(conversationId);
+        }
+        if (ring == null) {
+            return null;
+        }
+        synchronized (ring) {
+            for (Message message : ring) {
+                if (message.getId().equals(messageId)) {
+                    return message;
+                }
+            }
+        }
+        return null;
+    }
+
+    public Stats getStats() {
+        int conversations;
+        synchronized (rings) {
+            conversations = rings.size();
+        }
+        return new Stats(queue.size(), capacity, submitted.sum(), persisted.sum(), batches.sum(), maxBatchSize,
+                retries.sum(), duplicates.sum(), syncWrites.sum(), lost.sum(),
+                conversations, ringHits.sum(), ringMisses.sum());
+    }
+
+    // Thứ tự giống sort (createdAt, _id) của Mongo: ObjectId hex cùng độ dài nên so sánh chuỗi là đủ
+    static int compare(Instant createdAtA, String idA, Instant createdAtB, String idB) {
+        int byTime = createdAtA.compareTo(createdAtB);
+        return byTime != 0 ? byTime : idA.compareTo(idB);
+    }
+
+    private Deque<Message> ringOf(String conversationId) {
+        synchronized (rings) {
+            return rings.computeIfAbsent(conversationId, key -> new ArrayDeque<>());
+        }
+    }
+
+    private void enqueue(Message message) {
+        boolean accepted;
+        try {
+            accepted = queue.offer(message, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+        if (!accepted) {
+            // Không bỏ tin nhắn: ghi đồng bộ, thread gọi chịu độ trễ (backpressure)
+            syncWrites.increment();
+            process(List.of(message));
+        }
+    }
+
+    private void runLoop() {
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Message first = queue.take();
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        break;
+                    }
+                    Message next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                process(batch);
+            } catch (InterruptedException e) {
+                if (!batch.isEmpty()) {
+                    process(batch);
+                }
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Chat ingestion pipeline error: {}", e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<Message> batch) {
+        batches.increment();
+        if (batch.size() > maxBatchSize) {
+            maxBatchSize = batch.size();
+        }
+        List<Message> written = persist(batch);
+        if (written.isEmpty()) {
+            return;
+        }
+        try {
+            conversationActivityService.onMessagesSaved(written);
+        } catch (Exception e) {
+            log.error("Failed to update conversation counters for {} messages: {}", written.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * insertMany (unordered) với write concern cấu hình, retry phần lỗi với backoff tăng dần
+     *
+     * @return các tin đã được Mongo xác nhận
+     */
+    private List<Message> persist(List<Message> batch) {
+        MongoCollection<Document> collection = mongoTemplate
+                .getCollection(mongoTemplate.getCollectionName(Message.class))
+                .withWriteConcern(writeConcern);
+        List<Message> pending = new ArrayList<>(batch);
+        long backoff = retryBackoffMillis;
+        for (int attempt = 1; ; attempt++) {
+            List<Document> documents = new ArrayList<>(pending.size());
+            for (Message message : pending) {
+                Document document = new Document();
+                mongoTemplate.getConverter().write(message, document);
+                documents.add(document);
+            }
+            try {
+                collection.insertMany(documents, new InsertManyOptions().ordered(false));
+                persisted.add(pending.size());
+                return batch;
+            } catch (MongoBulkWriteException e) {
+                // Chỉ giữ lại các tin lỗi không phải duplicate key để thử lại
+                Set<Integer> failed = new HashSet<>();
+                for (BulkWriteError error : e.getWriteErrors()) {
+                    if (ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY) {
+                        duplicates.increment();
+                    } else {
+                        failed.add(error.getIndex());
+                    }
+                }
+                // Lỗi write concern: dữ liệu có thể đã ghi, thử lại toàn bộ (trùng sẽ bị bỏ qua như trên)
+                if (failed.isEmpty() && e.getWriteConcernError() == null) {
+                    persisted.add(pending.size());
+                    return batch;
+                }
+                if (!failed.isEmpty()) {
+                    persisted.add(pending.size() - failed.size());
+                    List<Message> retry = new ArrayList<>(failed.size());
+                    for (int index : failed) {
+                        retry.add(pending.get(index));
+                    }
+                    pending = retry;
+                }
+                if (attempt >= maxAttempts) {
+                    return giveUp(batch, pending, e);
+                }
+            } catch (Exception e) {
+                if (attempt >= maxAttempts) {
+                    return giveUp(batch, pending, e);
+                }
+            }
+            retries.increment();
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return giveUp(batch, pending, ie);
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    private List<Message> giveUp(List<Message> batch, List<Message> failed, Exception cause) {
+        lost.add(failed.size());
+        log.error("Failed to persist {} chat messages after {} attempts: {} (ids {})",
+                failed.size(), maxAttempts, cause.getMessage(),
+                failed.stream().map(Message::getId).toList());
+        Set<String> failedIds = new HashSet<>();
+        for (Message message : failed) {
+            failedIds.add(message.getId());
+        }
+        return batch.stream().filter(message -> !failedIds.contains(message.getId())).toList();
+    }
+}
@@ -3,52 +3,172 @@ package iuh.fit.se.enternalrunebackend.service;
 
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.document.Document;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
+@Slf4j
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class ChatService {
 
+    // Câu hỏi có không quá chừng này từ khoá thường là hỏi tiếp ("còn màu nào?", "máy đó giá sao?")
+    private static final int FOLLOW_UP_MAX_TERMS = 4;
+
     ChatClient chatClient;
-    VectorStore vectorStore;
-    ProductVectorService vectorService;
+    ProductRetriever productRetriever;
+    BlockingCallMonitor blockingCallMonitor;
+    AiAnswerCache answerCache;
+    PromptAssembler promptAssembler;
+    AiConversationMemoryService memory;
 
     public ChatService(ChatClient.Builder chatClientBuilder,
-                       VectorStore vectorStore,
-                       ProductVectorService vectorService) {
+                       ProductRetriever productRetriever,
+                       BlockingCallMonitor blockingCallMonitor,
+                       AiAnswerCache answerCache,
+                       PromptAssembler promptAssembler,
+                       AiConversationMemoryService memory) {
         this.chatClient = chatClientBuilder.build();
-        this.vectorStore = vectorStore;
-        this.vectorService = vectorService;
+        this.productRetriever = productRetriever;
+        this.blockingCallMonitor = blockingCallMonitor;
+        this.answerCache = answerCache;
+        this.promptAssembler = promptAssembler;
+        this.memory = memory;
+    }
+
+    /**
+     * @param memoryKey khoá bộ nhớ hội thoại (AiConversationMemoryService.key), null = trả lời không nhớ lượt trước
+     */
+    public String processUserInput(String userInput, String memoryKey) {
+        AiConversationMemoryService.History history = memory.load(memoryKey);
+        // Câu hỏi giống / gần giống câu đã trả lời (catalog chưa đổi) -> trả luôn, không gọi RAG + Gemini
+        AiAnswerCache.Lookup lookup = lookup(userInput, history);
+        if (lookup != null && lookup.hit()) {
+            memory.append(memoryKey, userInput, lookup.answer());
+            return lookup.answer();
+        }
+        PromptAssembler.AssembledPrompt assembled = assemble(userInput, history);
+        ChatResponse response = blockingCallMonitor.record("gemini", () -> chatClient.prompt()
+                .system(assembled.system())
+                .messages(assembled.history())
+                .user(assembled.user())
+                .call()
+                .chatResponse());
+        recordUsage(assembled, response);
+        String answer = text(response);
+        if (lookup != null) {
+            answerCache.store(lookup, answer);
+        }
+        memory.append(memoryKey, userInput, answer);
+        return answer;
     }
 
-    public String processUserInput(String userInput) {
-        QuestionAnswerAdvisor qaAdvisor = new QuestionAnswerAdvisor(vectorStore);
+    /**
+     * Cùng prompt (cùng cache, cùng bộ nhớ) với processUserInput nhưng trả về từng đoạn text ngay khi Gemini sinh ra.
+     * Chưa làm gì cho tới khi subscribe: đọc bộ nhớ, tra cache, tìm ngữ cảnh (đều block) chạy trên boundedElastic,
+     * ghi cache / bộ nhớ sau khi stream xong cũng vậy, không chiếm thread đang đẩy chunk cho client.
+     * Dispose subscription thì huỷ request lên Gemini.
+     */
+    public Flux<String> streamUserInput(String userInput, String memoryKey) {
+        return Mono.fromCallable(() -> prepare(userInput, memoryKey))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(prepared -> prepared.lookup() != null && prepared.lookup().hit()
+                        ? Flux.just(prepared.lookup().answer())
+                                .doOnComplete(() -> afterStream(() ->
+                                        memory.append(memoryKey, userInput, prepared.lookup().answer())))
+                        : stream(userInput, memoryKey, prepared));
+    }
 
-        vectorService.syncProductsToVector();
+    private record Prepared(AiAnswerCache.Lookup lookup, PromptAssembler.AssembledPrompt assembled) {
+    }
+
+    private Prepared prepare(String userInput, String memoryKey) {
+        AiConversationMemoryService.History history = memory.load(memoryKey);
+        AiAnswerCache.Lookup lookup = lookup(userInput, history);
+        if (lookup != null && lookup.hit()) {
+            return new Prepared(lookup, null);
+        }
+        return new Prepared(lookup, assemble(userInput, history));
+    }
+
+    private Flux<String> stream(String userInput, String memoryKey, Prepared prepared) {
+        PromptAssembler.AssembledPrompt assembled = prepared.assembled();
+        // Usage chỉ có ở chunk cuối của stream
+        AtomicReference<ChatResponse> last = new AtomicReference<>();
+        // Chỉ lưu khi stream chạy hết (không lưu câu trả lời dở dang của stream bị huỷ / lỗi)
+        StringBuilder answer = new StringBuilder();
         return chatClient.prompt()
-                .system("""
-                    Bạn là Trợ lý AI của cửa hàng công nghệ ETERNAL RUNE.
-                    
-                    QUY TẮC:
-                    - Chỉ trả lời dựa trên dữ liệu hệ thống cung cấp (quan trọn nhất) (database/RAG).
-                    - Không bịa, không suy đoán ngoài dữ liệu (quan trọng).
-                    - Nếu không có dữ liệu → xin lỗi và đề nghị kiểm tra lại trong hệ thống.
-                    - Luôn nói chuyện thân thiện, chuyên nghiệp.
-                    - Luôn gợi ý ít nhất 2 sản phẩm liên quan từ dữ liệu.
-                    - Hỗ trợ: hướng dẫn mua hàng, tạo tài khoản, kiểm tra đơn, thanh toán, bảo hành.
-                    - Luôn kết thúc bằng lời mời khách xem thêm sản phẩm tại ETERNAL RUNE.
-                    
-                    MỤC TIÊU:
-                    - Tư vấn sản phẩm chính hãng, giá cạnh tranh, dịch vụ hậu mãi tốt.
-                    - Hỗ trợ khách tìm sản phẩm phù hợp nhất dựa trên dữ liệu thật.
-                    """)
-                .user(userInput)
-                .advisors(qaAdvisor)
-                .call()
-                .content();
+                .system(assembled.system())
+                .messages(assembled.history())
+                .user(assembled.user())
+                .stream()
+                .chatResponse()
+                .doOnNext(last::set)
+                .mapNotNull(ChatService::text)
+                .filter(chunk -> !chunk.isEmpty())
+                .doOnNext(answer::append)
+                .doOnComplete(() -> {
+                    recordUsage(assembled, last.get());
+                    String text = answer.toString();
+                    afterStream(() -> {
+                        if (prepared.lookup() != null) {
+                            answerCache.store(prepared.lookup(), text);
+                        }
+                        memory.append(memoryKey, userInput, text);
+                    });
+                });
+    }
+
+    // Embedding + ghi Postgres / Mongo: chạy nền, client đã nhận xong câu trả lời thì không phải chờ
+    private static void afterStream(Runnable writes) {
+        Schedulers.boundedElastic().schedule(() -> {
+            try {
+                writes.run();
+            } catch (RuntimeException e) {
+                log.warn("Không lưu được kết quả stream AI: {}", e.getMessage());
+            }
+        });
+    }
+
+    // Câu trả lời đã phụ thuộc các lượt trước thì không dùng chung được: chỉ tra / lưu cache khi chưa có lịch sử
+    private AiAnswerCache.Lookup lookup(String userInput, AiConversationMemoryService.History history) {
+        return history.isEmpty() ? answerCache.lookup(userInput) : null;
+    }
+
+    private PromptAssembler.AssembledPrompt assemble(String userInput, AiConversationMemoryService.History history) {
+        // Ngữ cảnh: sản phẩm từ tìm kiếm kết hợp từ khoá + vector, đã lọc theo brand / khoảng giá trong câu hỏi,
+        // cắt theo giới hạn token của prompt. Câu hỏi tiếp ngắn thì tìm kèm câu hỏi trước để biết "máy đó" là máy nào
+        String query = userInput;
+        if (!history.turns().isEmpty() && ProductKeywordIndex.tokenize(userInput).size() <= FOLLOW_UP_MAX_TERMS) {
+            query = userInput + "\n" + history.turns().get(history.turns().size() - 1).getQuestion();
+        }
+        String retrievalQuery = query;
+        List<Document> documents = blockingCallMonitor.record("retrieval",
+                () -> productRetriever.retrieve(retrievalQuery));
+        return promptAssembler.assemble(userInput, documents, history);
+    }
+
+    private void recordUsage(PromptAssembler.AssembledPrompt assembled, ChatResponse response) {
+        Usage usage = response != null && response.getMetadata() != null ? response.getMetadata().getUsage() : null;
+        promptAssembler.recordUsage(assembled.accounting(),
+                usage != null ? usage.getPromptTokens() : null,
+                usage != null ? usage.getCompletionTokens() : null);
+    }
+
+    private static String text(ChatResponse response) {
+        if (response == null || response.getResult() == null || response.getResult().getOutput() == null) {
+            return null;
+        }
+        return response.getResult().getOutput().getText();
     }
 
 }
@@ -3,6 +3,7 @@ package iuh.fit.se.enternalrunebackend.service;
 import iuh.fit.se.enternalrunebackend.dto.request.CreateCommentRequest;
 import iuh.fit.se.enternalrunebackend.dto.response.CommentPageResponse;
 import iuh.fit.se.enternalrunebackend.dto.response.CommentResponse;
+import iuh.fit.se.enternalrunebackend.dto.response.CursorPageResponse;
 import iuh.fit.se.enternalrunebackend.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.web.multipart.MultipartFile;
@@ -27,6 +28,17 @@ public interface CommentService {
      */
     CommentPageResponse getComments(Integer productId, int page, int size);
 
+    /**
+     * Get comments for a product using keyset pagination (cm_date, cm_id) - no COUNT query
+     * 
+     * @param productId the product ID
+     * @param cursor    continuation token from previous page, null for the first page
+     * @param size      page size
+     * @return comments of the page and the cursor of the next page
+     * @throws IllegalArgumentException if cursor is invalid
+     */
+    CursorPageResponse<CommentResponse> getCommentsByCursor(Integer productId, String cursor, int size);
+
     /**
      * Create a new comment
      * 
@@ -0,0 +1,209 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.Conversation;
+import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.Message;
+import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.Role;
+import iuh.fit.se.enternalrunebackend.service.cluster.ClusterFanout;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bộ đếm tin chưa đọc cho chat hỗ trợ, cập nhật tăng dần thay vì đọc lại toàn bộ tin nhắn:
+ * - Mỗi tin mới: $inc conversations.messageSeq và set lastMessage* trong 1 lệnh atomic
+ * - Mỗi agent có watermark readWatermarks.{agentId} = messageSeq đã đọc tới (agent gửi tin = đã đọc)
+ * - Số tin chưa đọc của agent = messageSeq - watermark
+ * Thay đổi được đẩy qua STOMP /topic/conversations/unread để client cập nhật badge mà không cần poll.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationActivityService {
+
+    public static final String UNREAD_TOPIC = "/topic/conversations/unread";
+
+    private static final String ACTIVITY_INDEX = "last_message_at_idx";
+
+    /**
+     * Sự kiện đẩy cho client:
+     * MESSAGE - mọi agent trừ senderId có thêm 1 tin chưa đọc;
+     * READ - agentId đã đọc hết tới messageSeq (unread = 0)
+     */
+    public record UnreadDelta(String type, String conversationId, long messageSeq, String senderId,
+                              Role senderRole, String agentId) {
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final ClusterFanout clusterFanout;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        try {
+            mongoTemplate.indexOps(Conversation.class).ensureIndex(new Index()
+                    .on("lastMessageAt", Sort.Direction.DESC)
+                    .sparse()
+                    .named(ACTIVITY_INDEX));
+        } catch (Exception e) {
+            log.warn("Không tạo được index {} cho conversations: {}", ACTIVITY_INDEX, e.getMessage());
+        }
+        backfill();
+    }
+
+    /**
+     * Gọi sau khi lưu 1 tin nhắn mới (text hoặc ảnh)
+     */
+    public void onMessageSaved(Message message) {
+        onMessagesSaved(List.of(message));
+    }
+
+    /**
+     * Gọi sau khi lưu 1 batch tin nhắn (theo thứ tự gửi): mỗi conversation chỉ 1 lệnh $inc theo số tin trong batch
+     */
+    public void onMessagesSaved(List<Message> messages) {
+        Map<String, List<Message>> byConversation = new LinkedHashMap<>();
+        for (Message message : messages) {
+            byConversation.computeIfAbsent(message.getConversationId(), key -> new ArrayList<>()).add(message);
+        }
+        byConversation.forEach(this::applyMessages);
+    }
+
+    private void applyMessages(String conversationId, List<Message> messages) {
+        Message last = messages.get(messages.size() - 1);
+        Update update = new Update()
+                .inc("messageSeq", messages.size())
+                .set("lastMessageId", last.getId())
+                .set("lastMessageSenderId", last.getSenderId())
+                .set("lastMessageSenderRole", last.getSenderRole())
+                .set("lastMessageAt", last.getCreatedAt())
+                .set("lastActivityAt", last.getCreatedAt());
+        Conversation updated = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(conversationId)),
+                update,
+                FindAndModifyOptions.options().returnNew(true),
+                Conversation.class);
+        if (updated == null) {
+            log.warn("{} message thuộc conversation không tồn tại {}", messages.size(), conversationId);
+            return;
+        }
+        // Tin thứ i trong batch có seq = seq mới - (số tin còn lại sau nó)
+        long firstSeq = updated.getMessageSeq() - messages.size() + 1;
+        Map<String, Long> agentWatermarks = new HashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            long seq = firstSeq + i;
+            if (message.getSenderRole() == Role.AGENT && isValidAgentId(message.getSenderId())) {
+                agentWatermarks.put(message.getSenderId(), seq);
+            }
+            clusterFanout.broadcastTopic(UNREAD_TOPIC, new UnreadDelta("MESSAGE", conversationId, seq,
+                    message.getSenderId(), message.getSenderRole(), null));
+        }
+        agentWatermarks.forEach((agentId, seq) -> advanceWatermark(conversationId, agentId, seq));
+    }
+
+    /**
+     * Agent đã mở conversation: đưa watermark lên messageSeq hiện tại
+     *
+     * @return false nếu conversation không tồn tại
+     */
+    public boolean markRead(String conversationId, String agentId) {
+        Query query = Query.query(Criteria.where("_id").is(conversationId));
+        query.fields().include("messageSeq");
+        Conversation conversation = mongoTemplate.findOne(query, Conversation.class);
+        if (conversation == null) {
+            return false;
+        }
+        long seq = conversation.getMessageSeq() != null ? conversation.getMessageSeq() : 0;
+        advanceWatermark(conversationId, agentId, seq);
+        clusterFanout.broadcastTopic(UNREAD_TOPIC, new UnreadDelta("READ", conversationId, seq,
+                null, null, agentId));
+        return true;
+    }
+
+    /**
+     * Số tin chưa đọc theo conversation của 1 agent, chỉ gồm conversation có tin chưa đọc.
+     * 1 query trên index lastMessageAt, chỉ đọc messageSeq và watermark của agent đó.
+     */
+    public Map<String, Long> getUnreadCounts(String agentId) {
+        String watermark = watermarkField(agentId);
+        Query query = new Query(Criteria.where("lastMessageAt").exists(true)
+                .and("lastMessageSenderId").ne(agentId));
+        query.fields().include("messageSeq", watermark);
+
+        Map<String, Long> counts = new HashMap<>();
+        for (Conversation conversation : mongoTemplate.find(query, Conversation.class)) {
+            long seq = conversation.getMessageSeq() != null ? conversation.getMessageSeq() : 0;
+            Long read = conversation.getReadWatermarks() != null ? conversation.getReadWatermarks().get(agentId) : null;
+            long unread = seq - (read != null ? read : 0);
+            if (unread > 0) {
+                counts.put(conversation.getId(), unread);
+            }
+        }
+        return counts;
+    }
+
+    private void advanceWatermark(String conversationId, String agentId, long seq) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(conversationId)),
+                new Update().max(watermarkField(agentId), seq), Conversation.class);
+    }
+
+    // agentId dùng làm key trong document nên không được chứa '.' hoặc bắt đầu bằng '$'
+    private boolean isValidAgentId(String agentId) {
+        return agentId != null && !agentId.isBlank() && !agentId.contains(".") && !agentId.startsWith("$");
+    }
+
+    private String watermarkField(String agentId) {
+        if (!isValidAgentId(agentId)) {
+            throw new IllegalArgumentException("agentId không hợp lệ");
+        }
+        return "readWatermarks." + agentId;
+    }
+
+    // Conversation tạo trước khi có messageSeq: chỉ lấy tin cuối và đặt messageSeq = 1,
+    // nên unread ban đầu giống cách tính cũ (tối đa 1 nếu tin cuối không phải của agent đang xem)
+    private void backfill() {
+        try {
+            Query query = new Query(Criteria.where("messageSeq").exists(false));
+            query.fields().include("_id");
+            List<Conversation> missing = mongoTemplate.find(query, Conversation.class);
+            for (Conversation conversation : missing) {
+                Message last = mongoTemplate.findOne(new Query(Criteria.where("conversationId").is(conversation.getId()))
+                        .with(Sort.by(Sort.Direction.DESC, "createdAt").and(Sort.by(Sort.Direction.DESC, "_id")))
+                        .limit(1), Message.class);
+                Update update = new Update().set("messageSeq", last != null ? 1L : 0L);
+                if (last != null) {
+                    update.set("lastMessageId", last.getId())
+                            .set("lastMessageSenderId", last.getSenderId())
+                            .set("lastMessageSenderRole", last.getSenderRole())
+                            .set("lastMessageAt", last.getCreatedAt() != null ? last.getCreatedAt() : Instant.EPOCH)
+                            .set("lastActivityAt", last.getCreatedAt() != null ? last.getCreatedAt() : Instant.EPOCH);
+                    if (last.getSenderRole() == Role.AGENT && isValidAgentId(last.getSenderId())) {
+                        update.set(watermarkField(last.getSenderId()), 1L);
+                    }
+                }
+                mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(conversation.getId())
+                        .and("messageSeq").exists(false)), update, Conversation.class);
+            }
+            if (!missing.isEmpty()) {
+                log.info("Backfilled message counters for {} conversations", missing.size());
+            }
+        } catch (Exception e) {
+            log.warn("Conversation counter backfill skipped: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.dto.response.CursorPageResponse;
+import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.Conversation;
+import iuh.fit.se.enternalrunebackend.util.CursorCodec;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Danh sách conversation cho agent và tạo conversation cho khách:
+ * - findOrCreateOpen: 1 lệnh upsert trên partial unique index (customerId | open = true),
+ *   nhiều request tạo đồng thời cho cùng 1 khách chỉ sinh ra 1 conversation
+ * - getInbox: lọc theo status / agent, sắp theo lastActivityAt giảm dần, keyset pagination (lastActivityAt, id)
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationInboxService {
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final String INBOX_CURSOR = "inbox";
+    private static final String OPEN_CUSTOMER_INDEX = "open_customer_uniq";
+    private static final Set<String> STATUSES = Set.of("PENDING", "IN_PROGRESS", "CLOSED");
+
+    public record OpenResult(Conversation conversation, boolean created) {
+    }
+
+    private final MongoTemplate mongoTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        try {
+            backfill();
+            IndexOperations indexOps = mongoTemplate.indexOps(Conversation.class);
+            indexOps.ensureIndex(new Index().on("customerId", Sort.Direction.ASC)
+                    .unique()
+                    .partial(PartialIndexFilter.of(Criteria.where("open").is(true)))
+                    .named(OPEN_CUSTOMER_INDEX));
+            indexOps.ensureIndex(new Index().on("lastActivityAt", Sort.Direction.DESC).on("_id", Sort.Direction.DESC)
+                    .named("inbox_activity_idx"));
+            indexOps.ensureIndex(new Index().on("status", Sort.Direction.ASC)
+                    .on("lastActivityAt", Sort.Direction.DESC).on("_id", Sort.Direction.DESC)
+                    .named("inbox_status_activity_idx"));
+            indexOps.ensureIndex(new Index().on("agentId", Sort.Direction.ASC)
+                    .on("lastActivityAt", Sort.Direction.DESC).on("_id", Sort.Direction.DESC)
+                    .named("inbox_agent_activity_idx"));
+            indexOps.ensureIndex(new Index().on("createdAt", Sort.Direction.DESC).named("created_at_idx"));
+        } catch (Exception e) {
+            log.warn("Conversation inbox index setup failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Trả về conversation đang mở (PENDING / IN_PROGRESS) của khách, tạo mới nếu chưa có
+     */
+    public OpenResult findOrCreateOpen(String customerId) {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        // _id sinh trước cho lần gọi này: bản ghi trả về mang đúng id này <=> chính lệnh upsert này đã insert
+        ObjectId newId = new ObjectId();
+        Query query = Query.query(Criteria.where("customerId").is(customerId).and("open").is(true));
+        Update update = new Update()
+                .setOnInsert("_id", newId)
+                .setOnInsert("status", "PENDING")
+                .setOnInsert("createdAt", now)
+                .setOnInsert("lastActivityAt", now)
+                .setOnInsert("messageSeq", 0L);
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+        Conversation conversation;
+        try {
+            conversation = mongoTemplate.findAndModify(query, update, options, Conversation.class);
+        } catch (DuplicateKeyException e) {
+            // Request khác vừa tạo cùng lúc -> lần này chắc chắn tìm thấy
+            conversation = mongoTemplate.findOne(query, Conversation.class);
+        }
+        if (conversation == null) {
+            throw new IllegalStateException("Could not find or create conversation for customer " + customerId);
+        }
+        boolean created = newId.toHexString().equals(conversation.getId());
+        return new OpenResult(conversation, created);
+    }
+
+    /**
+     * @param status  null -> mọi trạng thái
+     * @param agentId null -> mọi agent; "" -> chỉ conversation chưa assign
+     * @param cursor  nextCursor của trang trước, null cho trang đầu
+     */
+    public CursorPageResponse<Conversation> getInbox(String status, String agentId, String cursor, int size) {
+        Criteria criteria = new Criteria();
+        if (status != null && !status.isBlank()) {
+            if (!STATUSES.contains(status)) {
+                throw new IllegalArgumentException("Status không hợp lệ: " + status);
+            }
+            criteria = criteria.and("status").is(status);
+        }
+        if (agentId != null) {
+            criteria = criteria.and("agentId").is(agentId.isBlank() ? null : agentId);
+        }
+        if (cursor != null && !cursor.isBlank()) {
+            String[] values = CursorCodec.decode(cursor, INBOX_CURSOR, 2);
+            Instant at;
+            try {
+                at = Instant.parse(values[0]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursor không hợp lệ");
+            }
+            criteria = criteria.orOperator(
+                    Criteria.where("lastActivityAt").lt(at),
+                    Criteria.where("lastActivityAt").is(at).and("_id").lt(values[1]));
+        }
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "lastActivityAt").and(Sort.by(Sort.Direction.DESC, "_id")))
+                .limit(size + 1);
+        query.fields().exclude("readWatermarks");
+
+        List<Conversation> conversations = mongoTemplate.find(query, Conversation.class);
+        boolean hasNext = conversations.size() > size;
+        if (hasNext) {
+            conversations = conversations.subList(0, size);
+        }
+        String nextCursor = null;
+        if (hasNext) {
+            Conversation last = conversations.get(conversations.size() - 1);
+            nextCursor = CursorCodec.encode(INBOX_CURSOR, last.getLastActivityAt(), last.getId());
+        }
+        return CursorPageResponse.<Conversation>builder()
+                .content(conversations)
+                .size(size)
+                .hasNext(hasNext)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    // Conversation cũ chưa có open / lastActivityAt
+    private void backfill() {
+        mongoTemplate.updateMulti(new Query(Criteria.where("lastActivityAt").exists(false)),
+                AggregationUpdate.update().set("lastActivityAt")
+                        .toValue(ConditionalOperators.ifNull("lastMessageAt").thenValueOf("createdAt")),
+                Conversation.class);
+
+        Query missingOpen = new Query(Criteria.where("open").exists(false))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt"));
+        missingOpen.fields().include("customerId", "status");
+        List<Conversation> conversations = mongoTemplate.find(missingOpen, Conversation.class);
+        if (conversations.isEmpty()) {
+            return;
+        }
+        // Dữ liệu cũ có thể có nhiều conversation mở cho 1 khách: chỉ bản mới nhất được coi là open
+        Set<String> openCustomers = new HashSet<>();
+        List<String> openIds = new ArrayList<>();
+        List<String> otherIds = new ArrayList<>();
+        for (Conversation conversation : conversations) {
+            boolean open = !"CLOSED".equals(conversation.getStatus()) && conversation.getCustomerId() != null
+                    && openCustomers.add(conversation.getCustomerId());
+            (open ? openIds : otherIds).add(conversation.getId());
+        }
+        if (!openIds.isEmpty()) {
+            mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(openIds)),
+                    new Update().set("open", true), Conversation.class);
+        }
+        if (!otherIds.isEmpty()) {
+            mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(otherIds)),
+                    new Update().set("open", false), Conversation.class);
+        }
+        log.info("Backfilled open flag for {} conversations ({} open)", conversations.size(), openIds.size());
+    }
+}
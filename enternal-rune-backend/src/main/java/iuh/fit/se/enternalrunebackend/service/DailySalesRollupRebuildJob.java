@@ -0,0 +1,43 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Job rebuild daily_sales_rollup: backfill khi bảng còn trống (chạy sau OrderCurrentStatusBackfill)
+ * và đối soát định kỳ (phòng khi order bị sửa trực tiếp trong DB)
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DailySalesRollupRebuildJob {
+
+    private final DailySalesRollupService rollupService;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(OrderCurrentStatusBackfill.ORDER + 1)
+    public void backfillIfEmpty() {
+        try {
+            if (rollupService.isEmpty()) {
+                rollupService.rebuild();
+            }
+        } catch (Exception e) {
+            log.warn("Daily sales rollup backfill skipped: {}", e.getMessage());
+        }
+    }
+
+    // Mặc định 3h45 sáng mỗi ngày
+    @Scheduled(cron = "${sales.rollup.rebuild-cron:0 45 3 * * *}")
+    public void scheduledRebuild() {
+        try {
+            rollupService.rebuild();
+        } catch (Exception e) {
+            log.error("Scheduled daily sales rollup rebuild failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.entity.Order;
+import iuh.fit.se.enternalrunebackend.repository.DailySalesRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Duy trì bảng daily_sales_rollup (số đơn, doanh thu đã thanh toán, hoàn tiền, hủy theo ngày đặt hàng).
+ * Mỗi order đóng góp vào đúng 1 dòng (order_date) theo trạng thái hiện tại; khi trạng thái đổi thì
+ * trừ phần đóng góp cũ và cộng phần mới. Các hàm on* phải được gọi trong transaction ghi order.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DailySalesRollupService {
+
+    private static final Set<String> PAID_CODES = Set.of("PAID", "COMPLETED");
+
+    /**
+     * Trạng thái của order tại thời điểm capture(), dùng để tính phần đóng góp cũ
+     */
+    public record OrderState(LocalDate orderDate, BigDecimal amount, Long paymentStatusId, Long shippingStatusId) {
+    }
+
+    public record MonthlySales(YearMonth month, long orderCount, long paidOrderCount, BigDecimal paidRevenue,
+                               BigDecimal deliveredRevenue, long refundCount, long cancelledCount) {
+
+        public static MonthlySales empty(YearMonth month) {
+            return new MonthlySales(month, 0, 0, BigDecimal.ZERO, BigDecimal.ZERO, 0, 0);
+        }
+    }
+
+    private record Contribution(long orders, long paidOrders, BigDecimal paidRevenue, BigDecimal deliveredRevenue,
+                                long refunds, long cancelled) {
+
+        static final Contribution NONE =
+                new Contribution(0, 0, BigDecimal.ZERO, BigDecimal.ZERO, 0, 0);
+
+        Contribution minus(Contribution other) {
+            return new Contribution(
+                    orders - other.orders,
+                    paidOrders - other.paidOrders,
+                    paidRevenue.subtract(other.paidRevenue),
+                    deliveredRevenue.subtract(other.deliveredRevenue),
+                    refunds - other.refunds,
+                    cancelled - other.cancelled);
+        }
+
+        boolean isZero() {
+            return orders == 0 && paidOrders == 0 && refunds == 0 && cancelled == 0
+                    && paidRevenue.signum() == 0 && deliveredRevenue.signum() == 0;
+        }
+    }
+
+    private final DailySalesRollupRepository rollupRepository;
+    private final StatusRegistry statusRegistry;
+    private final CacheInvalidationService cacheInvalidationService;
+
+    public OrderState capture(Order order) {
+        return new OrderState(order.getOrderDate(), order.getOrderTotalAmount(),
+                order.getCurrentPaymentStatusId(), order.getCurrentShippingStatusId());
+    }
+
+    @Transactional
+    public void onOrderCreated(Order order) {
+        OrderState state = capture(order);
+        apply(state.orderDate(), contributionOf(state));
+    }
+
+    /**
+     * Gọi sau khi đổi trạng thái thanh toán / giao hàng, {@code before} lấy bằng capture() trước khi đổi
+     */
+    @Transactional
+    public void onOrderUpdated(OrderState before, Order order) {
+        OrderState after = capture(order);
+        if (after.equals(before)) {
+            return;
+        }
+        if (after.orderDate().equals(before.orderDate())) {
+            apply(after.orderDate(), contributionOf(after).minus(contributionOf(before)));
+        } else {
+            apply(before.orderDate(), Contribution.NONE.minus(contributionOf(before)));
+            apply(after.orderDate(), contributionOf(after));
+        }
+    }
+
+    private Contribution contributionOf(OrderState state) {
+        BigDecimal amount = state.amount() != null ? state.amount() : BigDecimal.ZERO;
+        String paymentCode = statusRegistry.paymentCodeOf(state.paymentStatusId());
+        String shippingCode = statusRegistry.shippingCodeOf(state.shippingStatusId());
+        boolean paid = paymentCode != null && PAID_CODES.contains(paymentCode);
+        boolean delivered = "DELIVERED".equals(shippingCode);
+        return new Contribution(
+                1,
+                paid ? 1 : 0,
+                paid ? amount : BigDecimal.ZERO,
+                delivered ? amount : BigDecimal.ZERO,
+                "REFUNDED".equals(paymentCode) ? 1 : 0,
+                "CANCELLED".equals(shippingCode) ? 1 : 0);
+    }
+
+    private void apply(LocalDate date, Contribution delta) {
+        if (date == null || delta.isZero()) {
+            return;
+        }
+        rollupRepository.applyDelta(date, delta.orders(), delta.paidOrders(), delta.paidRevenue(),
+                delta.deliveredRevenue(), delta.refunds(), delta.cancelled());
+    }
+
+    /**
+     * Số liệu từng tháng trong khoảng [from, to], tháng không có dữ liệu trả về 0
+     */
+    @Transactional(readOnly = true)
+    public Map<YearMonth, MonthlySales> getMonthlySales(YearMonth from, YearMonth to) {
+        Map<YearMonth, MonthlySales> result = new LinkedHashMap<>();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            result.put(month, MonthlySales.empty(month));
+        }
+        List<Object[]> rows = rollupRepository.findMonthlyTotals(from.atDay(1), to.atEndOfMonth());
+        for (Object[] row : rows) {
+            YearMonth month = YearMonth.of(((Number) row[0]).intValue(), ((Number) row[1]).intValue());
+            result.put(month, new MonthlySales(
+                    month,
+                    ((Number) row[2]).longValue(),
+                    ((Number) row[3]).longValue(),
+                    toBigDecimal(row[4]),
+                    toBigDecimal(row[5]),
+                    ((Number) row[6]).longValue(),
+                    ((Number) row[7]).longValue()));
+        }
+        return result;
+    }
+
+    public MonthlySales getMonthlySales(YearMonth month) {
+        return getMonthlySales(month, month).get(month);
+    }
+
+    public long getTotalOrderCount() {
+        return rollupRepository.sumOrderCount();
+    }
+
+    public boolean isEmpty() {
+        return rollupRepository.count() == 0;
+    }
+
+    /**
+     * Tính lại toàn bộ từ bảng orders. Khóa bảng rollup trong lúc rebuild để các delta
+     * đồng thời chờ và được cộng lên kết quả mới sau khi commit.
+     */
+    @Transactional
+    public int rebuild() {
+        long start = System.currentTimeMillis();
+        rollupRepository.lockForRebuild();
+        rollupRepository.deleteAllRollups();
+        int days = rollupRepository.insertFromOrders();
+        cacheInvalidationService.onOrderChanged();
+        log.info("Rebuilt daily sales rollup for {} days in {} ms", days, System.currentTimeMillis() - start);
+        return days;
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value == null) {
+            return BigDecimal.ZERO;
+        }
+        return value instanceof BigDecimal decimal ? decimal : new BigDecimal(value.toString());
+    }
+}
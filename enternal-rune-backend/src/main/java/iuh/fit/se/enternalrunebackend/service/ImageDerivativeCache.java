@@ -0,0 +1,463 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import com.cloudinary.Cloudinary;
+import iuh.fit.se.enternalrunebackend.service.storage.DeduplicatingImageStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Cache trên đĩa các bản resize (thumbnail / card / detail) của ảnh sản phẩm, review, chat:
+ * - Key = SHA-256(variant + URL gốc); URL ảnh trong storage không đổi nội dung (public_id có UUID / hash)
+ * - Miss: tải ảnh gốc (chỉ từ allowed-hosts, trong thư mục cloud_name của các tài khoản Cloudinary của shop),
+ *   resize bằng ImageIO, ghi file tạm rồi move vào cache
+ * - Tối đa max-concurrent-decodes miss được xử lý cùng lúc, vượt quá thì từ chối ngay (BusyException)
+ * - Nhiều request cùng 1 key đang miss chỉ tạo derivative 1 lần
+ * - Tổng dung lượng giới hạn bởi max-size, vượt quá thì xóa file ít được dùng nhất (LRU)
+ * - ETag = SHA-256 nội dung derivative (strong), lưu trong tên file nên index dựng lại được từ thư mục khi khởi động
+ */
+@Service
+@Slf4j
+public class ImageDerivativeCache {
+
+    public enum Variant {
+        THUMBNAIL(160),
+        CARD(480),
+        DETAIL(1200);
+
+        // Cạnh dài nhất (px), ảnh nhỏ hơn thì giữ nguyên kích thước
+        private final int maxDimension;
+
+        Variant(int maxDimension) {
+            this.maxDimension = maxDimension;
+        }
+
+        public static Variant parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown image variant: " + value);
+            }
+        }
+    }
+
+    /**
+     * @param etag SHA-256 (hex) nội dung file, chưa có dấu nháy
+     */
+    public record Derivative(Path file, String contentType, long size, String etag) {
+    }
+
+    public record Stats(int entries, long bytes, long maxBytes, long hits, long misses,
+                        long evictions, long failures, long rejected) {
+    }
+
+    /**
+     * Đang có đủ max-concurrent-decodes ảnh được tải / decode, client nên thử lại sau
+     */
+    public static class BusyException extends RuntimeException {
+        public BusyException() {
+            super("Image derivative workers are busy");
+        }
+    }
+
+    private static final long MAX_SOURCE_PIXELS = 40_000_000L;
+
+    private final Path cacheDir;
+    private final long maxBytes;
+    private final long maxSourceBytes;
+    private final Set<String> allowedHosts;
+    // "/{cloud_name}/" của các tài khoản Cloudinary: chỉ resize ảnh của shop, không phải ảnh bất kỳ trên Cloudinary
+    private final List<String> allowedPathPrefixes;
+    private final Semaphore decodePermits;
+    private final Duration fetchTimeout;
+    private final HttpClient httpClient;
+
+    // access-order: phần tử đầu là ít được dùng nhất
+    private final LinkedHashMap<String, Derivative> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    private final Map<String, CompletableFuture<Derivative>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public ImageDerivativeCache(List<Cloudinary> cloudinaryAccounts,
+                                @Value("${image.derivatives.cache-dir}") Path cacheDir,
+                                @Value("${image.derivatives.max-size:512MB}") DataSize maxSize,
+                                @Value("${image.derivatives.max-source-size:10MB}") DataSize maxSourceSize,
+                                @Value("${image.derivatives.allowed-hosts:res.cloudinary.com}") Set<String> allowedHosts,
+                                @Value("${image.derivatives.fetch-timeout:10s}") Duration fetchTimeout,
+                                @Value("${image.derivatives.max-concurrent-decodes:4}") int maxConcurrentDecodes)
+            throws IOException {
+        this.cacheDir = cacheDir.toAbsolutePath().normalize();
+        this.maxBytes = maxSize.toBytes();
+        this.maxSourceBytes = maxSourceSize.toBytes();
+        this.allowedHosts = allowedHosts.stream()
+                .map(host -> host.trim().toLowerCase(Locale.ROOT))
+                .filter(host -> !host.isEmpty())
+                .collect(Collectors.toSet());
+        this.allowedPathPrefixes = cloudinaryAccounts.stream()
+                .map(cloudinary -> cloudinary.config.cloudName)
+                .filter(name -> name != null && !name.isBlank())
+                .map(name -> "/" + name.trim() + "/")
+                .distinct()
+                .toList();
+        this.decodePermits = new Semaphore(Math.max(1, maxConcurrentDecodes));
+        this.fetchTimeout = fetchTimeout;
+        // Không follow redirect để không bị dẫn ra ngoài allowed-hosts
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(fetchTimeout)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        Files.createDirectories(this.cacheDir);
+        loadIndex();
+    }
+
+    /**
+     * Lấy derivative của ảnh src, tạo mới nếu chưa có trong cache
+     *
+     * @throws IllegalArgumentException variant / src không hợp lệ hoặc ảnh không đọc được
+     * @throws BusyException            đang xử lý đủ max-concurrent-decodes miss
+     * @throws IOException              không tải được ảnh gốc / lỗi ghi cache
+     */
+    public Derivative get(String variantName, String src) throws IOException {
+        Variant variant = Variant.parse(variantName);
+        URI source = validateSource(src);
+        String key = sha256Hex(variant.name() + "|" + source);
+
+        Derivative cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<Derivative> created = new CompletableFuture<>();
+        CompletableFuture<Derivative> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            // Request khác có thể vừa tạo xong giữa lookup và putIfAbsent
+            Derivative derivative = lookup(key);
+            if (derivative != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                // Tải + decode ảnh gốc tốn nhiều RAM / CPU: không xếp hàng, từ chối ngay khi đã đủ worker
+                if (!decodePermits.tryAcquire()) {
+                    rejected.increment();
+                    throw new BusyException();
+                }
+                try {
+                    derivative = create(key, variant, source);
+                } finally {
+                    decodePermits.release();
+                }
+                put(key, derivative);
+            }
+            created.complete(derivative);
+            return derivative;
+        } catch (BusyException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            failures.increment();
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(entries.size(), totalBytes, maxBytes, hits.sum(), misses.sum(),
+                evictions.sum(), failures.sum(), rejected.sum());
+    }
+
+    private synchronized Derivative lookup(String key) {
+        Derivative derivative = entries.get(key);
+        if (derivative != null && !Files.exists(derivative.file())) {
+            // File bị xóa từ bên ngoài
+            entries.remove(key);
+            totalBytes -= derivative.size();
+            return null;
+        }
+        return derivative;
+    }
+
+    private synchronized void put(String key, Derivative derivative) {
+        Derivative previous = entries.put(key, derivative);
+        if (previous != null) {
+            totalBytes -= previous.size();
+            if (!previous.file().equals(derivative.file())) {
+                try {
+                    Files.deleteIfExists(previous.file());
+                } catch (IOException e) {
+                    log.debug("Cannot delete stale derivative {}: {}", previous.file(), e.getMessage());
+                }
+            }
+        }
+        totalBytes += derivative.size();
+        Iterator<Map.Entry<String, Derivative>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Derivative> eldest = it.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            it.remove();
+            totalBytes -= eldest.getValue().size();
+            evictions.increment();
+            try {
+                Files.deleteIfExists(eldest.getValue().file());
+            } catch (IOException e) {
+                log.debug("Cannot delete evicted derivative {}: {}", eldest.getValue().file(), e.getMessage());
+            }
+        }
+    }
+
+    private Derivative create(String key, Variant variant, URI source) throws IOException {
+        Path original = Files.createTempFile(cacheDir, "src-", ".tmp");
+        Path output = Files.createTempFile(cacheDir, "out-", ".tmp");
+        try {
+            download(source, original);
+            BufferedImage image = read(original);
+            BufferedImage resized = resize(image, variant.maxDimension);
+            boolean alpha = resized.getColorModel().hasAlpha();
+            String format = alpha ? "png" : "jpg";
+
+            MessageDigest digest = DeduplicatingImageStorage.newDigest();
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(output), digest)) {
+                write(resized, format, out);
+            }
+            String etag = HexFormat.of().formatHex(digest.digest());
+
+            // Tên file: {key}.{etag}.{ext} -> khởi động lại không phải hash lại nội dung
+            Path target = cacheDir.resolve(key.substring(0, 2)).resolve(key + "." + etag + "." + format);
+            Files.createDirectories(target.getParent());
+            Files.move(output, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new Derivative(target, alpha ? "image/png" : "image/jpeg", Files.size(target), etag);
+        } finally {
+            Files.deleteIfExists(original);
+            Files.deleteIfExists(output);
+        }
+    }
+
+    private URI validateSource(String src) {
+        if (src == null || src.isBlank()) {
+            throw new IllegalArgumentException("Image source is required");
+        }
+        URI uri;
+        try {
+            uri = URI.create(src.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid image source: " + src);
+        }
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : "";
+        String host = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ROOT) : "";
+        if (!(scheme.equals("https") || scheme.equals("http")) || !allowedHosts.contains(host)) {
+            throw new IllegalArgumentException("Image source host not allowed: " + host);
+        }
+        URI normalized = uri.normalize();
+        String rawPath = normalized.getRawPath() != null ? normalized.getRawPath() : "";
+        // ".." / "%2e" / "%2f" có thể thoát khỏi thư mục cloud_name sau khi Cloudinary decode path
+        String lowerPath = rawPath.toLowerCase(Locale.ROOT);
+        if (lowerPath.contains("..") || lowerPath.contains("%2e") || lowerPath.contains("%2f")
+                || allowedPathPrefixes.stream().noneMatch(rawPath::startsWith)) {
+            throw new IllegalArgumentException("Image source not allowed: " + src);
+        }
+        return normalized;
+    }
+
+    private void download(URI source, Path target) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(source).timeout(fetchTimeout).GET().build();
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Image download interrupted", e);
+        }
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Image source returned HTTP " + response.statusCode());
+            }
+            long declared = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            if (declared > maxSourceBytes) {
+                throw new IOException("Image source exceeds " + DataSize.ofBytes(maxSourceBytes).toMegabytes() + "MB");
+            }
+            // Không tin Content-Length: dừng khi đọc quá giới hạn
+            try (OutputStream out = Files.newOutputStream(target)) {
+                byte[] buffer = new byte[64 * 1024];
+                long total = 0;
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    total += read;
+                    if (total > maxSourceBytes) {
+                        throw new IOException("Image source exceeds " + DataSize.ofBytes(maxSourceBytes).toMegabytes() + "MB");
+                    }
+                    out.write(buffer, 0, read);
+                }
+            }
+        }
+    }
+
+    // Kiểm tra kích thước trước khi decode để tránh ảnh "bom" giải nén ra hàng GB
+    private BufferedImage read(Path file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IllegalArgumentException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > MAX_SOURCE_PIXELS) {
+                    throw new IllegalArgumentException("Image dimensions too large");
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage resize(BufferedImage image, int maxDimension) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+        boolean alpha = image.getColorModel().hasAlpha();
+        BufferedImage resized = new BufferedImage(targetWidth, targetHeight,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = resized.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            g.dispose();
+        }
+        return resized;
+    }
+
+    private static void write(BufferedImage image, String format, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(0.85f);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    // Dựng lại index từ thư mục cache (thứ tự LRU xấp xỉ theo lastModified), xóa file tạm còn sót
+    private void loadIndex() throws IOException {
+        record Found(String key, Derivative derivative, long modified) {
+        }
+        List<Found> found;
+        try (Stream<Path> files = Files.walk(cacheDir, 2)) {
+            found = files.filter(Files::isRegularFile)
+                    .map(file -> {
+                        String[] parts = file.getFileName().toString().split("\\.");
+                        try {
+                            if (parts.length == 2 && parts[1].equals("tmp")) {
+                                Files.deleteIfExists(file);
+                                return null;
+                            }
+                            if (parts.length != 3 || parts[0].length() != 64 || parts[1].length() != 64) {
+                                return null;
+                            }
+                            String contentType = parts[2].equals("png") ? "image/png" : "image/jpeg";
+                            return new Found(parts[0], new Derivative(file, contentType, Files.size(file), parts[1]),
+                                    Files.getLastModifiedTime(file).toMillis());
+                        } catch (IOException e) {
+                            return null;
+                        }
+                    })
+                    .filter(Objects::nonNull)
+                    .sorted(Comparator.comparingLong(Found::modified))
+                    .toList();
+        }
+        for (Found f : found) {
+            put(f.key(), f.derivative());
+        }
+        if (!found.isEmpty()) {
+            log.info("Loaded {} image derivatives ({} bytes) from {}", entries.size(), totalBytes, cacheDir);
+        }
+    }
+
+    private static String sha256Hex(String value) {
+        return HexFormat.of().formatHex(DeduplicatingImageStorage.newDigest()
+                .digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Derivative await(CompletableFuture<Derivative> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for image derivative", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
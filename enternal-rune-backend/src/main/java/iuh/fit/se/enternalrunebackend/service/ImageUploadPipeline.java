@@ -0,0 +1,242 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.service.storage.ImageStorage;
+import iuh.fit.se.enternalrunebackend.service.storage.StoredImage;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Upload nhiều ảnh song song thay vì lần lượt trên request thread:
+ * - Mỗi file được chuyển (transferTo) sang file tạm rồi storage đọc stream từ đó, không gọi getBytes()
+ * - Chạy trên virtual thread, tối đa max-concurrency upload cùng lúc cho toàn ứng dụng
+ * - Cả batch có chung 1 deadline; file chưa xong khi hết hạn bị huỷ và báo lỗi riêng
+ * - Kết quả trả về theo từng file (thành công / lỗi) để caller quyết định giữ hay huỷ cả batch
+ * - Storage được bọc bởi DeduplicatingImageStorage: ảnh trùng nội dung (SHA-256) dùng lại URL cũ; discard không xóa
+ *   ảnh đã có trong chỉ mục dedup (có thể đang được batch khác dùng)
+ */
+@Component
+@Slf4j
+public class ImageUploadPipeline {
+
+    /**
+     * Kết quả của 1 file
+     *
+     * @param index vị trí file trong danh sách gửi lên
+     * @param image null nếu lỗi
+     * @param error lý do lỗi, null nếu thành công
+     */
+    public record Upload(int index, String fileName, long size, StoredImage image, String error) {
+        public boolean ok() {
+            return image != null;
+        }
+    }
+
+    public record Result(List<Upload> uploads) {
+
+        public boolean allSucceeded() {
+            return uploads.stream().allMatch(Upload::ok);
+        }
+
+        public List<Upload> succeeded() {
+            return uploads.stream().filter(Upload::ok).toList();
+        }
+
+        public List<Upload> failed() {
+            return uploads.stream().filter(upload -> !upload.ok()).toList();
+        }
+
+        public String failureSummary() {
+            return failed().stream()
+                    .map(upload -> upload.fileName() + ": " + upload.error())
+                    .collect(Collectors.joining("; "));
+        }
+    }
+
+    // Folder cũ của ImageServiceImpl cho ảnh sản phẩm và review
+    public static final String DEFAULT_FOLDER = "comment_images";
+
+    private final ImageStorage imageStorage;
+    private final BlockingCallMonitor blockingCallMonitor;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final Duration deadline;
+    private final long maxFileSize;
+    private final Set<String> allowedExtensions;
+    private final Path tempDir;
+
+    public ImageUploadPipeline(@Qualifier("imageStorage") ImageStorage imageStorage,
+                               BlockingCallMonitor blockingCallMonitor,
+                               @Value("${image.upload.max-concurrency:8}") int maxConcurrency,
+                               @Value("${image.upload.deadline:30s}") Duration deadline,
+                               @Value("${image.upload.max-file-size:5MB}") DataSize maxFileSize,
+                               @Value("${image.upload.allowed-extensions:jpg,jpeg,png,webp}") Set<String> allowedExtensions)
+            throws IOException {
+        this.imageStorage = imageStorage;
+        this.blockingCallMonitor = blockingCallMonitor;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("image-upload-", 0).factory());
+        this.permits = new Semaphore(Math.max(1, maxConcurrency));
+        this.deadline = deadline;
+        this.maxFileSize = maxFileSize.toBytes();
+        this.allowedExtensions = allowedExtensions.stream()
+                .map(ext -> ext.trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+        this.tempDir = Files.createTempDirectory("image-upload-");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Upload vào storage mặc định (ảnh sản phẩm / review)
+     */
+    public Result uploadAll(List<MultipartFile> files) {
+        return uploadAll(files, imageStorage, DEFAULT_FOLDER);
+    }
+
+    /**
+     * Upload song song, chờ tối đa deadline. File rỗng bị bỏ qua (không có trong kết quả).
+     */
+    public Result uploadAll(List<MultipartFile> files, ImageStorage storage, String folder) {
+        if (files == null || files.isEmpty()) {
+            return new Result(List.of());
+        }
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        List<Upload> uploads = new ArrayList<>(files.size());
+        List<Future<StoredImage>> futures = new ArrayList<>(files.size());
+        List<Integer> futureIndexes = new ArrayList<>(files.size());
+        List<Path> tempFiles = new ArrayList<>(files.size());
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                MultipartFile file = files.get(i);
+                if (file == null || file.isEmpty()) {
+                    continue;
+                }
+                String fileName = file.getOriginalFilename() != null ? file.getOriginalFilename() : "image";
+                String invalid = validate(fileName, file.getSize());
+                if (invalid != null) {
+                    uploads.add(new Upload(i, fileName, file.getSize(), null, invalid));
+                    continue;
+                }
+                Path temp;
+                try {
+                    // Multipart đã nằm trên đĩa: transferTo thường chỉ là rename, không đọc vào heap
+                    temp = tempDir.resolve(UUID.randomUUID() + "-" + fileName.replaceAll("[^A-Za-z0-9._-]", "_"));
+                    tempFiles.add(temp);
+                    file.transferTo(temp);
+                } catch (IOException | IllegalStateException e) {
+                    uploads.add(new Upload(i, fileName, file.getSize(), null, "Cannot read upload: " + e.getMessage()));
+                    continue;
+                }
+                uploads.add(new Upload(i, fileName, file.getSize(), null, null));
+                futureIndexes.add(uploads.size() - 1);
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return blockingCallMonitor.record("image-storage",
+                                () -> storage.store(temp, fileName, folder));
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            for (int f = 0; f < futures.size(); f++) {
+                int slot = futureIndexes.get(f);
+                Upload pending = uploads.get(slot);
+                uploads.set(slot, await(futures.get(f), pending, deadlineNanos));
+            }
+        } finally {
+            for (Path temp : tempFiles) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    log.debug("Cannot delete temp upload {}: {}", temp, e.getMessage());
+                }
+            }
+        }
+        Result result = new Result(uploads);
+        if (!result.allSucceeded()) {
+            log.warn("Image upload to {}: {}/{} failed ({})", storage.name(), result.failed().size(),
+                    uploads.size(), result.failureSummary());
+        }
+        return result;
+    }
+
+    /**
+     * Xóa các ảnh đã upload thành công của 1 batch (best effort), dùng khi caller huỷ thao tác
+     */
+    public void discard(Result result) {
+        discard(result, imageStorage);
+    }
+
+    public void discard(Result result, ImageStorage storage) {
+        for (Upload upload : result.succeeded()) {
+            executor.execute(() -> {
+                try {
+                    storage.delete(upload.image());
+                } catch (Exception e) {
+                    log.warn("Cannot delete orphan image {}: {}", upload.image().url(), e.getMessage());
+                }
+            });
+        }
+    }
+
+    private Upload await(Future<StoredImage> future, Upload pending, long deadlineNanos) {
+        try {
+            long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+            StoredImage image = future.get(remaining, TimeUnit.NANOSECONDS);
+            return new Upload(pending.index(), pending.fileName(), pending.size(), image, null);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return new Upload(pending.index(), pending.fileName(), pending.size(), null,
+                    "Upload timed out after " + deadline.toSeconds() + "s");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            return new Upload(pending.index(), pending.fileName(), pending.size(), null, cause.getMessage());
+        } catch (CancellationException e) {
+            return new Upload(pending.index(), pending.fileName(), pending.size(), null, "Upload cancelled");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return new Upload(pending.index(), pending.fileName(), pending.size(), null, "Upload interrupted");
+        }
+    }
+
+    private String validate(String fileName, long size) {
+        if (size > maxFileSize) {
+            return "File size exceeds " + DataSize.ofBytes(maxFileSize).toMegabytes() + "MB limit";
+        }
+        int dot = fileName.lastIndexOf('.');
+        String extension = dot >= 0 ? fileName.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+        if (!allowedExtensions.contains(extension)) {
+            return "Unsupported file format. Allowed: " + String.join(", ", allowedExtensions);
+        }
+        return null;
+    }
+}
@@ -4,10 +4,14 @@ import iuh.fit.se.enternalrunebackend.dto.request.BrandRequest;
 import iuh.fit.se.enternalrunebackend.dto.response.BrandDashboardListResponse;
 import iuh.fit.se.enternalrunebackend.dto.response.BrandResponse;
 import iuh.fit.se.enternalrunebackend.dto.response.BrandStatisticResponse;
+import iuh.fit.se.enternalrunebackend.config.CacheConfig;
 import iuh.fit.se.enternalrunebackend.entity.Message;
 import iuh.fit.se.enternalrunebackend.repository.BrandRepository;
 import iuh.fit.se.enternalrunebackend.repository.ProductRepository;
+import iuh.fit.se.enternalrunebackend.service.CacheInvalidationService;
+import iuh.fit.se.enternalrunebackend.service.CatalogSnapshotService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
@@ -26,7 +30,10 @@ public class BrandServiceImpl implements iuh.fit.se.enternalrunebackend.service.
     private final BrandRepository brandRepository;
 
     private final ProductRepository productRepository;
+    private final CacheInvalidationService cacheInvalidationService;
+    private final CatalogSnapshotService catalogSnapshotService;
     @Override
+    @Cacheable(value = CacheConfig.BRAND_CACHE, key = "'names'", sync = true)
     public List<BrandResponse> getDistinctBrandNames() {
         return brandRepository.findAll()
                 .stream()
@@ -72,6 +79,8 @@ public class BrandServiceImpl implements iuh.fit.se.enternalrunebackend.service.
         brand.setBrandStatus(brandRequest.getBrandStatus());
 
         brandRepository.save(brand);
+        cacheInvalidationService.onBrandChanged();
+        catalogSnapshotService.reloadAfterCommit();
     }
 
     @Override
@@ -81,6 +90,8 @@ public class BrandServiceImpl implements iuh.fit.se.enternalrunebackend.service.
             throw new RuntimeException("Thương hiệu không tồn tại!");
         }
         brandRepository.delete(brand);
+        cacheInvalidationService.onBrandChanged();
+        catalogSnapshotService.reloadAfterCommit();
     }
 
     @Override
@@ -102,8 +113,11 @@ public class BrandServiceImpl implements iuh.fit.se.enternalrunebackend.service.
         }
 
         brandRepository.save(brand);
+        cacheInvalidationService.onBrandChanged();
+        catalogSnapshotService.reloadAfterCommit();
     }
     @Override
+    @Cacheable(value = CacheConfig.DASHBOARD_CACHE, key = "'brands'", sync = true)
     public BrandStatisticResponse getBrandStatistics() {
         long totalBrands = brandRepository.count();
         long totalProducts = brandRepository.getTotalProducts();
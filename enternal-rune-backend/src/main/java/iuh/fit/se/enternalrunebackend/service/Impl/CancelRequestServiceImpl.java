@@ -9,9 +9,11 @@ import iuh.fit.se.enternalrunebackend.repository.CancelRequestRepository;
 import iuh.fit.se.enternalrunebackend.repository.OrderRepository;
 import iuh.fit.se.enternalrunebackend.repository.UserRepository;
 import iuh.fit.se.enternalrunebackend.repository.NotificationRespository;
-import iuh.fit.se.enternalrunebackend.repository.ShippingStatusRepository;
+import iuh.fit.se.enternalrunebackend.service.CacheInvalidationService;
 import iuh.fit.se.enternalrunebackend.service.CancelRequestService;
+import iuh.fit.se.enternalrunebackend.service.DailySalesRollupService;
 import iuh.fit.se.enternalrunebackend.service.NotificationService;
+import iuh.fit.se.enternalrunebackend.service.StatusRegistry;
 import iuh.fit.se.enternalrunebackend.dto.notification.OrderNotification;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
@@ -33,7 +35,9 @@ public class CancelRequestServiceImpl implements CancelRequestService {
     private final UserRepository userRepository;
     private final NotificationRespository notificationRepository;
     private final NotificationService notificationService;
-    private final ShippingStatusRepository shippingStatusRepository;
+    private final StatusRegistry statusRegistry;
+    private final CacheInvalidationService cacheInvalidationService;
+    private final DailySalesRollupService dailySalesRollupService;
 
     @Override
     @Transactional
@@ -57,9 +61,12 @@ public class CancelRequestServiceImpl implements CancelRequestService {
         
         if (!isPaid) {
             // If not paid, cancel order directly
+            DailySalesRollupService.OrderState before = dailySalesRollupService.capture(order);
             order.addShippingStatus(order.getCurrentShippingStatus(), "Đơn hàng đã bị hủy bởi khách hàng");
             order.addPaymentStatus(paymentStatus, "Đơn hàng đã bị hủy");
             orderRepository.save(order);
+            dailySalesRollupService.onOrderUpdated(before, order);
+            cacheInvalidationService.onOrderChanged();
             
             // Create notification for admin
             Notification notification = new Notification();
@@ -167,18 +174,21 @@ public class CancelRequestServiceImpl implements CancelRequestService {
         notification.setNotiTime(LocalDateTime.now());
         notification.setTargetRole("USER");
         notificationRepository.save(notification);
+        notificationService.sendNotificationToUser(notification);
         
         // If approved, cancel the order
         if (newStatus == RequestStatus.APPROVED) {
             Order order = cancelRequest.getOrder();
             
             // Get CANCELLED shipping status
-            ShippingStatus cancelledStatus = shippingStatusRepository.findByStatusCode("CANCELLED")
-                    .orElseThrow(() -> new RuntimeException("Shipping status CANCELLED not found"));
+            ShippingStatus cancelledStatus = statusRegistry.shippingStatus("CANCELLED");
             
+            DailySalesRollupService.OrderState before = dailySalesRollupService.capture(order);
             order.addShippingStatus(cancelledStatus, "Đơn hàng đã bị hủy theo yêu cầu");
             order.addPaymentStatus(order.getCurrentPaymentStatus(), "Đơn hàng đã bị hủy - chờ hoàn tiền");
             orderRepository.save(order);
+            dailySalesRollupService.onOrderUpdated(before, order);
+            cacheInvalidationService.onOrderChanged();
         }
         
         return mapToResponse(cancelRequest);
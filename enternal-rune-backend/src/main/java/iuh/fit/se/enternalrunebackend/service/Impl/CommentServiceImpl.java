@@ -3,13 +3,17 @@ package iuh.fit.se.enternalrunebackend.service.Impl;
 import iuh.fit.se.enternalrunebackend.dto.request.CreateCommentRequest;
 import iuh.fit.se.enternalrunebackend.dto.response.CommentPageResponse;
 import iuh.fit.se.enternalrunebackend.dto.response.CommentResponse;
+import iuh.fit.se.enternalrunebackend.dto.response.CursorPageResponse;
 import iuh.fit.se.enternalrunebackend.dto.response.ImageInfo;
 import iuh.fit.se.enternalrunebackend.entity.*;
 import iuh.fit.se.enternalrunebackend.entity.enums.CommentStatus;
 import iuh.fit.se.enternalrunebackend.repository.*;
 import iuh.fit.se.enternalrunebackend.service.CommentService;
-import iuh.fit.se.enternalrunebackend.service.ImageService;
+import iuh.fit.se.enternalrunebackend.service.ImageUploadPipeline;
+import iuh.fit.se.enternalrunebackend.service.ProductRatingAggregateService;
+import iuh.fit.se.enternalrunebackend.service.ProductRatingStats;
 import iuh.fit.se.enternalrunebackend.service.PurchaseCheckService;
+import iuh.fit.se.enternalrunebackend.util.CursorCodec;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -37,12 +41,14 @@ public class CommentServiceImpl implements CommentService {
     private final CommentImageRepository commentImageRepository;
     private final ProductRepository productRepository;
     private final PurchaseCheckService purchaseCheckService;
-    private final ImageService imageService;
+    private final ImageUploadPipeline imageUploadPipeline;
+    private final ProductRatingAggregateService ratingAggregateService;
 
     // Business rules constants
     private static final int RATE_LIMIT_SECONDS = 10;
     private static final int MAX_IMAGES_PER_COMMENT = 6;
     private static final int MAX_CONTENT_LENGTH = 1000;
+    private static final String COMMENT_CURSOR = "cm";
 
     @Override
     @Transactional(readOnly = true)
@@ -54,16 +60,9 @@ public class CommentServiceImpl implements CommentService {
                 .map(comment -> mapToCommentResponse(comment, productId))
                 .collect(Collectors.toList());
 
-        // Get rating statistics
-        Double averageRating = commentRepository.getAverageRating(productId);
-        Long totalRatings = commentRepository.countByProductId(productId);
-        Map<Integer, Long> ratingDistribution = getRatingDistribution(productId);
-
-        // Fill missing ratings with 0
-        Map<Integer, Long> completeRatingDistribution = new HashMap<>();
-        for (int i = 1; i <= 5; i++) {
-            completeRatingDistribution.put(i, ratingDistribution.getOrDefault(i, 0L));
-        }
+        // Get rating statistics (1 query vào bảng aggregate)
+        ProductRatingStats stats = ratingAggregateService.getStats(productId);
+        Map<Integer, Long> completeRatingDistribution = toDistribution(stats, productId);
 
         return CommentPageResponse.builder()
                 .comments(commentResponses)
@@ -73,12 +72,51 @@ public class CommentServiceImpl implements CommentService {
                 .totalPages(commentPage.getTotalPages())
                 .hasNext(commentPage.hasNext())
                 .hasPrevious(commentPage.hasPrevious())
-                .averageRating(averageRating != null ? averageRating : 0.0)
-                .totalRatings(totalRatings)
+                .averageRating(stats.getAverageRating(productId))
+                .totalRatings((long) stats.getTotalComments(productId))
                 .ratingDistribution(completeRatingDistribution)
                 .build();
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPageResponse<CommentResponse> getCommentsByCursor(Integer productId, String cursor, int size) {
+        LocalDateTime cursorDate = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+        int cursorId = Integer.MAX_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] values = CursorCodec.decode(cursor, COMMENT_CURSOR, 2);
+            try {
+                cursorDate = LocalDateTime.parse(values[0]);
+                cursorId = Integer.parseInt(values[1]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursor không hợp lệ");
+            }
+        }
+
+        // Lấy dư 1 phần tử để biết còn trang sau hay không
+        List<Comment> comments = commentRepository.findByProductIdBeforeCursor(
+                productId, cursorDate, cursorId, PageRequest.of(0, size + 1));
+        boolean hasNext = comments.size() > size;
+        if (hasNext) {
+            comments = comments.subList(0, size);
+        }
+
+        String nextCursor = null;
+        if (hasNext) {
+            Comment last = comments.get(comments.size() - 1);
+            nextCursor = CursorCodec.encode(COMMENT_CURSOR, last.getCmDate(), last.getCmId());
+        }
+
+        return CursorPageResponse.<CommentResponse>builder()
+                .content(comments.stream()
+                        .map(comment -> mapToCommentResponse(comment, productId))
+                        .collect(Collectors.toList()))
+                .size(size)
+                .hasNext(hasNext)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
     @Override
     @Transactional
     public CommentResponse createComment(Integer productId, CreateCommentRequest request,
@@ -148,6 +186,9 @@ public class CommentServiceImpl implements CommentService {
         // Save comment
         Comment savedComment = commentRepository.save(comment);
 
+        // Cập nhật thống kê rating của sản phẩm trong cùng transaction
+        ratingAggregateService.onCommentCreated(savedComment);
+
         // Handle image uploads
         List<CommentImage> commentImages = new ArrayList<>();
         if (images != null && images.length > 0) {
@@ -166,31 +207,22 @@ public class CommentServiceImpl implements CommentService {
     @Override
     @Transactional(readOnly = true)
     public Map<Integer, Long> getRatingDistribution(Integer productId) {
-        // Gọi repository method để lấy danh sách phân bố rating từ database
-        List<Object[]> rawResults = commentRepository.getRatingDistributionList(productId);
-
-        // Chuyển đổi từ List<Object[]> thành Map<Integer, Long>
-        Map<Integer, Long> distribution = new HashMap<>();
-        for (Object[] row : rawResults) {
-            // row[0] = rating, row[1] = count
-            Integer rating = (Integer) row[0];
-            Long count = ((Number) row[1]).longValue();
-            distribution.put(rating, count);
-        }
-
-        // Đảm bảo tất cả rating từ 1-5 đều có trong map, nếu không có thì gán giá trị 0
-        Map<Integer, Long> result = new HashMap<>();
-        for (int i = 1; i <= 5; i++) {
-            result.put(i, distribution.getOrDefault(i, 0L));
-        }
-        return result;
+        return toDistribution(ratingAggregateService.getStats(productId), productId);
     }
 
     @Override
     @Transactional(readOnly = true)
     public double getAverageRating(Integer productId) {
-        Double average = commentRepository.getAverageRating(productId);
-        return average != null ? average : 0.0;
+        return ratingAggregateService.getStats(productId).getAverageRating(productId);
+    }
+
+    // Đảm bảo tất cả rating từ 1-5 đều có trong map, nếu không có thì gán giá trị 0
+    private Map<Integer, Long> toDistribution(ProductRatingStats stats, Integer productId) {
+        Map<Integer, Long> result = new HashMap<>();
+        for (int i = 1; i <= 5; i++) {
+            result.put(i, (long) stats.getStarCount(productId, i));
+        }
+        return result;
     }
 
     @Override
@@ -303,34 +335,26 @@ public class CommentServiceImpl implements CommentService {
     }
 
     /**
-     * Save comment images using ImageService (same as ProductService)
+     * Save comment images: upload song song qua ImageUploadPipeline, lỗi 1 ảnh thì huỷ cả batch
      */
     private List<CommentImage> saveCommentImages(Comment comment, MultipartFile[] images) {
-        List<CommentImage> commentImages = new ArrayList<>();
-
-        for (int i = 0; i < images.length; i++) {
-            MultipartFile image = images[i];
-            if (image.isEmpty())
-                continue;
-
-            try {
-                // Upload to Cloudinary using ImageService (same as ProductService)
-                String imageUrl = imageService.upload(image.getBytes(), image.getOriginalFilename());
-
-                CommentImage commentImage = CommentImage.builder()
-                        .url(imageUrl)
-                        .fileName(image.getOriginalFilename())
-                        .size(image.getSize())
-                        .displayOrder(i)
-                        .comment(comment)
-                        .build();
-
-                CommentImage savedImage = commentImageRepository.save(commentImage);
-                commentImages.add(savedImage);
+        ImageUploadPipeline.Result result = imageUploadPipeline.uploadAll(Arrays.asList(images));
+        if (!result.allSucceeded()) {
+            imageUploadPipeline.discard(result);
+            throw new RuntimeException("Failed to upload image: " + result.failureSummary());
+        }
 
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to upload image: " + e.getMessage(), e);
-            }
+        List<CommentImage> commentImages = new ArrayList<>();
+        for (ImageUploadPipeline.Upload upload : result.uploads()) {
+            CommentImage commentImage = CommentImage.builder()
+                    .url(upload.image().url())
+                    .fileName(upload.fileName())
+                    .size(upload.size())
+                    .displayOrder(upload.index())
+                    .comment(comment)
+                    .build();
+
+            commentImages.add(commentImageRepository.save(commentImage));
         }
 
         return commentImages;
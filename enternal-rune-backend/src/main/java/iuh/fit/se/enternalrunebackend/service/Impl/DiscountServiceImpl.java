@@ -7,6 +7,8 @@ import iuh.fit.se.enternalrunebackend.entity.Discount;
 import iuh.fit.se.enternalrunebackend.entity.Order;
 import iuh.fit.se.enternalrunebackend.entity.enums.ValueType;
 import iuh.fit.se.enternalrunebackend.repository.DiscountRepository;
+import iuh.fit.se.enternalrunebackend.service.CacheInvalidationService;
+import iuh.fit.se.enternalrunebackend.service.CatalogSnapshotService;
 import iuh.fit.se.enternalrunebackend.service.DiscountService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
@@ -23,6 +25,9 @@ import java.util.stream.Collectors;
 public class DiscountServiceImpl implements DiscountService {
 
     private final DiscountRepository discountRepository;
+    // Giá sản phẩm trong catalog snapshot mang theo tên discount
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final CacheInvalidationService cacheInvalidationService;
 
     @Override
     public DiscountResponse create(DiscountRequest req) {
@@ -47,6 +52,8 @@ public class DiscountServiceImpl implements DiscountService {
         d.setDiscountQuantityLimit(req.getDiscountQuantityLimit());
 
         Discount saved = discountRepository.save(d);
+        cacheInvalidationService.onDiscountChanged();
+        catalogSnapshotService.reloadAfterCommit();
         return mapToResponse(saved);
     }
 
@@ -65,7 +72,10 @@ public class DiscountServiceImpl implements DiscountService {
         d.setDiscountQuantityLimit(req.getDiscountQuantityLimit());
         d.setDiscountActive(req.isDiscountActive());
 
-        return mapToResponse(discountRepository.save(d));
+        Discount saved = discountRepository.save(d);
+        cacheInvalidationService.onDiscountChanged();
+        catalogSnapshotService.reloadAfterCommit();
+        return mapToResponse(saved);
     }
 
     @Override
@@ -122,6 +132,8 @@ public class DiscountServiceImpl implements DiscountService {
     @Override
     public void delete(int id) {
         discountRepository.deleteById(id);
+        cacheInvalidationService.onDiscountChanged();
+        catalogSnapshotService.reloadAfterCommit();
     }
 
     private DiscountResponse mapToResponse(Discount d) {
@@ -2,6 +2,7 @@
 package iuh.fit.se.enternalrunebackend.service.Impl;
 
 
+import iuh.fit.se.enternalrunebackend.service.BlockingCallMonitor;
 import iuh.fit.se.enternalrunebackend.service.EmailService;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
@@ -11,10 +12,12 @@ import org.springframework.stereotype.Service;
 public class EmailServiceImpl implements EmailService {
 
     private final JavaMailSender mailSender;
+    private final BlockingCallMonitor blockingCallMonitor;
 
     // Constructor injection (chuẩn Spring Boot)
-    public EmailServiceImpl(JavaMailSender mailSender) {
+    public EmailServiceImpl(JavaMailSender mailSender, BlockingCallMonitor blockingCallMonitor) {
         this.mailSender = mailSender;
+        this.blockingCallMonitor = blockingCallMonitor;
     }
 
     @Override
@@ -24,7 +27,7 @@ public class EmailServiceImpl implements EmailService {
         message.setTo(to);
         message.setSubject(subject);
         message.setText(text);
-        mailSender.send(message);
+        send(message);
     }
 
     @Override
@@ -33,6 +36,14 @@ public class EmailServiceImpl implements EmailService {
         message.setTo(toEmail);
         message.setSubject("Mã xác minh đặt lại mật khẩu");
         message.setText("Mã xác minh của bạn là: " + code + "\nMã có hiệu lực trong 5 phút.");
-        mailSender.send(message);
+        send(message);
+    }
+
+    // SMTP block tới khi server nhận xong thư
+    private void send(SimpleMailMessage message) {
+        blockingCallMonitor.record("smtp", () -> {
+            mailSender.send(message);
+            return null;
+        });
     }
 }
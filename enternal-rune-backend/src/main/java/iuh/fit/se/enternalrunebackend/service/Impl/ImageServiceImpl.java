@@ -1,27 +1,33 @@
 package iuh.fit.se.enternalrunebackend.service.Impl;
 
-import com.cloudinary.Cloudinary;
-import com.cloudinary.Transformation;
-import com.cloudinary.utils.ObjectUtils;
+import iuh.fit.se.enternalrunebackend.service.BlockingCallMonitor;
 import iuh.fit.se.enternalrunebackend.service.ImageService;
-import lombok.RequiredArgsConstructor;
+import iuh.fit.se.enternalrunebackend.service.ImageUploadPipeline;
+import iuh.fit.se.enternalrunebackend.service.storage.ImageStorage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
+/**
+ * Upload 1 ảnh đã có sẵn trong bộ nhớ. Upload từ MultipartFile nên dùng ImageUploadPipeline
+ * (song song, không đọc file vào heap).
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class ImageServiceImpl implements ImageService {
 
-    private final Cloudinary cloudinary;
+    private final ImageStorage imageStorage;
+    private final BlockingCallMonitor blockingCallMonitor;
 
-    // public ImageServiceImpl(@Qualifier("cloudinary") Cloudinary cloudinary) {
-    //     this.cloudinary = cloudinary;
-    // }
+    public ImageServiceImpl(@Qualifier("imageStorage") ImageStorage imageStorage,
+                            BlockingCallMonitor blockingCallMonitor) {
+        this.imageStorage = imageStorage;
+        this.blockingCallMonitor = blockingCallMonitor;
+    }
 
     @Override
     public String upload(byte[] imageData, String fileName) throws IOException {
@@ -35,69 +41,38 @@ public class ImageServiceImpl implements ImageService {
             throw new IOException("File name is required");
         }
 
-        try {
-            // ===== 1. File size validation (5MB) =====
-            long maxSize = 5 * 1024 * 1024; // 5MB
-            if (imageData.length > maxSize) {
-                throw new IOException("File size exceeds 5MB limit");
-            }
-
-            // ===== 2. File format validation =====
-            String lowerFileName = fileName.toLowerCase();
-            if (!(lowerFileName.endsWith(".jpg") ||
-                    lowerFileName.endsWith(".jpeg") ||
-                    lowerFileName.endsWith(".png") ||
-                    lowerFileName.endsWith(".webp"))) {
-                throw new IOException("Unsupported file format. Only JPG, JPEG, PNG, WEBP allowed");
-            }
-
-            // ===== 3. Generate public_id =====
-            String publicId = fileName.replaceFirst("[.][^.]+$", "") + "_" + System.currentTimeMillis();
-
-            // ===== 4. Upload to Cloudinary =====
-            log.info("Uploading image: {} (size: {} bytes)", fileName, imageData.length);
-
-            @SuppressWarnings("unchecked")
-            Map<String, Object> uploadResult = cloudinary.uploader().upload(
-                    imageData,
-                    ObjectUtils.asMap(
-                            "public_id", publicId,
-                            "resource_type", "image",
-                            "folder", "comment_images", // Organize in folder
-                            "transformation", new Transformation<>()
-                                    .width(1200)
-                                    .height(1200)
-                                    .crop("limit")
-                                    .quality("auto")
-                                    .fetchFormat("auto")));
+        // ===== 1. File size validation (5MB) =====
+        long maxSize = 5 * 1024 * 1024; // 5MB
+        if (imageData.length > maxSize) {
+            throw new IOException("File size exceeds 5MB limit");
+        }
 
-            // ===== 5. Extract secure URL =====
-            String secureUrl = (String) uploadResult.get("secure_url");
-            if (secureUrl == null) {
-                throw new IOException("Failed to get secure URL from Cloudinary response");
-            }
+        // ===== 2. File format validation =====
+        String lowerFileName = fileName.toLowerCase();
+        if (!(lowerFileName.endsWith(".jpg") ||
+                lowerFileName.endsWith(".jpeg") ||
+                lowerFileName.endsWith(".png") ||
+                lowerFileName.endsWith(".webp"))) {
+            throw new IOException("Unsupported file format. Only JPG, JPEG, PNG, WEBP allowed");
+        }
 
+        // ===== 3. Upload qua ImageStorage =====
+        log.info("Uploading image: {} (size: {} bytes)", fileName, imageData.length);
+        Path temp = Files.createTempFile("upload-", ".tmp");
+        try {
+            Files.write(temp, imageData);
+            String secureUrl = blockingCallMonitor.record("image-storage",
+                    () -> imageStorage.store(temp, fileName, ImageUploadPipeline.DEFAULT_FOLDER)).url();
             log.info("Successfully uploaded image: {} -> {}", fileName, secureUrl);
             return secureUrl;
-
         } catch (IOException e) {
             log.error("IO Error uploading image {}: {}", fileName, e.getMessage());
             throw e;
         } catch (Exception e) {
             log.error("Unexpected error uploading image {}: {}", fileName, e.getMessage(), e);
             throw new IOException("Failed to upload image: " + e.getMessage(), e);
+        } finally {
+            Files.deleteIfExists(temp);
         }
     }
-
-    /**
-     * Alternative upload method với MultipartFile (nếu cần)
-     */
-    public String uploadMultipartFile(org.springframework.web.multipart.MultipartFile file) throws IOException {
-        if (file == null || file.isEmpty()) {
-            throw new IOException("File is empty");
-        }
-
-        return upload(file.getBytes(), file.getOriginalFilename());
-    }
-
-}
\ No newline at end of file
+}
@@ -1,42 +1,75 @@
 package iuh.fit.se.enternalrunebackend.service.Impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import iuh.fit.se.enternalrunebackend.config.SendNotificationHandler;
 import iuh.fit.se.enternalrunebackend.dto.notification.OrderNotification;
 import iuh.fit.se.enternalrunebackend.entity.Notification;
 import iuh.fit.se.enternalrunebackend.entity.User;
 import iuh.fit.se.enternalrunebackend.repository.NotificationRespository;
 import iuh.fit.se.enternalrunebackend.repository.UserRepository;
+import iuh.fit.se.enternalrunebackend.service.AdminNotificationDispatcher;
 import iuh.fit.se.enternalrunebackend.service.NotificationService;
+import iuh.fit.se.enternalrunebackend.service.cluster.ClusterFanout;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class NotificationServiceImpl implements NotificationService {
 
-    private final ObjectMapper objectMapper;
     private final NotificationRespository notificationRepository;
     private final UserRepository userRepository;
+    private final AdminNotificationDispatcher adminNotificationDispatcher;
+    private final ClusterFanout clusterFanout;
+    private final ObjectMapper objectMapper;
 
+    /**
+     * Không lưu / gửi ngay trên request thread: đưa vào AdminNotificationDispatcher,
+     * notification được lưu theo batch và đẩy WebSocket sau khi transaction của caller commit
+     */
     @Override
-    @Transactional
     public void sendOrderNotificationToAdmin(OrderNotification notification) {
-        try {
-            // Save to database first
-            saveNotification(notification);
-            
-            // Then send via WebSocket
-            String jsonMessage = objectMapper.writeValueAsString(notification);
-            SendNotificationHandler.sendToAdmins(jsonMessage);
-        } catch (Exception e) {
-            System.err.println("Error sending notification: " + e.getMessage());
+        adminNotificationDispatcher.publish(notification);
+    }
+    
+    @Override
+    public void sendNotificationToUser(Notification notification) {
+        if (notification == null || notification.getNotiUser() == null) {
+            return;
+        }
+        OrderNotification payload = OrderNotification.builder()
+                .type(notification.getNotiType())
+                .userId(notification.getNotiUser().getUserId())
+                .userName(notification.getNotiUserName())
+                .message(notification.getNotiMessage())
+                .timestamp(notification.getNotiTime())
+                .build();
+        String email = notification.getNotiUser().getEmail();
+        Runnable push = () -> {
+            try {
+                clusterFanout.sendToUser(email, objectMapper.writeValueAsString(payload));
+            } catch (Exception e) {
+                log.warn("Error sending notification to user {}: {}", email, e.getMessage());
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    push.run();
+                }
+            });
+        } else {
+            push.run();
         }
     }
     
@@ -1,5 +1,6 @@
 package iuh.fit.se.enternalrunebackend.service.Impl;
 
+import iuh.fit.se.enternalrunebackend.config.CacheConfig;
 import iuh.fit.se.enternalrunebackend.dto.notification.OrderNotification;
 import iuh.fit.se.enternalrunebackend.dto.request.CreateOrderRequest;
 import iuh.fit.se.enternalrunebackend.dto.request.OrderItemRequest;
@@ -8,9 +9,14 @@ import iuh.fit.se.enternalrunebackend.dto.response.OrderStatusInfo;
 import iuh.fit.se.enternalrunebackend.entity.*;
 import iuh.fit.se.enternalrunebackend.entity.enums.RequestStatus;
 import iuh.fit.se.enternalrunebackend.repository.*;
+import iuh.fit.se.enternalrunebackend.service.CacheInvalidationService;
+import iuh.fit.se.enternalrunebackend.service.DailySalesRollupService;
 import iuh.fit.se.enternalrunebackend.service.NotificationService;
 import iuh.fit.se.enternalrunebackend.service.OrderService;
+import iuh.fit.se.enternalrunebackend.service.StatusRegistry;
+import iuh.fit.se.enternalrunebackend.util.CursorCodec;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -18,6 +24,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -27,6 +34,8 @@ import java.util.stream.Collectors;
 @Service
 public class OrderServiceImpl implements OrderService {
 
+    private static final String ORDER_CURSOR = "od";
+
     @Autowired
     private OrderRepository orderRepository;
 
@@ -49,10 +58,7 @@ public class OrderServiceImpl implements OrderService {
     private OrderRefundRepository orderRefundRequestRepository;
 
     @Autowired
-    private PaymentStatusRepository paymentStatusRepository;
-
-    @Autowired
-    private ShippingStatusRepository shippingStatusRepository;
+    private StatusRegistry statusRegistry;
     
     @Autowired
     private CancelRequestRepository cancelRequestRepository;
@@ -63,23 +69,30 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private NotificationRespository notificationRepository;
 
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
+
+    @Autowired
+    private DailySalesRollupService dailySalesRollupService;
+
     @Override
     public DashboardSummaryResponse getSummaryForMonth(int year, int month) {
-        // Tổng số đơn hàng, đơn hoàn thành, đơn đang xử lý
-        long totalOrders = orderRepository.countTotalOrders();
+        // Tổng số đơn hàng (rollup), đơn hoàn thành, đơn đang xử lý (trạng thái hiện tại)
+        long totalOrders = dailySalesRollupService.getTotalOrderCount();
         long completedOrders = orderRepository.countCompletedOrders();
         long processingOrders = orderRepository.countProcessingOrders();
 
-        // Dữ liệu tháng hiện tại
-        Double revenueThisMonth = orderRepository.sumRevenueByMonth(year, month);
-        Integer refundsThisMonth = orderRepository.countRefundsByMonth(year, month);
+        // Dữ liệu tháng hiện tại và tháng trước để so sánh, đọc từ daily_sales_rollup
+        YearMonth current = YearMonth.of(year, month);
+        YearMonth previous = current.minusMonths(1);
+        Map<YearMonth, DailySalesRollupService.MonthlySales> sales =
+                dailySalesRollupService.getMonthlySales(previous, current);
 
-        // Dữ liệu tháng trước để so sánh
-        int prevMonth = (month == 1) ? 12 : month - 1;
-        int prevYear = (month == 1) ? year - 1 : year;
+        Double revenueThisMonth = sales.get(current).deliveredRevenue().doubleValue();
+        long refundsThisMonth = sales.get(current).refundCount();
 
-        Double revenuePrevMonth = orderRepository.sumRevenueByMonth(prevYear, prevMonth);
-        Integer refundsPrevMonth = orderRepository.countRefundsByMonth(prevYear, prevMonth);
+        Double revenuePrevMonth = sales.get(previous).deliveredRevenue().doubleValue();
+        long refundsPrevMonth = sales.get(previous).refundCount();
 
         // Tính % thay đổi
         double revenueChange = calcChangePercent(revenueThisMonth, revenuePrevMonth);
@@ -137,10 +150,8 @@ public class OrderServiceImpl implements OrderService {
         }
 
         // 5. Lấy initial statuses
-        PaymentStatus pendingPaymentStatus = paymentStatusRepository.findByStatusCode("PENDING")
-                .orElseThrow(() -> new RuntimeException("Payment status PENDING not found"));
-        ShippingStatus processingShippingStatus = shippingStatusRepository.findByStatusCode("PROCESSING")
-                .orElseThrow(() -> new RuntimeException("Shipping status PROCESSING not found"));
+        PaymentStatus pendingPaymentStatus = statusRegistry.paymentStatus("PENDING");
+        ShippingStatus processingShippingStatus = statusRegistry.shippingStatus("PROCESSING");
 
         // 6. Tạo Order
         Order order = Order.builder()
@@ -225,6 +236,8 @@ public class OrderServiceImpl implements OrderService {
 
         // 10. Lưu order (cascade sẽ lưu OrderDetails)
         Order savedOrder = orderRepository.save(order);
+        dailySalesRollupService.onOrderCreated(savedOrder);
+        cacheInvalidationService.onOrderChanged();
 
         // 11. Gửi notification tới admin
         try {
@@ -368,6 +381,51 @@ public class OrderServiceImpl implements OrderService {
 
     @Override
     @Transactional(readOnly = true)
+    public CursorPageResponse<OrderListResponse> getOrderListByCursor(
+            String keyword,
+            String paymentStatusCode,
+            String shippingStatusCode,
+            String cursor,
+            int size
+    ) {
+        // Trang đầu: cursor lớn hơn mọi order
+        LocalDate cursorDate = LocalDate.of(9999, 12, 31);
+        int cursorId = Integer.MAX_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] values = CursorCodec.decode(cursor, ORDER_CURSOR, 2);
+            try {
+                cursorDate = LocalDate.parse(values[0]);
+                cursorId = Integer.parseInt(values[1]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursor không hợp lệ");
+            }
+        }
+
+        // Lấy dư 1 phần tử để biết còn trang sau hay không (thay cho COUNT)
+        List<OrderListResponse> orders = orderRepository.searchOrdersWithDTOBeforeCursor(
+                keyword, paymentStatusCode, shippingStatusCode, cursorDate, cursorId, PageRequest.of(0, size + 1));
+        boolean hasNext = orders.size() > size;
+        if (hasNext) {
+            orders = orders.subList(0, size);
+        }
+
+        String nextCursor = null;
+        if (hasNext) {
+            OrderListResponse last = orders.get(orders.size() - 1);
+            nextCursor = CursorCodec.encode(ORDER_CURSOR, last.getOrderDate(), last.getOrderId());
+        }
+
+        return CursorPageResponse.<OrderListResponse>builder()
+                .content(orders)
+                .size(size)
+                .hasNext(hasNext)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    @Cacheable(value = CacheConfig.DASHBOARD_CACHE, key = "'orders'", sync = true)
     public OrderStatisticsResponse getOrderStatistics() {
         long totalOrders = orderRepository.count();
 
@@ -484,15 +542,16 @@ public class OrderServiceImpl implements OrderService {
         }
 
         // Cập nhật trạng thái
-        ShippingStatus cancelledStatus = shippingStatusRepository.findByStatusCode("CANCELLED")
-                .orElseThrow(() -> new RuntimeException("Shipping status CANCELLED not found"));
+        DailySalesRollupService.OrderState before = dailySalesRollupService.capture(order);
+        ShippingStatus cancelledStatus = statusRegistry.shippingStatus("CANCELLED");
         order.addShippingStatus(cancelledStatus, "Đơn hàng bị hủy bởi khách hàng");
 
-        PaymentStatus paymentCanceled = paymentStatusRepository.findByStatusCode("CANCELLED")
-                .orElseThrow(() -> new RuntimeException("Payment status CANCELLED not found"));
+        PaymentStatus paymentCanceled = statusRegistry.paymentStatus("CANCELLED");
         order.addPaymentStatus(paymentCanceled, "Đơn hàng bị hủy bởi khách hàng");
 
         Order savedOrder = orderRepository.save(order);
+        dailySalesRollupService.onOrderUpdated(before, savedOrder);
+        cacheInvalidationService.onOrderChanged();
 
         // Gửi notification tới admin
         try {
@@ -520,14 +579,16 @@ public class OrderServiceImpl implements OrderService {
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy đơn hàng với ID: " + orderId));
 
         // Tìm shipping status
-        ShippingStatus newStatus = shippingStatusRepository.findByStatusCode(statusCode)
-                .orElseThrow(() -> new RuntimeException("Không tìm thấy trạng thái giao hàng: " + statusCode));
+        ShippingStatus newStatus = statusRegistry.shippingStatus(statusCode);
 
         // Thêm status mới vào history
+        DailySalesRollupService.OrderState before = dailySalesRollupService.capture(order);
         order.addShippingStatus(newStatus, "Cập nhật bởi admin");
 
         // Lưu order
         orderRepository.save(order);
+        dailySalesRollupService.onOrderUpdated(before, order);
+        cacheInvalidationService.onOrderChanged();
     }
     
     @Override
@@ -549,12 +610,14 @@ public class OrderServiceImpl implements OrderService {
         }
         
         // Tìm shipping status RECEIVED
-        ShippingStatus receivedStatus = shippingStatusRepository.findByStatusCode("RECEIVED")
-                .orElseThrow(() -> new RuntimeException("Không tìm thấy trạng thái RECEIVED"));
+        ShippingStatus receivedStatus = statusRegistry.shippingStatus("RECEIVED");
         
         // Cập nhật trạng thái
+        DailySalesRollupService.OrderState before = dailySalesRollupService.capture(order);
         order.addShippingStatus(receivedStatus, "Khách hàng xác nhận đã nhận hàng");
         orderRepository.save(order);
+        dailySalesRollupService.onOrderUpdated(before, order);
+        cacheInvalidationService.onOrderChanged();
         
         // Tạo notification cho admin
         Notification notification = new Notification();
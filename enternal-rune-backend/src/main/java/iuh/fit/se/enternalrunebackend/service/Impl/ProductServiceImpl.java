@@ -8,9 +8,18 @@ import iuh.fit.se.enternalrunebackend.entity.*;
 import iuh.fit.se.enternalrunebackend.entity.enums.PriceStatus;
 import iuh.fit.se.enternalrunebackend.entity.enums.ProductStatus;
 import iuh.fit.se.enternalrunebackend.repository.*;
-import iuh.fit.se.enternalrunebackend.service.ImageService;
+import iuh.fit.se.enternalrunebackend.config.CacheConfig;
+import iuh.fit.se.enternalrunebackend.service.CacheInvalidationService;
+import iuh.fit.se.enternalrunebackend.service.CatalogSnapshotService;
+import iuh.fit.se.enternalrunebackend.service.ImageUploadPipeline;
+import iuh.fit.se.enternalrunebackend.service.ProductRatingAggregateService;
+import iuh.fit.se.enternalrunebackend.service.ProductRatingStats;
+import iuh.fit.se.enternalrunebackend.service.ProductSearchIndex;
 import iuh.fit.se.enternalrunebackend.service.ProductService;
+import iuh.fit.se.enternalrunebackend.service.ProductVectorService;
+import iuh.fit.se.enternalrunebackend.util.CursorCodec;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.stereotype.Service;
 
@@ -46,7 +55,14 @@ public class ProductServiceImpl implements ProductService {
     private DiscountRepository discountRepository;
     @Autowired
     private CommentRepository commentRepository;
-    private final ImageService imageService;
+    private final ImageUploadPipeline imageUploadPipeline;
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductRatingAggregateService ratingAggregateService;
+    private final CacheInvalidationService cacheInvalidationService;
+    private final ProductVectorService productVectorService;
+
+    private static final String PRODUCT_CURSOR = "pd";
     @Override
     public List<Product> getAllProductsWithActivePrice() {
         // Step 1: Get product IDs with active price
@@ -73,96 +89,8 @@ public class ProductServiceImpl implements ProductService {
     
     @Override
     public List<ProductResponse> getProductSummaryWithActivePrice() {
-        // Step 1: Query only basic product info + brand (1 query)
-        List<Object[]> productData = productRepository.findProductSummaryWithActivePrice();
-        
-        if (productData.isEmpty()) {
-            return java.util.Collections.emptyList();
-        }
-        
-        // Extract product IDs
-        List<Integer> productIds = productData.stream()
-            .map(row -> (Integer) row[0])
-            .distinct()
-            .toList();
-        
-        // Step 2: Get images (1 query) - native query returns raw types
-        List<Object[]> imagesData = productRepository.findImagesByProductIds(productIds);
-        Map<Integer, List<ImageResponse>> imagesMap = new HashMap<>();
-        for (Object[] row : imagesData) {
-            Integer prodId = ((Number) row[0]).intValue();
-            Integer imageId = ((Number) row[1]).intValue();
-            String imageName = (String) row[2];
-            String imageData = (String) row[3];
-            ImageResponse img = new ImageResponse(imageId, imageName, imageData);
-            imagesMap.computeIfAbsent(prodId, k -> new ArrayList<>()).add(img);
-        }
-        
-        // Step 3: Get active prices (1 query) - native query
-        List<Object[]> pricesData = productRepository.findActivePricesByProductIds(productIds);
-        Map<Integer, List<ProductPriceResponse>> pricesMap = new HashMap<>();
-        for (Object[] row : pricesData) {
-            Integer prodId = ((Number) row[0]).intValue();
-            Integer ppId = ((Number) row[1]).intValue();
-            Integer ppPrice = ((Number) row[2]).intValue();
-            String ppPriceStatus = row[3] != null ? row[3].toString() : null;
-            LocalDate ppStartDate = row[4] != null ? ((java.sql.Date) row[4]).toLocalDate() : null;
-            LocalDate ppEndDate = row[5] != null ? ((java.sql.Date) row[5]).toLocalDate() : null;
-            Integer discountId = row[6] != null ? ((Number) row[6]).intValue() : null;
-            String discountName = (String) row[7];
-            
-            ProductPriceResponse price = new ProductPriceResponse(
-                ppId, ppPrice, ppPriceStatus, ppStartDate, ppEndDate, discountId, discountName
-            );
-            pricesMap.computeIfAbsent(prodId, k -> new ArrayList<>()).add(price);
-        }
-        
-        // Step 4: Get versions and colors (1 query) - JPQL with ElementCollection
-        List<Object[]> versionColorData = productRepository.findVersionsAndColorsByProductIds(productIds);
-        Map<Integer, List<String>> versionsMap = new HashMap<>();
-        Map<Integer, List<String>> colorsMap = new HashMap<>();
-        for (Object[] row : versionColorData) {
-            Integer prodId = (Integer) row[0];
-            versionsMap.put(prodId, (List<String>) row[1]);
-            colorsMap.put(prodId, (List<String>) row[2]);
-        }
-        
-        // Step 5: Build ProductResponse objects
-        List<ProductResponse> responses = new ArrayList<>();
-        for (Object[] row : productData) {
-            Integer prodId = (Integer) row[0];
-            
-            ProductResponse response = new ProductResponse();
-            response.setProdId(prodId);
-            response.setProdName((String) row[1]);
-            response.setProdModel((String) row[2]);
-            response.setProductStatus(row[3] != null ? row[3].toString() : null);
-            response.setProdDescription((String) row[4]);
-            response.setProdRating(row[5] != null ? (Double) row[5] : 0.0);
-            
-            // Brand
-            response.setProdBrand(new BrandResponse((Integer) row[6], (String) row[7]));
-            
-            // Images
-            response.setImages(imagesMap.getOrDefault(prodId, java.util.Collections.emptyList()));
-            
-            // Prices
-            response.setProductPrices(pricesMap.getOrDefault(prodId, java.util.Collections.emptyList()));
-            
-            // Versions and Colors
-            response.setProdVersion(versionsMap.getOrDefault(prodId, java.util.Collections.emptyList()));
-            response.setProdColor(colorsMap.getOrDefault(prodId, java.util.Collections.emptyList()));
-            
-            // No specs, no rating stats for list view
-            response.setProdSpecs(null);
-            response.setTotalComments(null);
-            response.setAverageRating(null);
-            response.setRatingDistribution(null);
-            
-            responses.add(response);
-        }
-        
-        return responses;
+        // Đọc từ catalog snapshot in-memory (không query DB), snapshot tự cập nhật khi product/price thay đổi
+        return catalogSnapshotService.getProducts();
     }
 
     @Override
@@ -255,11 +183,12 @@ public class ProductServiceImpl implements ProductService {
             return finalSpec.toPredicate(root, query, cb);
         };
 
-        Pageable pageable = PageRequest.of(page, size);
+        Pageable pageable = PageRequest.of(Math.max(0, page), clampPageSize(size));
         return productRepository.findAll(distinctSpec, pageable);
     }
 
     @Override
+    @Cacheable(value = CacheConfig.DASHBOARD_CACHE, key = "'products'", sync = true)
     public ProductDashboardResponse getProductDashboard() {
         // Tổng sản phẩm
         long totalProducts = productRepository.countTotalProducts();
@@ -354,13 +283,12 @@ public class ProductServiceImpl implements ProductService {
                 .orElseThrow(() -> new RuntimeException("Thương hiệu không tồn tại"));
         product.setProdBrand(brand);
 
-        // Upload ảnh lên Cloudinary và lưu URL
+        // Upload song song các ảnh lên storage và lưu URL
         List<Image> imageEntities = new ArrayList<>();
-        for (MultipartFile file : files) {
-            String imageUrl = imageService.upload(file.getBytes(), file.getOriginalFilename());
+        for (ImageUploadPipeline.Upload upload : uploadImages(files)) {
             Image img = new Image();
-            img.setImageName(file.getOriginalFilename());
-            img.setImageData(imageUrl);
+            img.setImageName(upload.fileName());
+            img.setImageData(upload.image().url());
             imageEntities.add(img);
         }
         product.setImages(imageEntities);
@@ -370,7 +298,21 @@ public class ProductServiceImpl implements ProductService {
             return pp;
         }).toList();
         product.setProductPrices(prices);
-        productRepository.save(product);
+        Product saved = productRepository.save(product);
+        catalogSnapshotService.refreshProduct(saved.getProdId());
+        cacheInvalidationService.onProductChanged();
+        productVectorService.enqueue(saved.getProdId());
+    }
+
+    // Upload song song; chỉ cần 1 ảnh lỗi là huỷ cả batch (xóa ảnh đã lên) và báo lỗi từng file
+    private List<ImageUploadPipeline.Upload> uploadImages(List<MultipartFile> files) throws IOException {
+        ImageUploadPipeline.Result result = imageUploadPipeline.uploadAll(files);
+        if (!result.allSucceeded()) {
+            imageUploadPipeline.discard(result);
+            throw new IOException("Upload ảnh thất bại (" + result.failed().size() + "/" + result.uploads().size()
+                    + "): " + result.failureSummary());
+        }
+        return result.uploads();
     }
 
     @Override
@@ -378,6 +320,9 @@ public class ProductServiceImpl implements ProductService {
         Product product = productRepository.findById(productId)
                 .orElseThrow(() -> new RuntimeException("Product không tồn tại"));
         productRepository.delete(product);
+        catalogSnapshotService.removeProduct(productId);
+        cacheInvalidationService.onProductChanged();
+        productVectorService.enqueue(productId);
     }
 
     @Override
@@ -419,12 +364,10 @@ public class ProductServiceImpl implements ProductService {
             product.setImages(images);
         }
         if (newFiles != null && !newFiles.isEmpty()) {
-            for (MultipartFile file : newFiles) {
-                String url = imageService.upload(file.getBytes(), file.getOriginalFilename());
-
+            for (ImageUploadPipeline.Upload upload : uploadImages(newFiles)) {
                 Image img = new Image();
-                img.setImageName(file.getOriginalFilename());
-                img.setImageData(url);
+                img.setImageName(upload.fileName());
+                img.setImageData(upload.image().url());
 
                 imageRepository.save(img);
                 product.getImages().add(img);
@@ -445,7 +388,11 @@ public class ProductServiceImpl implements ProductService {
             }
             product.setProductPrices(prices);
         }
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        catalogSnapshotService.refreshProduct(saved.getProdId());
+        cacheInvalidationService.onProductChanged();
+        productVectorService.enqueue(saved.getProdId());
+        return saved;
     }
 
     @Override
@@ -455,35 +402,17 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     public Double getAverageRating(Integer productId) {
-        return commentRepository.getAverageRating(productId);
+        return ratingAggregateService.getStats(productId).getAverageRating(productId);
     }
 
     @Override
     public Integer getTotalComments(Integer productId) {
-        Long count = commentRepository.countByProductId(productId);
-        return count != null ? count.intValue() : 0;
+        return ratingAggregateService.getStats(productId).getTotalComments(productId);
     }
 
     @Override
     public Map<String, Integer> getRatingDistribution(Integer productId) {
-        List<Object[]> results = commentRepository.getRatingDistributionList(productId);
-        Map<String, Integer> distribution = new HashMap<>();
-        
-        // Initialize all ratings to 0
-        for (int i = 1; i <= 5; i++) {
-            distribution.put(String.valueOf(i), 0);
-        }
-        
-        // Fill in actual counts
-        for (Object[] result : results) {
-            Integer rating = (Integer) result[0];
-            Long count = (Long) result[1];
-            if (rating != null && count != null) {
-                distribution.put(String.valueOf(rating), count.intValue());
-            }
-        }
-        
-        return distribution;
+        return ratingAggregateService.getStats(productId).getRatingDistribution(productId);
     }
     
     @Override
@@ -491,9 +420,10 @@ public class ProductServiceImpl implements ProductService {
         if (productIds == null || productIds.isEmpty()) {
             return new HashMap<>();
         }
+        ProductRatingStats stats = ratingAggregateService.getStats(productIds);
         Map<Integer, Double> result = new HashMap<>();
         for (Integer productId : productIds) {
-            result.put(productId, commentRepository.getAverageRating(productId));
+            result.put(productId, stats.getAverageRating(productId));
         }
         return result;
     }
@@ -503,17 +433,23 @@ public class ProductServiceImpl implements ProductService {
         if (productIds == null || productIds.isEmpty()) {
             return new HashMap<>();
         }
+        ProductRatingStats stats = ratingAggregateService.getStats(productIds);
         Map<Integer, Integer> result = new HashMap<>();
         for (Integer productId : productIds) {
-            Long count = commentRepository.countByProductId(productId);
-            result.put(productId, count != null ? count.intValue() : 0);
+            result.put(productId, stats.getTotalComments(productId));
         }
         return result;
     }
+
+    @Override
+    public ProductRatingStats getRatingStats(List<Integer> productIds) {
+        return ratingAggregateService.getStats(productIds);
+    }
     
     // ===== OPTIMIZED IMPLEMENTATIONS =====
     
     @Override
+    @Cacheable(value = CacheConfig.CATALOG_CACHE, key = "'list'", sync = true)
     public List<ProductListResponse> getProductListOptimized() {
         List<Object[]> results = productRepository.findProductListOptimized();
         return results.stream().map(row -> new ProductListResponse(
@@ -535,6 +471,7 @@ public class ProductServiceImpl implements ProductService {
     }
     
     @Override
+    @Cacheable(value = CacheConfig.CATALOG_CACHE, key = "'featured:' + #limit", sync = true)
     public List<ProductCardResponse> getFeaturedProductCards(int limit) {
         List<Object[]> results = productRepository.findFeaturedProductsOptimized(limit);
         return results.stream().map(row -> new ProductCardResponse(
@@ -555,6 +492,7 @@ public class ProductServiceImpl implements ProductService {
     }
     
     @Override
+    @Cacheable(value = CacheConfig.CATALOG_CACHE, key = "'brand:' + #brandName + ':' + #limit", sync = true)
     public List<ProductCardResponse> getProductCardsByBrand(String brandName, int limit) {
         List<Object[]> results = productRepository.findProductsByBrandOptimized(brandName, limit);
         return results.stream().map(row -> new ProductCardResponse(
@@ -648,4 +586,101 @@ public class ProductServiceImpl implements ProductService {
         Pageable pageable = PageRequest.of(page, size);
         return new PageImpl<>(content, pageable, totalCount != null ? totalCount : 0);
     }
+
+    @Override
+    public ProductFilterPageResponse filterProductsWithFacets(
+            List<Integer> brands,
+            List<String> priceRanges,
+            List<String> colors,
+            List<String> memory,
+            String search,
+            int page,
+            int size) {
+        page = Math.max(0, page);
+        size = clampPageSize(size);
+        ProductSearchIndex.SearchResult result = productSearchIndex.search(
+            brands, priceRanges, colors, memory, search, page, size);
+
+        List<ProductListResponse> content = toListResponses(result.hits());
+
+        int totalPages = size > 0 ? (int) Math.ceil((double) result.total() / size) : 0;
+        return ProductFilterPageResponse.builder()
+            .content(content)
+            .number(page)
+            .size(size)
+            .totalElements(result.total())
+            .totalPages(totalPages)
+            .first(page == 0)
+            .last(page + 1 >= totalPages)
+            .facets(result.facets())
+            .build();
+    }
+
+    // Page size ngoài 1..MAX_PAGE_SIZE (client gửi size rất lớn) -> mặc định 20
+    private static int clampPageSize(int size) {
+        return size < 1 || size > ProductSearchIndex.MAX_PAGE_SIZE ? 20 : size;
+    }
+
+    @Override
+    public CursorPageResponse<ProductListResponse> filterProductsByCursor(
+            List<Integer> brands,
+            List<String> priceRanges,
+            List<String> colors,
+            List<String> memory,
+            String search,
+            String cursor,
+            int size) {
+        Double afterRating = null;
+        Integer afterProductId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] values = CursorCodec.decode(cursor, PRODUCT_CURSOR, 2);
+            try {
+                afterRating = Double.parseDouble(values[0]);
+                afterProductId = Integer.parseInt(values[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Cursor không hợp lệ");
+            }
+        }
+
+        ProductSearchIndex.CursorResult result = productSearchIndex.searchAfter(
+            brands, priceRanges, colors, memory, search, afterRating, afterProductId, size);
+
+        return CursorPageResponse.<ProductListResponse>builder()
+            .content(toListResponses(result.hits()))
+            .size(size)
+            .hasNext(result.hasNext())
+            .nextCursor(result.hasNext() && result.lastProductId() != null
+                ? CursorCodec.encode(PRODUCT_CURSOR, result.lastRating(), result.lastProductId())
+                : null)
+            .build();
+    }
+
+    private List<ProductListResponse> toListResponses(List<ProductSearchIndex.Hit> hits) {
+        // Rating chỉ lấy cho các sản phẩm trong trang hiện tại (1 query vào bảng aggregate)
+        List<Integer> pageIds = hits.stream()
+            .map(hit -> hit.product().getProdId())
+            .toList();
+        ProductRatingStats ratings = ratingAggregateService.getStats(pageIds);
+
+        return hits.stream().map(hit -> {
+            ProductResponse p = hit.product();
+            ProductPriceResponse price = hit.activePrice();
+            return new ProductListResponse(
+                p.getProdId(),
+                p.getProdName(),
+                p.getProdModel(),
+                p.getProdDescription(),
+                p.getProductStatus(),
+                p.getProdRating(),
+                p.getProdBrand() != null ? p.getProdBrand().getBrandId() : null,
+                p.getProdBrand() != null ? p.getProdBrand().getBrandName() : null,
+                price != null ? (int) price.getPpPrice() : 0,
+                price != null ? price.getDiscountName() : null,
+                p.getImages().isEmpty() ? null : p.getImages().get(0).getImageData(),
+                ratings.getTotalComments(p.getProdId()),
+                ratings.getAverageRating(p.getProdId()),
+                String.join(", ", p.getProdColor().stream().limit(3).toList())
+            );
+        }).toList();
+    }
 }
@@ -9,9 +9,11 @@ import iuh.fit.se.enternalrunebackend.repository.OrderRepository;
 import iuh.fit.se.enternalrunebackend.repository.ReturnRequestRepository;
 import iuh.fit.se.enternalrunebackend.repository.UserRepository;
 import iuh.fit.se.enternalrunebackend.repository.NotificationRespository;
-import iuh.fit.se.enternalrunebackend.repository.ShippingStatusRepository;
+import iuh.fit.se.enternalrunebackend.service.CacheInvalidationService;
+import iuh.fit.se.enternalrunebackend.service.DailySalesRollupService;
 import iuh.fit.se.enternalrunebackend.service.ReturnRequestService;
 import iuh.fit.se.enternalrunebackend.service.NotificationService;
+import iuh.fit.se.enternalrunebackend.service.StatusRegistry;
 import iuh.fit.se.enternalrunebackend.dto.notification.OrderNotification;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
@@ -33,7 +35,9 @@ public class ReturnRequestServiceImpl implements ReturnRequestService {
     private final UserRepository userRepository;
     private final NotificationRespository notificationRepository;
     private final NotificationService notificationService;
-    private final ShippingStatusRepository shippingStatusRepository;
+    private final StatusRegistry statusRegistry;
+    private final CacheInvalidationService cacheInvalidationService;
+    private final DailySalesRollupService dailySalesRollupService;
 
     @Override
     @Transactional
@@ -133,16 +137,19 @@ public class ReturnRequestServiceImpl implements ReturnRequestService {
         notification.setNotiTime(LocalDateTime.now());
         notification.setTargetRole("USER"); // This notification is for customer
         notificationRepository.save(notification);
+        notificationService.sendNotificationToUser(notification);
         
         // If approved, update order status
         if (newStatus == RequestStatus.APPROVED) {
             // Get RETURNED shipping status
-            ShippingStatus returnedStatus = shippingStatusRepository.findByStatusCode("RETURNED")
-                    .orElseThrow(() -> new RuntimeException("Shipping status RETURNED not found"));
+            ShippingStatus returnedStatus = statusRegistry.shippingStatus("RETURNED");
             
             // Update order shipping status to RETURNED
+            DailySalesRollupService.OrderState before = dailySalesRollupService.capture(returnRequest.getOrder());
             returnRequest.getOrder().addShippingStatus(returnedStatus, "Đơn hàng đã được trả lại");
             orderRepository.save(returnRequest.getOrder());
+            dailySalesRollupService.onOrderUpdated(before, returnRequest.getOrder());
+            cacheInvalidationService.onOrderChanged();
         }
         
         return mapToResponse(returnRequest);
@@ -9,8 +9,12 @@ import iuh.fit.se.enternalrunebackend.entity.Transaction;
 import iuh.fit.se.enternalrunebackend.exception.payment_exception.PaymentException;
 import iuh.fit.se.enternalrunebackend.exception.payment_exception.PaymentExceptionEnum;
 import iuh.fit.se.enternalrunebackend.repository.*;
+import iuh.fit.se.enternalrunebackend.service.BlockingCallMonitor;
+import iuh.fit.se.enternalrunebackend.service.CacheInvalidationService;
+import iuh.fit.se.enternalrunebackend.service.DailySalesRollupService;
 import iuh.fit.se.enternalrunebackend.service.NotificationService;
 import iuh.fit.se.enternalrunebackend.service.SePayService;
+import iuh.fit.se.enternalrunebackend.service.StatusRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -19,12 +23,18 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Base64;
 import java.util.Objects;
 
 @Service
 public class SePayServiceImpl implements SePayService {
+    // Dùng chung 1 client (connection pool + selector thread) thay vì tạo mới mỗi lần refund
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
     @Autowired
     private OrderRepository orderRepository;
 
@@ -35,11 +45,20 @@ public class SePayServiceImpl implements SePayService {
     private OrderRefundRepository orderRefundRequestRepository;
 
     @Autowired
-    private PaymentStatusRepository paymentStatusRepository;
+    private StatusRegistry statusRegistry;
+
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
+
+    @Autowired
+    private DailySalesRollupService dailySalesRollupService;
 
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private BlockingCallMonitor blockingCallMonitor;
+
     public boolean sePayWebHookPayment(TransactionRequest transactionRequest) {
         try {
             if (Objects.isNull(transactionRequest)){
@@ -92,10 +111,12 @@ public class SePayServiceImpl implements SePayService {
 
             transactionRepository.save(transaction);
 
-            PaymentStatus paidStatus = paymentStatusRepository.findByStatusCode("PAID")
-                    .orElseThrow(() -> new RuntimeException("Shipping status CANCELLED not found"));
+            PaymentStatus paidStatus = statusRegistry.paymentStatus("PAID");
+            DailySalesRollupService.OrderState before = dailySalesRollupService.capture(order);
             order.addPaymentStatus(paidStatus, "Đơn hàng đã được thanh toán");
             orderRepository.save(order);
+            dailySalesRollupService.onOrderUpdated(before, order);
+            cacheInvalidationService.onPaymentChanged();
 
             // Gửi notification đến admin về thanh toán thành công
             OrderNotification paymentNotification = OrderNotification.builder()
@@ -133,13 +154,18 @@ public class SePayServiceImpl implements SePayService {
                     .uri(URI.create(endpoint))
                     .header("Authorization", "Basic " + basicAuth)
                     .header("Content-Type", "application/json")
+                    .timeout(Duration.ofSeconds(30))
                     .POST(HttpRequest.BodyPublishers.ofString(json))
                     .build();
 
-            HttpClient client = HttpClient.newHttpClient();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = blockingCallMonitor.record("sepay",
+                    () -> HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofString()));
 
-            return response.statusCode() == 200;
+            boolean refunded = response.statusCode() == 200;
+            if (refunded) {
+                cacheInvalidationService.onPaymentChanged();
+            }
+            return refunded;
         } catch (Exception e) {
             e.printStackTrace();
             return false;
@@ -8,6 +8,9 @@ import java.util.List;
 
 public interface NotificationService {
     void sendOrderNotificationToAdmin(OrderNotification notification);
+
+    // Push a stored USER notification to the customer's open /notifications sessions (after commit)
+    void sendNotificationToUser(Notification notification);
     
     // Save notification to database
     Notification saveNotification(OrderNotification notification);
@@ -0,0 +1,41 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.repository.OrderRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Backfill orders.current_payment_status_id / current_shipping_status_id cho các order tạo trước khi có 2 cột này.
+ * Order mới được set qua Order.addPaymentStatus()/addShippingStatus() nên lần chạy sau không còn gì để cập nhật.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OrderCurrentStatusBackfill {
+
+    // Chạy trước các job dựng lại bảng thống kê từ current status (DailySalesRollupRebuildJob)
+    public static final int ORDER = Ordered.HIGHEST_PRECEDENCE;
+
+    private final OrderRepository orderRepository;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(ORDER)
+    @Transactional
+    public void backfill() {
+        try {
+            int payment = orderRepository.backfillCurrentPaymentStatus();
+            int shipping = orderRepository.backfillCurrentShippingStatus();
+            if (payment > 0 || shipping > 0) {
+                log.info("Backfilled current status for orders: {} payment, {} shipping", payment, shipping);
+            }
+        } catch (Exception e) {
+            log.warn("Order current status backfill skipped: {}", e.getMessage());
+        }
+    }
+}
@@ -20,6 +20,7 @@ public interface OrderService {
     OrderResponse getOrderDetail(int orderId);
     Order cancelOrder(int orderId, Long userId);
     Page<OrderListResponse> getOrderList(String keyword, String paymentStatusCode, String shippingStatusCode, Pageable pageable);
+    CursorPageResponse<OrderListResponse> getOrderListByCursor(String keyword, String paymentStatusCode, String shippingStatusCode, String cursor, int size);
     void updateShippingStatus(int orderId, String statusCode);
     void confirmReceivedOrder(int orderId, Long userId);
     Map<String, Boolean> checkPendingRequests(int orderId);
@@ -0,0 +1,168 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.dto.response.ProductPriceResponse;
+import iuh.fit.se.enternalrunebackend.dto.response.ProductResponse;
+import iuh.fit.se.enternalrunebackend.util.TextSnippets;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Chỉ mục BM25 in-memory trên catalog snapshot cho trợ lý AI (xem ProductRetriever).
+ * Khác ProductSearchIndex (lọc AND cho trang danh sách): ở đây câu hỏi là văn tự do nên xếp hạng theo
+ * mức liên quan, sản phẩm chỉ cần khớp 1 phần từ khoá. Tên / model / brand được tính trọng số cao hơn mô tả.
+ * Index tự build lại khi version của catalog snapshot thay đổi, kèm mô tả rút gọn (snippet) của từng sản phẩm
+ * để đưa vào prompt thay cho mô tả đầy đủ.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductKeywordIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // Từ hỏi / từ chung xuất hiện ở hầu hết câu hỏi, không giúp phân biệt sản phẩm (đã bỏ dấu)
+    private static final Set<String> STOP_WORDS = Set.of(
+            "co", "khong", "nao", "la", "cua", "cho", "toi", "minh", "ban", "em", "anh", "chi", "gia", "bao",
+            "nhieu", "dien", "thoai", "may", "mua", "nhat", "duoi", "tren", "tu", "den", "trieu", "tr", "va",
+            "hay", "voi", "nhung", "cac", "mot", "thi", "can", "muon", "tim", "san", "pham", "nay", "gi", "o",
+            "khoang", "hang", "duoc", "ko", "k", "a", "oi", "xem", "giup", "van", "nen", "loai");
+
+    private final CatalogSnapshotService catalogSnapshotService;
+
+    @Value("${ai.retrieval.keyword-name-boost:3}")
+    private int nameBoost;
+
+    @Value("${ai.prompt.snippet-chars:240}")
+    private int snippetChars;
+
+    private volatile Index index;
+
+    public record Hit(ProductResponse product, double score) {
+    }
+
+    /**
+     * Top sản phẩm theo điểm BM25 trong các sản phẩm thoả filter
+     *
+     * @param filter null = không lọc
+     */
+    public List<Hit> search(String question, Predicate<ProductResponse> filter, int limit) {
+        Index idx = currentIndex();
+        List<String> terms = tokenize(question);
+        if (terms.isEmpty() || idx.docs.length == 0) {
+            return List.of();
+        }
+        double[] scores = new double[idx.docs.length];
+        for (String term : new LinkedHashSet<>(terms)) {
+            Map<Integer, Integer> postings = idx.postings.get(term);
+            if (postings == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (idx.docs.length - postings.size() + 0.5) / (postings.size() + 0.5));
+            for (Map.Entry<Integer, Integer> posting : postings.entrySet()) {
+                int doc = posting.getKey();
+                double tf = posting.getValue();
+                double norm = K1 * (1 - B + B * idx.lengths[doc] / idx.averageLength);
+                scores[doc] += idf * tf * (K1 + 1) / (tf + norm);
+            }
+        }
+
+        PriorityQueue<Hit> top = new PriorityQueue<>(Comparator.comparingDouble(Hit::score));
+        for (int doc = 0; doc < scores.length; doc++) {
+            if (scores[doc] <= 0 || (filter != null && !filter.test(idx.docs[doc]))) {
+                continue;
+            }
+            top.offer(new Hit(idx.docs[doc], scores[doc]));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        List<Hit> hits = new ArrayList<>(top);
+        hits.sort(Comparator.comparingDouble(Hit::score).reversed()
+                .thenComparingInt(hit -> hit.product().getProdId()));
+        return hits;
+    }
+
+    /**
+     * Mô tả rút gọn của sản phẩm, tính sẵn khi build index
+     */
+    public String snippet(ProductResponse product) {
+        String snippet = currentIndex().snippets.get(product.getProdId());
+        return snippet != null ? snippet : TextSnippets.snippet(product.getProdDescription(), snippetChars);
+    }
+
+    static List<String> tokenize(String text) {
+        return ProductSearchIndex.tokenize(text).stream()
+                .filter(token -> !STOP_WORDS.contains(token))
+                .toList();
+    }
+
+    private Index currentIndex() {
+        CatalogSnapshotService.CatalogSnapshot snapshot = catalogSnapshotService.getSnapshot();
+        Index current = index;
+        if (current == null || current.version != snapshot.version()) {
+            synchronized (this) {
+                current = index;
+                if (current == null || current.version != snapshot.version()) {
+                    current = new Index(snapshot, nameBoost, snippetChars);
+                    index = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static final class Index {
+        final long version;
+        final ProductResponse[] docs;
+        final int[] lengths;
+        final double averageLength;
+        // term -> (doc -> term frequency)
+        final Map<String, Map<Integer, Integer>> postings = new HashMap<>();
+        final Map<Integer, String> snippets = new HashMap<>();
+
+        Index(CatalogSnapshotService.CatalogSnapshot snapshot, int nameBoost, int snippetChars) {
+            this.version = snapshot.version();
+            this.docs = snapshot.products().values().toArray(ProductResponse[]::new);
+            this.lengths = new int[docs.length];
+            long total = 0;
+            for (int doc = 0; doc < docs.length; doc++) {
+                ProductResponse p = docs[doc];
+                snippets.put(p.getProdId(), TextSnippets.snippet(p.getProdDescription(), snippetChars));
+                StringBuilder weighted = new StringBuilder();
+                String title = p.getProdName() + " " + Objects.toString(p.getProdModel(), "") + " "
+                        + (p.getProdBrand() != null ? p.getProdBrand().getBrandName() : "");
+                for (int i = 0; i < nameBoost; i++) {
+                    weighted.append(title).append(' ');
+                }
+                weighted.append(String.join(" ", Objects.requireNonNullElse(p.getProdVersion(), List.of()))).append(' ')
+                        .append(String.join(" ", Objects.requireNonNullElse(p.getProdColor(), List.of()))).append(' ')
+                        .append(Objects.toString(p.getProdDescription(), ""));
+                List<String> tokens = tokenize(weighted.toString());
+                lengths[doc] = tokens.size();
+                total += tokens.size();
+                for (String token : tokens) {
+                    postings.computeIfAbsent(token, key -> new HashMap<>()).merge(doc, 1, Integer::sum);
+                }
+            }
+            this.averageLength = docs.length == 0 ? 1 : Math.max(1, (double) total / docs.length);
+        }
+    }
+
+    /**
+     * Giá ACTIVE thấp nhất của sản phẩm, null nếu không có
+     */
+    static Double activePrice(ProductResponse product) {
+        if (product.getProductPrices() == null) {
+            return null;
+        }
+        return product.getProductPrices().stream()
+                .filter(price -> "ACTIVE".equals(price.getPpPriceStatus()))
+                .map(ProductPriceResponse::getPpPrice)
+                .min(Double::compare)
+                .orElse(null);
+    }
+}
@@ -0,0 +1,130 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.entity.Comment;
+import iuh.fit.se.enternalrunebackend.entity.enums.CommentStatus;
+import iuh.fit.se.enternalrunebackend.repository.ProductRatingAggregateRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Duy trì bảng product_rating_aggregates (count, sum, histogram 1-5 theo sản phẩm).
+ * Các hàm on* phải được gọi trong transaction ghi comment để aggregate commit/rollback cùng comment.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductRatingAggregateService {
+
+    private final ProductRatingAggregateRepository aggregateRepository;
+    private final CacheInvalidationService cacheInvalidationService;
+
+    /**
+     * Comment có được tính vào thống kê hay không: chỉ comment gốc, chưa bị từ chối / xóa
+     */
+    public static boolean isCounted(Comment comment, CommentStatus status) {
+        return comment.getComment() == null
+                && status != CommentStatus.REJECTED
+                && status != CommentStatus.DELETED;
+    }
+
+    @Transactional
+    public void onCommentCreated(Comment comment) {
+        if (isCounted(comment, comment.getCmStatus())) {
+            applyDelta(comment, 1);
+        }
+    }
+
+    @Transactional
+    public void onCommentStatusChanged(Comment comment, CommentStatus oldStatus, CommentStatus newStatus) {
+        boolean before = isCounted(comment, oldStatus);
+        boolean after = isCounted(comment, newStatus);
+        if (before != after) {
+            applyDelta(comment, after ? 1 : -1);
+        }
+    }
+
+    @Transactional
+    public void onCommentDeleted(Comment comment) {
+        if (isCounted(comment, comment.getCmStatus())) {
+            applyDelta(comment, -1);
+        }
+    }
+
+    private void applyDelta(Comment comment, int sign) {
+        Integer rating = comment.getCmRating();
+        boolean rated = rating != null && rating >= 1 && rating <= 5;
+        aggregateRepository.applyDelta(
+                comment.getCmProduct().getProdId(),
+                sign,
+                rated ? sign : 0,
+                rated ? (long) sign * rating : 0,
+                rated && rating == 1 ? sign : 0,
+                rated && rating == 2 ? sign : 0,
+                rated && rating == 3 ? sign : 0,
+                rated && rating == 4 ? sign : 0,
+                rated && rating == 5 ? sign : 0
+        );
+        cacheInvalidationService.onRatingChanged();
+    }
+
+    /**
+     * Thống kê rating (count, average, phân bố 1-5) cho nhiều sản phẩm trong 1 round trip
+     */
+    @Transactional(readOnly = true)
+    public ProductRatingStats getStats(Collection<Integer> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return ProductRatingStats.EMPTY;
+        }
+        List<Integer> ids = productIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) {
+            return ProductRatingStats.EMPTY;
+        }
+        List<Object[]> rows = aggregateRepository.findStatsRows(ids);
+        int n = rows.size();
+        int[] productIdArray = new int[n];
+        int[] commentCounts = new int[n];
+        int[] ratingCounts = new int[n];
+        long[] ratingSums = new long[n];
+        int[] histogram = new int[n * 5];
+        for (int i = 0; i < n; i++) {
+            Object[] row = rows.get(i);
+            productIdArray[i] = ((Number) row[0]).intValue();
+            commentCounts[i] = ((Number) row[1]).intValue();
+            ratingCounts[i] = ((Number) row[2]).intValue();
+            ratingSums[i] = ((Number) row[3]).longValue();
+            for (int star = 0; star < 5; star++) {
+                histogram[i * 5 + star] = ((Number) row[4 + star]).intValue();
+            }
+        }
+        return new ProductRatingStats(productIdArray, commentCounts, ratingCounts, ratingSums, histogram);
+    }
+
+    public ProductRatingStats getStats(Integer productId) {
+        return productId == null ? ProductRatingStats.EMPTY : getStats(List.of(productId));
+    }
+
+    public boolean isEmpty() {
+        return aggregateRepository.count() == 0;
+    }
+
+    /**
+     * Tính lại toàn bộ từ bảng comments. Khóa bảng aggregate trong lúc rebuild để các delta
+     * đồng thời chờ và được cộng lên kết quả mới sau khi commit.
+     */
+    @Transactional
+    public int rebuild() {
+        long start = System.currentTimeMillis();
+        aggregateRepository.lockForRebuild();
+        aggregateRepository.deleteAllAggregates();
+        int products = aggregateRepository.insertFromComments();
+        cacheInvalidationService.onRatingChanged();
+        log.info("Rebuilt rating aggregates for {} products in {} ms", products, System.currentTimeMillis() - start);
+        return products;
+    }
+}
@@ -0,0 +1,81 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Thống kê rating của nhiều sản phẩm, key là productId (int).
+ * Lưu theo mảng song song đã sort theo productId -> tra cứu bằng binary search, không boxing.
+ * Sản phẩm không có trong batch trả về 0 comment, rating 0.0, phân bố toàn 0.
+ */
+public final class ProductRatingStats {
+
+    public static final ProductRatingStats EMPTY =
+            new ProductRatingStats(new int[0], new int[0], new int[0], new long[0], new int[0]);
+
+    private final int[] productIds;
+    private final int[] commentCounts;
+    private final int[] ratingCounts;
+    private final long[] ratingSums;
+    // 5 ô liên tiếp cho mỗi sản phẩm: histogram[i * 5 + (star - 1)]
+    private final int[] histogram;
+
+    ProductRatingStats(int[] productIds, int[] commentCounts, int[] ratingCounts, long[] ratingSums, int[] histogram) {
+        this.productIds = productIds;
+        this.commentCounts = commentCounts;
+        this.ratingCounts = ratingCounts;
+        this.ratingSums = ratingSums;
+        this.histogram = histogram;
+    }
+
+    public int size() {
+        return productIds.length;
+    }
+
+    public boolean contains(int productId) {
+        return indexOf(productId) >= 0;
+    }
+
+    public int getTotalComments(int productId) {
+        int i = indexOf(productId);
+        return i >= 0 ? commentCounts[i] : 0;
+    }
+
+    public int getRatingCount(int productId) {
+        int i = indexOf(productId);
+        return i >= 0 ? ratingCounts[i] : 0;
+    }
+
+    public double getAverageRating(int productId) {
+        int i = indexOf(productId);
+        return i >= 0 && ratingCounts[i] > 0 ? (double) ratingSums[i] / ratingCounts[i] : 0.0;
+    }
+
+    /**
+     * Số lượt đánh giá {@code star} sao (1-5)
+     */
+    public int getStarCount(int productId, int star) {
+        if (star < 1 || star > 5) {
+            throw new IllegalArgumentException("Star must be between 1 and 5: " + star);
+        }
+        int i = indexOf(productId);
+        return i >= 0 ? histogram[i * 5 + star - 1] : 0;
+    }
+
+    /**
+     * Phân bố rating dạng "1" -> "5" như ProductResponse.ratingDistribution
+     */
+    public Map<String, Integer> getRatingDistribution(int productId) {
+        int i = indexOf(productId);
+        Map<String, Integer> distribution = new HashMap<>();
+        for (int star = 1; star <= 5; star++) {
+            distribution.put(String.valueOf(star), i >= 0 ? histogram[i * 5 + star - 1] : 0);
+        }
+        return distribution;
+    }
+
+    private int indexOf(int productId) {
+        return Arrays.binarySearch(productIds, productId);
+    }
+}
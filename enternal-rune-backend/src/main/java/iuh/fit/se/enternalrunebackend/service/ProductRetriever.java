@@ -0,0 +1,339 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.dto.response.ProductResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tìm sản phẩm làm ngữ cảnh cho trợ lý AI (thay cho top-k mặc định của QuestionAnswerAdvisor):
+ * 1. Tách filter từ câu hỏi: thương hiệu (theo brand trong catalog) và khoảng giá ("dưới 10 triệu", "từ 5 đến 8tr"...)
+ * 2. Tìm song song theo từ khoá (BM25, ProductKeywordIndex) và theo vector (pgvector, cùng filter trên metadata)
+ * 3. Gộp 2 danh sách bằng reciprocal-rank fusion, lấy top-k
+ * Filter loại hết sản phẩm (vd. brand không bán trong khoảng giá đó) thì tìm lại không filter.
+ * Nội dung document lấy từ catalog snapshot nên giá luôn là giá hiện tại, kể cả khi vector store chưa kịp đồng bộ.
+ */
+@Service
+@Slf4j
+public class ProductRetriever {
+
+    // Tên gọi sản phẩm phổ biến -> brand (chỉ dùng khi brand đó có trong catalog)
+    private static final Map<String, String> BRAND_ALIASES = Map.of(
+            "iphone", "apple",
+            "ipad", "apple",
+            "macbook", "apple",
+            "galaxy", "samsung",
+            "redmi", "xiaomi",
+            "pixel", "google");
+
+    private static final String AMOUNT = "\\b(\\d+(?:[.,]\\d+)*)\\s*(trieu|tr|cu|m|k|nghin|ngan)?\\b";
+    private static final Pattern RANGE = Pattern.compile(
+            "(?:\\btu\\s+)?" + AMOUNT + "\\s*(?:-|~|\\bden\\b|\\btoi\\b)\\s*" + AMOUNT);
+    private static final Pattern MAX = Pattern.compile(
+            "(?:\\b(?:duoi|toi da|khong qua|it hon|re hon)|<=?)\\s*" + AMOUNT);
+    private static final Pattern MIN = Pattern.compile(
+            "(?:\\b(?:tren|tu|it nhat|toi thieu|(?<!re |it )hon)|>=?)\\s*" + AMOUNT);
+    private static final Pattern AROUND = Pattern.compile(
+            "\\b(?:khoang|tam|quanh)\\s*" + AMOUNT);
+
+    /**
+     * Filter tách được từ câu hỏi, null / rỗng = không lọc theo tiêu chí đó
+     */
+    public record QueryFilters(Set<String> brands, Double minPrice, Double maxPrice) {
+        public boolean isEmpty() {
+            return brands.isEmpty() && minPrice == null && maxPrice == null;
+        }
+
+        Predicate<ProductResponse> asPredicate() {
+            return product -> {
+                if (!brands.isEmpty() && (product.getProdBrand() == null
+                        || !brands.contains(product.getProdBrand().getBrandName()))) {
+                    return false;
+                }
+                Double price = ProductKeywordIndex.activePrice(product);
+                if (price == null) {
+                    return false;
+                }
+                return (minPrice == null || price >= minPrice) && (maxPrice == null || price <= maxPrice);
+            };
+        }
+    }
+
+    public record Stats(long retrievals, long filtered, long filterFallbacks, long keywordOnly, long vectorOnly,
+                        long both, long vectorErrors, double meanMs, int topK, int keywordCandidates,
+                        int vectorCandidates) {
+    }
+
+    private final VectorStore vectorStore;
+    private final ProductKeywordIndex keywordIndex;
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final int topK;
+    private final int keywordCandidates;
+    private final int vectorCandidates;
+    private final double similarityThreshold;
+    private final int rrfK;
+
+    private final LongAdder retrievals = new LongAdder();
+    private final LongAdder filtered = new LongAdder();
+    private final LongAdder filterFallbacks = new LongAdder();
+    private final LongAdder keywordOnly = new LongAdder();
+    private final LongAdder vectorOnly = new LongAdder();
+    private final LongAdder both = new LongAdder();
+    private final LongAdder vectorErrors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public ProductRetriever(VectorStore vectorStore,
+                            ProductKeywordIndex keywordIndex,
+                            CatalogSnapshotService catalogSnapshotService,
+                            @Value("${ai.retrieval.top-k:6}") int topK,
+                            @Value("${ai.retrieval.keyword-candidates:20}") int keywordCandidates,
+                            @Value("${ai.retrieval.vector-candidates:20}") int vectorCandidates,
+                            @Value("${ai.retrieval.similarity-threshold:0.0}") double similarityThreshold,
+                            @Value("${ai.retrieval.rrf-k:60}") int rrfK) {
+        this.vectorStore = vectorStore;
+        this.keywordIndex = keywordIndex;
+        this.catalogSnapshotService = catalogSnapshotService;
+        this.topK = Math.max(1, topK);
+        this.keywordCandidates = Math.max(0, keywordCandidates);
+        this.vectorCandidates = Math.max(0, vectorCandidates);
+        this.similarityThreshold = similarityThreshold;
+        this.rrfK = Math.max(1, rrfK);
+    }
+
+    public List<Document> retrieve(String question) {
+        long start = System.nanoTime();
+        try {
+            CatalogSnapshotService.CatalogSnapshot snapshot = catalogSnapshotService.getSnapshot();
+            QueryFilters filters = extractFilters(question, snapshot);
+            if (!filters.isEmpty()) {
+                filtered.increment();
+                List<Document> documents = retrieve(question, filters, snapshot);
+                if (!documents.isEmpty()) {
+                    return documents;
+                }
+                filterFallbacks.increment();
+            }
+            return retrieve(question, new QueryFilters(Set.of(), null, null), snapshot);
+        } finally {
+            retrievals.increment();
+            totalNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    public Stats getStats() {
+        long count = retrievals.sum();
+        return new Stats(count, filtered.sum(), filterFallbacks.sum(), keywordOnly.sum(), vectorOnly.sum(),
+                both.sum(), vectorErrors.sum(),
+                count == 0 ? 0 : totalNanos.sum() / (double) TimeUnit.MILLISECONDS.toNanos(1) / count,
+                topK, keywordCandidates, vectorCandidates);
+    }
+
+    private List<Document> retrieve(String question, QueryFilters filters,
+                                    CatalogSnapshotService.CatalogSnapshot snapshot) {
+        List<Integer> keywordRanking = keywordIndex
+                .search(question, filters.isEmpty() ? null : filters.asPredicate(), keywordCandidates).stream()
+                .map(hit -> hit.product().getProdId())
+                .toList();
+        List<Integer> vectorRanking = vectorSearch(question, filters);
+
+        Map<Integer, Double> fused = fuse(rrfK, List.of(keywordRanking, vectorRanking));
+        Set<Integer> keywordSet = new HashSet<>(keywordRanking);
+        Set<Integer> vectorSet = new HashSet<>(vectorRanking);
+
+        List<Document> documents = new ArrayList<>(topK);
+        for (Map.Entry<Integer, Double> entry : fused.entrySet()) {
+            if (documents.size() >= topK) {
+                break;
+            }
+            Integer productId = entry.getKey();
+            // Sản phẩm trong vector store nhưng đã bị xóa / hết giá ACTIVE thì bỏ
+            ProductResponse product = snapshot.products().get(productId);
+            if (product == null || (!filters.isEmpty() && !filters.asPredicate().test(product))) {
+                continue;
+            }
+            boolean keyword = keywordSet.contains(productId);
+            boolean vector = vectorSet.contains(productId);
+            (keyword && vector ? both : keyword ? keywordOnly : vectorOnly).increment();
+            documents.add(toDocument(product, entry.getValue()));
+        }
+        return documents;
+    }
+
+    /**
+     * RRF: điểm = tổng 1 / (k + hạng) trên các danh sách, không cần chuẩn hoá điểm BM25 với cosine
+     *
+     * @return productId -> điểm, điểm giảm dần (bằng điểm thì productId nhỏ trước)
+     */
+    static LinkedHashMap<Integer, Double> fuse(int rrfK, List<List<Integer>> rankings) {
+        Map<Integer, Double> scores = new HashMap<>();
+        for (List<Integer> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                scores.merge(ranking.get(rank), 1.0 / (rrfK + rank + 1), Double::sum);
+            }
+        }
+        LinkedHashMap<Integer, Double> fused = new LinkedHashMap<>();
+        scores.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .forEach(entry -> fused.put(entry.getKey(), entry.getValue()));
+        return fused;
+    }
+
+    // Lỗi embedding / pgvector -> chỉ dùng kết quả từ khoá
+    private List<Integer> vectorSearch(String question, QueryFilters filters) {
+        if (vectorCandidates == 0) {
+            return List.of();
+        }
+        try {
+            List<Document> documents = vectorStore.similaritySearch(SearchRequest.builder()
+                    .query(question)
+                    .topK(vectorCandidates)
+                    .similarityThreshold(similarityThreshold)
+                    .filterExpression(filterExpression(filters))
+                    .build());
+            if (documents == null) {
+                return List.of();
+            }
+            return documents.stream()
+                    .map(document -> document.getMetadata().get("productId"))
+                    .filter(Number.class::isInstance)
+                    .map(id -> ((Number) id).intValue())
+                    .distinct()
+                    .toList();
+        } catch (Exception e) {
+            vectorErrors.increment();
+            log.warn("Vector search failed, using keyword results only: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    private static Filter.Expression filterExpression(QueryFilters filters) {
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        FilterExpressionBuilder.Op op = b.eq("entity", "product");
+        if (!filters.brands().isEmpty()) {
+            op = b.and(op, b.in("brand", filters.brands().toArray()));
+        }
+        if (filters.minPrice() != null) {
+            op = b.and(op, b.gte("price", filters.minPrice()));
+        }
+        if (filters.maxPrice() != null) {
+            op = b.and(op, b.lte("price", filters.maxPrice()));
+        }
+        return op.build();
+    }
+
+    // Mô tả rút gọn thay cho mô tả đầy đủ, thêm brand để AI không nhầm hãng
+    private Document toDocument(ProductResponse product, double score) {
+        Double price = ProductKeywordIndex.activePrice(product);
+        String brand = product.getProdBrand() != null ? product.getProdBrand().getBrandName() : "";
+        String description = keywordIndex.snippet(product);
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("entity", "product");
+        metadata.put("productId", product.getProdId());
+        metadata.put("brand", brand);
+        if (price != null) {
+            metadata.put("price", price);
+        }
+        return Document.builder()
+                .id(ProductVectorService.documentId(product.getProdId()))
+                .text(product.getProdName() + " (" + brand + ") - " + description
+                        + (price != null ? " Giá: " + String.format("%.0f", price) + " đ" : ""))
+                .metadata(metadata)
+                .score(score)
+                .build();
+    }
+
+    /**
+     * Tách brand và khoảng giá từ câu hỏi (không phân biệt hoa thường / dấu)
+     */
+    QueryFilters extractFilters(String question, CatalogSnapshotService.CatalogSnapshot snapshot) {
+        String text = " " + String.join(" ", ProductSearchIndex.normalize(question).split("[^a-z0-9.,<>=~-]+")) + " ";
+
+        Map<String, String> brandsByKey = new HashMap<>();
+        for (ProductResponse product : snapshot.products().values()) {
+            if (product.getProdBrand() != null && product.getProdBrand().getBrandName() != null) {
+                String name = product.getProdBrand().getBrandName();
+                brandsByKey.putIfAbsent(ProductSearchIndex.normalize(name), name);
+            }
+        }
+        Set<String> brands = new LinkedHashSet<>();
+        brandsByKey.forEach((key, name) -> {
+            if (!key.isEmpty() && text.contains(" " + key + " ")) {
+                brands.add(name);
+            }
+        });
+        BRAND_ALIASES.forEach((alias, key) -> {
+            if (text.contains(" " + alias) && brandsByKey.containsKey(key)) {
+                brands.add(brandsByKey.get(key));
+            }
+        });
+
+        Double min = null;
+        Double max = null;
+        Matcher range = RANGE.matcher(text);
+        Matcher upper = MAX.matcher(text);
+        Matcher lower = MIN.matcher(text);
+        Matcher around = AROUND.matcher(text);
+        if (range.find() && amount(range.group(1), unit(range.group(2), range.group(4))) != null
+                && amount(range.group(3), range.group(4)) != null) {
+            min = amount(range.group(1), unit(range.group(2), range.group(4)));
+            max = amount(range.group(3), range.group(4));
+        } else {
+            if (upper.find()) {
+                max = amount(upper.group(1), upper.group(2));
+            }
+            if (lower.find()) {
+                min = amount(lower.group(1), lower.group(2));
+            }
+            if (min == null && max == null && around.find()) {
+                Double center = amount(around.group(1), around.group(2));
+                if (center != null) {
+                    min = center * 0.9;
+                    max = center * 1.1;
+                }
+            }
+        }
+        if (min != null && max != null && min > max) {
+            double swap = min;
+            min = max;
+            max = swap;
+        }
+        return new QueryFilters(brands, min, max);
+    }
+
+    // "10-15 triệu": đơn vị của số sau áp dụng cho số trước
+    private static String unit(String own, String shared) {
+        return own != null ? own : shared;
+    }
+
+    /**
+     * Số tiền theo VNĐ. Không có đơn vị thì chỉ nhận số >= 100.000 (tránh nhầm "iPhone 15", "128GB")
+     */
+    private static Double amount(String number, String unit) {
+        try {
+            if (unit == null) {
+                double value = Double.parseDouble(number.replaceAll("[.,]", ""));
+                return value >= 100_000 ? value : null;
+            }
+            double value = Double.parseDouble(number.replace(',', '.'));
+            return switch (unit) {
+                case "trieu", "tr", "cu", "m" -> value * 1_000_000;
+                default -> value * 1_000;
+            };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.dto.response.ProductPriceResponse;
+import iuh.fit.se.enternalrunebackend.dto.response.ProductResponse;
+import iuh.fit.se.enternalrunebackend.repository.ProductSpecificationsRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Inverted index in-memory cho /products/filter, xây dựng từ CatalogSnapshotService.
+ * Mỗi giá trị filter (brand, màu, bộ nhớ, khoảng giá, từ khóa) có 1 posting list dạng BitSet
+ * trên thứ tự đã sắp xếp sẵn (product_rating DESC, prod_id ASC) -> lọc = AND/OR các BitSet,
+ * phân trang = duyệt bit (theo page hoặc theo cursor), không cần ORDER BY / OFFSET / COUNT.
+ * Index tự build lại khi version của catalog snapshot thay đổi.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductSearchIndex {
+
+    public static final String FACET_BRANDS = "brands";
+    public static final String FACET_COLORS = "colors";
+    public static final String FACET_MEMORY = "memory";
+    public static final String FACET_PRICE = "priceRange";
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    // Bucket giá giống FilterSidebar của frontend: [min, max)
+    private static final LinkedHashMap<String, long[]> PRICE_BUCKETS = new LinkedHashMap<>();
+
+    static {
+        PRICE_BUCKETS.put("under-5m", new long[]{0, 5_000_000});
+        PRICE_BUCKETS.put("5m-10m", new long[]{5_000_000, 10_000_000});
+        PRICE_BUCKETS.put("10m-15m", new long[]{10_000_000, 15_000_000});
+        PRICE_BUCKETS.put("15m-20m", new long[]{15_000_000, 20_000_000});
+        PRICE_BUCKETS.put("over-20m", new long[]{20_000_000, Long.MAX_VALUE});
+    }
+
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final ProductSpecificationsRepository productSpecificationsRepository;
+
+    // ReentrantLock thay vì synchronized: build() query DB (storage), không ghim virtual thread vào carrier
+    private final ReentrantLock buildLock = new ReentrantLock();
+    private volatile Index index;
+
+    /**
+     * Kết quả tìm kiếm: hits của trang hiện tại (đã sắp xếp), tổng số kết quả và facet counts
+     */
+    public record SearchResult(List<Hit> hits, long total, Map<String, Map<String, Integer>> facets) {
+    }
+
+    /**
+     * 1 sản phẩm trong kết quả cùng giá ACTIVE thấp nhất của nó
+     */
+    public record Hit(ProductResponse product, ProductPriceResponse activePrice) {
+    }
+
+    /**
+     * Kết quả theo keyset pagination: hits sau cursor và cursor (rating, prodId) của phần tử cuối
+     */
+    public record CursorResult(List<Hit> hits, boolean hasNext, Double lastRating, Integer lastProductId) {
+    }
+
+    public SearchResult search(List<Integer> brands,
+                               List<String> priceRanges,
+                               List<String> colors,
+                               List<String> memory,
+                               String search,
+                               int page,
+                               int size) {
+        Index idx = currentIndex();
+        Match match = match(idx, brands, priceRanges, colors, memory, search);
+
+        // Facet dạng disjunctive: mỗi nhóm được đếm với filter của các nhóm khác, bỏ qua filter của chính nó
+        Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+        facets.put(FACET_BRANDS, countFacet(match.base(), match.filters(), FACET_BRANDS, idx.brandFacets));
+        facets.put(FACET_COLORS, countFacet(match.base(), match.filters(), FACET_COLORS, idx.colorFacets));
+        facets.put(FACET_MEMORY, countFacet(match.base(), match.filters(), FACET_MEMORY, idx.memoryFacets));
+        facets.put(FACET_PRICE, countFacet(match.base(), match.filters(), FACET_PRICE, idx.priceFacets));
+
+        BitSet result = match.result();
+        List<Hit> hits = new ArrayList<>(Math.max(0, Math.min(size, result.cardinality())));
+        long skip = (long) Math.max(0, page) * Math.max(0, size);
+        for (int doc = result.nextSetBit(0); doc >= 0 && hits.size() < size; doc = result.nextSetBit(doc + 1)) {
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            hits.add(new Hit(idx.docs[doc], idx.activePrices[doc]));
+        }
+        return new SearchResult(hits, result.cardinality(), facets);
+    }
+
+    /**
+     * Keyset pagination theo (product_rating DESC, prod_id ASC): bắt đầu ngay sau (afterRating, afterProductId).
+     * Cursor lưu giá trị chứ không lưu vị trí nên vẫn đúng khi index được build lại.
+     *
+     * @param afterRating    rating của phần tử cuối trang trước, null = trang đầu
+     * @param afterProductId prodId của phần tử cuối trang trước, null = trang đầu
+     */
+    public CursorResult searchAfter(List<Integer> brands,
+                                    List<String> priceRanges,
+                                    List<String> colors,
+                                    List<String> memory,
+                                    String search,
+                                    Double afterRating,
+                                    Integer afterProductId,
+                                    int size) {
+        Index idx = currentIndex();
+        BitSet result = match(idx, brands, priceRanges, colors, memory, search).result();
+
+        int from = afterRating == null || afterProductId == null ? 0 : idx.positionAfter(afterRating, afterProductId);
+        List<Hit> hits = new ArrayList<>(Math.max(0, Math.min(size, result.cardinality())));
+        int doc = result.nextSetBit(from);
+        while (doc >= 0 && hits.size() < size) {
+            hits.add(new Hit(idx.docs[doc], idx.activePrices[doc]));
+            doc = result.nextSetBit(doc + 1);
+        }
+        boolean hasNext = doc >= 0;
+        ProductResponse last = hits.isEmpty() ? null : hits.get(hits.size() - 1).product();
+        return new CursorResult(hits, hasNext,
+                last != null ? last.getProdRating() : null,
+                last != null ? last.getProdId() : null);
+    }
+
+    private record Match(BitSet base, Map<String, BitSet> filters, BitSet result) {
+    }
+
+    private Match match(Index idx,
+                        List<Integer> brands,
+                        List<String> priceRanges,
+                        List<String> colors,
+                        List<String> memory,
+                        String search) {
+        // Filter theo từng nhóm (null = không lọc nhóm đó)
+        Map<String, BitSet> filters = new LinkedHashMap<>();
+        filters.put(FACET_BRANDS, brands == null || brands.isEmpty() ? null
+                : union(brands.stream().map(idx.brands::get).toList()));
+        filters.put(FACET_COLORS, colors == null || colors.isEmpty() ? null
+                : union(colors.stream().map(c -> idx.colors.get(normalize(c))).toList()));
+        filters.put(FACET_MEMORY, memory == null || memory.isEmpty() ? null
+                : union(memory.stream().map(m -> idx.memory.get(compact(m))).toList()));
+        List<BitSet> priceFilters = priceRanges == null ? List.of()
+                : priceRanges.stream().map(idx::priceRange).filter(Objects::nonNull).toList();
+        // Khoảng giá không hợp lệ thì bỏ qua (giống hành vi cũ)
+        filters.put(FACET_PRICE, priceFilters.isEmpty() ? null : union(priceFilters));
+
+        BitSet base = (BitSet) idx.all.clone();
+        if (search != null && !search.isBlank()) {
+            base.and(idx.matchTerms(search));
+        }
+
+        BitSet result = (BitSet) base.clone();
+        filters.values().stream().filter(Objects::nonNull).forEach(result::and);
+        return new Match(base, filters, result);
+    }
+
+    private Map<String, Integer> countFacet(BitSet base, Map<String, BitSet> filters, String dimension,
+                                            Map<String, BitSet> postings) {
+        BitSet scope = (BitSet) base.clone();
+        filters.forEach((dim, filter) -> {
+            if (filter != null && !dim.equals(dimension)) {
+                scope.and(filter);
+            }
+        });
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        postings.forEach((value, posting) -> {
+            BitSet hit = (BitSet) posting.clone();
+            hit.and(scope);
+            int count = hit.cardinality();
+            if (count > 0) {
+                counts.put(value, count);
+            }
+        });
+        return counts;
+    }
+
+    private Index currentIndex() {
+        CatalogSnapshotService.CatalogSnapshot snapshot = catalogSnapshotService.getSnapshot();
+        Index current = index;
+        if (current == null || current.version != snapshot.version()) {
+            buildLock.lock();
+            try {
+                current = index;
+                if (current == null || current.version != snapshot.version()) {
+                    current = build(snapshot);
+                    index = current;
+                }
+            } finally {
+                buildLock.unlock();
+            }
+        }
+        return current;
+    }
+
+    private Index build(CatalogSnapshotService.CatalogSnapshot snapshot) {
+        long start = System.nanoTime();
+
+        // Thứ tự mặc định: product_rating DESC, prod_id ASC
+        ProductResponse[] docs = snapshot.products().values().stream()
+                .sorted(Comparator.comparingDouble(ProductResponse::getProdRating).reversed()
+                        .thenComparingInt(ProductResponse::getProdId))
+                .toArray(ProductResponse[]::new);
+
+        Map<Integer, List<String>> storages = new HashMap<>();
+        if (docs.length > 0) {
+            List<Integer> ids = Arrays.stream(docs).map(ProductResponse::getProdId).toList();
+            for (Object[] row : productSpecificationsRepository.findStorageByProductIds(ids)) {
+                if (row[1] != null) {
+                    storages.computeIfAbsent((Integer) row[0], k -> new ArrayList<>()).add(row[1].toString());
+                }
+            }
+        }
+
+        Index idx = new Index(snapshot.version(), docs);
+        for (int doc = 0; doc < docs.length; doc++) {
+            ProductResponse p = docs[doc];
+            idx.all.set(doc);
+
+            if (p.getProdBrand() != null) {
+                int brandId = p.getProdBrand().getBrandId();
+                posting(idx.brands, brandId).set(doc);
+                posting(idx.brandFacets, String.valueOf(brandId)).set(doc);
+                idx.addTerms(p.getProdBrand().getBrandName(), doc);
+            }
+            for (String color : p.getProdColor()) {
+                posting(idx.colors, normalize(color)).set(doc);
+                posting(idx.colorFacets, color.trim()).set(doc);
+            }
+            for (String storage : storages.getOrDefault(p.getProdId(), List.of())) {
+                posting(idx.memory, compact(storage)).set(doc);
+                posting(idx.memoryFacets, storage.trim()).set(doc);
+            }
+            for (String version : p.getProdVersion()) {
+                idx.addTerms(version, doc);
+            }
+            idx.addTerms(p.getProdName(), doc);
+            idx.addTerms(p.getProdModel(), doc);
+
+            ProductPriceResponse activePrice = p.getProductPrices().stream()
+                    .min(Comparator.comparingDouble(ProductPriceResponse::getPpPrice))
+                    .orElse(null);
+            idx.activePrices[doc] = activePrice;
+            idx.prices[doc] = activePrice != null ? (long) activePrice.getPpPrice() : -1;
+            if (activePrice != null) {
+                for (Map.Entry<String, long[]> bucket : PRICE_BUCKETS.entrySet()) {
+                    if (inRange(idx.prices[doc], bucket.getValue()[0], bucket.getValue()[1])) {
+                        posting(idx.priceFacets, bucket.getKey()).set(doc);
+                    }
+                }
+            }
+        }
+
+        log.info("Product search index v{} built: {} products, {} term suffixes in {} ms",
+                snapshot.version(), docs.length, idx.terms.size(), (System.nanoTime() - start) / 1_000_000);
+        return idx;
+    }
+
+    private static <K> BitSet posting(Map<K, BitSet> postings, K key) {
+        return postings.computeIfAbsent(key, k -> new BitSet());
+    }
+
+    private static BitSet union(List<BitSet> postings) {
+        BitSet result = new BitSet();
+        postings.stream().filter(Objects::nonNull).forEach(result::or);
+        return result;
+    }
+
+    private static boolean inRange(long price, long min, long max) {
+        return price >= min && price < max;
+    }
+
+    /**
+     * Chuẩn hóa để so khớp: bỏ dấu tiếng Việt, lowercase, trim
+     */
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String stripped = Normalizer.normalize(value, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .replace('đ', 'd')
+                .replace('Đ', 'D');
+        return stripped.toLowerCase(Locale.ROOT).trim();
+    }
+
+    // "128 GB" và "128GB" là cùng 1 giá trị bộ nhớ
+    private static String compact(String value) {
+        return normalize(value).replaceAll("\\s+", "");
+    }
+
+    static List<String> tokenize(String value) {
+        return Arrays.stream(normalize(value).split("[^a-z0-9]+"))
+                .filter(token -> !token.isEmpty())
+                .toList();
+    }
+
+    private static final class Index {
+        final long version;
+        final ProductResponse[] docs;
+        final ProductPriceResponse[] activePrices;
+        final long[] prices;
+        final BitSet all = new BitSet();
+
+        final Map<Integer, BitSet> brands = new HashMap<>();
+        final Map<String, BitSet> colors = new HashMap<>();
+        final Map<String, BitSet> memory = new HashMap<>();
+        // Mọi hậu tố của mọi term ("iphone" -> "iphone", "phone", "hone"...): tra theo prefix = khớp chuỗi con
+        final NavigableMap<String, BitSet> terms = new TreeMap<>();
+
+        // Posting list theo nhãn hiển thị cho facet counts
+        final Map<String, BitSet> brandFacets = new TreeMap<>();
+        final Map<String, BitSet> colorFacets = new TreeMap<>();
+        final Map<String, BitSet> memoryFacets = new TreeMap<>();
+        final Map<String, BitSet> priceFacets = new LinkedHashMap<>();
+
+        Index(long version, ProductResponse[] docs) {
+            this.version = version;
+            this.docs = docs;
+            this.activePrices = new ProductPriceResponse[docs.length];
+            this.prices = new long[docs.length];
+            PRICE_BUCKETS.keySet().forEach(bucket -> priceFacets.put(bucket, new BitSet()));
+        }
+
+        /**
+         * Vị trí của doc đầu tiên đứng sau (rating, prodId) theo thứ tự rating DESC, prod_id ASC (binary search)
+         */
+        int positionAfter(double rating, int prodId) {
+            int low = 0;
+            int high = docs.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                ProductResponse p = docs[mid];
+                boolean afterCursor = p.getProdRating() < rating
+                        || (p.getProdRating() == rating && p.getProdId() > prodId);
+                if (afterCursor) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+
+        void addTerms(String text, int doc) {
+            for (String token : tokenize(text)) {
+                for (int i = 0; i < token.length(); i++) {
+                    posting(terms, token.substring(i)).set(doc);
+                }
+            }
+        }
+
+        /**
+         * Mỗi từ trong câu tìm kiếm phải là chuỗi con của ít nhất 1 term của sản phẩm (tên, model, brand, phiên bản),
+         * giống ILIKE '%q%' cũ nhưng theo từng từ và không phân biệt dấu: "phone" khớp "iPhone",
+         * "15 pro" khớp "iPhone 15 Pro Max"
+         */
+        BitSet matchTerms(String search) {
+            BitSet result = (BitSet) all.clone();
+            for (String token : tokenize(search)) {
+                BitSet matches = new BitSet();
+                terms.subMap(token, true, token + Character.MAX_VALUE, false)
+                        .values()
+                        .forEach(matches::or);
+                result.and(matches);
+            }
+            return result;
+        }
+
+        /**
+         * Bucket có tên sẵn ("5m-10m") hoặc khoảng số "min-max" / "min-*"
+         */
+        BitSet priceRange(String range) {
+            if (range == null || range.isBlank()) {
+                return null;
+            }
+            BitSet bucket = priceFacets.get(range.trim());
+            if (bucket != null) {
+                return bucket;
+            }
+            String[] parts = range.split("-");
+            long min;
+            long max = Long.MAX_VALUE;
+            try {
+                min = Long.parseLong(parts[0].trim());
+                if (parts.length > 1 && !parts[1].trim().equals("*")) {
+                    max = Long.parseLong(parts[1].trim()) + 1;
+                }
+            } catch (NumberFormatException e) {
+                // Ignore invalid price range
+                return null;
+            }
+            BitSet result = new BitSet();
+            for (int doc = 0; doc < prices.length; doc++) {
+                if (prices[doc] >= 0 && inRange(prices[doc], min, max)) {
+                    result.set(doc);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package iuh.fit.se.enternalrunebackend.service;
 
 import iuh.fit.se.enternalrunebackend.dto.request.ProductRequest;
+import iuh.fit.se.enternalrunebackend.dto.response.CursorPageResponse;
 import iuh.fit.se.enternalrunebackend.dto.response.ProductDashboardListResponse;
 import iuh.fit.se.enternalrunebackend.dto.response.ProductDashboardResponse;
 import iuh.fit.se.enternalrunebackend.dto.response.ProductResponse;
 import iuh.fit.se.enternalrunebackend.dto.response.ProductListResponse;
 import iuh.fit.se.enternalrunebackend.dto.response.ProductCardResponse;
+import iuh.fit.se.enternalrunebackend.dto.response.ProductFilterPageResponse;
 
 
 
@@ -57,6 +59,8 @@ public interface ProductService {
     // Batch rating statistics to avoid N+1 queries
     Map<Integer, Double> getAverageRatingsForProducts(List<Integer> productIds);
     Map<Integer, Integer> getTotalCommentsForProducts(List<Integer> productIds);
+    // Count + average + phân bố 1-5 cho nhiều sản phẩm trong 1 query
+    ProductRatingStats getRatingStats(List<Integer> productIds);
     
     // ===== OPTIMIZED METHODS FOR LIST VIEWS =====
     
@@ -87,4 +91,30 @@ public interface ProductService {
             int page,
             int size
     );
+
+    /**
+     * Filter products theo keyset pagination (product_rating, prod_id) - không có tổng số
+     */
+    CursorPageResponse<ProductListResponse> filterProductsByCursor(
+            List<Integer> brands,
+            List<String> priceRanges,
+            List<String> colors,
+            List<String> memory,
+            String search,
+            String cursor,
+            int size
+    );
+
+    /**
+     * Filter products bằng in-memory search index - 1 lần intersection, kèm facet counts
+     */
+    ProductFilterPageResponse filterProductsWithFacets(
+            List<Integer> brands,
+            List<String> priceRanges,
+            List<String> colors,
+            List<String> memory,
+            String search,
+            int page,
+            int size
+    );
 }
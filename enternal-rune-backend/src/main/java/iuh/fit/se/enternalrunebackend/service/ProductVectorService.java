@@ -1,47 +1,277 @@
 package iuh.fit.se.enternalrunebackend.service;
 
 import iuh.fit.se.enternalrunebackend.entity.Product;
-import jakarta.transaction.Transactional;
-import lombok.RequiredArgsConstructor;
+import iuh.fit.se.enternalrunebackend.entity.ProductEmbedding;
+import iuh.fit.se.enternalrunebackend.entity.ProductEmbeddingChange;
+import iuh.fit.se.enternalrunebackend.entity.ProductPrice;
+import iuh.fit.se.enternalrunebackend.entity.enums.PriceStatus;
+import iuh.fit.se.enternalrunebackend.repository.ProductEmbeddingChangeRepository;
+import iuh.fit.se.enternalrunebackend.repository.ProductEmbeddingRepository;
+import iuh.fit.se.enternalrunebackend.repository.ProductRepository;
+import iuh.fit.se.enternalrunebackend.util.TextSnippets;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.ai.document.Document;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Đồng bộ sản phẩm vào vector store (RAG của trợ lý AI) theo thay đổi:
+ * - ProductServiceImpl / CatalogRepositoryEventHandler ghi productId vào outbox product_embedding_changes
+ * - Worker nền lấy batch outbox (FOR UPDATE SKIP LOCKED), gộp theo sản phẩm, chỉ nhúng lại sản phẩm có
+ *   hash nội dung thay đổi, xóa document của sản phẩm đã xóa / hết giá ACTIVE
+ * - Id document cố định theo productId -> nhúng lại là ghi đè, không sinh document trùng
+ * Câu hỏi gửi trợ lý AI không còn phải kiểm tra / đồng bộ vector store trước khi trả lời.
+ */
 @Service
-@RequiredArgsConstructor
+@Slf4j
 public class ProductVectorService {
 
+    public record Stats(long pending, long processedChanges, long embedded, long unchanged, long removed,
+                        long failedBatches, String lastError, LocalDateTime lastSyncAt) {
+    }
+
     private final VectorStore vectorStore;
-    private final ProductService productService;
+    private final ProductRepository productRepository;
+    private final ProductEmbeddingRepository embeddingRepository;
+    private final ProductEmbeddingChangeRepository changeRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingCallMonitor blockingCallMonitor;
+    private final int batchSize;
+    private final Duration maxBackoff;
+    private final int maxDescriptionChars;
+    private final int snippetChars;
+
+    private final LongAdder processedChanges = new LongAdder();
+    private final LongAdder embedded = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final AtomicLong failureStreak = new AtomicLong();
+    private volatile long retryAfterNanos;
+    private volatile String lastError;
+    private volatile LocalDateTime lastSyncAt;
+
+    public ProductVectorService(VectorStore vectorStore,
+                                ProductRepository productRepository,
+                                ProductEmbeddingRepository embeddingRepository,
+                                ProductEmbeddingChangeRepository changeRepository,
+                                PlatformTransactionManager transactionManager,
+                                BlockingCallMonitor blockingCallMonitor,
+                                @Value("${ai.vector-sync.batch-size:100}") int batchSize,
+                                @Value("${spring.ai.vectorstore.pgvector.max-document-batch-size:10000}") int maxDocumentBatchSize,
+                                @Value("${ai.vector-sync.max-backoff:5m}") Duration maxBackoff,
+                                @Value("${ai.vector-sync.max-description-chars:2000}") int maxDescriptionChars,
+                                @Value("${ai.prompt.snippet-chars:240}") int snippetChars) {
+        this.vectorStore = vectorStore;
+        this.productRepository = productRepository;
+        this.embeddingRepository = embeddingRepository;
+        this.changeRepository = changeRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.blockingCallMonitor = blockingCallMonitor;
+        // 1 batch = 1 lần gọi embedding + 1 lần ghi pgvector nên không vượt max-document-batch-size
+        this.batchSize = Math.max(1, Math.min(batchSize, maxDocumentBatchSize));
+        this.maxBackoff = maxBackoff;
+        this.maxDescriptionChars = maxDescriptionChars;
+        this.snippetChars = snippetChars;
+        this.retryAfterNanos = System.nanoTime();
+    }
 
+    /**
+     * Id document của sản phẩm trong vector_store (UUID v3 theo productId)
+     */
+    public static String documentId(Integer productId) {
+        return UUID.nameUUIDFromBytes(("product:" + productId).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Ghi nhận sản phẩm cần đồng bộ lại. Gọi trong transaction của thay đổi (nếu có) để outbox commit cùng dữ liệu.
+     */
+    public void enqueue(Integer productId) {
+        if (productId == null) {
+            return;
+        }
+        changeRepository.save(ProductEmbeddingChange.builder()
+                .productId(productId)
+                .createdAt(LocalDateTime.now())
+                .build());
+    }
+
+    /**
+     * Khi khởi động: đưa mọi sản phẩm đang bán và mọi sản phẩm đã nhúng vào outbox, worker tự bỏ qua
+     * sản phẩm không đổi (chỉ tốn 1 lần đọc DB, không gọi embedding). Lần đầu sau khi nâng cấp thì xóa
+     * document cũ (id ngẫu nhiên) trước để không bị trùng.
+     */
     @EventListener(ApplicationReadyEvent.class)
-    @Transactional // BẮT BUỘC: giữ session mở
-    public void syncProductsToVector() {
-        if(vectorStore.similaritySearch("products").isEmpty()) {
-            List<Product> products = productService.getAllProductsWithActivePrice();
-            List<Document> documents = products.stream()
-                    .map(p -> Document.builder()
-                            .id(UUID.randomUUID().toString())  // id duy nhất
-                            .text(p.getProdName() + " - " + p.getProdDescription() +
-                                    ". Giá: " + p.getProductPrices().getFirst().getPpPrice())
-                            .metadata(Map.of(
-                                    "entity", "product",
-                                    "productId", p.getProdId(),
-                                    "price", p.getProductPrices().getFirst().getPpPrice(),
-                                    "brand", p.getProdBrand().getBrandName(),
-                                    "description", p.getProdDescription()
-                            ))
-                            .build())
-                    .toList();
-
-            vectorStore.add(documents);
-            System.out.println("Đã nhúng " + documents.size() + " sản phẩm vào vector_store");
+    public void reconcile() {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Set<Integer> productIds = new LinkedHashSet<>(productRepository.findProductIdsWithActivePrice());
+                List<Integer> embeddedIds = embeddingRepository.findAllProductIds();
+                if (embeddedIds.isEmpty()) {
+                    vectorStore.delete("entity == 'product'");
+                    log.info("Removed legacy product documents from vector_store before full sync");
+                }
+                productIds.addAll(embeddedIds);
+                productIds.forEach(this::enqueue);
+                log.info("Queued {} products for vector store reconciliation", productIds.size());
+            });
+        } catch (Exception e) {
+            log.error("Vector store reconciliation failed: {}", e.getMessage());
         }
+    }
 
+    @Scheduled(fixedDelayString = "${ai.vector-sync.poll-interval-ms:2000}")
+    public void drain() {
+        // Lỗi embedding (Gemini quota, mạng) -> chờ backoff rồi mới thử lại batch đó
+        if (System.nanoTime() - retryAfterNanos < 0) {
+            return;
+        }
+        try {
+            while (syncBatch() == batchSize) {
+                // Còn tồn -> xử lý tiếp ngay, không chờ lượt poll sau
+            }
+            failureStreak.set(0);
+        } catch (Exception e) {
+            failedBatches.increment();
+            lastError = e.getMessage();
+            long streak = failureStreak.incrementAndGet();
+            long backoff = Math.min(maxBackoff.toMillis(), 1000L << Math.min(streak, 20));
+            retryAfterNanos = System.nanoTime() + Duration.ofMillis(backoff).toNanos();
+            log.warn("Vector store sync failed (attempt {}), retry in {} ms: {}", streak, backoff, e.getMessage());
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(changeRepository.count(), processedChanges.sum(), embedded.sum(), unchanged.sum(),
+                removed.sum(), failedBatches.sum(), lastError, lastSyncAt);
+    }
+
+    /**
+     * Xử lý 1 batch outbox trong 1 transaction: lỗi ở bất kỳ bước nào thì rollback, các dòng outbox
+     * vẫn còn và được thử lại.
+     *
+     * @return số dòng outbox đã xử lý
+     */
+    private int syncBatch() {
+        Integer count = transactionTemplate.execute(status -> {
+            List<ProductEmbeddingChange> changes = changeRepository.claimOldest(batchSize);
+            if (changes.isEmpty()) {
+                return 0;
+            }
+            List<Integer> productIds = changes.stream().map(ProductEmbeddingChange::getProductId).distinct().toList();
+
+            Map<Integer, Product> products = new HashMap<>();
+            productRepository.findProductsByIdsWithRelations(productIds).forEach(p -> products.put(p.getProdId(), p));
+            productRepository.findProductsByIdsWithPrices(productIds);
+            Map<Integer, ProductEmbedding> current = new HashMap<>();
+            embeddingRepository.findAllById(productIds).forEach(e -> current.put(e.getProductId(), e));
+
+            List<Document> toEmbed = new ArrayList<>();
+            List<ProductEmbedding> toSave = new ArrayList<>();
+            List<Integer> toRemove = new ArrayList<>();
+            for (Integer productId : productIds) {
+                Document document = toDocument(products.get(productId));
+                ProductEmbedding existing = current.get(productId);
+                if (document == null) {
+                    if (existing != null) {
+                        toRemove.add(productId);
+                    }
+                    continue;
+                }
+                String hash = contentHash(document);
+                if (existing != null && existing.getContentHash().equals(hash)) {
+                    unchanged.increment();
+                    continue;
+                }
+                toEmbed.add(document);
+                toSave.add(ProductEmbedding.builder()
+                        .productId(productId)
+                        .documentId(document.getId())
+                        .contentHash(hash)
+                        .embeddedAt(LocalDateTime.now())
+                        .build());
+            }
+
+            if (!toEmbed.isEmpty()) {
+                // pgvector ghi theo id (ON CONFLICT DO UPDATE) nên nhúng lại là ghi đè document cũ
+                blockingCallMonitor.record("embedding", () -> {
+                    vectorStore.add(toEmbed);
+                    return null;
+                });
+                embeddingRepository.saveAll(toSave);
+                embedded.add(toEmbed.size());
+            }
+            if (!toRemove.isEmpty()) {
+                vectorStore.delete(toRemove.stream().map(ProductVectorService::documentId).toList());
+                embeddingRepository.deleteAllByIdInBatch(toRemove);
+                removed.add(toRemove.size());
+            }
+            changeRepository.deleteAllInBatch(changes);
+            processedChanges.add(changes.size());
+            lastSyncAt = LocalDateTime.now();
+            if (!toEmbed.isEmpty() || !toRemove.isEmpty()) {
+                log.info("Vector store sync: {} embedded, {} removed, {} changes", toEmbed.size(), toRemove.size(),
+                        changes.size());
+            }
+            return changes.size();
+        });
+        return count == null ? 0 : count;
+    }
+
+    // null nếu sản phẩm không còn / không có giá ACTIVE -> không đưa cho trợ lý AI
+    private Document toDocument(Product p) {
+        if (p == null || p.getProductPrices() == null) {
+            return null;
+        }
+        Optional<ProductPrice> activePrice = p.getProductPrices().stream()
+                .filter(pp -> pp.getPpPriceStatus() == PriceStatus.ACTIVE)
+                .min(Comparator.comparingDouble(ProductPrice::getPpPrice));
+        if (activePrice.isEmpty()) {
+            return null;
+        }
+        double price = activePrice.get().getPpPrice();
+        // Mô tả dài chỉ cần phần đầu để embedding bắt được ngữ nghĩa; metadata giữ bản rút gọn (snippet)
+        // thay vì lặp lại toàn bộ mô tả
+        String description = TextSnippets.snippet(p.getProdDescription(), maxDescriptionChars);
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("entity", "product");
+        metadata.put("productId", p.getProdId());
+        metadata.put("price", price);
+        metadata.put("brand", p.getProdBrand() != null ? p.getProdBrand().getBrandName() : "");
+        metadata.put("snippet", TextSnippets.snippet(p.getProdDescription(), snippetChars));
+        return Document.builder()
+                .id(documentId(p.getProdId()))
+                .text(p.getProdName() + " - " + description + ". Giá: " + String.format("%.0f", price))
+                .metadata(metadata)
+                .build();
+    }
+
+    private static String contentHash(Document document) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(document.getText().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            // TreeMap: thứ tự key cố định để hash ổn định
+            digest.update(new TreeMap<>(document.getMetadata()).toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,282 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import iuh.fit.se.enternalrunebackend.entity.entityForAssistanceChat.AiConversationMemory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ghép prompt cho trợ lý AI trong giới hạn token:
+ * - System prompt tĩnh là hằng số, đặt đầu prompt và giống hệt nhau mọi request (provider cache được prefix),
+ *   số token của nó tính 1 lần
+ * - Bộ nhớ hội thoại (tóm tắt + các lượt gần nhất) được tối đa history-max-tokens, ưu tiên lượt mới
+ * - Bỏ document trùng (cùng sản phẩm / cùng nội dung), giữ bản xếp hạng cao hơn
+ * - Thêm document theo thứ tự xếp hạng tới khi hết max-tokens, phần còn lại bị bỏ
+ * Token được ước lượng theo số ký tự (không có tokenizer của Gemini trong JVM); số token thật do Gemini
+ * trả về được ghi lại sau mỗi request để so sánh, xem getStats().
+ */
+@Service
+@Slf4j
+public class PromptAssembler {
+
+    public static final String SYSTEM_PROMPT = """
+            Bạn là Trợ lý AI của cửa hàng công nghệ ETERNAL RUNE.
+
+            QUY TẮC:
+            - Chỉ trả lời dựa trên dữ liệu hệ thống cung cấp (quan trọn nhất) (database/RAG).
+            - Không bịa, không suy đoán ngoài dữ liệu (quan trọng).
+            - Nếu không có dữ liệu → xin lỗi và đề nghị kiểm tra lại trong hệ thống.
+            - Luôn nói chuyện thân thiện, chuyên nghiệp.
+            - Luôn gợi ý ít nhất 2 sản phẩm liên quan từ dữ liệu.
+            - Hỗ trợ: hướng dẫn mua hàng, tạo tài khoản, kiểm tra đơn, thanh toán, bảo hành.
+            - Luôn kết thúc bằng lời mời khách xem thêm sản phẩm tại ETERNAL RUNE.
+
+            MỤC TIÊU:
+            - Tư vấn sản phẩm chính hãng, giá cạnh tranh, dịch vụ hậu mãi tốt.
+            - Hỗ trợ khách tìm sản phẩm phù hợp nhất dựa trên dữ liệu thật.
+            """;
+
+    private static final String SUMMARY_HEADER = """
+            Tóm tắt cuộc trò chuyện trước đó với khách:
+            """;
+
+    private static final String CONTEXT_HEADER = """
+
+
+            Thông tin sản phẩm liên quan nằm giữa 2 dòng ---------------------
+
+            ---------------------
+            """;
+
+    private static final String CONTEXT_FOOTER = """
+            ---------------------
+
+            Dựa vào thông tin trên (không dùng kiến thức bên ngoài), trả lời câu hỏi của khách.
+            Nếu thông tin trên không đủ để trả lời, hãy nói rõ là chưa có dữ liệu.
+            """;
+
+    /**
+     * Prompt đã ghép cùng bảng tính token của nó
+     *
+     * @param history các lượt hỏi / đáp trước (cũ -> mới), gửi giữa system và user
+     */
+    public record AssembledPrompt(String system, List<Message> history, String user, Accounting accounting) {
+    }
+
+    /**
+     * Token của 1 request: ước lượng lúc ghép prompt (system / câu hỏi / lịch sử hội thoại / ngữ cảnh) và số thật
+     * Gemini trả về (null nếu request chưa xong / provider không trả usage)
+     */
+    public record Accounting(long requestId, LocalDateTime at, int budget, int systemTokens, int questionTokens,
+                             int historyTokens, int historyTurns, int contextTokens, int estimatedTotal,
+                             int documentsRetrieved, int documentsIncluded, int duplicatesRemoved,
+                             int documentsOverBudget, Integer promptTokens, Integer completionTokens) {
+
+        Accounting withUsage(Integer promptTokens, Integer completionTokens) {
+            return new Accounting(requestId, at, budget, systemTokens, questionTokens, historyTokens, historyTurns,
+                    contextTokens, estimatedTotal, documentsRetrieved, documentsIncluded, duplicatesRemoved,
+                    documentsOverBudget, promptTokens, completionTokens);
+        }
+    }
+
+    public record Stats(long requests, int budget, int systemTokens, double meanEstimatedTokens,
+                        double meanPromptTokens, double meanCompletionTokens, long duplicatesRemoved,
+                        long documentsOverBudget, List<Accounting> recent) {
+    }
+
+    private final int budget;
+    private final int historyBudget;
+    private final double charsPerToken;
+    private final int recentLimit;
+    private final int systemTokens;
+    private final int templateTokens;
+    private final DistributionSummary estimatedSummary;
+    private final DistributionSummary promptSummary;
+    private final DistributionSummary completionSummary;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder estimatedTotal = new LongAdder();
+    private final LongAdder promptTotal = new LongAdder();
+    private final LongAdder completionTotal = new LongAdder();
+    private final LongAdder withUsage = new LongAdder();
+    private final LongAdder duplicatesRemoved = new LongAdder();
+    private final LongAdder documentsOverBudget = new LongAdder();
+    private final Deque<Accounting> recent = new ArrayDeque<>();
+    private final ReentrantLock recentLock = new ReentrantLock();
+
+    public PromptAssembler(MeterRegistry meterRegistry,
+                           @Value("${ai.prompt.max-tokens:1500}") int budget,
+                           @Value("${ai.prompt.history-max-tokens:400}") int historyBudget,
+                           @Value("${ai.prompt.chars-per-token:3.0}") double charsPerToken,
+                           @Value("${ai.prompt.recent-requests:50}") int recentLimit) {
+        this.budget = budget;
+        this.historyBudget = Math.max(0, historyBudget);
+        this.charsPerToken = Math.max(0.5, charsPerToken);
+        this.recentLimit = Math.max(0, recentLimit);
+        this.systemTokens = estimateTokens(SYSTEM_PROMPT);
+        this.templateTokens = estimateTokens(CONTEXT_HEADER) + estimateTokens(CONTEXT_FOOTER);
+        this.estimatedSummary = DistributionSummary.builder("ai.prompt.tokens")
+                .description("Số token ước lượng của prompt gửi trợ lý AI")
+                .tag("kind", "estimated")
+                .register(meterRegistry);
+        this.promptSummary = DistributionSummary.builder("ai.prompt.tokens")
+                .description("Số token prompt Gemini tính")
+                .tag("kind", "prompt")
+                .register(meterRegistry);
+        this.completionSummary = DistributionSummary.builder("ai.prompt.tokens")
+                .description("Số token câu trả lời Gemini tính")
+                .tag("kind", "completion")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param documents document đã xếp hạng (tốt nhất trước)
+     * @param history   bộ nhớ của phiên chat, History.EMPTY nếu không có
+     */
+    public AssembledPrompt assemble(String question, List<Document> documents,
+                                    AiConversationMemoryService.History history) {
+        int questionTokens = estimateTokens(question);
+        int remaining = budget - systemTokens - templateTokens - questionTokens;
+
+        // Tóm tắt trước, rồi các lượt từ mới tới cũ cho tới khi hết phần dành cho lịch sử
+        int historyRemaining = Math.min(historyBudget, Math.max(0, remaining));
+        String summary = null;
+        int historyTokens = 0;
+        if (history.summary() != null) {
+            int tokens = estimateTokens(SUMMARY_HEADER) + estimateTokens(history.summary());
+            if (tokens <= historyRemaining) {
+                summary = history.summary();
+                historyTokens += tokens;
+                historyRemaining -= tokens;
+            }
+        }
+        Deque<Message> messages = new ArrayDeque<>();
+        List<AiConversationMemory.Turn> turns = history.turns();
+        int historyTurns = 0;
+        for (int i = turns.size() - 1; i >= 0; i--) {
+            AiConversationMemory.Turn turn = turns.get(i);
+            int tokens = estimateTokens(turn.getQuestion()) + estimateTokens(turn.getAnswer()) + 2;
+            if (tokens > historyRemaining) {
+                break;
+            }
+            messages.addFirst(new AssistantMessage(turn.getAnswer()));
+            messages.addFirst(new UserMessage(turn.getQuestion()));
+            historyTokens += tokens;
+            historyRemaining -= tokens;
+            historyTurns++;
+        }
+        remaining -= historyTokens;
+
+        Set<Object> seenProducts = new HashSet<>();
+        Set<String> seenTexts = new HashSet<>();
+        StringBuilder context = new StringBuilder();
+        int contextTokens = 0;
+        int duplicates = 0;
+        int overBudget = 0;
+        int included = 0;
+        for (Document document : documents) {
+            String text = document.getText();
+            if (text == null || text.isBlank()) {
+                continue;
+            }
+            // Nhiều chunk của cùng 1 sản phẩm / nội dung trùng (sản phẩm nhiều phiên bản cùng mô tả) chỉ giữ 1
+            Object productId = document.getMetadata().get("productId");
+            String normalized = text.replaceAll("\\s+", " ").trim().toLowerCase(Locale.ROOT);
+            if ((productId != null && !seenProducts.add(productId)) || !seenTexts.add(normalized)) {
+                duplicates++;
+                continue;
+            }
+            int tokens = estimateTokens(text) + 1;
+            if (tokens > remaining) {
+                // Document sau có thể ngắn hơn nên vẫn thử tiếp
+                overBudget++;
+                continue;
+            }
+            context.append(text.strip()).append('\n');
+            contextTokens += tokens;
+            remaining -= tokens;
+            included++;
+        }
+
+        int total = systemTokens + templateTokens + questionTokens + historyTokens + contextTokens;
+        Accounting accounting = new Accounting(sequence.incrementAndGet(), LocalDateTime.now(), budget, systemTokens,
+                questionTokens, historyTokens, historyTurns, contextTokens, total, documents.size(), included,
+                duplicates, overBudget, null, null);
+        requests.increment();
+        estimatedTotal.add(total);
+        duplicatesRemoved.add(duplicates);
+        documentsOverBudget.add(overBudget);
+        estimatedSummary.record(total);
+        if (overBudget > 0) {
+            log.debug("Prompt #{} over budget: {} of {} documents dropped", accounting.requestId(), overBudget,
+                    documents.size());
+        }
+        String user = (summary != null ? SUMMARY_HEADER + summary + "\n\n" : "")
+                + question + CONTEXT_HEADER + context + CONTEXT_FOOTER;
+        return new AssembledPrompt(SYSTEM_PROMPT, List.copyOf(messages), user, accounting);
+    }
+
+    /**
+     * Ghi số token thật sau khi Gemini trả lời xong
+     */
+    public void recordUsage(Accounting accounting, Integer promptTokens, Integer completionTokens) {
+        if (promptTokens != null && promptTokens > 0) {
+            withUsage.increment();
+            promptTotal.add(promptTokens);
+            promptSummary.record(promptTokens);
+            if (completionTokens != null) {
+                completionTotal.add(completionTokens);
+                completionSummary.record(completionTokens);
+            }
+        }
+        if (recentLimit == 0) {
+            return;
+        }
+        recentLock.lock();
+        try {
+            recent.addFirst(accounting.withUsage(promptTokens, completionTokens));
+            while (recent.size() > recentLimit) {
+                recent.removeLast();
+            }
+        } finally {
+            recentLock.unlock();
+        }
+    }
+
+    public Stats getStats() {
+        long count = requests.sum();
+        long usageCount = withUsage.sum();
+        List<Accounting> latest;
+        recentLock.lock();
+        try {
+            latest = List.copyOf(recent);
+        } finally {
+            recentLock.unlock();
+        }
+        return new Stats(count, budget, systemTokens,
+                count == 0 ? 0 : (double) estimatedTotal.sum() / count,
+                usageCount == 0 ? 0 : (double) promptTotal.sum() / usageCount,
+                usageCount == 0 ? 0 : (double) completionTotal.sum() / usageCount,
+                duplicatesRemoved.sum(), documentsOverBudget.sum(), latest);
+    }
+
+    int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return (int) Math.ceil(text.codePointCount(0, text.length()) / charsPerToken);
+    }
+}
@@ -0,0 +1,41 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Job rebuild product_rating_aggregates: backfill khi bảng còn trống và đối soát định kỳ
+ * (phòng khi comment bị sửa trực tiếp trong DB hoặc qua Spring Data REST)
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RatingAggregateRebuildJob {
+
+    private final ProductRatingAggregateService aggregateService;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        try {
+            if (aggregateService.isEmpty()) {
+                aggregateService.rebuild();
+            }
+        } catch (Exception e) {
+            log.warn("Rating aggregate backfill skipped: {}", e.getMessage());
+        }
+    }
+
+    // Mặc định 3h30 sáng mỗi ngày
+    @Scheduled(cron = "${rating.aggregate.rebuild-cron:0 30 3 * * *}")
+    public void scheduledRebuild() {
+        try {
+            aggregateService.rebuild();
+        } catch (Exception e) {
+            log.error("Scheduled rating aggregate rebuild failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.entity.PaymentStatus;
+import iuh.fit.se.enternalrunebackend.entity.ShippingStatus;
+import iuh.fit.se.enternalrunebackend.repository.PaymentStatusRepository;
+import iuh.fit.se.enternalrunebackend.repository.ShippingStatusRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Bảng tra cứu PaymentStatus / ShippingStatus theo status code.
+ * Nạp 1 lần khi khởi động thành snapshot immutable (code -> id, name);
+ * paymentStatus()/shippingStatus() trả về reference (getReferenceById) nên không tốn SELECT.
+ * Khi admin thêm/sửa status trong DB thì gọi refresh() (POST /api/admin/statuses/refresh).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StatusRegistry {
+
+    public record StatusInfo(Long id, String code, String name, String description) {
+    }
+
+    public record Snapshot(Map<String, StatusInfo> payment, Map<String, StatusInfo> shipping,
+                           LocalDateTime loadedAt) {
+    }
+
+    // Code lạ (sai / bị spam) không được kéo DB mỗi request: nạp lại do miss tối đa 1 lần / khoảng này
+    private static final long MISS_REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final PaymentStatusRepository paymentStatusRepository;
+    private final ShippingStatusRepository shippingStatusRepository;
+
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile Snapshot snapshot;
+    private volatile long refreshedAtNanos;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        refresh();
+    }
+
+    public Snapshot refresh() {
+        // ReentrantLock thay vì synchronized: query DB trong lock không ghim virtual thread vào carrier
+        refreshLock.lock();
+        try {
+            Map<String, StatusInfo> payment = index(paymentStatusRepository.findAll(),
+                    s -> new StatusInfo(s.getStatusId(), s.getStatusCode(), s.getStatusName(), s.getDescription()));
+            Map<String, StatusInfo> shipping = index(shippingStatusRepository.findAll(),
+                    s -> new StatusInfo(s.getStatusId(), s.getStatusCode(), s.getStatusName(), s.getDescription()));
+            snapshot = new Snapshot(payment, shipping, LocalDateTime.now());
+            refreshedAtNanos = System.nanoTime();
+            log.info("Status registry loaded: {} payment statuses, {} shipping statuses", payment.size(), shipping.size());
+            return snapshot;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    public Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        return current != null ? current : refresh();
+    }
+
+    /**
+     * Reference tới PaymentStatus theo code (không SELECT). Ném RuntimeException nếu code không tồn tại.
+     */
+    public PaymentStatus paymentStatus(String code) {
+        StatusInfo info = resolve(code, Snapshot::payment);
+        if (info == null) {
+            throw new RuntimeException("Payment status " + code + " not found");
+        }
+        return paymentStatusRepository.getReferenceById(info.id());
+    }
+
+    /**
+     * Reference tới ShippingStatus theo code (không SELECT). Ném RuntimeException nếu code không tồn tại.
+     */
+    public ShippingStatus shippingStatus(String code) {
+        StatusInfo info = resolve(code, Snapshot::shipping);
+        if (info == null) {
+            throw new RuntimeException("Không tìm thấy trạng thái giao hàng: " + code);
+        }
+        return shippingStatusRepository.getReferenceById(info.id());
+    }
+
+    /**
+     * Status code theo id (vd. orders.current_payment_status_id), null nếu id null hoặc không tồn tại
+     */
+    public String paymentCodeOf(Long statusId) {
+        return codeOf(statusId, Snapshot::payment);
+    }
+
+    public String shippingCodeOf(Long statusId) {
+        return codeOf(statusId, Snapshot::shipping);
+    }
+
+    public List<StatusInfo> getPaymentStatuses() {
+        return List.copyOf(getSnapshot().payment().values());
+    }
+
+    public List<StatusInfo> getShippingStatuses() {
+        return List.copyOf(getSnapshot().shipping().values());
+    }
+
+    // Code chưa có trong snapshot (vừa thêm vào DB) -> nạp lại trước khi báo lỗi, nếu lần nạp gần nhất đã đủ cũ
+    private StatusInfo resolve(String code, Function<Snapshot, Map<String, StatusInfo>> table) {
+        if (code == null) {
+            return null;
+        }
+        StatusInfo info = table.apply(getSnapshot()).get(code);
+        if (info == null) {
+            Snapshot reloaded = refreshOnMiss();
+            if (reloaded != null) {
+                info = table.apply(reloaded).get(code);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * @return snapshot mới nạp, null nếu vừa nạp trong MISS_REFRESH_INTERVAL (muốn nạp ngay thì POST /api/admin/statuses/refresh)
+     */
+    private Snapshot refreshOnMiss() {
+        if (System.nanoTime() - refreshedAtNanos < MISS_REFRESH_INTERVAL_NANOS) {
+            return null;
+        }
+        refreshLock.lock();
+        try {
+            // Request khác cùng miss vừa nạp xong trong lúc chờ lock -> dùng luôn kết quả đó
+            if (System.nanoTime() - refreshedAtNanos < MISS_REFRESH_INTERVAL_NANOS) {
+                return snapshot;
+            }
+            return refresh();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private String codeOf(Long statusId, Function<Snapshot, Map<String, StatusInfo>> table) {
+        if (statusId == null) {
+            return null;
+        }
+        for (StatusInfo info : table.apply(getSnapshot()).values()) {
+            if (statusId.equals(info.id())) {
+                return info.code();
+            }
+        }
+        return null;
+    }
+
+    private static <T> Map<String, StatusInfo> index(List<T> statuses, Function<T, StatusInfo> mapper) {
+        Map<String, StatusInfo> result = new LinkedHashMap<>();
+        for (T status : statuses) {
+            StatusInfo info = mapper.apply(status);
+            result.put(info.code(), info);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+}
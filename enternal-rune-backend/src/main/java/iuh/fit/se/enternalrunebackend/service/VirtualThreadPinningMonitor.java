@@ -0,0 +1,149 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Phát hiện virtual thread bị "ghim" vào carrier thread (block bên trong synchronized / native frame trên Java 21):
+ * nghe event JFR jdk.VirtualThreadPinned trong process, gom theo vị trí code của ứng dụng.
+ * Chỉ chạy khi bật virtual thread (spring.threads.virtual.enabled) trừ khi threads.pinning.enabled được đặt riêng.
+ */
+@Component
+@Slf4j
+public class VirtualThreadPinningMonitor {
+
+    public record Site(String frame, long count, double totalMs, double maxMs) {
+    }
+
+    public record Stats(boolean enabled, long thresholdMs, long events, double totalMs, List<Site> topSites) {
+    }
+
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final String APP_PACKAGE = "iuh.fit.se.enternalrunebackend.";
+    private static final int MAX_SITES = 200;
+    private static final int TOP_SITES = 20;
+
+    private final boolean enabled;
+    private final Duration threshold;
+    private final Timer pinnedTimer;
+
+    private final Map<String, SiteCounters> sites = new ConcurrentHashMap<>();
+    private final LongAdder events = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry,
+                                       @Value("${threads.pinning.enabled:${spring.threads.virtual.enabled:false}}") boolean enabled,
+                                       @Value("${threads.pinning.threshold:20ms}") Duration threshold) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.pinnedTimer = Timer.builder("threads.virtual.pinned")
+                .description("Thời gian virtual thread bị ghim vào carrier thread")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            stream = new RecordingStream();
+            stream.enable(EVENT).withThreshold(threshold).withStackTrace();
+            stream.onEvent(EVENT, this::onPinned);
+            stream.startAsync();
+            log.info("Virtual thread pinning monitor started (threshold {}ms)", threshold.toMillis());
+        } catch (Exception e) {
+            // JFR có thể bị tắt trên 1 số JVM / container
+            stream = null;
+            log.warn("Cannot start virtual thread pinning monitor: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    public Stats getStats() {
+        List<Site> top = sites.entrySet().stream()
+                .map(entry -> entry.getValue().snapshot(entry.getKey()))
+                .sorted(Comparator.comparingDouble(Site::totalMs).reversed())
+                .limit(TOP_SITES)
+                .toList();
+        return new Stats(stream != null, threshold.toMillis(), events.sum(), totalNanos.sum() / 1_000_000.0, top);
+    }
+
+    private void onPinned(RecordedEvent event) {
+        long nanos = event.getDuration().toNanos();
+        events.increment();
+        totalNanos.add(nanos);
+        pinnedTimer.record(nanos, TimeUnit.NANOSECONDS);
+
+        String frame = siteOf(event);
+        SiteCounters counters = sites.get(frame);
+        if (counters == null) {
+            if (sites.size() >= MAX_SITES) {
+                frame = "other";
+            }
+            counters = sites.computeIfAbsent(frame, key -> new SiteCounters());
+            if (counters.count.sum() == 0) {
+                log.warn("Virtual thread pinned for {}ms at {}", nanos / 1_000_000, frame);
+            }
+        }
+        counters.count.increment();
+        counters.totalNanos.add(nanos);
+        counters.maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    // Frame đầu tiên thuộc code ứng dụng, nếu không có thì frame trên cùng ngoài java.* / jdk.*
+    private static String siteOf(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "unknown";
+        }
+        String fallback = null;
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            if (!frame.isJavaFrame() || frame.getMethod() == null) {
+                continue;
+            }
+            String type = frame.getMethod().getType().getName();
+            String location = type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+            if (type.startsWith(APP_PACKAGE)) {
+                return location;
+            }
+            if (fallback == null && !type.startsWith("java.") && !type.startsWith("jdk.")) {
+                fallback = location;
+            }
+        }
+        return fallback != null ? fallback : "unknown";
+    }
+
+    private static final class SiteCounters {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private Site snapshot(String frame) {
+            return new Site(frame, count.sum(), totalNanos.sum() / 1_000_000.0, maxNanos.get() / 1_000_000.0);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package iuh.fit.se.enternalrunebackend.service.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Kênh fan-out giữa các node backend. ClusterFanout phát mọi broadcast WebSocket qua đây
+ * để client kết nối vào node khác cũng nhận được.
+ * Chọn implementation bằng cluster.broker (xem ClusterConfig).
+ */
+public interface ClusterBroker {
+
+    /**
+     * Phát envelope tới các node khác (không cần giao lại cho node phát)
+     */
+    void publish(ClusterEnvelope envelope);
+
+    /**
+     * Đăng ký nhận envelope từ các node khác
+     */
+    void subscribe(Consumer<ClusterEnvelope> listener);
+
+    String name();
+
+    /**
+     * Id của node hiện tại, dùng làm ClusterEnvelope.origin
+     */
+    String nodeId();
+}
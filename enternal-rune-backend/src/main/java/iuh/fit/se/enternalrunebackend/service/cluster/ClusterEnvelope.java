@@ -0,0 +1,18 @@
+package iuh.fit.se.enternalrunebackend.service.cluster;
+
+/**
+ * Message được phát giữa các node backend.
+ *
+ * @param origin      nodeId của node phát (node nhận bỏ qua message của chính nó)
+ * @param channel     loại đích: STOMP topic, tất cả admin /notifications, hoặc 1 user /notifications
+ * @param destination topic STOMP (TOPIC) hoặc email user (USER), null với ADMINS
+ * @param payload     JSON đã serialize
+ */
+public record ClusterEnvelope(String origin, Channel channel, String destination, String payload) {
+
+    public enum Channel {
+        TOPIC,
+        ADMINS,
+        USER
+    }
+}
@@ -0,0 +1,89 @@
+package iuh.fit.se.enternalrunebackend.service.cluster;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import iuh.fit.se.enternalrunebackend.config.SendNotificationHandler;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Điểm phát duy nhất cho mọi broadcast WebSocket: giao cho client trên node hiện tại,
+ * đồng thời phát qua ClusterBroker để các node khác giao cho client của chúng.
+ * - STOMP topic (/topic/...): thay cho SimpMessagingTemplate.convertAndSend
+ * - Raw /notifications: tất cả admin hoặc 1 user theo email
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterFanout {
+
+    private static final TypeReference<List<String>> STRING_LIST = new TypeReference<>() {
+    };
+
+    private final ClusterBroker clusterBroker;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final SendNotificationHandler sendNotificationHandler;
+    private final ObjectMapper objectMapper;
+
+    @PostConstruct
+    public void init() {
+        clusterBroker.subscribe(this::onRemote);
+        log.info("Cluster fan-out using {} broker, node {}", clusterBroker.name(), clusterBroker.nodeId());
+    }
+
+    public void broadcastTopic(String destination, Object payload) {
+        messagingTemplate.convertAndSend(destination, payload);
+        try {
+            publish(ClusterEnvelope.Channel.TOPIC, destination, objectMapper.writeValueAsString(payload));
+        } catch (Exception e) {
+            log.error("Failed to serialize payload for {}: {}", destination, e.getMessage());
+        }
+    }
+
+    public void sendToAdmins(List<String> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        sendNotificationHandler.sendToAdmins(messages);
+        try {
+            publish(ClusterEnvelope.Channel.ADMINS, null, objectMapper.writeValueAsString(messages));
+        } catch (Exception e) {
+            log.error("Failed to serialize admin notifications: {}", e.getMessage());
+        }
+    }
+
+    public void sendToUser(String email, String message) {
+        if (email == null) {
+            return;
+        }
+        sendNotificationHandler.sendToUser(email, message);
+        // User có thể mở tab trên node khác -> luôn phát
+        publish(ClusterEnvelope.Channel.USER, email, message);
+    }
+
+    private void publish(ClusterEnvelope.Channel channel, String destination, String payload) {
+        clusterBroker.publish(new ClusterEnvelope(clusterBroker.nodeId(), channel, destination, payload));
+    }
+
+    private void onRemote(ClusterEnvelope envelope) {
+        if (clusterBroker.nodeId().equals(envelope.origin())) {
+            return;
+        }
+        try {
+            switch (envelope.channel()) {
+                case TOPIC -> messagingTemplate.convertAndSend(envelope.destination(),
+                        objectMapper.readTree(envelope.payload()));
+                case ADMINS -> sendNotificationHandler.sendToAdmins(
+                        objectMapper.readValue(envelope.payload(), STRING_LIST));
+                case USER -> sendNotificationHandler.sendToUser(envelope.destination(), envelope.payload());
+            }
+        } catch (Exception e) {
+            log.warn("Failed to deliver remote {} message: {}", envelope.channel(), e.getMessage());
+        }
+    }
+}
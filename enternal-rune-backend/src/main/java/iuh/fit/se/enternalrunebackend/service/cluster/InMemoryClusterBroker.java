@@ -0,0 +1,62 @@
+package iuh.fit.se.enternalrunebackend.service.cluster;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Broker trong bộ nhớ: các "node" dùng chung 1 Hub sẽ nhận message của nhau (đồng bộ, trên thread phát).
+ * Chạy 1 instance thì hub chỉ có 1 node nên không có gì để fan-out; dùng trong test để giả lập nhiều node
+ * bằng cách tạo nhiều broker trên cùng 1 Hub.
+ */
+public class InMemoryClusterBroker implements ClusterBroker {
+
+    public static class Hub {
+        private final List<InMemoryClusterBroker> nodes = new CopyOnWriteArrayList<>();
+    }
+
+    private final Hub hub;
+    private final String nodeId;
+    private final List<Consumer<ClusterEnvelope>> listeners = new CopyOnWriteArrayList<>();
+
+    public InMemoryClusterBroker() {
+        this(new Hub(), UUID.randomUUID().toString());
+    }
+
+    public InMemoryClusterBroker(Hub hub, String nodeId) {
+        this.hub = hub;
+        this.nodeId = nodeId;
+        hub.nodes.add(this);
+    }
+
+    @Override
+    public void publish(ClusterEnvelope envelope) {
+        for (InMemoryClusterBroker node : hub.nodes) {
+            if (node != this) {
+                node.deliver(envelope);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterEnvelope> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public String name() {
+        return "in-memory";
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    private void deliver(ClusterEnvelope envelope) {
+        for (Consumer<ClusterEnvelope> listener : listeners) {
+            listener.accept(envelope);
+        }
+    }
+}
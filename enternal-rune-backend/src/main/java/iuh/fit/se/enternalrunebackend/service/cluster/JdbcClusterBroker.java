@@ -0,0 +1,172 @@
+package iuh.fit.se.enternalrunebackend.service.cluster;
+
+import iuh.fit.se.enternalrunebackend.entity.ClusterFanoutEvent;
+import iuh.fit.se.enternalrunebackend.repository.ClusterFanoutEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Broker dùng bảng cluster_fanout_events trong PostgreSQL làm kênh chung giữa các node:
+ * publish() insert 1 dòng (transaction riêng, commit ngay), mỗi node poll các dòng mới theo event_id.
+ * Không cần hạ tầng ngoài, phù hợp chạy nhiều instance local / môi trường integration;
+ * production có thể thay bằng Redis / RabbitMQ bằng cách thêm implementation ClusterBroker khác.
+ * <p>
+ * IDENTITY có thể commit không theo thứ tự nên id bị "nhảy" được ghi nhận là gap và được
+ * tra lại trong gap-timeout trước khi bỏ qua (id của transaction rollback).
+ */
+@Slf4j
+public class JdbcClusterBroker implements ClusterBroker {
+
+    private static final int MAX_GAP = 1000;
+
+    private final ClusterFanoutEventRepository repository;
+    private final TransactionTemplate requiresNew;
+    private final String nodeId;
+    private final int batchSize;
+    private final Duration retention;
+    private final long gapTimeoutNanos;
+
+    private final List<Consumer<ClusterEnvelope>> listeners = new CopyOnWriteArrayList<>();
+    // id còn thiếu -> thời điểm phát hiện (System.nanoTime)
+    private final Map<Long, Long> gaps = new LinkedHashMap<>();
+    private long lastSeenId = -1;
+    private final ReentrantLock pollLock = new ReentrantLock();
+
+    public JdbcClusterBroker(ClusterFanoutEventRepository repository, PlatformTransactionManager transactionManager,
+                             String nodeId, int batchSize, Duration retention, Duration gapTimeout) {
+        this.repository = repository;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.nodeId = nodeId;
+        this.batchSize = batchSize;
+        this.retention = retention;
+        this.gapTimeoutNanos = gapTimeout.toNanos();
+    }
+
+    @Override
+    public void publish(ClusterEnvelope envelope) {
+        try {
+            requiresNew.executeWithoutResult(status -> repository.save(ClusterFanoutEvent.builder()
+                    .origin(envelope.origin())
+                    .channel(envelope.channel().name())
+                    .destination(envelope.destination())
+                    .payload(envelope.payload())
+                    .createdAt(LocalDateTime.now())
+                    .build()));
+        } catch (Exception e) {
+            log.error("Cluster fan-out publish failed ({}): {}", envelope.channel(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterEnvelope> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public String name() {
+        return "jdbc";
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Scheduled(fixedDelayString = "${cluster.jdbc.poll-interval-ms:200}")
+    public void poll() {
+        // Scheduler có thể chạy trên virtual thread: dùng ReentrantLock để query DB trong lock không ghim carrier
+        pollLock.lock();
+        try {
+            if (lastSeenId < 0) {
+                // Node mới khởi động: bỏ qua lịch sử, chỉ nhận event từ bây giờ
+                lastSeenId = repository.findMaxEventId();
+                return;
+            }
+            retryGaps();
+            List<ClusterFanoutEvent> events;
+            do {
+                events = repository.findByEventIdGreaterThanOrderByEventIdAsc(lastSeenId, PageRequest.of(0, batchSize));
+                for (ClusterFanoutEvent event : events) {
+                    long id = event.getEventId();
+                    if (id > lastSeenId + 1 && id - lastSeenId - 1 <= MAX_GAP) {
+                        long now = System.nanoTime();
+                        for (long missing = lastSeenId + 1; missing < id; missing++) {
+                            gaps.put(missing, now);
+                        }
+                    }
+                    lastSeenId = Math.max(lastSeenId, id);
+                    deliver(event);
+                }
+            } while (events.size() == batchSize);
+        } catch (Exception e) {
+            log.warn("Cluster fan-out poll failed: {}", e.getMessage());
+        } finally {
+            pollLock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cluster.jdbc.cleanup-interval-ms:60000}")
+    public void cleanup() {
+        try {
+            int deleted = requiresNew.execute(status ->
+                    repository.deleteOlderThan(LocalDateTime.now().minus(retention)));
+            if (deleted > 0) {
+                log.debug("Deleted {} old cluster fan-out events", deleted);
+            }
+        } catch (Exception e) {
+            log.warn("Cluster fan-out cleanup failed: {}", e.getMessage());
+        }
+    }
+
+    private void retryGaps() {
+        if (gaps.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        gaps.values().removeIf(detectedAt -> now - detectedAt > gapTimeoutNanos);
+        if (gaps.isEmpty()) {
+            return;
+        }
+        List<ClusterFanoutEvent> found = repository.findAllById(new ArrayList<>(gaps.keySet()));
+        for (ClusterFanoutEvent event : found) {
+            gaps.remove(event.getEventId());
+            deliver(event);
+        }
+    }
+
+    private void deliver(ClusterFanoutEvent event) {
+        if (nodeId.equals(event.getOrigin())) {
+            return;
+        }
+        ClusterEnvelope envelope;
+        try {
+            envelope = new ClusterEnvelope(event.getOrigin(), ClusterEnvelope.Channel.valueOf(event.getChannel()),
+                    event.getDestination(), event.getPayload());
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown cluster fan-out channel {}", event.getChannel());
+            return;
+        }
+        for (Consumer<ClusterEnvelope> listener : listeners) {
+            try {
+                listener.accept(envelope);
+            } catch (Exception e) {
+                log.warn("Cluster fan-out listener failed: {}", e.getMessage());
+            }
+        }
+    }
+}
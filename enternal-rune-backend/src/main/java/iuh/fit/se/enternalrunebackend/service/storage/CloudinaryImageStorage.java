@@ -0,0 +1,68 @@
+package iuh.fit.se.enternalrunebackend.service.storage;
+
+import com.cloudinary.Cloudinary;
+import com.cloudinary.Transformation;
+import com.cloudinary.utils.ObjectUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Lưu ảnh trên Cloudinary. Upload bằng File nên SDK stream nội dung từ đĩa thay vì byte[].
+ */
+public class CloudinaryImageStorage implements ImageStorage {
+
+    private final String name;
+    private final Cloudinary cloudinary;
+    // true: giới hạn 1200x1200, quality/format auto (ảnh sản phẩm, review)
+    private final boolean optimize;
+
+    /**
+     * @param name tên phân biệt các tài khoản Cloudinary (chỉ mục chống trùng tách riêng theo tên)
+     */
+    public CloudinaryImageStorage(String name, Cloudinary cloudinary, boolean optimize) {
+        this.name = name;
+        this.cloudinary = cloudinary;
+        this.optimize = optimize;
+    }
+
+    @Override
+    public StoredImage store(Path file, String fileName, String folder) throws IOException {
+        // Thêm UUID để các file trùng tên upload song song không ghi đè nhau
+        String publicId = fileName.replaceFirst("[.][^.]+$", "") + "_" + UUID.randomUUID();
+        Map<String, Object> options = new HashMap<>();
+        options.put("public_id", publicId);
+        options.put("resource_type", "image");
+        options.put("folder", folder);
+        if (optimize) {
+            options.put("transformation", new Transformation<>()
+                    .width(1200)
+                    .height(1200)
+                    .crop("limit")
+                    .quality("auto")
+                    .fetchFormat("auto"));
+        }
+
+        Map<?, ?> uploadResult = cloudinary.uploader().upload(file.toFile(), options);
+        String secureUrl = (String) uploadResult.get("secure_url");
+        if (secureUrl == null) {
+            throw new IOException("Failed to get secure URL from Cloudinary response");
+        }
+        return new StoredImage(secureUrl, (String) uploadResult.get("public_id"));
+    }
+
+    @Override
+    public void delete(StoredImage image) throws IOException {
+        if (image.key() != null) {
+            cloudinary.uploader().destroy(image.key(), ObjectUtils.asMap("resource_type", "image"));
+        }
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+}
@@ -0,0 +1,133 @@
+package iuh.fit.se.enternalrunebackend.service.storage;
+
+import iuh.fit.se.enternalrunebackend.entity.ImageBlob;
+import iuh.fit.se.enternalrunebackend.repository.ImageBlobRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bọc 1 ImageStorage, chống upload trùng theo nội dung:
+ * - Tính SHA-256 của file tạm (đọc stream, không giữ cả ảnh trong heap)
+ * - Hash đã có trong image_blobs của storage này -> trả về ảnh cũ (shared = true), không upload
+ * - Chưa có -> upload qua delegate rồi ghi chỉ mục; ghi được thì ảnh cũng là shared
+ * Ảnh đã có dòng trong image_blobs không bao giờ bị xóa khi huỷ batch: request khác có thể đã dùng lại nó ngay sau
+ * khi ghi chỉ mục (batch A upload X, batch B dùng lại X, A lỗi -> xóa X làm hỏng ảnh của B).
+ * Ảnh mồ côi do batch lỗi để job dọn dẹp xử lý; chỉ ảnh chưa từng được chỉ mục mới bị xóa ngay.
+ */
+@Slf4j
+public class DeduplicatingImageStorage implements ImageStorage {
+
+    public record Stats(String storage, long hits, long misses, long bytesSaved, long indexFailures) {
+    }
+
+    private final ImageStorage delegate;
+    private final ImageBlobRepository repository;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    private final LongAdder indexFailures = new LongAdder();
+
+    public DeduplicatingImageStorage(ImageStorage delegate, ImageBlobRepository repository) {
+        this.delegate = delegate;
+        this.repository = repository;
+    }
+
+    @Override
+    public StoredImage store(Path file, String fileName, String folder) throws IOException {
+        String hash = sha256(file);
+        long size = Files.size(file);
+        Optional<ImageBlob> existing = lookup(hash);
+        if (existing.isPresent()) {
+            hits.increment();
+            bytesSaved.add(size);
+            log.debug("Image {} already stored in {} ({}), skip upload", fileName, delegate.name(), hash);
+            return new StoredImage(existing.get().getUrl(), existing.get().getStorageKey(), true);
+        }
+
+        misses.increment();
+        StoredImage stored = delegate.store(file, fileName, folder);
+        try {
+            if (repository.insertIfAbsent(hash, delegate.name(), stored.url(), stored.key(), size) == 1) {
+                // Từ giờ request khác có thể dùng lại ảnh này
+                return new StoredImage(stored.url(), stored.key(), true);
+            }
+        } catch (Exception e) {
+            // Ảnh đã upload xong, chỉ mất khả năng dùng lại lần sau
+            indexFailures.increment();
+            log.warn("Cannot index image {} ({}): {}", stored.url(), hash, e.getMessage());
+        }
+        return stored;
+    }
+
+    @Override
+    public void delete(StoredImage image) throws IOException {
+        if (image.shared()) {
+            return;
+        }
+        if (image.key() != null) {
+            try {
+                // Ghi chỉ mục báo lỗi nhưng thực ra đã commit -> vẫn có thể đang được dùng chung
+                if (repository.existsByStorageAndStorageKey(delegate.name(), image.key())) {
+                    return;
+                }
+            } catch (Exception e) {
+                log.warn("Cannot check image index {}, keep image: {}", image.key(), e.getMessage());
+                return;
+            }
+        }
+        delegate.delete(image);
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    public Stats getStats() {
+        return new Stats(delegate.name(), hits.sum(), misses.sum(), bytesSaved.sum(), indexFailures.sum());
+    }
+
+    /**
+     * SHA-256 (hex) của nội dung file
+     */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Lỗi DB không được chặn upload: coi như chưa có
+    private Optional<ImageBlob> lookup(String hash) {
+        try {
+            return repository.findByContentHashAndStorage(hash, delegate.name());
+        } catch (Exception e) {
+            indexFailures.increment();
+            log.warn("Image index lookup failed ({}): {}", hash, e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package iuh.fit.se.enternalrunebackend.service.storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Nơi lưu ảnh upload (sản phẩm, review, chat).
+ * Implementation đọc thẳng từ file trên đĩa nên không phải giữ cả ảnh trong heap.
+ */
+public interface ImageStorage {
+
+    /**
+     * @param file     file tạm chứa nội dung ảnh
+     * @param fileName tên file gốc của client
+     * @param folder   thư mục / nhóm ảnh (vd. comment_images, chat-images/{conversationId})
+     */
+    StoredImage store(Path file, String fileName, String folder) throws IOException;
+
+    /**
+     * Xóa ảnh đã lưu (dùng khi huỷ 1 batch upload bị lỗi 1 phần)
+     */
+    void delete(StoredImage image) throws IOException;
+
+    String name();
+}
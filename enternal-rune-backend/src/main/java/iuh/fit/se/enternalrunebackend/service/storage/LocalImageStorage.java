@@ -0,0 +1,53 @@
+package iuh.fit.se.enternalrunebackend.service.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * Lưu ảnh vào thư mục local, dùng cho test / môi trường dev không có Cloudinary.
+ * URL trả về = baseUrl + đường dẫn tương đối.
+ */
+public class LocalImageStorage implements ImageStorage {
+
+    private final Path root;
+    private final String baseUrl;
+
+    public LocalImageStorage(Path root, String baseUrl) {
+        this.root = root.toAbsolutePath().normalize();
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    @Override
+    public StoredImage store(Path file, String fileName, String folder) throws IOException {
+        String safeName = fileName.replaceAll("[^A-Za-z0-9._-]", "_");
+        String key = folder + "/" + UUID.randomUUID() + "_" + safeName;
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+        return new StoredImage(baseUrl + "/" + key, key);
+    }
+
+    @Override
+    public void delete(StoredImage image) throws IOException {
+        if (image.key() != null) {
+            Files.deleteIfExists(resolve(image.key()));
+        }
+    }
+
+    @Override
+    public String name() {
+        return "local";
+    }
+
+    // Không cho key thoát ra ngoài thư mục root
+    private Path resolve(String key) throws IOException {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root)) {
+            throw new IOException("Invalid image key: " + key);
+        }
+        return path;
+    }
+}
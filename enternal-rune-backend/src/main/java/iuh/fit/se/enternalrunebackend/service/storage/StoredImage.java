@@ -0,0 +1,13 @@
+package iuh.fit.se.enternalrunebackend.service.storage;
+
+/**
+ * @param url    URL public của ảnh
+ * @param key    định danh trong storage để xóa (public_id của Cloudinary, đường dẫn tương đối với local)
+ * @param shared true nếu ảnh có thể được dùng chung (đã có sẵn / đã ghi vào chỉ mục dedup), không được xóa khi huỷ batch
+ */
+public record StoredImage(String url, String key, boolean shared) {
+
+    public StoredImage(String url, String key) {
+        this(url, key, false);
+    }
+}
@@ -0,0 +1,49 @@
+package iuh.fit.se.enternalrunebackend.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Mã hóa / giải mã continuation token cho keyset (seek) pagination.
+ * Token là Base64 URL-safe của "kind|value1|value2|..." -> client chỉ cần gửi lại nguyên văn,
+ * không phụ thuộc vào cấu trúc bên trong.
+ */
+public final class CursorCodec {
+
+    private static final String SEPARATOR = "|";
+
+    private CursorCodec() {
+    }
+
+    public static String encode(String kind, Object... values) {
+        StringBuilder raw = new StringBuilder(kind);
+        for (Object value : values) {
+            raw.append(SEPARATOR).append(value);
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token    token client gửi lên
+     * @param kind     loại cursor mong đợi (không cho dùng cursor của danh sách khác)
+     * @param expected số giá trị trong cursor
+     * @return các giá trị đã giải mã (không gồm kind)
+     * @throws IllegalArgumentException nếu token không hợp lệ
+     */
+    public static String[] decode(String token, String kind, int expected) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor không hợp lệ");
+        }
+        String[] parts = raw.split("\\" + SEPARATOR, -1);
+        if (parts.length != expected + 1 || !parts[0].equals(kind)) {
+            throw new IllegalArgumentException("Cursor không hợp lệ");
+        }
+        String[] values = new String[expected];
+        System.arraycopy(parts, 1, values, 0, expected);
+        return values;
+    }
+}
@@ -1,25 +1,29 @@
 package iuh.fit.se.enternalrunebackend.util;
 
+import iuh.fit.se.enternalrunebackend.service.storage.DeduplicatingImageStorage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.UUID;
 
 /**
  * Utility class for handling file storage
  * Supports local filesystem storage with option to migrate to S3
  * 
- * Current implementation: Local storage in /public/uploads/comments/{productId}/
+ * Current implementation: Local storage in /public/uploads/comments/{productId}/{sha256}.{ext}
+ * File đặt tên theo nội dung nên nhiều comment (cùng product) có thể dùng chung 1 file -> không có hàm xóa file
  * Future: Can be extended to support S3 or other cloud storage
  */
 @Component
@@ -51,14 +55,31 @@ public class FileStorageUtil {
         // Create directory structure
         Path uploadPath = createUploadDirectory(productId);
         
-        // Generate unique filename
+        // Tên file = SHA-256 nội dung: cùng 1 ảnh upload lại chỉ ghi 1 lần
         String originalFilename = file.getOriginalFilename();
-        String fileExtension = getFileExtension(originalFilename);
-        String uniqueFilename = generateUniqueFilename(fileExtension);
-        
-        // Save file
-        Path filePath = uploadPath.resolve(uniqueFilename);
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+        String fileExtension = getFileExtension(originalFilename).toLowerCase();
+        Path temp = Files.createTempFile(uploadPath, "upload-", ".tmp");
+        String uniqueFilename;
+        Path filePath;
+        try {
+            MessageDigest digest = DeduplicatingImageStorage.newDigest();
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            uniqueFilename = HexFormat.of().formatHex(digest.digest()) + fileExtension;
+            filePath = uploadPath.resolve(uniqueFilename);
+            if (Files.exists(filePath)) {
+                log.debug("Comment image {} already stored as {}", originalFilename, uniqueFilename);
+            } else {
+                try {
+                    Files.move(temp, filePath, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    // Request khác vừa ghi cùng nội dung
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
         
         // Generate URL
         String url = String.format("/uploads/comments/%d/%s", productId, uniqueFilename);
@@ -122,17 +143,6 @@ public class FileStorageUtil {
         return uploadPath;
     }
     
-    /**
-     * Generate unique filename with timestamp and UUID
-     * @param extension the file extension
-     * @return unique filename
-     */
-    private String generateUniqueFilename(String extension) {
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        String uuid = UUID.randomUUID().toString().substring(0, 8);
-        return String.format("%s_%s%s", timestamp, uuid, extension);
-    }
-    
     /**
      * Get file extension from filename
      * @param filename the filename
@@ -143,25 +153,6 @@ public class FileStorageUtil {
         return lastDotIndex > 0 ? filename.substring(lastDotIndex) : "";
     }
     
-    /**
-     * Delete file from filesystem
-     * @param filePath the file path
-     * @return true if deleted successfully
-     */
-    public boolean deleteFile(String filePath) {
-        try {
-            Path path = Paths.get(filePath);
-            boolean deleted = Files.deleteIfExists(path);
-            if (deleted) {
-
-            }
-            return deleted;
-        } catch (IOException e) {
-
-            return false;
-        }
-    }
-    
     /**
      * Result class for file upload operations
      */
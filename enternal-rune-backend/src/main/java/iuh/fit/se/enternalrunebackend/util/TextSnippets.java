@@ -0,0 +1,29 @@
+package iuh.fit.se.enternalrunebackend.util;
+
+/**
+ * Rút gọn mô tả sản phẩm dài thành đoạn ngắn cho prompt của trợ lý AI.
+ * Cắt ở cuối câu gần nhất trước giới hạn, không có thì cắt ở khoảng trắng, rồi thêm "…".
+ */
+public final class TextSnippets {
+
+    private TextSnippets() {
+    }
+
+    public static String snippet(String text, int maxChars) {
+        if (text == null) {
+            return "";
+        }
+        String compact = text.replaceAll("\\s+", " ").trim();
+        if (compact.length() <= maxChars) {
+            return compact;
+        }
+        String head = compact.substring(0, maxChars);
+        int sentenceEnd = Math.max(head.lastIndexOf(". "), Math.max(head.lastIndexOf("! "), head.lastIndexOf("? ")));
+        // Câu đầu quá ngắn (< 1/3 giới hạn) thì lấy thêm tới khoảng trắng cuối
+        if (sentenceEnd >= maxChars / 3) {
+            return head.substring(0, sentenceEnd + 1);
+        }
+        int space = head.lastIndexOf(' ');
+        return (space > 0 ? head.substring(0, space) : head) + "…";
+    }
+}
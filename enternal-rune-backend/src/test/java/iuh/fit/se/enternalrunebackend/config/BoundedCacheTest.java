@@ -0,0 +1,96 @@
+package iuh.fit.se.enternalrunebackend.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BoundedCacheTest {
+
+    @Test
+    void evictsLeastRecentlyUsedWhenFull() {
+        BoundedCache cache = new BoundedCache("test", null, 3);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("a");
+
+        cache.put("d", 4);
+
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertEquals(1, cache.getStats().evictions());
+    }
+
+    @Test
+    void collectionsWeighTheirSize() {
+        BoundedCache cache = new BoundedCache("test", null, 4);
+        cache.put("single", 1);
+        cache.put("list", List.of(1, 2, 3));
+        assertEquals(4, cache.getStats().weight());
+
+        // Thêm 1 phần tử -> vượt 4 -> loại "single" (cũ nhất) là đủ
+        cache.put("other", 2);
+
+        assertNull(cache.get("single"));
+        assertNotNull(cache.get("list"));
+        assertEquals(4, cache.getStats().weight());
+    }
+
+    @Test
+    void valueHeavierThanCacheIsSkippedWithoutClearingCache() {
+        BoundedCache cache = new BoundedCache("test", null, 2);
+        cache.put("a", 1);
+
+        cache.put("big", List.of(1, 2, 3));
+
+        assertNull(cache.get("big"));
+        assertNotNull(cache.get("a"));
+        assertEquals(1, cache.getStats().size());
+    }
+
+    @Test
+    void replacingKeyKeepsWeightConsistent() {
+        BoundedCache cache = new BoundedCache("test", null, 10);
+        cache.put("a", List.of(1, 2, 3));
+        cache.put("a", List.of(1));
+
+        assertEquals(1, cache.getStats().weight());
+        cache.evict("a");
+        assertEquals(0, cache.getStats().weight());
+    }
+
+    @Test
+    void expiredEntriesAreNotReturned() throws InterruptedException {
+        BoundedCache cache = new BoundedCache("test", Duration.ofMillis(20), 10);
+        cache.put("a", 1);
+        Thread.sleep(50);
+
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getStats().expirations());
+        assertEquals(0, cache.getStats().weight());
+    }
+
+    @Test
+    void loaderResultIsCached() {
+        BoundedCache cache = new BoundedCache("test", null, 10);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("v1", cache.get("k", () -> "v" + calls.incrementAndGet()));
+        assertEquals("v1", cache.get("k", () -> "v" + calls.incrementAndGet()));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void rejectsNonPositiveMaxWeight() {
+        assertThrows(IllegalArgumentException.class, () -> new BoundedCache("test", null, 0));
+    }
+}
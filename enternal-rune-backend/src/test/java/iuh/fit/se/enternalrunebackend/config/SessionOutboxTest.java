@@ -0,0 +1,137 @@
+package iuh.fit.se.enternalrunebackend.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionOutboxTest {
+
+    // Task của send worker chỉ chạy khi test gọi runTasks() -> kiểm soát được backlog
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final SessionOutbox.Counters counters = new SessionOutbox.Counters();
+    private final List<String> sentFrames = new ArrayList<>();
+    private WebSocketSession session;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getId()).thenReturn("s1");
+        doAnswer(invocation -> sentFrames.add(invocation.<TextMessage>getArgument(0).getPayload()))
+                .when(session).sendMessage(any());
+    }
+
+    @Test
+    void sendsSingleMessageAsIs() {
+        SessionOutbox outbox = outbox(4, SessionOutbox.OverflowPolicy.DROP_OLDEST, 3);
+
+        assertTrue(outbox.offer("{\"a\":1}"));
+        runTasks();
+
+        assertEquals(List.of("{\"a\":1}"), sentFrames);
+        assertEquals(1, counters.sent().sum());
+        assertEquals(0, counters.coalesced().sum());
+    }
+
+    @Test
+    void coalescesBacklogIntoJsonArray() {
+        SessionOutbox outbox = outbox(10, SessionOutbox.OverflowPolicy.DROP_OLDEST, 3);
+
+        outbox.offer("1");
+        outbox.offer("2");
+        outbox.offer("3");
+        runTasks();
+
+        assertEquals(List.of("[1,2,3]"), sentFrames);
+        assertEquals(3, counters.sent().sum());
+        assertEquals(1, counters.frames().sum());
+        assertEquals(3, counters.coalesced().sum());
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    void dropOldestKeepsNewestMessages() {
+        SessionOutbox outbox = outbox(2, SessionOutbox.OverflowPolicy.DROP_OLDEST, 0);
+
+        outbox.offer("1");
+        outbox.offer("2");
+        assertTrue(outbox.offer("3"));
+        runTasks();
+
+        assertEquals(List.of("2", "3"), sentFrames);
+        assertEquals(1, counters.dropped().sum());
+    }
+
+    @Test
+    void disconnectPolicyClosesSessionOnOverflow() throws IOException {
+        SessionOutbox outbox = outbox(2, SessionOutbox.OverflowPolicy.DISCONNECT, 0);
+
+        outbox.offer("1");
+        outbox.offer("2");
+        assertFalse(outbox.offer("3"));
+        runTasks();
+
+        verify(session).close(any(CloseStatus.class));
+        assertEquals(3, counters.dropped().sum());
+        assertEquals(1, counters.overflowDisconnects().sum());
+        assertEquals(0, counters.sent().sum());
+        assertFalse(outbox.offer("4"));
+    }
+
+    @Test
+    void sendFailureClosesOutbox() throws IOException {
+        doThrow(new IOException("broken pipe")).when(session).sendMessage(any());
+        SessionOutbox outbox = outbox(4, SessionOutbox.OverflowPolicy.DROP_OLDEST, 0);
+
+        outbox.offer("1");
+        outbox.offer("2");
+        runTasks();
+
+        assertEquals(1, counters.failures().sum());
+        assertEquals(0, outbox.size());
+        assertFalse(outbox.offer("3"));
+    }
+
+    @Test
+    void closedSessionIsNotWrittenTo() {
+        when(session.isOpen()).thenReturn(false);
+        SessionOutbox outbox = outbox(4, SessionOutbox.OverflowPolicy.DROP_OLDEST, 0);
+
+        outbox.offer("1");
+        runTasks();
+
+        assertEquals(List.of(), sentFrames);
+        assertFalse(outbox.offer("2"));
+    }
+
+    private SessionOutbox outbox(int capacity, SessionOutbox.OverflowPolicy policy, int coalesceThreshold) {
+        return new SessionOutbox(session, capacity, policy, coalesceThreshold, tasks::add,
+                new SimpleMeterRegistry().timer("test.send"), counters);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AiChatStreamServiceTest {
+
+    private static final AiChatStreamService.StreamListener LISTENER = new AiChatStreamService.StreamListener() {
+        @Override
+        public void onToken(String token) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        @Override
+        public void onError(Throwable error) {
+        }
+    };
+
+    private ChatService chatService;
+    private AiChatStreamService streams;
+
+    @BeforeEach
+    void setUp() {
+        chatService = mock(ChatService.class);
+        // Stream không bao giờ xong -> giữ slot tới khi bị huỷ
+        when(chatService.streamUserInput(any(), any())).thenReturn(Flux.never());
+        streams = new AiChatStreamService(chatService, new SimpleMeterRegistry(), 3, 2, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void limitsStreamsPerOwner() {
+        assertTrue(start("alice", null).isPresent());
+        assertTrue(start("alice", null).isPresent());
+
+        assertFalse(start("alice", null).isPresent());
+        assertTrue(start("bob", null).isPresent());
+        assertEquals(1, streams.getStats().rejected());
+    }
+
+    @Test
+    void limitsStreamsPerNode() {
+        start("a", null);
+        start("b", null);
+        start("c", null);
+
+        assertFalse(start("d", null).isPresent());
+        assertEquals(3, streams.getStats().active());
+    }
+
+    @Test
+    void cancelReleasesSlot() {
+        AiChatStreamService.Handle first = start("alice", null).orElseThrow();
+        start("alice", null);
+
+        assertTrue(first.cancel());
+        assertFalse(first.cancel());
+
+        assertTrue(start("alice", null).isPresent());
+        assertEquals(1, streams.getStats().cancelled());
+    }
+
+    @Test
+    void completedStreamReleasesSlot() {
+        when(chatService.streamUserInput(any(), any())).thenReturn(Flux.just("Xin ", "chào"));
+
+        start("alice", null);
+        start("alice", null);
+        start("alice", null);
+
+        AiChatStreamService.Stats stats = streams.getStats();
+        assertEquals(0, stats.active());
+        assertEquals(3, stats.completed());
+        assertEquals(6, stats.tokens());
+        assertEquals(0, stats.rejected());
+    }
+
+    @Test
+    void failedStreamReleasesSlot() {
+        when(chatService.streamUserInput(any(), any())).thenReturn(Flux.error(new IllegalStateException("quota")));
+
+        start("alice", null);
+        start("alice", null);
+
+        assertEquals(0, streams.getStats().active());
+        assertEquals(2, streams.getStats().failed());
+    }
+
+    @Test
+    void duplicateStreamIdIsRejectedWithoutLeakingSlot() {
+        start("alice", "s1");
+
+        assertFalse(start("alice", "s1").isPresent());
+
+        // Lần bị từ chối không được giữ slot của alice
+        assertTrue(start("alice", "s2").isPresent());
+        assertFalse(start("alice", "s3").isPresent());
+    }
+
+    @Test
+    void cancelChecksOwner() {
+        start("alice", "s1");
+
+        assertFalse(streams.cancel("s1", "bob"));
+        assertTrue(streams.cancel("s1", "alice"));
+        assertFalse(streams.cancel("s1", "alice"));
+        assertEquals(0, streams.getStats().active());
+    }
+
+    @Test
+    void cancelAllReleasesEveryStreamOfOwner() {
+        start("alice", null);
+        start("alice", null);
+        start("bob", null);
+
+        assertEquals(2, streams.cancelAll("alice"));
+
+        assertEquals(1, streams.getStats().active());
+        assertTrue(start("alice", null).isPresent());
+        assertTrue(start("alice", null).isPresent());
+    }
+
+    private Optional<AiChatStreamService.Handle> start(String owner, String streamId) {
+        return streams.tryStart(owner, streamId, "Điện thoại dưới 10 triệu", null, LISTENER);
+    }
+}
@@ -0,0 +1,79 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.dto.response.BrandResponse;
+import iuh.fit.se.enternalrunebackend.dto.response.ProductPriceResponse;
+import iuh.fit.se.enternalrunebackend.dto.response.ProductResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ProductRetrieverTest {
+
+    // extractFilters / fuse không dùng vector store, keyword index hay snapshot service
+    private final ProductRetriever retriever = new ProductRetriever(null, null, null, 6, 20, 20, 0.0, 60);
+
+    private final CatalogSnapshotService.CatalogSnapshot snapshot = new CatalogSnapshotService.CatalogSnapshot(1,
+            Map.of(1, product(1, "iPhone 15", "Apple", 20_000_000),
+                    2, product(2, "Galaxy S24", "Samsung", 18_000_000)));
+
+    @Test
+    void extractsMaxPrice() {
+        ProductRetriever.QueryFilters filters = retriever.extractFilters("dưới 10 triệu", snapshot);
+        assertNull(filters.minPrice());
+        assertEquals(10_000_000.0, filters.maxPrice());
+    }
+
+    @Test
+    void extractsRangeWithUnitOnSecondAmount() {
+        ProductRetriever.QueryFilters filters = retriever.extractFilters("từ 5 đến 8tr", snapshot);
+        assertEquals(5_000_000.0, filters.minPrice());
+        assertEquals(8_000_000.0, filters.maxPrice());
+    }
+
+    @Test
+    void extractsDashRange() {
+        ProductRetriever.QueryFilters filters = retriever.extractFilters("10-15 triệu", snapshot);
+        assertEquals(10_000_000.0, filters.minPrice());
+        assertEquals(15_000_000.0, filters.maxPrice());
+    }
+
+    @Test
+    void modelNumberAndStorageAreNotPrices() {
+        ProductRetriever.QueryFilters filters = retriever.extractFilters("iPhone 15 256GB", snapshot);
+        assertNull(filters.minPrice());
+        assertNull(filters.maxPrice());
+        assertEquals(Set.of("Apple"), filters.brands());
+    }
+
+    @Test
+    void extractsBrandTogetherWithPrice() {
+        ProductRetriever.QueryFilters filters = retriever.extractFilters("Điện thoại Samsung dưới 10 triệu", snapshot);
+        assertEquals(Set.of("Samsung"), filters.brands());
+        assertEquals(10_000_000.0, filters.maxPrice());
+    }
+
+    @Test
+    void fuseRanksItemsFoundByBothListsFirst() {
+        Map<Integer, Double> fused = ProductRetriever.fuse(60, List.of(List.of(1, 2, 3), List.of(3, 4)));
+        // 3: 1/63 + 1/61, 1: 1/61, 2 và 4: 1/62 -> bằng điểm thì id nhỏ trước
+        assertEquals(List.of(3, 1, 2, 4), List.copyOf(fused.keySet()));
+        assertEquals(1.0 / 63 + 1.0 / 61, fused.get(3), 1e-12);
+    }
+
+    @Test
+    void fuseOfEmptyRankingsIsEmpty() {
+        assertEquals(Map.of(), ProductRetriever.fuse(60, List.of(List.of(), List.of())));
+    }
+
+    static ProductResponse product(int id, String name, String brand, double price) {
+        return new ProductResponse(id, name, name, "ACTIVE", List.of(), List.of(), null, 0,
+                new BrandResponse(id, brand), List.of(),
+                List.of(new ProductPriceResponse(id, price, "ACTIVE", null, null, null, null)),
+                null, 0, 0.0, Map.of());
+    }
+}
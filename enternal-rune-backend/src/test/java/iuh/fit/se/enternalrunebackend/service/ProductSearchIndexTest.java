@@ -0,0 +1,87 @@
+package iuh.fit.se.enternalrunebackend.service;
+
+import iuh.fit.se.enternalrunebackend.dto.response.BrandResponse;
+import iuh.fit.se.enternalrunebackend.dto.response.ProductPriceResponse;
+import iuh.fit.se.enternalrunebackend.dto.response.ProductResponse;
+import iuh.fit.se.enternalrunebackend.repository.ProductSpecificationsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProductSearchIndexTest {
+
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        CatalogSnapshotService catalogSnapshotService = mock(CatalogSnapshotService.class);
+        ProductSpecificationsRepository specificationsRepository = mock(ProductSpecificationsRepository.class);
+        when(catalogSnapshotService.getSnapshot()).thenReturn(new CatalogSnapshotService.CatalogSnapshot(1, Map.of(
+                1, product(1, "iPhone 15 Pro Max", "Apple", 30_000_000),
+                2, product(2, "Galaxy S24", "Samsung", 18_000_000),
+                3, product(3, "Điện thoại Redmi Note 13", "Xiaomi", 5_000_000))));
+        when(specificationsRepository.findStorageByProductIds(anyCollection())).thenReturn(List.of());
+        index = new ProductSearchIndex(catalogSnapshotService, specificationsRepository);
+    }
+
+    @Test
+    void matchesInsideTerms() {
+        // Khớp chuỗi con như ILIKE '%q%': "phone" nằm trong "iPhone"
+        assertEquals(List.of(1), search("phone"));
+    }
+
+    @Test
+    void everyWordMustMatch() {
+        assertEquals(List.of(1), search("15 pro"));
+        assertEquals(List.of(), search("15 galaxy"));
+    }
+
+    @Test
+    void ignoresCaseAndVietnameseMarks() {
+        assertEquals(List.of(3), search("DIEN THOAI"));
+        assertEquals(List.of(3), search("điện"));
+    }
+
+    @Test
+    void matchesBrandName() {
+        assertEquals(List.of(2), search("samsung"));
+    }
+
+    @Test
+    void blankSearchReturnsEverything() {
+        assertEquals(3, index.search(null, null, null, null, " ", 0, 10).total());
+    }
+
+    @Test
+    void hugePageSizeOnlyAllocatesForActualHits() {
+        // Trước đây new ArrayList<>(size) với size = Integer.MAX_VALUE -> OutOfMemoryError
+        assertEquals(3, index.search(null, null, null, null, null, 0, Integer.MAX_VALUE).hits().size());
+        assertEquals(3, index.searchAfter(null, null, null, null, null, null, null, Integer.MAX_VALUE).hits().size());
+    }
+
+    @Test
+    void pagesPastTheEndAreEmpty() {
+        assertEquals(List.of(), index.search(null, null, null, null, null, 5, 2).hits());
+    }
+
+    private List<Integer> search(String text) {
+        return index.search(null, null, null, null, text, 0, 10).hits().stream()
+                .map(hit -> hit.product().getProdId())
+                .sorted()
+                .toList();
+    }
+
+    private static ProductResponse product(int id, String name, String brand, double price) {
+        return new ProductResponse(id, name, name, "ACTIVE", List.of(), List.of(), null, 0,
+                new BrandResponse(id, brand), List.of(),
+                List.of(new ProductPriceResponse(id, price, "ACTIVE", null, null, null, null)),
+                null, 0, 0.0, Map.of());
+    }
+}
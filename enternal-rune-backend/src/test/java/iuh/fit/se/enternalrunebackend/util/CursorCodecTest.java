@@ -0,0 +1,54 @@
+package iuh.fit.se.enternalrunebackend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CursorCodecTest {
+
+    @Test
+    void decodesWhatWasEncoded() {
+        Instant at = Instant.parse("2025-01-02T03:04:05.678Z");
+        String token = CursorCodec.encode("inbox", at, "65a1b2c3d4e5f60718293a4b");
+
+        assertArrayEquals(new String[]{at.toString(), "65a1b2c3d4e5f60718293a4b"},
+                CursorCodec.decode(token, "inbox", 2));
+    }
+
+    @Test
+    void keepsEmptyValues() {
+        String token = CursorCodec.encode("products", 4.5, "");
+
+        assertArrayEquals(new String[]{"4.5", ""}, CursorCodec.decode(token, "products", 2));
+    }
+
+    @Test
+    void tokenIsUrlSafe() {
+        String token = CursorCodec.encode("chat", "???>>>", 123);
+
+        assertFalse(token.contains("+") || token.contains("/") || token.contains("="));
+    }
+
+    @Test
+    void rejectsCursorOfAnotherKind() {
+        String token = CursorCodec.encode("inbox", "a", "b");
+
+        assertThrows(IllegalArgumentException.class, () -> CursorCodec.decode(token, "products", 2));
+    }
+
+    @Test
+    void rejectsWrongValueCount() {
+        String token = CursorCodec.encode("inbox", "a", "b", "c");
+
+        assertThrows(IllegalArgumentException.class, () -> CursorCodec.decode(token, "inbox", 2));
+    }
+
+    @Test
+    void rejectsGarbage() {
+        assertThrows(IllegalArgumentException.class, () -> CursorCodec.decode("not base64!", "inbox", 2));
+    }
+}
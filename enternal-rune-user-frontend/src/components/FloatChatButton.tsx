@@ -14,6 +14,18 @@ export default function FloatChatButton() {
   const chatContainerRef = useRef<HTMLDivElement | null>(null);
   const buttonRef = useRef<HTMLButtonElement | null>(null);
   const panelRef = useRef<HTMLDivElement | null>(null);
+  // Stream AI đang chạy, huỷ khi đóng khung chat / unmount để backend dừng gọi Gemini
+  const abortRef = useRef<AbortController | null>(null);
+  // Id phiên chat gửi kèm mỗi câu hỏi để AI nhớ các lượt trước, giữ trong sessionStorage (đóng tab = phiên mới)
+  const aiSessionRef = useRef<string | null>(null);
+
+  useEffect(() => {
+    if (!isOpen) {
+      abortRef.current?.abort();
+    }
+  }, [isOpen]);
+
+  useEffect(() => () => abortRef.current?.abort(), []);
 
   useEffect(() => {
     if (isOpen && panelRef.current) {
@@ -50,39 +62,99 @@ export default function FloatChatButton() {
       }
     }, 50);
 
+    // Tin nhắn AI rỗng, được nối thêm từng đoạn khi backend stream về
+    const aiMessageId = (Date.now() + 1).toString();
+    let received = "";
+    const appendToAiMessage = (text: string) => {
+      setMessages((prev) =>
+        prev.some((m) => m.id === aiMessageId)
+          ? prev.map((m) => (m.id === aiMessageId ? { ...m, text } : m))
+          : [...prev, { id: aiMessageId, text, isUser: false, timestamp: new Date() }]
+      );
+      if (chatContainerRef.current) {
+        chatContainerRef.current.scrollTop = chatContainerRef.current.scrollHeight;
+      }
+    };
+
+    const controller = new AbortController();
+    abortRef.current = controller;
     try {
-      // Gọi API AI - backend nhận String trong body
-      const response = await AxiosInstance.post<string>("/ai/generate", messageToSend, {
-        headers: {
-          "Content-Type": "application/json",
-        },
-        transformRequest: [(data) => data], // Gửi trực tiếp string, không stringify
+      // Gọi API AI dạng SSE - backend nhận String trong body, trả event token / done / error
+      const headers: Record<string, string> = {
+        "Content-Type": "text/plain;charset=UTF-8",
+        Accept: "text/event-stream",
+      };
+      if (!aiSessionRef.current) {
+        aiSessionRef.current = sessionStorage.getItem("aiSessionId");
+        if (!aiSessionRef.current) {
+          aiSessionRef.current = crypto.randomUUID();
+          sessionStorage.setItem("aiSessionId", aiSessionRef.current);
+        }
+      }
+      headers["X-AI-Session"] = aiSessionRef.current;
+      const token = localStorage.getItem("token");
+      if (token) {
+        headers.Authorization = `Bearer ${token}`;
+      }
+      const response = await fetch(`${AxiosInstance.defaults.baseURL}/ai/stream`, {
+        method: "POST",
+        headers,
+        body: messageToSend,
+        signal: controller.signal,
       });
+      if (response.status === 429) {
+        throw new Error("Bạn đang có quá nhiều câu hỏi chưa trả lời xong, vui lòng đợi.");
+      }
+      if (!response.ok || !response.body) {
+        throw new Error(`HTTP ${response.status}`);
+      }
 
-      const aiMessage = {
-        id: (Date.now() + 1).toString(),
-        text: response.data || "Xin lỗi, tôi không thể xử lý yêu cầu này.",
-        isUser: false,
-        timestamp: new Date(),
-      };
-      setMessages((prev) => [...prev, aiMessage]);
+      const reader = response.body.getReader();
+      const decoder = new TextDecoder();
+      let buffer = "";
+      let done = false;
+      while (!done) {
+        const chunk = await reader.read();
+        if (chunk.done) break;
+        buffer += decoder.decode(chunk.value, { stream: true });
+        // Mỗi event SSE kết thúc bằng 1 dòng trống
+        let boundary: number;
+        while ((boundary = buffer.indexOf("\n\n")) !== -1) {
+          const rawEvent = buffer.substring(0, boundary);
+          buffer = buffer.substring(boundary + 2);
+          let event = "message";
+          let data = "";
+          rawEvent.split("\n").forEach((line) => {
+            if (line.startsWith("event:")) event = line.substring(6).trim();
+            else if (line.startsWith("data:")) data += line.substring(5);
+          });
+          if (event === "token") {
+            received += (JSON.parse(data) as { content: string }).content;
+            setIsLoading(false);
+            appendToAiMessage(received);
+          } else if (event === "error") {
+            throw new Error((JSON.parse(data) as { message?: string }).message);
+          } else if (event === "done") {
+            done = true;
+          }
+        }
+      }
+      if (!received) {
+        appendToAiMessage("Xin lỗi, tôi không thể xử lý yêu cầu này.");
+      }
     } catch (error) {
+      if (controller.signal.aborted) return;
       console.error("Error calling AI API:", error);
       let errorText = "Xin lỗi, đã có lỗi xảy ra. Vui lòng thử lại sau.";
-      if (error && typeof error === 'object' && 'response' in error) {
-        const axiosError = error as { response?: { data?: { message?: string } }; message?: string };
-        errorText = axiosError.response?.data?.message || axiosError.message || errorText;
-      } else if (error instanceof Error) {
+      if (error instanceof Error) {
         errorText = error.message || errorText;
       }
-      const errorMessage = {
-        id: (Date.now() + 1).toString(),
-        text: errorText,
-        isUser: false,
-        timestamp: new Date(),
-      };
-      setMessages((prev) => [...prev, errorMessage]);
+      // Giữ phần đã nhận được, báo lỗi ở cuối
+      appendToAiMessage(received ? `${received}\n${errorText}` : errorText);
     } finally {
+      if (abortRef.current === controller) {
+        abortRef.current = null;
+      }
       setIsLoading(false);
       // Scroll to bottom sau khi AI message được thêm
       setTimeout(() => {